@@ -19,6 +19,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.ws.rs.container.ContainerRequestFilter;
 
@@ -27,6 +33,7 @@ import org.apache.cxf.endpoint.Server;
 import org.apache.cxf.feature.Feature;
 import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
 import org.apache.cxf.jaxrs.lifecycle.ResourceProvider;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
 import org.apache.cxf.jaxrs.swagger.Swagger2Feature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,11 +48,16 @@ import it.water.core.api.service.rest.RestApiRegistry;
 import it.water.core.interceptors.annotations.FrameworkComponent;
 import it.water.core.interceptors.annotations.Inject;
 import it.water.service.rest.AbstractRestApiManager;
+import it.water.service.rest.ComponentLookupCache;
 import it.water.service.rest.GenericExceptionMapperProvider;
+import it.water.service.rest.RestApiRegistrySnapshot;
+import it.water.service.rest.RestControllerProxy;
 import it.water.service.rest.api.WaterJacksonMapper;
 import it.water.service.rest.api.options.RestOptions;
+import it.water.service.rest.manager.cxf.metrics.CxfEndpointMetricsFilter;
 import it.water.service.rest.manager.cxf.security.filters.CxfSecurityHeadersFilter;
 import it.water.service.rest.manager.cxf.security.filters.jwt.CxfJwtAuthenticationFilter;
+import it.water.service.rest.security.jwt.RestMethodSecurityDescriptor;
 import lombok.Setter;
 
 /**
@@ -71,7 +83,23 @@ public class CxfRestApiManager extends AbstractRestApiManager implements RestApi
     private WaterJacksonMapper waterJacksonMapper;
 
     private Server server;
+    //counts the requests of the running server, to drain them when it is replaced or stopped
+    private DrainingMessageObserver serverObserver;
+    private final LongAdder drainedRequests = new LongAdder();
+    private final LongAdder abortedRequests = new LongAdder();
+    private IncrementalJAXRSServiceFactoryBean serviceFactory;
+    //rest api interface -> resource published on the running server
+    private Map<Class<?>, DeployedResource> deployedResources = new HashMap<>();
+    //what the running server has been built with, a change requires a full rebuild
+    private List<Object> globalProvidersSignature;
+    //registrations the running server is aligned to
+    private RestApiRegistrySnapshot deployedSnapshot;
     private CxfJwtAuthenticationFilter jwtAuthenticationFilter;
+    //one virtual thread per resource invocation, shared by the servers created by this manager
+    private ExecutorService virtualThreadExecutor;
+    //replaced and stopped servers are drained and destroyed in background, one at a time,
+    //as the controllers of the resources removed from the running server
+    private ScheduledExecutorService retireExecutor;
 
     @OnActivate
     public synchronized void onActivate(RestApiRegistry restApiRegistry, RestOptions restOptions, WaterJacksonMapper waterJacksonMapper, ComponentRegistry componentRegistry) {
@@ -86,13 +114,24 @@ public class CxfRestApiManager extends AbstractRestApiManager implements RestApi
     public synchronized void startRestApiServer() {
         if (this.restApiRegistry == null)
             return;
-        this.stopRestApiServer();
+        //restarts follow component changes: request path lookups are done again
+        ComponentLookupCache.invalidateAll();
+        List<ContainerRequestFilter> filters = getContainerRequestFilters();
+        List<Object> providersSignature = getGlobalProvidersSignature(filters);
+        //only resources changed: they are swapped on the running server, in flight requests are not dropped.
+        //Swagger documents the resources found at creation time, so with swagger enabled the server is always rebuilt
+        boolean swaggerEnabled = this.restOptions != null && this.restOptions.swaggerEnabled();
+        if (!swaggerEnabled && this.server != null && this.serviceFactory != null && providersSignature.equals(this.globalProvidersSignature)) {
+            updateResources();
+            return;
+        }
+        //full rebuild: the running server keeps serving until the new one is started in its place
         String restRootContext = (this.restOptions != null) ? this.restOptions.restRootContext() : "/water";
         log.info("Registering base REST resources under : {}", restRootContext);
         // configuring CXF Server with interceptors,features and providers
         List<Feature> features = new ArrayList<>();
         //#36: Swagger feature + UI are registered only when explicitly enabled (secure-by-default).
-        if (this.restOptions != null && this.restOptions.swaggerEnabled()) {
+        if (swaggerEnabled) {
             log.info("Swagger feature enabled via {}", "water.rest.swagger.enabled");
             features.add(addSwaggerFeature());
         } else {
@@ -106,27 +145,28 @@ public class CxfRestApiManager extends AbstractRestApiManager implements RestApi
         providers.add(getGenericExceptionMapper());
         //#26: enforce baseline HTTP security headers on every REST response
         providers.add(new CxfSecurityHeadersFilter());
+        //per resource method invocation metrics, exposed by the status api
+        providers.add(new CxfEndpointMetricsFilter());
         //all filters registered as @FrameworkComponent will be added
-        List<ContainerRequestFilter> filters = getContainerRequestFilters();
         providers.addAll(filters);
-        JAXRSServerFactoryBean factory = new JAXRSServerFactoryBean();
+        IncrementalJAXRSServiceFactoryBean incrementalServiceFactory = new IncrementalJAXRSServiceFactoryBean();
+        JAXRSServerFactoryBean factory = new JAXRSServerFactoryBean(incrementalServiceFactory);
         factory.setAddress("/");
+        factory.setStart(false);
         factory.setFeatures(features);
         factory.setProviders(providers);
+        //controllers blocking on i/o do not hold transport threads
+        Executor invocationExecutor = getInvocationExecutor();
+        if (invocationExecutor != null)
+            factory.setInvoker(new VirtualThreadJAXRSInvoker(invocationExecutor, this.componentRegistry));
         Map<Class<?>, ResourceProvider> resourceClassesAndProviders = new HashMap<>();
-        Map<Class<? extends RestApi>, Class<?>> registeredApis = this.restApiRegistry.getRegisteredRestApis();
+        //consistent view of the registrations, later changes are applied to the running server
+        RestApiRegistrySnapshot registrySnapshot = RestApiRegistrySnapshot.of(this.restApiRegistry);
+        Map<Class<? extends RestApi>, Class<?>> registeredApis = registrySnapshot.getRestApis();
         registeredApis.keySet().forEach(restApi -> {
-            try {
-                //finds the concrete rest controller which has @FrameworkRestController
-                Class<?> serviceClass = registeredApis.get(restApi);
-                //Finds the concrete rest api which uses a specific rest implementation
-                Class<?> concreteRestApiInterface = restApi;
-                //create a Per Request Resource Provider which instantiates a proxy of the correct interface per each request
-                resourceClassesAndProviders.put(concreteRestApiInterface, new PerRequestProxyProvider(componentRegistry, concreteRestApiInterface, serviceClass));
-                log.debug("Registered REST api: {} with implementation {}", serviceClass, concreteRestApiInterface);
-            } catch (Exception e) {
-                log.error(e.getMessage(), e);
-            }
+            PerRequestProxyProvider resourceProvider = createResourceProvider(restApi, registeredApis.get(restApi));
+            if (resourceProvider != null)
+                resourceClassesAndProviders.put(restApi, resourceProvider);
         });
 
         if (!resourceClassesAndProviders.isEmpty()) {
@@ -137,11 +177,28 @@ public class CxfRestApiManager extends AbstractRestApiManager implements RestApi
                     //add all rest services as providers for the resource api
                     factory.setResourceProvider(resourceClass, resourceClassesAndProviders.get(resourceClass)));
             log.debug("Starting CXF Rest API Server....");
-            this.server = factory.create();
+            Server previousServer = (this.server != null) ? this.server : findRegisteredServer();
+            DrainingMessageObserver previousObserver = this.serverObserver;
+            List<DeployedResource> previousResources = new ArrayList<>(this.deployedResources.values());
+            Server newServer = factory.create();
+            //from here requests are dispatched to the new server
+            this.serverObserver = CxfServerSwitch.start(newServer, factory.getBus());
+            this.server = newServer;
+            this.serviceFactory = incrementalServiceFactory;
+            this.globalProvidersSignature = providersSignature;
+            this.deployedSnapshot = registrySnapshot;
+            this.deployedResources = new HashMap<>();
+            incrementalServiceFactory.getClassResourceInfo().forEach(resourceInfo ->
+                    deployedResources.put(resourceInfo.getResourceClass(), new DeployedResource((PerRequestProxyProvider) resourceInfo.getResourceProvider(), resourceInfo)));
+            unregisterServerComponent(previousServer);
             this.componentRegistry.registerComponent(Server.class, this.server, null);
             log.debug("CXF Rest API Server Started!");
+            if (previousServer != null)
+                retireServer(previousServer, previousObserver, newServer, previousResources);
         } else {
+            resourceClassesAndProviders.values().forEach(resourceProvider -> closeResourceProvider((PerRequestProxyProvider) resourceProvider));
             log.warn("No Resource has been found for {}", Server.class.getName());
+            this.stopRestApiServer();
         }
     }
 
@@ -149,35 +206,45 @@ public class CxfRestApiManager extends AbstractRestApiManager implements RestApi
     @OnDeactivate
     public synchronized void stopRestApiServer() {
         //if not instance we search for other server registered
-        if (this.server == null) {
-            try {
-                server = this.componentRegistry.findComponent(Server.class, null);
-            } catch (Exception e) {
-                log.debug("No running cxf server ...");
-            }
-        }
-
-        try {
-            if (server != null)
-                server.stop();
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
+        Server stoppingServer = (this.server != null) ? this.server : findRegisteredServer();
+        DrainingMessageObserver stoppingObserver = this.serverObserver;
+        List<DeployedResource> stoppingResources = new ArrayList<>(this.deployedResources.values());
+        unregisterServerComponent(stoppingServer);
+        server = null;
+        serverObserver = null;
+        serviceFactory = null;
+        globalProvidersSignature = null;
+        deployedSnapshot = null;
+        deployedResources = new HashMap<>();
+        if (stoppingServer != null)
+            retireServer(stoppingServer, stoppingObserver, null, stoppingResources);
+        else
+            stoppingResources.forEach(deployedResource -> closeResourceProvider(deployedResource.provider));
+        //no new invocations are accepted, the running ones are interrupted once the stopped server has been drained
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown();
+            getRetireExecutor().execute(virtualThreadExecutor::shutdownNow);
+            virtualThreadExecutor = null;
         }
-
-        try {
-            if (server != null)
-                server.destroy();
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
+        //the retirements already submitted are completed, then the retire thread ends
+        if (retireExecutor != null) {
+            retireExecutor.shutdown();
+            retireExecutor = null;
         }
+    }
 
-        try {
-            this.componentRegistry.unregisterComponent(Server.class, this.server);
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
-        }
+    /**
+     * @return requests completed by replaced or stopped servers while they were draining
+     */
+    public long getDrainedRequestCount() {
+        return drainedRequests.sum();
+    }
 
-        server = null;
+    /**
+     * @return requests still running when the drain timeout of a replaced or stopped server expired
+     */
+    public long getAbortedRequestCount() {
+        return abortedRequests.sum();
     }
 
     /**
@@ -210,6 +277,177 @@ public class CxfRestApiManager extends AbstractRestApiManager implements RestApi
         return null;
     }
 
+    private Server findRegisteredServer() {
+        try {
+            return this.componentRegistry.findComponent(Server.class, null);
+        } catch (Exception e) {
+            log.debug("No running cxf server ...");
+        }
+        return null;
+    }
+
+    private void unregisterServerComponent(Server registeredServer) {
+        if (registeredServer == null)
+            return;
+        try {
+            this.componentRegistry.unregisterComponent(Server.class, registeredServer);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Destroys a replaced or stopped server once its requests in flight are completed, or the drain timeout expires.
+     */
+    private void retireServer(Server retiringServer, DrainingMessageObserver observer, Server replacement, List<DeployedResource> resources) {
+        long drainTimeoutMillis = (this.restOptions != null) ? this.restOptions.serverDrainTimeoutMillis() : 0;
+        boolean replaced;
+        try {
+            replaced = CxfServerSwitch.stopAccepting(retiringServer, observer, replacement);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            resources.forEach(deployedResource -> closeResourceProvider(deployedResource.provider));
+            return;
+        }
+        //waiting for the requests in flight does not hold the manager lock
+        getRetireExecutor().execute(() -> destroyRetiredServer(retiringServer, observer, replaced, replacement != null, resources, drainTimeoutMillis));
+    }
+
+    private void destroyRetiredServer(Server retiringServer, DrainingMessageObserver observer, boolean replaced, boolean hasReplacement, List<DeployedResource> resources, long drainTimeoutMillis) {
+        int inFlight = (observer != null) ? observer.getInFlightRequests() : 0;
+        long start = System.nanoTime();
+        try {
+            int aborted = CxfServerSwitch.destroyWhenDrained(retiringServer, observer, replaced, drainTimeoutMillis);
+            if (observer != null) {
+                drainedRequests.add(observer.getDrainedRequests());
+                abortedRequests.add(aborted);
+                log.info("CXF server {} in {} ms: {} requests in flight, {} drained, {} aborted", hasReplacement ? "replaced" : "stopped", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), inFlight, observer.getDrainedRequests(), aborted);
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+        //singleton and pooled controllers are destroyed with the server
+        resources.forEach(deployedResource -> closeResourceProvider(deployedResource.provider));
+    }
+
+    private ScheduledExecutorService getRetireExecutor() {
+        if (this.retireExecutor == null) {
+            this.retireExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "water-rest-retire");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return this.retireExecutor;
+    }
+
+    /**
+     * Applies to the running server only the registry changes since the snapshot it has been built with:
+     * new apis are published, apis whose controller changed are replaced in place and apis no longer registered are removed.
+     */
+    private void updateResources() {
+        RestApiRegistrySnapshot registrySnapshot = RestApiRegistrySnapshot.of(this.restApiRegistry);
+        if (registrySnapshot.isSameVersion(this.deployedSnapshot))
+            return;
+        RestApiRegistrySnapshot.Changes changes = registrySnapshot.changesSince(this.deployedSnapshot);
+        List<DeployedResource> removed = new ArrayList<>();
+        //new resources are published before the stale ones are removed, so an updated api is never unmapped
+        changes.getAdded().forEach((restApi, serviceClass) -> publishResource(restApi, serviceClass, removed));
+        changes.getReplaced().forEach((restApi, serviceClass) -> publishResource(restApi, serviceClass, removed));
+        changes.getRemoved().forEach(restApi -> {
+            DeployedResource deployed = deployedResources.remove(restApi);
+            if (deployed != null) {
+                serviceFactory.removeRootResource(deployed.resourceInfo);
+                removed.add(deployed);
+                log.info("REST api {} removed from the running server", restApi.getName());
+            }
+        });
+        retireResources(removed);
+        this.deployedSnapshot = registrySnapshot;
+    }
+
+    /**
+     * Destroys the controllers of resources removed from the running server once the drain timeout expires:
+     * requests already dispatched to them keep running meanwhile.
+     * Delayed destructions still pending on deactivation are run before the retire thread ends.
+     */
+    private void retireResources(List<DeployedResource> resources) {
+        if (resources.isEmpty())
+            return;
+        long drainTimeoutMillis = (this.restOptions != null) ? this.restOptions.serverDrainTimeoutMillis() : 0;
+        getRetireExecutor().schedule(() -> resources.forEach(deployedResource -> closeResourceProvider(deployedResource.provider)), Math.max(0, drainTimeoutMillis), TimeUnit.MILLISECONDS);
+    }
+
+    private void publishResource(Class<?> restApi, Class<?> serviceClass, List<DeployedResource> removed) {
+        PerRequestProxyProvider resourceProvider = createResourceProvider(restApi, serviceClass);
+        ClassResourceInfo resourceInfo = (resourceProvider != null) ? serviceFactory.createRootResource(restApi, resourceProvider) : null;
+        if (resourceInfo == null) {
+            if (resourceProvider != null)
+                closeResourceProvider(resourceProvider);
+            return;
+        }
+        DeployedResource current = deployedResources.put(restApi, new DeployedResource(resourceProvider, resourceInfo));
+        if (current != null) {
+            serviceFactory.replaceRootResource(current.resourceInfo, resourceInfo);
+            removed.add(current);
+        } else {
+            serviceFactory.addRootResource(resourceInfo);
+        }
+        log.info("REST api {} published on the running server", restApi.getName());
+    }
+
+    private PerRequestProxyProvider createResourceProvider(Class<?> restApi, Class<?> serviceClass) {
+        try {
+            //security descriptors of the resource methods are resolved here, not on the first request
+            RestMethodSecurityDescriptor.precompute(restApi);
+            //as the dispatch of the interface methods to the controller ones
+            RestControllerProxy.precompile(restApi, serviceClass);
+            //create a Per Request Resource Provider which instantiates a proxy of the correct interface per each request
+            PerRequestProxyProvider resourceProvider = new PerRequestProxyProvider(componentRegistry, restApi, serviceClass);
+            log.debug("Registered REST api: {} with implementation {}", serviceClass, restApi);
+            return resourceProvider;
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+        return null;
+    }
+
+    private void closeResourceProvider(PerRequestProxyProvider resourceProvider) {
+        try {
+            resourceProvider.close();
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Providers and features are bound to the server when it is created: resources can be changed on a running server
+     * only while these stay the same.
+     * Filters are compared by class, a filter component re-registered by an updated bundle comes with a new class.
+     */
+    private List<Object> getGlobalProvidersSignature(List<ContainerRequestFilter> filters) {
+        List<Object> signature = new ArrayList<>();
+        signature.add(this.restOptions != null ? this.restOptions.restRootContext() : null);
+        signature.add(this.waterJacksonMapper);
+        signature.add(this.restOptions != null && this.restOptions.virtualThreadsEnabled());
+        filters.forEach(filter -> signature.add(filter.getClass()));
+        return signature;
+    }
+
+    /**
+     * @return the executor of the resource invocations if virtual threads are enabled and supported, null otherwise
+     */
+    private Executor getInvocationExecutor() {
+        if (this.restOptions == null || !this.restOptions.virtualThreadsEnabled())
+            return null;
+        if (this.virtualThreadExecutor == null) {
+            this.virtualThreadExecutor = VirtualThreadJAXRSInvoker.newVirtualThreadExecutor().orElse(null);
+            if (this.virtualThreadExecutor == null)
+                log.warn("Virtual threads require Java 21 or later, rest resources are invoked on the transport threads");
+        }
+        return this.virtualThreadExecutor;
+    }
+
     private List<ContainerRequestFilter> getContainerRequestFilters() {
         List<ContainerRequestFilter> filters = new ArrayList<>();
         try {
@@ -225,4 +463,16 @@ public class CxfRestApiManager extends AbstractRestApiManager implements RestApi
         return filters;
     }
 
+    /**
+     * Resource published on the running server with the provider serving it.
+     */
+    private static final class DeployedResource {
+        private final PerRequestProxyProvider provider;
+        private final ClassResourceInfo resourceInfo;
+
+        private DeployedResource(PerRequestProxyProvider provider, ClassResourceInfo resourceInfo) {
+            this.provider = provider;
+            this.resourceInfo = resourceInfo;
+        }
+    }
 }
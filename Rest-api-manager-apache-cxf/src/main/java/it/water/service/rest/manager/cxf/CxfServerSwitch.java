@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.manager.cxf;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.endpoint.ServerImpl;
+import org.apache.cxf.endpoint.ServerRegistry;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.transport.ChainInitiationObserver;
+import org.apache.cxf.transport.Conduit;
+import org.apache.cxf.transport.Destination;
+import org.apache.cxf.transport.MessageObserver;
+import org.apache.cxf.ws.addressing.EndpointReferenceType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @Author Aristide Cittadino
+ * Blue/green switch of CXF servers published at the same address.
+ * <p>
+ * Servers created at the same address share the transport destination, which dispatches each request to its current
+ * message observer. CXF refuses to start a server on a destination already in use, so the new server takes over
+ * the destination by replacing its observer: the traffic is switched in one step, without unmapping the address.
+ * The replaced server keeps processing the requests already dispatched to it and is destroyed once they are
+ * completed, after being detached from the shared destination so that it does not stop the new server.
+ */
+final class CxfServerSwitch {
+    private static final Logger log = LoggerFactory.getLogger(CxfServerSwitch.class);
+
+    private CxfServerSwitch() {
+    }
+
+    /**
+     * Starts a server created with start=false, from now on it receives all the requests sent to its address.
+     *
+     * @param server server to start
+     * @param bus    bus the server has been created with
+     * @return observer counting the requests processed by the server
+     */
+    static DrainingMessageObserver start(Server server, Bus bus) {
+        Destination destination = server.getDestination();
+        //same lock CXF takes when a server starts listening on the destination
+        synchronized (destination) {
+            DrainingMessageObserver observer;
+            if (destination.getMessageObserver() == null) {
+                server.start();
+                observer = new DrainingMessageObserver(destination.getMessageObserver());
+            } else {
+                observer = new DrainingMessageObserver(new ChainInitiationObserver(server.getEndpoint(), bus));
+                ServerRegistry serverRegistry = bus.getExtension(ServerRegistry.class);
+                if (serverRegistry != null)
+                    serverRegistry.register(server);
+            }
+            destination.setMessageObserver(observer);
+            return observer;
+        }
+    }
+
+    /**
+     * Destroys a server once its requests in flight are completed or the timeout expires.
+     * A server not replaced at its address stops accepting requests first.
+     *
+     * @param server             server to destroy
+     * @param observer           observer returned by start, null for servers not started by this class
+     * @param replacement        server started in place of this one, null if the server is just stopped
+     * @param drainTimeoutMillis maximum wait for the requests in flight
+     * @return requests still in flight when the server has been destroyed
+     */
+    static int retire(Server server, DrainingMessageObserver observer, Server replacement, long drainTimeoutMillis) {
+        boolean replaced = stopAccepting(server, observer, replacement);
+        return destroyWhenDrained(server, observer, replaced, drainTimeoutMillis);
+    }
+
+    /**
+     * First, non blocking, step of retire: a server not replaced at its address stops accepting requests.
+     *
+     * @param server      server being retired
+     * @param observer    observer returned by start, null for servers not started by this class
+     * @param replacement server started in place of this one, null if the server is just stopped
+     * @return true if the replacement has taken over the destination of the server
+     */
+    static boolean stopAccepting(Server server, DrainingMessageObserver observer, Server replacement) {
+        Destination destination = server.getDestination();
+        boolean replaced = replacement != null && replacement.getDestination() == destination;
+        if (observer != null)
+            observer.startDraining();
+        if (!replaced) {
+            server.stop();
+            //a server which took over the destination is not started for CXF, its observer is removed here
+            synchronized (destination) {
+                if (observer != null && destination.getMessageObserver() == observer)
+                    destination.setMessageObserver(null);
+            }
+        }
+        return replaced;
+    }
+
+    /**
+     * Second step of retire, blocking for up to the drain timeout: waits for the requests in flight and destroys the server.
+     *
+     * @param server             server which stopped accepting requests
+     * @param observer           observer returned by start, null for servers not started by this class
+     * @param replaced           value returned by stopAccepting
+     * @param drainTimeoutMillis maximum wait for the requests in flight
+     * @return requests still in flight when the server has been destroyed
+     */
+    static int destroyWhenDrained(Server server, DrainingMessageObserver observer, boolean replaced, long drainTimeoutMillis) {
+        int aborted = (observer != null) ? observer.awaitDrained(drainTimeoutMillis) : 0;
+        if (replaced) {
+            if (!(server instanceof ServerImpl serverImpl)) {
+                log.warn("Cannot detach server {} from its destination, leaving it to the garbage collector", server);
+                return aborted;
+            }
+            //the destination now belongs to the new server: stopping and destroying must not touch it
+            serverImpl.setDestination(new DetachedDestination(server.getDestination().getAddress()));
+        }
+        server.destroy();
+        return aborted;
+    }
+
+    /**
+     * Destination of a server which has been replaced, receiving no requests.
+     */
+    private static final class DetachedDestination implements Destination {
+        private final EndpointReferenceType address;
+        private MessageObserver messageObserver;
+
+        private DetachedDestination(EndpointReferenceType address) {
+            this.address = address;
+        }
+
+        @Override
+        public EndpointReferenceType getAddress() {
+            return address;
+        }
+
+        @Override
+        public Conduit getBackChannel(Message inMessage) {
+            return null;
+        }
+
+        @Override
+        public void shutdown() {
+            //nothing to release, the transport resources belong to the new server
+        }
+
+        @Override
+        public MessageObserver getMessageObserver() {
+            return messageObserver;
+        }
+
+        @Override
+        public void setMessageObserver(MessageObserver observer) {
+            this.messageObserver = observer;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.manager.cxf;
+
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.transport.MessageObserver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author Aristide Cittadino
+ * Message observer of a CXF server counting the requests it is processing, so that the server can be destroyed
+ * only once they are completed.
+ * Requests are counted while the invocation chain runs on the transport thread, invocations moved to other threads
+ * by {@link VirtualThreadJAXRSInvoker} until their response has been written. Other suspended asynchronous responses are not tracked.
+ */
+class DrainingMessageObserver implements MessageObserver {
+    private static final String OFFLOADED = DrainingMessageObserver.class.getName() + ".offloaded";
+    private final MessageObserver delegate;
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final LongAdder drainedRequests = new LongAdder();
+    private volatile boolean draining;
+
+    DrainingMessageObserver(MessageObserver delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void onMessage(Message message) {
+        Exchange exchange = message.getExchange();
+        //an offloaded request resumed to write its response is still counted by the observer which received it
+        if (exchange != null && exchange.get(OFFLOADED) != null) {
+            delegate.onMessage(message);
+            return;
+        }
+        if (exchange != null)
+            exchange.put(DrainingMessageObserver.class, this);
+        inFlightRequests.incrementAndGet();
+        try {
+            delegate.onMessage(message);
+        } finally {
+            //an offloaded request stays in flight until its response has been written
+            if (exchange == null || exchange.get(OFFLOADED) == null)
+                invocationCompleted();
+        }
+    }
+
+    /**
+     * The request of the exchange goes on on another thread, invocationCompleted must be called once its response has been written.
+     */
+    void offload(Exchange exchange) {
+        exchange.put(OFFLOADED, Boolean.TRUE);
+    }
+
+    void invocationCompleted() {
+        int remaining = inFlightRequests.decrementAndGet();
+        if (draining) {
+            drainedRequests.increment();
+            if (remaining == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * From now on the completed requests are counted as drained.
+     */
+    void startDraining() {
+        draining = true;
+    }
+
+    /**
+     * Waits for the requests in flight to complete. The observer must no longer receive new requests.
+     *
+     * @param timeoutMillis maximum wait
+     * @return requests still in flight when the wait ended
+     */
+    int awaitDrained(long timeoutMillis) {
+        startDraining();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (this) {
+            long remainingNanos;
+            while (inFlightRequests.get() > 0 && (remainingNanos = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return inFlightRequests.get();
+    }
+
+    /**
+     * @return requests currently processed
+     */
+    int getInFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    /**
+     * @return requests completed while draining
+     */
+    long getDrainedRequests() {
+        return drainedRequests.sum();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.manager.cxf;
+
+import org.apache.cxf.jaxrs.JAXRSServiceFactoryBean;
+import org.apache.cxf.jaxrs.lifecycle.ResourceProvider;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.apache.cxf.jaxrs.utils.ResourceUtils;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * @Author Aristide Cittadino
+ * CXF service factory whose root resources can be added, replaced and removed while the server is running.
+ * <p>
+ * The CXF service model keeps a reference to the resource list of the factory and request matching iterates it on every
+ * request: the list is copy on write, so requests always see a consistent set of resources while it changes.
+ */
+class IncrementalJAXRSServiceFactoryBean extends JAXRSServiceFactoryBean {
+
+    IncrementalJAXRSServiceFactoryBean() {
+        this.classResourceInfos = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Builds the resource model of a root resource, without publishing it.
+     *
+     * @param resourceClass    jax rs annotated resource class
+     * @param resourceProvider provider of the resource instances
+     * @return the resource model or null if the class is not a valid root resource
+     */
+    ClassResourceInfo createRootResource(Class<?> resourceClass, ResourceProvider resourceProvider) {
+        ClassResourceInfo resourceInfo = ResourceUtils.createClassResourceInfo(resourceClass, resourceClass, true, false, getBus());
+        if (resourceInfo != null)
+            resourceInfo.setResourceProvider(resourceProvider);
+        return resourceInfo;
+    }
+
+    /**
+     * Publishes a resource, matched starting from the next request.
+     */
+    void addRootResource(ClassResourceInfo resourceInfo) {
+        this.classResourceInfos.add(resourceInfo);
+    }
+
+    /**
+     * Replaces a published resource in one step, so no request finds the path unmapped.
+     */
+    void replaceRootResource(ClassResourceInfo current, ClassResourceInfo replacement) {
+        int index = this.classResourceInfos.indexOf(current);
+        if (index >= 0)
+            this.classResourceInfos.set(index, replacement);
+        else
+            this.classResourceInfos.add(replacement);
+    }
+
+    /**
+     * Removes a published resource, requests already dispatched to it complete normally.
+     */
+    void removeRootResource(ClassResourceInfo resourceInfo) {
+        this.classResourceInfos.remove(resourceInfo);
+    }
+}
@@ -17,6 +17,8 @@ package it.water.service.rest.manager.cxf;
 
 import it.water.core.api.registry.ComponentRegistry;
 import it.water.service.rest.RestControllerProxy;
+import it.water.service.rest.api.RestControllerLifecycle;
+import lombok.Getter;
 import org.apache.cxf.jaxrs.lifecycle.ResourceProvider;
 import org.apache.cxf.jaxrs.utils.InjectionUtils;
 import org.apache.cxf.jaxrs.utils.ResourceUtils;
@@ -30,11 +32,15 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 /**
  * @Author Aristide Cittadino
  * Custom Per Request Resource Provider which creates a Proxy which implements a Concrete Rest Api Implementation
  * And register as CXF Rest Resource.
+ * Controllers annotated with {@link RestControllerLifecycle} can be singleton or pooled: in that case the proxy
+ * and its controller are reused across requests instead of being created for each one.
  */
 public class PerRequestProxyProvider implements ResourceProvider {
     private Logger log = LoggerFactory.getLogger(PerRequestProxyProvider.class);
@@ -43,6 +49,13 @@ public class PerRequestProxyProvider implements ResourceProvider {
     private Method postConstructMethod;
     private Method preDestroyMethod;
     private ComponentRegistry componentRegistry;
+    @Getter
+    private RestControllerLifecycle.Mode lifecycleMode;
+    private volatile Object singletonProxy;
+    //idle proxies of a pooled controller
+    private BlockingQueue<Object> pool;
+    //set when the resource is removed or the server stopped
+    private volatile boolean closed;
 
     /**
      * @param concreteRestApiInterface    The Framework Rest Api Interface - which uses a specific rest framework ex. Jax RS
@@ -60,10 +73,40 @@ public class PerRequestProxyProvider implements ResourceProvider {
         serviceClassDefaultConstructor = defaultConstructor.get();
         postConstructMethod = ResourceUtils.findPostConstructMethod(concreteRestControllerClass);
         preDestroyMethod = ResourceUtils.findPreDestroyMethod(concreteRestControllerClass);
+        RestControllerLifecycle lifecycle = concreteRestControllerClass.getAnnotation(RestControllerLifecycle.class);
+        lifecycleMode = (lifecycle != null) ? lifecycle.value() : RestControllerLifecycle.Mode.PER_REQUEST;
+        if (lifecycleMode == RestControllerLifecycle.Mode.POOLED)
+            pool = new ArrayBlockingQueue<>(Math.max(1, lifecycle.poolSize()));
+        log.debug("Controller {} lifecycle: {}", concreteRestControllerClass.getName(), lifecycleMode);
     }
 
     @Override
     public Object getInstance(Message m) {
+        if (lifecycleMode == RestControllerLifecycle.Mode.SINGLETON)
+            return getSingletonInstance();
+        if (lifecycleMode == RestControllerLifecycle.Mode.POOLED) {
+            Object pooled = pool.poll();
+            if (pooled != null)
+                return pooled;
+        }
+        return createInstance();
+    }
+
+    private Object getSingletonInstance() {
+        Object instance = singletonProxy;
+        if (instance == null) {
+            synchronized (this) {
+                instance = singletonProxy;
+                if (instance == null) {
+                    instance = createInstance();
+                    singletonProxy = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    private Object createInstance() {
         try {
             Object instance = serviceClassDefaultConstructor.newInstance();
             InjectionUtils.invokeLifeCycleMethod(instance, postConstructMethod);
@@ -82,7 +125,52 @@ public class PerRequestProxyProvider implements ResourceProvider {
      * {@inheritDoc}
      */
     public void releaseInstance(Message m, Object o) {
-        InjectionUtils.invokeLifeCycleMethod(o, preDestroyMethod);
+        if (lifecycleMode == RestControllerLifecycle.Mode.SINGLETON)
+            return;
+        //pool full: the instance is discarded
+        if (lifecycleMode == RestControllerLifecycle.Mode.POOLED && !closed && pool.offer(o)) {
+            //provider closed while the instance was being returned
+            if (closed)
+                destroyIdleInstances();
+            return;
+        }
+        destroyInstance(o);
+    }
+
+    /**
+     * Destroys the singleton and the idle pooled controllers, invoked when the rest server is stopped
+     * or the resource is removed from it.
+     */
+    public void close() {
+        closed = true;
+        Object instance;
+        synchronized (this) {
+            instance = singletonProxy;
+            singletonProxy = null;
+        }
+        if (instance != null)
+            destroyInstance(instance);
+        destroyIdleInstances();
+    }
+
+    private void destroyIdleInstances() {
+        if (pool == null)
+            return;
+        Object instance;
+        while ((instance = pool.poll()) != null)
+            destroyInstance(instance);
+    }
+
+    private void destroyInstance(Object o) {
+        //lifecycle methods belong to the controller, not to the proxy
+        InjectionUtils.invokeLifeCycleMethod(RestControllerProxy.getConcreteRestController(o), preDestroyMethod);
+    }
+
+    /**
+     * @return number of idle pooled instances
+     */
+    public int getIdleInstances() {
+        return pool != null ? pool.size() : 0;
     }
 
     @Override
@@ -92,6 +180,6 @@ public class PerRequestProxyProvider implements ResourceProvider {
 
     @Override
     public boolean isSingleton() {
-        return false;
+        return lifecycleMode == RestControllerLifecycle.Mode.SINGLETON;
     }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.manager.cxf;
+
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.permission.SecurityContext;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.service.rest.ComponentLookupCache;
+import org.apache.cxf.continuations.Continuation;
+import org.apache.cxf.continuations.ContinuationProvider;
+import org.apache.cxf.interceptor.InterceptorChain;
+import org.apache.cxf.interceptor.OutgoingChainInterceptor;
+import org.apache.cxf.jaxrs.JAXRSInvoker;
+import org.apache.cxf.jaxrs.provider.ServerProviderFactory;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.transport.MessageObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @Author Aristide Cittadino
+ * JAX-RS invoker running the resource invocations on an executor, virtual threads by default.
+ * <p>
+ * The request is suspended through the transport continuation, so the transport thread goes back to its pool while the
+ * controller blocks, and it is resumed once the invocation is completed: the response is then written by the transport
+ * as for any asynchronous response. Requests whose transport does not support continuations are invoked inline.
+ * The security context filled by the authentication filters on the transport thread is propagated to the invocation.
+ */
+class VirtualThreadJAXRSInvoker extends JAXRSInvoker {
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadJAXRSInvoker.class);
+    private static final String OFFLOADED_INVOCATION = VirtualThreadJAXRSInvoker.class.getName() + ".invocation";
+
+    private final Executor executor;
+    private final ComponentLookupCache componentLookupCache;
+
+    VirtualThreadJAXRSInvoker(Executor executor, ComponentRegistry componentRegistry) {
+        this.executor = executor;
+        this.componentLookupCache = (componentRegistry != null) ? ComponentLookupCache.of(componentRegistry) : null;
+    }
+
+    /**
+     * Virtual threads are available from Java 21, the framework is built on Java 17: the executor is looked up reflectively.
+     *
+     * @return an executor starting a virtual thread per task, empty on runtimes without virtual threads
+     */
+    static Optional<ExecutorService> newVirtualThreadExecutor() {
+        try {
+            return Optional.of((ExecutorService) MethodHandles.publicLookup()
+                    .findStatic(java.util.concurrent.Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class))
+                    .invoke());
+        } catch (Throwable e) {
+            log.debug("Virtual threads not available: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Object invoke(Exchange exchange, Object request) {
+        //second pass, after the resume: the result of the offloaded invocation is returned to the chain
+        OffloadedInvocation completed = (OffloadedInvocation) exchange.remove(OFFLOADED_INVOCATION);
+        if (completed != null) {
+            //the request stays in flight until the resumed chain has written its response
+            if (completed.drainingObserver != null)
+                ResponseWrittenInterceptor.register(exchange.getInMessage(), completed.drainingObserver);
+            return completed.getResult();
+        }
+        Message inMessage = exchange.getInMessage();
+        ContinuationProvider continuationProvider = (inMessage != null) ? inMessage.get(ContinuationProvider.class) : null;
+        Continuation continuation = (continuationProvider != null) ? continuationProvider.getContinuation() : null;
+        //no continuation support or continuation already used by an asynchronous resource
+        if (continuation == null || !continuation.isNew())
+            return super.invoke(exchange, request);
+        Runtime runtime = findRuntime();
+        SecurityContext securityContext = (runtime != null) ? runtime.getSecurityContext() : null;
+        DrainingMessageObserver drainingObserver = exchange.get(DrainingMessageObserver.class);
+        Runnable invocation = () -> {
+            OffloadedInvocation offloaded = new OffloadedInvocation(drainingObserver);
+            try {
+                if (securityContext != null)
+                    runtime.fillSecurityContext(securityContext);
+                offloaded.result = super.invoke(exchange, request);
+            } catch (RuntimeException | Error e) {
+                offloaded.failure = e;
+            } finally {
+                //context proxies injected into the resource are bound to the invocation thread
+                ServerProviderFactory.clearThreadLocalProxies(inMessage);
+                exchange.put(OFFLOADED_INVOCATION, offloaded);
+                continuation.resume();
+            }
+        };
+        continuation.suspend(0);
+        if (drainingObserver != null)
+            drainingObserver.offload(exchange);
+        try {
+            executor.execute(invocation);
+        } catch (RejectedExecutionException e) {
+            //executor shut down: the request is served on the transport thread
+            invocation.run();
+        }
+        return null;
+    }
+
+    private Runtime findRuntime() {
+        if (componentLookupCache == null)
+            return null;
+        try {
+            return componentLookupCache.findComponent(Runtime.class);
+        } catch (Exception e) {
+            log.debug("No runtime found, security context will not be propagated: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Outcome of an invocation completed on the executor.
+     */
+    private static final class OffloadedInvocation {
+        private final DrainingMessageObserver drainingObserver;
+        private Object result;
+        private Throwable failure;
+
+        private OffloadedInvocation(DrainingMessageObserver drainingObserver) {
+            this.drainingObserver = drainingObserver;
+        }
+
+        private Object getResult() {
+            if (failure instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            if (failure instanceof Error error)
+                throw error;
+            return result;
+        }
+    }
+
+    /**
+     * Completes an offloaded request on the draining observer once the resumed chain has sent the response,
+     * or the fault, so that a draining server is not destroyed while the response is being written.
+     */
+    private static final class ResponseWrittenInterceptor extends AbstractPhaseInterceptor<Message> {
+        private final DrainingMessageObserver drainingObserver;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private ResponseWrittenInterceptor(DrainingMessageObserver drainingObserver) {
+            super(Phase.POST_INVOKE);
+            //the outgoing chain, which writes the response, is run by OutgoingChainInterceptor
+            addAfter(OutgoingChainInterceptor.class.getName());
+            this.drainingObserver = drainingObserver;
+        }
+
+        private static void register(Message inMessage, DrainingMessageObserver drainingObserver) {
+            ResponseWrittenInterceptor interceptor = new ResponseWrittenInterceptor(drainingObserver);
+            InterceptorChain chain = (inMessage != null) ? inMessage.getInterceptorChain() : null;
+            if (chain == null) {
+                interceptor.complete();
+                return;
+            }
+            chain.add(interceptor);
+            //a failing chain does not reach the interceptor: it ends once the fault has been sent
+            MessageObserver faultObserver = chain.getFaultObserver();
+            chain.setFaultObserver(faultMessage -> {
+                try {
+                    if (faultObserver != null)
+                        faultObserver.onMessage(faultMessage);
+                } finally {
+                    interceptor.complete();
+                }
+            });
+        }
+
+        @Override
+        public void handleMessage(Message message) {
+            complete();
+        }
+
+        private void complete() {
+            if (completed.compareAndSet(false, true))
+                drainingObserver.invocationCompleted();
+        }
+    }
+}
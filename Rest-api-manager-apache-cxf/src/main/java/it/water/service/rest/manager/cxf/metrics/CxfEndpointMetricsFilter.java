@@ -0,0 +1,78 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.manager.cxf.metrics;
+
+import it.water.service.rest.metrics.RestEndpointMetrics;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+import java.lang.reflect.Method;
+
+/**
+ * @Author Aristide Cittadino
+ * Records the invocation metrics of each matched resource method, with the final response status
+ * (after exception mapping). It runs before the authentication filters, so rejected requests are recorded too.
+ * Registered from code in CxfRestApiManager alongside the other CXF providers.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION - 100)
+public class CxfEndpointMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+    static final String METRICS_ENDPOINT_PROPERTY = "water.rest.metrics.endpoint";
+    static final String METRICS_START_PROPERTY = "water.rest.metrics.start";
+
+    private final RestEndpointMetrics metrics;
+
+    @Context
+    private ResourceInfo resourceInfo;
+
+    public CxfEndpointMetricsFilter() {
+        this(RestEndpointMetrics.getInstance());
+    }
+
+    public CxfEndpointMetricsFilter(RestEndpointMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        Method resourceMethod = resourceInfo != null ? resourceInfo.getResourceMethod() : null;
+        if (resourceMethod == null)
+            return;
+        RestEndpointMetrics.Endpoint endpoint = metrics.endpoint(resourceMethod);
+        requestContext.setProperty(METRICS_ENDPOINT_PROPERTY, endpoint);
+        requestContext.setProperty(METRICS_START_PROPERTY, endpoint.start());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        //unmatched requests or requests rejected before this filter are not recorded
+        if (requestContext.getProperty(METRICS_ENDPOINT_PROPERTY) instanceof RestEndpointMetrics.Endpoint endpoint
+                && requestContext.getProperty(METRICS_START_PROPERTY) instanceof Long startNanos) {
+            endpoint.end(startNanos, responseContext.getStatus());
+        }
+    }
+
+    void setResourceInfo(ResourceInfo resourceInfo) {
+        this.resourceInfo = resourceInfo;
+    }
+}
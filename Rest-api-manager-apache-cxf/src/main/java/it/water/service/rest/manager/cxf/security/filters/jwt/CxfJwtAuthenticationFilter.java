@@ -22,11 +22,14 @@ import it.water.core.api.registry.ComponentRegistry;
 import it.water.core.model.BaseError;
 import it.water.core.model.BasicErrorMessage;
 import it.water.core.model.exceptions.WaterRuntimeException;
+import it.water.service.rest.ComponentLookupCache;
 import it.water.service.rest.api.options.RestOptions;
 import it.water.service.rest.api.security.LoggedIn;
 import it.water.service.rest.api.security.jwt.JwtTokenService;
+import it.water.service.rest.api.security.jwt.VerifiedJwtToken;
 import it.water.service.rest.security.jwt.GenericJWTAuthFilter;
 import it.water.service.rest.security.jwt.JwtSecurityContext;
+import it.water.service.rest.security.jwt.RestMethodSecurityDescriptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,8 +42,10 @@ import javax.ws.rs.container.ResourceInfo;
 import javax.ws.rs.core.*;
 import javax.ws.rs.ext.Provider;
 import java.io.IOException;
+import java.security.Principal;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * @Author Aristide Cittadino
@@ -58,11 +63,13 @@ public class CxfJwtAuthenticationFilter extends GenericJWTAuthFilter implements
     @Context
     protected ResourceInfo info;
     private ComponentRegistry componentRegistry;
+    private ComponentLookupCache componentLookupCache;
     private JwtTokenService jwtTokenService;
     private RestOptions restOptions;
 
     public CxfJwtAuthenticationFilter(ComponentRegistry componentRegistry) {
         this.componentRegistry = componentRegistry;
+        this.componentLookupCache = ComponentLookupCache.of(componentRegistry);
         this.jwtTokenService = this.componentRegistry.findComponent(JwtTokenService.class, null);
         this.restOptions = this.componentRegistry.findComponent(RestOptions.class, null);
         if (this.jwtTokenService == null)
@@ -79,9 +86,14 @@ public class CxfJwtAuthenticationFilter extends GenericJWTAuthFilter implements
             //#14/#27: JWT is accepted only from the Authorization header (cookie auth removed to close the CSRF surface).
             String authorizationHeader = requestContext.getHeaderString(HttpHeaders.AUTHORIZATION);
             if (info.getResourceMethod() != null) {
-                LoggedIn annotation = info.getResourceMethod().getAnnotation(LoggedIn.class);
-                validateToken(jwtTokenService, annotation, authorizationHeader, null);
-                createSecurityContext(authorizationHeader);
+                RestMethodSecurityDescriptor descriptor = RestMethodSecurityDescriptor.of(info.getResourceMethod());
+                if (descriptor.isLoginRequired()) {
+                    //token is parsed and verified once, principals come from the same verification
+                    VerifiedJwtToken verifiedToken = verifyToken(jwtTokenService, descriptor, authorizationHeader);
+                    fillSecurityContext(verifiedToken.getPrincipals());
+                } else {
+                    createSecurityContext(authorizationHeader);
+                }
             }
 
         } catch (Exception e) {
@@ -104,8 +116,12 @@ public class CxfJwtAuthenticationFilter extends GenericJWTAuthFilter implements
      */
     private void createSecurityContext(String authorizationHeader) {
         String encodedToken = this.getTokenFromRequest(authorizationHeader, null);
-        SecurityContext securityContext = new JwtSecurityContext(jwtTokenService.getPrincipals(encodedToken));
-        Runtime runtime = this.componentRegistry.findComponent(Runtime.class, null);
+        fillSecurityContext(jwtTokenService.getPrincipals(encodedToken));
+    }
+
+    private void fillSecurityContext(Set<Principal> principals) {
+        SecurityContext securityContext = new JwtSecurityContext(principals);
+        Runtime runtime = this.componentLookupCache.findComponent(Runtime.class);
         runtime.fillSecurityContext(securityContext);
     }
 }
@@ -20,8 +20,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import it.water.core.api.model.User;
 import it.water.core.api.security.Authenticable;
 import it.water.core.api.service.Service;
+import it.water.core.api.service.rest.RestApi;
+import it.water.core.api.service.rest.RestApiRegistry;
 import it.water.core.testing.utils.bundle.TestRuntimeInitializer;
 import it.water.core.testing.utils.junit.WaterTestExtension;
+import it.water.service.rest.RestConstants;
 import it.water.service.rest.api.security.jwt.JwtTokenService;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
@@ -144,5 +147,38 @@ class CxfRestApiManagerTest implements Service {
         Assertions.assertEquals(204, response.getCode());
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    void restartRequestsWithDefaultQuietPeriodAreCoalesced() throws IOException, InterruptedException {
+        RestApiRegistry restApiRegistry = TestRuntimeInitializer.getInstance().getComponentRegistry().findComponent(RestApiRegistry.class, null);
+        Class<? extends RestApi> restTestApiImpl = (Class<? extends RestApi>) restApiRegistry.getRestApiImplementation(RestTestApi.class);
+        TestRuntimeInitializer.getInstance().getApplicationProperties().override(RestConstants.REST_PROP_RESTART_QUIET_PERIOD_MILLIS, String.valueOf(RestConstants.REST_DEFAULT_RESTART_QUIET_PERIOD_MILLIS));
+        try {
+            //module uninstalled and installed again within the quiet period
+            restApiRegistry.removeRestApiService(RestTestApi.class);
+            restApiRegistry.sendRestartApiManagerRestartRequest();
+            restApiRegistry.addRestApiService(RestTestApi.class, restTestApiImpl);
+            restApiRegistry.sendRestartApiManagerRestartRequest();
+            //the restarts are coalesced: the api is never missing, neither before nor after the rebuild
+            long end = System.currentTimeMillis() + 3 * RestConstants.REST_DEFAULT_RESTART_QUIET_PERIOD_MILLIS;
+            while (System.currentTimeMillis() < end) {
+                Assertions.assertEquals(204, invokeAnonymousOperation());
+                Thread.sleep(25); //NOSONAR: requests must be spread over the quiet period
+            }
+        } finally {
+            TestRuntimeInitializer.getInstance().getApplicationProperties().override(RestConstants.REST_PROP_RESTART_QUIET_PERIOD_MILLIS, "0");
+        }
+        Assertions.assertEquals(204, invokeAnonymousOperation());
+    }
 
+    private int invokeAnonymousOperation() throws IOException {
+        CloseableHttpClient httpClient = HttpClients.createDefault();
+        HttpPost httpPost = new HttpPost(baseApiUrl + "/test/anonymousOperation");
+        httpPost.setEntity(new StringEntity("{\"fieldA\":\"fieldA\",\"fieldB\":\"fieldB\"}"));
+        httpPost.setHeader("Content-Type", "application/json");
+        httpPost.setHeader("Accept", "application/json");
+        @SuppressWarnings("deprecation")
+        ClassicHttpResponse response = httpClient.execute(httpPost);
+        return response.getCode();
+    }
 }
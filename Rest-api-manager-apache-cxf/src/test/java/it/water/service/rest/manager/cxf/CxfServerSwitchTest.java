@@ -0,0 +1,203 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.manager.cxf;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.apache.cxf.jaxrs.lifecycle.SingletonResourceProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the blue/green switch of CXF servers: traffic moves to the new server when it starts,
+ * the replaced one completes its requests in flight before being destroyed.
+ */
+class CxfServerSwitchTest {
+
+    @Path("/")
+    public interface ColorApi {
+        @GET
+        @Path("color")
+        String color();
+
+        @GET
+        @Path("slow")
+        String slow();
+    }
+
+    private static class ColorController implements ColorApi {
+        private final String color;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private ColorController(String color) {
+            this.color = color;
+        }
+
+        @Override
+        public String color() {
+            return color;
+        }
+
+        @Override
+        public String slow() {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return color;
+        }
+    }
+
+    private final Bus bus = BusFactory.getDefaultBus();
+    private String baseUrl;
+    private HttpClient httpClient;
+    private Server serverToDestroy;
+
+    @BeforeEach
+    void init() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            baseUrl = "http://localhost:" + socket.getLocalPort();
+        }
+        httpClient = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void destroy() {
+        if (serverToDestroy != null)
+            serverToDestroy.destroy();
+    }
+
+    @Test
+    void replacedServerDrainsRequestsInFlight() throws Exception {
+        ColorController blueController = new ColorController("blue");
+        Server blue = createServer(blueController);
+        DrainingMessageObserver blueObserver = CxfServerSwitch.start(blue, bus);
+        Assertions.assertEquals("blue", get("/color").body());
+        CompletableFuture<HttpResponse<String>> inFlight = getAsync("/slow");
+        Assertions.assertTrue(blueController.started.await(5, TimeUnit.SECONDS));
+
+        Server green = createServer(new ColorController("green"));
+        serverToDestroy = green;
+        CxfServerSwitch.start(green, bus);
+        Assertions.assertSame(blue.getDestination(), green.getDestination());
+        Assertions.assertEquals("green", get("/color").body());
+        Assertions.assertEquals(1, blueObserver.getInFlightRequests());
+
+        Assertions.assertTrue(CxfServerSwitch.stopAccepting(blue, blueObserver, green));
+        CompletableFuture<Integer> retired = CompletableFuture.supplyAsync(() -> CxfServerSwitch.destroyWhenDrained(blue, blueObserver, true, 5000));
+        blueController.release.countDown();
+        Assertions.assertEquals(0, retired.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, blueObserver.getDrainedRequests());
+        HttpResponse<String> drained = inFlight.get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(200, drained.statusCode());
+        Assertions.assertEquals("blue", drained.body());
+        //the shared destination survives the replaced server
+        Assertions.assertEquals("green", get("/color").body());
+    }
+
+    @Test
+    void drainTimeoutAbortsSlowRequests() throws Exception {
+        ColorController blueController = new ColorController("blue");
+        Server blue = createServer(blueController);
+        DrainingMessageObserver blueObserver = CxfServerSwitch.start(blue, bus);
+        CompletableFuture<HttpResponse<String>> inFlight = getAsync("/slow");
+        Assertions.assertTrue(blueController.started.await(5, TimeUnit.SECONDS));
+        Server green = createServer(new ColorController("green"));
+        serverToDestroy = green;
+        CxfServerSwitch.start(green, bus);
+        try {
+            Assertions.assertEquals(1, CxfServerSwitch.retire(blue, blueObserver, green, 50));
+            Assertions.assertEquals("green", get("/color").body());
+        } finally {
+            blueController.release.countDown();
+        }
+        inFlight.handle((response, error) -> null).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void stoppedServerRejectsNewRequests() throws Exception {
+        Server blue = createServer(new ColorController("blue"));
+        DrainingMessageObserver blueObserver = CxfServerSwitch.start(blue, bus);
+        Assertions.assertEquals(200, get("/color").statusCode());
+        Assertions.assertEquals(0, CxfServerSwitch.retire(blue, blueObserver, null, 1000));
+        try {
+            Assertions.assertNotEquals(200, get("/color").statusCode());
+        } catch (IOException e) {
+            //connection refused: the transport has been shut down
+        }
+    }
+
+    @Test
+    void serverStartedWhileStoppedServerDrainsIsNotAffected() throws Exception {
+        ColorController blueController = new ColorController("blue");
+        Server blue = createServer(blueController);
+        DrainingMessageObserver blueObserver = CxfServerSwitch.start(blue, bus);
+        CompletableFuture<HttpResponse<String>> inFlight = getAsync("/slow");
+        Assertions.assertTrue(blueController.started.await(5, TimeUnit.SECONDS));
+        Assertions.assertFalse(CxfServerSwitch.stopAccepting(blue, blueObserver, null));
+        //started again before the stopped server has been destroyed
+        Server green = createServer(new ColorController("green"));
+        serverToDestroy = green;
+        CompletableFuture<Integer> destroyed = CompletableFuture.supplyAsync(() -> CxfServerSwitch.destroyWhenDrained(blue, blueObserver, false, 5000));
+        CxfServerSwitch.start(green, bus);
+        Assertions.assertEquals("green", get("/color").body());
+        blueController.release.countDown();
+        Assertions.assertEquals(0, destroyed.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals("blue", inFlight.get(5, TimeUnit.SECONDS).body());
+        Assertions.assertEquals("green", get("/color").body());
+    }
+
+    private Server createServer(ColorApi controller) {
+        JAXRSServerFactoryBean factory = new JAXRSServerFactoryBean();
+        factory.setBus(bus);
+        factory.setAddress(baseUrl + "/");
+        factory.setStart(false);
+        factory.setResourceClasses(ColorApi.class);
+        factory.setResourceProvider(ColorApi.class, new SingletonResourceProvider(controller));
+        return factory.create();
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return httpClient.send(request(path), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private CompletableFuture<HttpResponse<String>> getAsync(String path) {
+        return httpClient.sendAsync(request(path), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest request(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+    }
+}
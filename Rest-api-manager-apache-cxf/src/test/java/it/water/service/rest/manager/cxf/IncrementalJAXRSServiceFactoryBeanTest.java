@@ -0,0 +1,112 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.manager.cxf;
+
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.apache.cxf.jaxrs.lifecycle.SingletonResourceProvider;
+import org.apache.cxf.jaxrs.model.ClassResourceInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+/**
+ * Tests that root resources are published, replaced and removed on a running CXF server.
+ */
+class IncrementalJAXRSServiceFactoryBeanTest {
+
+    @Path("/first")
+    public interface FirstApi {
+        @GET
+        String get();
+    }
+
+    @Path("/second")
+    public interface SecondApi {
+        @GET
+        String get();
+    }
+
+    private IncrementalJAXRSServiceFactoryBean serviceFactory;
+    private Server server;
+    private String baseUrl;
+    private HttpClient httpClient;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        baseUrl = "http://localhost:" + port;
+        serviceFactory = new IncrementalJAXRSServiceFactoryBean();
+        JAXRSServerFactoryBean factory = new JAXRSServerFactoryBean(serviceFactory);
+        factory.setAddress(baseUrl);
+        factory.setResourceClasses(FirstApi.class);
+        factory.setResourceProvider(FirstApi.class, new SingletonResourceProvider((FirstApi) () -> "first"));
+        server = factory.create();
+        httpClient = HttpClient.newHttpClient();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop();
+        server.destroy();
+    }
+
+    @Test
+    void resourcesChangeOnRunningServer() throws Exception {
+        assertResponse("/first", 200, "first");
+        assertResponse("/second", 404, null);
+
+        ClassResourceInfo second = serviceFactory.createRootResource(SecondApi.class, new SingletonResourceProvider((SecondApi) () -> "second"));
+        serviceFactory.addRootResource(second);
+        assertResponse("/second", 200, "second");
+
+        ClassResourceInfo first = serviceFactory.getClassResourceInfo().stream().filter(resourceInfo -> resourceInfo.getResourceClass() == FirstApi.class).findFirst().orElseThrow();
+        ClassResourceInfo updatedFirst = serviceFactory.createRootResource(FirstApi.class, new SingletonResourceProvider((FirstApi) () -> "updated"));
+        serviceFactory.replaceRootResource(first, updatedFirst);
+        assertResponse("/first", 200, "updated");
+        Assertions.assertEquals(2, serviceFactory.getClassResourceInfo().size());
+
+        serviceFactory.removeRootResource(second);
+        assertResponse("/second", 404, null);
+        assertResponse("/first", 200, "updated");
+    }
+
+    @Test
+    void invalidRootResourceIsNotCreated() {
+        Assertions.assertNull(serviceFactory.createRootResource(Runnable.class, new SingletonResourceProvider((Runnable) () -> {
+        })));
+    }
+
+    private void assertResponse(String path, int expectedStatus, String expectedBody) throws IOException, InterruptedException {
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertEquals(expectedStatus, response.statusCode());
+        if (expectedBody != null)
+            Assertions.assertEquals(expectedBody, response.body());
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.manager.cxf;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.rest.RestApi;
+import it.water.service.rest.RestControllerProxy;
+import it.water.service.rest.api.RestControllerLifecycle;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unit tests for the controller lifecycle modes of {@link PerRequestProxyProvider}.
+ */
+@ExtendWith(MockitoExtension.class)
+class PerRequestProxyProviderTest {
+
+    private static final AtomicInteger created = new AtomicInteger();
+    private static final AtomicInteger destroyed = new AtomicInteger();
+
+    public interface LifecycleApi extends RestApi {
+        String hello();
+    }
+
+    public static class PerRequestController implements LifecycleApi {
+        @PostConstruct
+        public void init() {
+            created.incrementAndGet();
+        }
+
+        @PreDestroy
+        public void destroy() {
+            destroyed.incrementAndGet();
+        }
+
+        @Override
+        public String hello() {
+            return "hello";
+        }
+    }
+
+    @RestControllerLifecycle(RestControllerLifecycle.Mode.SINGLETON)
+    public static class SingletonController extends PerRequestController {
+    }
+
+    @RestControllerLifecycle(value = RestControllerLifecycle.Mode.POOLED, poolSize = 1)
+    public static class PooledController extends PerRequestController {
+    }
+
+    @Mock
+    private ComponentRegistry componentRegistry;
+
+    @BeforeEach
+    void resetCounters() {
+        created.set(0);
+        destroyed.set(0);
+    }
+
+    @Test
+    void perRequestControllerIsCreatedAndDestroyedForEachRequest() {
+        PerRequestProxyProvider provider = new PerRequestProxyProvider(componentRegistry, LifecycleApi.class, PerRequestController.class);
+        Assertions.assertFalse(provider.isSingleton());
+        Object first = provider.getInstance(null);
+        Object second = provider.getInstance(null);
+        Assertions.assertNotSame(first, second);
+        Assertions.assertEquals("hello", ((LifecycleApi) first).hello());
+        Assertions.assertInstanceOf(PerRequestController.class, RestControllerProxy.getConcreteRestController(first));
+        provider.releaseInstance(null, first);
+        provider.releaseInstance(null, second);
+        Assertions.assertEquals(2, created.get());
+        Assertions.assertEquals(2, destroyed.get());
+    }
+
+    @Test
+    void singletonControllerIsSharedUntilClose() {
+        PerRequestProxyProvider provider = new PerRequestProxyProvider(componentRegistry, LifecycleApi.class, SingletonController.class);
+        Assertions.assertTrue(provider.isSingleton());
+        Object first = provider.getInstance(null);
+        provider.releaseInstance(null, first);
+        Assertions.assertSame(first, provider.getInstance(null));
+        Assertions.assertEquals(1, created.get());
+        Assertions.assertEquals(0, destroyed.get());
+        provider.close();
+        Assertions.assertEquals(1, destroyed.get());
+    }
+
+    @Test
+    void pooledControllerIsReusedWithinThePoolSize() {
+        PerRequestProxyProvider provider = new PerRequestProxyProvider(componentRegistry, LifecycleApi.class, PooledController.class);
+        Assertions.assertFalse(provider.isSingleton());
+        Object first = provider.getInstance(null);
+        Object second = provider.getInstance(null);
+        provider.releaseInstance(null, first);
+        //pool of one: the second instance is destroyed
+        provider.releaseInstance(null, second);
+        Assertions.assertEquals(1, provider.getIdleInstances());
+        Assertions.assertEquals(1, destroyed.get());
+        Assertions.assertSame(first, provider.getInstance(null));
+        Assertions.assertEquals(2, created.get());
+        provider.releaseInstance(null, first);
+        provider.close();
+        Assertions.assertEquals(0, provider.getIdleInstances());
+        Assertions.assertEquals(2, destroyed.get());
+    }
+
+    @Test
+    void pooledControllerReleasedAfterCloseIsDestroyed() {
+        PerRequestProxyProvider provider = new PerRequestProxyProvider(componentRegistry, LifecycleApi.class, PooledController.class);
+        Object inFlight = provider.getInstance(null);
+        //resource removed while the request is running
+        provider.close();
+        provider.releaseInstance(null, inFlight);
+        Assertions.assertEquals(0, provider.getIdleInstances());
+        Assertions.assertEquals(1, destroyed.get());
+    }
+}
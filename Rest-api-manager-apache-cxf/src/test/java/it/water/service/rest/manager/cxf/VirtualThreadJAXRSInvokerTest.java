@@ -0,0 +1,301 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.manager.cxf;
+
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.permission.SecurityContext;
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.service.rest.ComponentLookupCache;
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
+import org.apache.cxf.jaxrs.lifecycle.SingletonResourceProvider;
+import org.apache.cxf.transport.http_jetty.JettyHTTPServerEngine;
+import org.apache.cxf.transport.http_jetty.JettyHTTPServerEngineFactory;
+import org.apache.cxf.transport.http_jetty.ThreadingParameters;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the resource invocations moved off the transport threads: responses, errors, security context propagation
+ * and the throughput of slow blocking controllers on a transport with few threads.
+ * On runtimes without virtual threads the invocations run on a cached platform thread pool.
+ */
+class VirtualThreadJAXRSInvokerTest {
+    private static final Logger log = LoggerFactory.getLogger(VirtualThreadJAXRSInvokerTest.class);
+    private static final int TRANSPORT_THREADS = 8;
+    private static final long BLOCKING_MILLIS = 200;
+    private static final int CONCURRENT_REQUESTS = 40;
+
+    private static final ThreadLocal<SecurityContext> currentSecurityContext = new ThreadLocal<>();
+    private static final SecurityContext securityContext = mock(SecurityContext.class);
+    private static Runtime runtime;
+    private static ComponentRegistry componentRegistry;
+    private static ExecutorService executor;
+    private static final CountDownLatch invocationStarted = new CountDownLatch(1);
+    private static final CountDownLatch releaseInvocation = new CountDownLatch(1);
+
+    @Path("/")
+    public interface BlockingApi {
+        @GET
+        @Path("blocking")
+        String blocking();
+
+        @GET
+        @Path("security")
+        String security();
+
+        @GET
+        @Path("conflict")
+        String conflict();
+
+        @GET
+        @Path("slowWrite")
+        SlowEntity slowWrite();
+    }
+
+    public static class SlowEntity {
+    }
+
+    //a response written to a slow client
+    public static class SlowEntityWriter implements MessageBodyWriter<SlowEntity> {
+        private static final CountDownLatch writing = new CountDownLatch(1);
+        private static final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+            return type == SlowEntity.class;
+        }
+
+        @Override
+        public void writeTo(SlowEntity entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+            writing.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            entityStream.write("written".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public static class BlockingController implements BlockingApi {
+        @Override
+        public String blocking() {
+            try {
+                //database call
+                Thread.sleep(BLOCKING_MILLIS); //NOSONAR: simulates a blocking controller
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "done";
+        }
+
+        @Override
+        public String security() {
+            return String.valueOf(runtime.getSecurityContext() == securityContext);
+        }
+
+        @Override
+        public String conflict() {
+            throw new WebApplicationException(409);
+        }
+
+        @Override
+        public SlowEntity slowWrite() {
+            invocationStarted.countDown();
+            try {
+                releaseInvocation.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new SlowEntity();
+        }
+    }
+
+    //as the jwt authentication filter, fills the security context on the transport thread
+    public static class SecurityContextFilter implements ContainerRequestFilter {
+        @Override
+        public void filter(ContainerRequestContext requestContext) {
+            runtime.fillSecurityContext(securityContext);
+        }
+    }
+
+    private final Bus bus = BusFactory.getDefaultBus();
+    private final HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final List<Server> servers = new ArrayList<>();
+    private DrainingMessageObserver observer;
+
+    @BeforeAll
+    static void init() {
+        runtime = mock(Runtime.class);
+        doAnswer(invocation -> {
+            currentSecurityContext.set(invocation.getArgument(0));
+            return null;
+        }).when(runtime).fillSecurityContext(any());
+        when(runtime.getSecurityContext()).thenAnswer(invocation -> currentSecurityContext.get());
+        componentRegistry = mock(ComponentRegistry.class);
+        when(componentRegistry.findComponent(Runtime.class, null)).thenReturn(runtime);
+        executor = VirtualThreadJAXRSInvoker.newVirtualThreadExecutor().orElseGet(Executors::newCachedThreadPool);
+    }
+
+    @AfterAll
+    static void shutdown() {
+        executor.shutdown();
+        ComponentLookupCache.invalidateAll();
+    }
+
+    @AfterEach
+    void destroyServers() {
+        servers.forEach(Server::destroy);
+    }
+
+    @Test
+    void securityContextIsPropagatedToTheInvocation() throws Exception {
+        String baseUrl = startServer(true);
+        HttpResponse<String> response = get(baseUrl + "/security");
+        Assertions.assertEquals(200, response.statusCode());
+        Assertions.assertEquals("true", response.body());
+    }
+
+    @Test
+    void errorsAreMappedAsForInlineInvocations() throws Exception {
+        String baseUrl = startServer(true);
+        Assertions.assertEquals(409, get(baseUrl + "/conflict").statusCode());
+        Assertions.assertEquals("done", get(baseUrl + "/blocking").body());
+        Assertions.assertEquals(0, observer.awaitDrained(5000));
+    }
+
+    @Test
+    void replacedServerDrainsOffloadedRequestsUntilTheirResponseIsWritten() throws Exception {
+        String baseUrl = startServer(true);
+        Server blue = servers.remove(0);
+        DrainingMessageObserver blueObserver = observer;
+        CompletableFuture<HttpResponse<String>> response = httpClient.sendAsync(request(baseUrl + "/slowWrite"), HttpResponse.BodyHandlers.ofString());
+        Assertions.assertTrue(invocationStarted.await(5, TimeUnit.SECONDS));
+        //a new server takes over the address while the invocation runs, the response is written by the resumed chain
+        Server green = startServer(baseUrl, true);
+        CompletableFuture<Integer> retired = CompletableFuture.supplyAsync(() -> CxfServerSwitch.retire(blue, blueObserver, green, 5000));
+        releaseInvocation.countDown();
+        Assertions.assertTrue(SlowEntityWriter.writing.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(1, blueObserver.getInFlightRequests());
+        Assertions.assertFalse(retired.isDone());
+        SlowEntityWriter.release.countDown();
+        Assertions.assertEquals("written", response.get(5, TimeUnit.SECONDS).body());
+        Assertions.assertEquals(0, retired.get(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, observer.awaitDrained(5000));
+    }
+
+    @Test
+    void slowBlockingControllersDoNotHoldTransportThreads() throws Exception {
+        long inlineMillis = runLoad(startServer(false));
+        long offloadedMillis = runLoad(startServer(true));
+        log.info("{} requests blocking {} ms with {} transport threads: {} ms ({} req/s) inline, {} ms ({} req/s) offloaded",
+                CONCURRENT_REQUESTS, BLOCKING_MILLIS, TRANSPORT_THREADS,
+                inlineMillis, CONCURRENT_REQUESTS * 1000 / inlineMillis, offloadedMillis, CONCURRENT_REQUESTS * 1000 / offloadedMillis);
+        //inline the requests are served in waves of at most TRANSPORT_THREADS
+        Assertions.assertTrue(inlineMillis >= BLOCKING_MILLIS * 3);
+        Assertions.assertTrue(offloadedMillis * 2 < inlineMillis, "offloaded " + offloadedMillis + " ms, inline " + inlineMillis + " ms");
+    }
+
+    private long runLoad(String baseUrl) throws Exception {
+        //warm up
+        Assertions.assertEquals(200, get(baseUrl + "/blocking").statusCode());
+        long start = System.nanoTime();
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++)
+            responses.add(httpClient.sendAsync(request(baseUrl + "/blocking"), HttpResponse.BodyHandlers.ofString()));
+        for (CompletableFuture<HttpResponse<String>> response : responses)
+            Assertions.assertEquals("done", response.get().body());
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private String startServer(boolean offloaded) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        JettyHTTPServerEngine engine = bus.getExtension(JettyHTTPServerEngineFactory.class).createJettyHTTPServerEngine(port, "http");
+        ThreadingParameters threadingParameters = new ThreadingParameters();
+        threadingParameters.setMinThreads(TRANSPORT_THREADS);
+        threadingParameters.setMaxThreads(TRANSPORT_THREADS);
+        engine.setThreadingParameters(threadingParameters);
+        String baseUrl = "http://localhost:" + port;
+        startServer(baseUrl, offloaded);
+        return baseUrl;
+    }
+
+    private Server startServer(String baseUrl, boolean offloaded) {
+        JAXRSServerFactoryBean factory = new JAXRSServerFactoryBean();
+        factory.setBus(bus);
+        factory.setAddress(baseUrl + "/");
+        factory.setResourceClasses(BlockingApi.class);
+        factory.setResourceProvider(BlockingApi.class, new SingletonResourceProvider(new BlockingController()));
+        factory.setProviders(List.of(new SecurityContextFilter(), new SlowEntityWriter()));
+        factory.setStart(false);
+        if (offloaded)
+            factory.setInvoker(new VirtualThreadJAXRSInvoker(executor, componentRegistry));
+        Server server = factory.create();
+        servers.add(server);
+        observer = CxfServerSwitch.start(server, bus);
+        return server;
+    }
+
+    private HttpResponse<String> get(String url) throws IOException, InterruptedException {
+        return httpClient.send(request(url), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest request(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).GET().build();
+    }
+}
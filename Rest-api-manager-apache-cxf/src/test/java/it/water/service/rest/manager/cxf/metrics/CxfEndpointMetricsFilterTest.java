@@ -0,0 +1,92 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.manager.cxf.metrics;
+
+import it.water.service.rest.api.StatusApi;
+import it.water.service.rest.api.metrics.RestEndpointStats;
+import it.water.service.rest.metrics.RestEndpointMetrics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ResourceInfo;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link CxfEndpointMetricsFilter}.
+ */
+@ExtendWith(MockitoExtension.class)
+class CxfEndpointMetricsFilterTest {
+
+    @Mock
+    private ContainerRequestContext requestContext;
+
+    @Mock
+    private ContainerResponseContext responseContext;
+
+    @Mock
+    private ResourceInfo resourceInfo;
+
+    private RestEndpointMetrics metrics;
+    private CxfEndpointMetricsFilter filter;
+    private Map<String, Object> properties;
+
+    @BeforeEach
+    void setUp() {
+        metrics = new RestEndpointMetrics();
+        filter = new CxfEndpointMetricsFilter(metrics);
+        filter.setResourceInfo(resourceInfo);
+        properties = new HashMap<>();
+        lenient().doAnswer(invocation -> properties.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(requestContext).setProperty(anyString(), any());
+        lenient().when(requestContext.getProperty(anyString())).thenAnswer(invocation -> properties.get(invocation.<String>getArgument(0)));
+    }
+
+    @Test
+    void matchedRequestIsRecordedWithResponseStatus() throws Exception {
+        doReturn(StatusApi.class.getMethod("checkModuleWorking")).when(resourceInfo).getResourceMethod();
+        when(responseContext.getStatus()).thenReturn(401);
+        filter.filter(requestContext);
+        Assertions.assertEquals(1, metrics.snapshot().get(0).getInFlight());
+        filter.filter(requestContext, responseContext);
+
+        List<RestEndpointStats> snapshot = metrics.snapshot();
+        Assertions.assertEquals(1, snapshot.size());
+        Assertions.assertEquals(0, snapshot.get(0).getInFlight());
+        Assertions.assertEquals(1, snapshot.get(0).getCalls());
+        Assertions.assertEquals(Map.of(401, 1L), snapshot.get(0).getErrorsByStatus());
+    }
+
+    @Test
+    void unmatchedRequestIsNotRecorded() throws Exception {
+        when(resourceInfo.getResourceMethod()).thenReturn(null);
+        filter.filter(requestContext);
+        filter.filter(requestContext, responseContext);
+        Assertions.assertTrue(metrics.snapshot().isEmpty());
+        verify(responseContext, never()).getStatus();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.api;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.rest.RestApi;
+import it.water.core.interceptors.WaterAbstractInterceptor;
+
+import java.lang.reflect.Method;
+
+/**
+ * @Author Aristide Cittadino
+ * Base class of the rest proxies generated at compile time for each @FrameworkRestApi interface.
+ * A generated proxy implements the framework specific interface and calls the @FrameworkRestController
+ * directly through its generic rest api, running the interceptors before and after each method as the
+ * dynamic proxy does.
+ * Generated classes are named after the interface: {@code <package>.<Outer_Inner>_WaterRestProxy}.
+ */
+public abstract class GeneratedRestProxy extends WaterAbstractInterceptor<RestApi> {
+    public static final String GENERATED_CLASS_SUFFIX = "_WaterRestProxy";
+
+    private final ComponentRegistry componentsRegistry;
+    private final Object concreteRestController;
+    private final RestInterceptorClassifier interceptorClassifier;
+
+    protected GeneratedRestProxy(ComponentRegistry componentsRegistry, Object concreteRestController) {
+        this.componentsRegistry = componentsRegistry;
+        this.concreteRestController = concreteRestController;
+        this.interceptorClassifier = RestInterceptorClassifier.of(concreteRestController.getClass());
+    }
+
+    @Override
+    protected ComponentRegistry getComponentsRegistry() {
+        return componentsRegistry;
+    }
+
+    /**
+     * @return the @FrameworkRestController instance invoked by this proxy
+     */
+    public Object getConcreteRestController() {
+        return concreteRestController;
+    }
+
+    //methods without interceptor annotations skip the interceptors entirely
+
+    protected final void beforeMethod(Method method, Object[] args) {
+        if (interceptorClassifier.needsInterceptors(method))
+            executeInterceptorBeforeMethod((RestApi) concreteRestController, method, args);
+    }
+
+    protected final void afterMethod(Method method, Object[] args, Object result) {
+        if (interceptorClassifier.needsInterceptors(method))
+            executeInterceptorAfterMethod((RestApi) concreteRestController, method, args, result);
+    }
+
+    /**
+     * Resolves the interface method passed to the interceptors, once per generated class.
+     */
+    protected static Method restMethod(Class<?> restApiInterface, String name, Class<?>... parameterTypes) {
+        try {
+            return restApiInterface.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Generated proxy out of date with " + restApiInterface.getName(), e);
+        }
+    }
+
+    /**
+     * @param restApiInterface @FrameworkRestApi interface
+     * @return the binary name of the proxy generated for the interface
+     */
+    public static String generatedClassName(Class<?> restApiInterface) {
+        String packageName = restApiInterface.getPackageName();
+        String simpleBinaryName = packageName.isEmpty() ? restApiInterface.getName() : restApiInterface.getName().substring(packageName.length() + 1);
+        return (packageName.isEmpty() ? "" : packageName + ".") + simpleBinaryName.replace('$', '_') + GENERATED_CLASS_SUFFIX;
+    }
+}
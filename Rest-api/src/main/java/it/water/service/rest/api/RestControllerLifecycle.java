@@ -0,0 +1,47 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @Author Aristide Cittadino
+ * Declares how the instances of a @FrameworkRestController are managed by the rest api manager.
+ * Controllers without this annotation are created per request.
+ * Singleton and pooled controllers are shared between requests: they must not keep request state in their fields.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RestControllerLifecycle {
+    Mode value() default Mode.PER_REQUEST;
+
+    /**
+     * @return maximum number of idle instances kept by a pooled controller
+     */
+    int poolSize() default 16;
+
+    enum Mode {
+        //new controller for each request
+        PER_REQUEST,
+        //one controller shared by all the requests
+        SINGLETON,
+        //controllers reused across requests, at most poolSize idle ones are kept
+        POOLED
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.api;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author Aristide Cittadino
+ * Tells, once per controller class and rest method, whether an invocation needs the Water interceptors.
+ * Method interceptors are triggered by annotations: on the rest method, on the controller method implementing it
+ * or on the controller fields (e.g. @Inject). A method with none of them, besides rest and documentation
+ * annotations, skips the interceptors entirely.
+ * The classification depends only on the annotations, so it stays valid whatever interceptors are registered:
+ * annotated methods keep resolving their interceptors at each invocation.
+ */
+public final class RestInterceptorClassifier {
+    //annotations consumed by the rest frameworks, documentation or the jwt filters: they never trigger interceptors
+    private static final List<String> INERT_ANNOTATION_PACKAGES = List.of("javax.ws.rs.", "jakarta.ws.rs.", "io.swagger.", "com.fasterxml.jackson.", "org.springframework.web.bind.annotation.", "java.lang.");
+    private static final Set<String> INERT_ANNOTATIONS = Set.of(
+            "javax.annotation.PostConstruct", "javax.annotation.PreDestroy", "javax.annotation.processing.Generated",
+            "it.water.core.api.service.rest.FrameworkRestApi", "it.water.core.api.service.rest.FrameworkRestController",
+            "it.water.service.rest.api.security.LoggedIn", RestControllerLifecycle.class.getName());
+
+    private static final ClassValue<RestInterceptorClassifier> CLASSIFIERS = new ClassValue<>() {
+        @Override
+        protected RestInterceptorClassifier computeValue(Class<?> controllerClass) {
+            return new RestInterceptorClassifier(controllerClass);
+        }
+    };
+
+    private final Class<?> controllerClass;
+    private final boolean controllerIntercepted;
+    private final ConcurrentHashMap<Method, Boolean> interceptedMethods = new ConcurrentHashMap<>();
+
+    private RestInterceptorClassifier(Class<?> controllerClass) {
+        this.controllerClass = controllerClass;
+        this.controllerIntercepted = isControllerIntercepted(controllerClass);
+    }
+
+    /**
+     * @param controllerClass @FrameworkRestController class
+     * @return the classifier of the controller methods
+     */
+    public static RestInterceptorClassifier of(Class<?> controllerClass) {
+        return CLASSIFIERS.get(controllerClass);
+    }
+
+    /**
+     * @param restMethod interface method invoked on the rest proxy
+     * @return true if the interceptors must run around the invocation
+     */
+    public boolean needsInterceptors(Method restMethod) {
+        if (controllerIntercepted)
+            return true;
+        Boolean intercepted = interceptedMethods.get(restMethod);
+        if (intercepted == null) {
+            intercepted = isMethodIntercepted(restMethod);
+            interceptedMethods.putIfAbsent(restMethod, intercepted);
+        }
+        return intercepted;
+    }
+
+    private static boolean isControllerIntercepted(Class<?> controllerClass) {
+        for (Class<?> current = controllerClass; current != null && current != Object.class; current = current.getSuperclass()) {
+            if (hasInterceptorAnnotations(current))
+                return true;
+            for (Field field : current.getDeclaredFields()) {
+                if (hasInterceptorAnnotations(field))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isMethodIntercepted(Method restMethod) {
+        try {
+            if (hasInterceptorAnnotations(controllerClass.getMethod(restMethod.getName(), restMethod.getParameterTypes())))
+                return true;
+        } catch (NoSuchMethodException e) {
+            //unexpected: let the interceptors decide
+            return true;
+        }
+        //the same method along the rest api hierarchy, e.g. the generic api redefined with framework annotations
+        Deque<Class<?>> interfaces = new ArrayDeque<>();
+        Set<Class<?>> visited = new HashSet<>();
+        interfaces.add(restMethod.getDeclaringClass());
+        while (!interfaces.isEmpty()) {
+            Class<?> current = interfaces.poll();
+            if (!visited.add(current))
+                continue;
+            try {
+                if (hasInterceptorAnnotations(current.getDeclaredMethod(restMethod.getName(), restMethod.getParameterTypes())))
+                    return true;
+            } catch (NoSuchMethodException e) {
+                //not redefined at this level
+            }
+            interfaces.addAll(List.of(current.getInterfaces()));
+        }
+        return false;
+    }
+
+    private static boolean hasInterceptorAnnotations(AnnotatedElement element) {
+        for (Annotation annotation : element.getAnnotations()) {
+            if (!isInert(annotation))
+                return true;
+        }
+        if (element instanceof Method method) {
+            for (Annotation[] parameterAnnotations : method.getParameterAnnotations()) {
+                for (Annotation annotation : parameterAnnotations) {
+                    if (!isInert(annotation))
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInert(Annotation annotation) {
+        String name = annotation.annotationType().getName();
+        if (INERT_ANNOTATIONS.contains(name))
+            return true;
+        for (String inertPackage : INERT_ANNOTATION_PACKAGES) {
+            if (name.startsWith(inertPackage))
+                return true;
+        }
+        return false;
+    }
+}
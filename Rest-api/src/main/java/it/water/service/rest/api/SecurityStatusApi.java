@@ -0,0 +1,45 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.api;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import it.water.core.api.service.rest.RestApi;
+import it.water.service.rest.api.security.jwt.RevocationFeedPage;
+
+import javax.ws.rs.core.MediaType;
+
+/**
+ * @Author Aristide Cittadino
+ * Security status API: exposes the token revocation feed, pulled by the other nodes to replicate logouts
+ * and subject revocations.
+ * As for StatusApi, each framework defines an interface extending this one with its own annotations.
+ */
+@Api(produces = MediaType.APPLICATION_JSON, tags = "Security Status API")
+public interface SecurityStatusApi extends RestApi {
+    @ApiOperation(value = "/status/security/revocations", notes = "Token revocations made after the given sequence number", httpMethod = "GET", produces = MediaType.APPLICATION_JSON)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized, the feed is available only to administrators"),
+            @ApiResponse(code = 404, message = "Token revocation store does not publish a revocation feed"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    RevocationFeedPage getRevocationFeed(@ApiParam(value = "Last sequence number already applied, 0 to start from the beginning") long since,
+                                         @ApiParam(value = "Maximum number of entries to return") int limit);
+}
@@ -20,6 +20,9 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import it.water.core.api.service.rest.RestApi;
+import it.water.service.rest.api.metrics.RestEndpointStats;
+
+import java.util.List;
 
 
 /**
@@ -39,4 +42,12 @@ public interface StatusApi extends RestApi {
             @ApiResponse(code = 500, message = "Internal server error")
     })
     String checkModuleWorking();
+
+    @ApiOperation(value = "/status/metrics", notes = "Invocation metrics of each rest method: in flight and completed calls, errors by status and latency percentiles", httpMethod = "GET", produces = "application/json")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successful operation"),
+            @ApiResponse(code = 401, message = "Not authorized, metrics are available only to administrators"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    List<RestEndpointStats> getEndpointMetrics();
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.api.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @Author Aristide Cittadino
+ * Invocation statistics of a single rest method, as returned by the status api.
+ * Latencies are in microseconds, percentiles are upper bounds of histogram buckets (at most 12.5% above the real value).
+ */
+public final class RestEndpointStats {
+    private final String endpoint;
+    private final long inFlight;
+    private final long calls;
+    private final long errors;
+    private final Map<Integer, Long> errorsByStatus;
+    private final Latency latency;
+
+    /**
+     * @param endpoint       rest method, as fully.qualified.Class.method(parameters)
+     * @param inFlight       invocations currently running
+     * @param calls          completed invocations
+     * @param errors         completed invocations with an error status (4xx or 5xx)
+     * @param errorsByStatus error invocations by http status
+     * @param latency        latency of the completed invocations
+     */
+    public RestEndpointStats(String endpoint, long inFlight, long calls, long errors, Map<Integer, Long> errorsByStatus, Latency latency) {
+        this.endpoint = endpoint;
+        this.inFlight = inFlight;
+        this.calls = calls;
+        this.errors = errors;
+        this.errorsByStatus = errorsByStatus != null ? Collections.unmodifiableMap(new TreeMap<>(errorsByStatus)) : Collections.emptyMap();
+        this.latency = latency;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public long getInFlight() {
+        return inFlight;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public Map<Integer, Long> getErrorsByStatus() {
+        return errorsByStatus;
+    }
+
+    public Latency getLatency() {
+        return latency;
+    }
+
+    /**
+     * Latency distribution in microseconds.
+     */
+    public static final class Latency {
+        private final long meanMicros;
+        private final long p50Micros;
+        private final long p90Micros;
+        private final long p99Micros;
+        private final long p999Micros;
+        private final long maxMicros;
+
+        public Latency(long meanMicros, long p50Micros, long p90Micros, long p99Micros, long p999Micros, long maxMicros) {
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p90Micros = p90Micros;
+            this.p99Micros = p99Micros;
+            this.p999Micros = p999Micros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getMeanMicros() {
+            return meanMicros;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP90Micros() {
+            return p90Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public long getP999Micros() {
+            return p999Micros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+    }
+}
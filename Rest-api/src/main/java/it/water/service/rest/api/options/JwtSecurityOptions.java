@@ -17,11 +17,30 @@ package it.water.service.rest.api.options;
 
 import it.water.core.api.service.Service;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * @Author Aristide Cittadino
- * Class which maps all the rest security available options
+ * Class which maps all the rest security available options.
+ * Options added after the first release have a default implementation returning their documented default,
+ * so existing implementations keep compiling and linking. Those defaults are defined once, by the DEFAULT_ constants.
  */
 public interface JwtSecurityOptions extends Service {
+    //defaults of the options added after the first release, referenced by the implementations
+    boolean DEFAULT_VERIFIED_TOKEN_CACHE_ENABLED = false;
+    long DEFAULT_VERIFIED_TOKEN_CACHE_MAX_SIZE = 10000L;
+    boolean DEFAULT_REJECTED_TOKEN_CACHE_ENABLED = true;
+    long DEFAULT_REJECTED_TOKEN_CACHE_MAX_SIZE = 10000L;
+    long DEFAULT_REJECTED_TOKEN_CACHE_TTL_MILLIS = 30000L;
+    long DEFAULT_MAX_TOKEN_LENGTH = 8192L;
+    long DEFAULT_JWKS_CACHE_TTL_MILLIS = 600000L;
+    long DEFAULT_JWKS_UNKNOWN_KID_REFRESH_INTERVAL_MILLIS = 30000L;
+    long DEFAULT_JWKS_FETCH_TIMEOUT_MILLIS = 5000L;
+    String DEFAULT_SIGNING_ALGORITHM = "RS256";
+    List<String> DEFAULT_ALLOWED_ALGORITHMS = Collections.emptyList();
+    String DEFAULT_SIGNING_KEY_ALIAS = "";
+
     boolean validateJwt();
     boolean validateJwtWithJwsUrl();
     String jwtKeyId();
@@ -44,4 +63,110 @@ public interface JwtSecurityOptions extends Service {
      * @return true when the framework is running in test mode (water.testMode=true).
      */
     boolean testMode();
+
+    /**
+     * @return true when successful token verifications can be cached, so repeated requests
+     * with the same token skip the signature verification. Default false.
+     */
+    default boolean verifiedTokenCacheEnabled() {
+        return DEFAULT_VERIFIED_TOKEN_CACHE_ENABLED;
+    }
+
+    /**
+     * @return maximum number of cached token verifications. Default 10000.
+     */
+    default long verifiedTokenCacheMaxSize() {
+        return DEFAULT_VERIFIED_TOKEN_CACHE_MAX_SIZE;
+    }
+
+    /**
+     * @return true when rejected tokens are remembered for a short time, so the same invalid token
+     * is not parsed and verified again. Default true.
+     */
+    default boolean rejectedTokenCacheEnabled() {
+        return DEFAULT_REJECTED_TOKEN_CACHE_ENABLED;
+    }
+
+    /**
+     * @return maximum number of remembered rejected tokens. Default 10000.
+     */
+    default long rejectedTokenCacheMaxSize() {
+        return DEFAULT_REJECTED_TOKEN_CACHE_MAX_SIZE;
+    }
+
+    /**
+     * @return how long, in millis, a rejected token is remembered. Default 30 seconds.
+     */
+    default long rejectedTokenCacheTtlMillis() {
+        return DEFAULT_REJECTED_TOKEN_CACHE_TTL_MILLIS;
+    }
+
+    /**
+     * @return maximum accepted token length, in chars: longer tokens are rejected before parsing. Default 8192.
+     */
+    default long jwtMaxTokenLength() {
+        return DEFAULT_MAX_TOKEN_LENGTH;
+    }
+
+    /**
+     * @return time to live, in millis, of the keys loaded from the JWKS URL. Keys are refreshed in background before it expires. Default 10 minutes.
+     */
+    default long jwksCacheTtlMillis() {
+        return DEFAULT_JWKS_CACHE_TTL_MILLIS;
+    }
+
+    /**
+     * @return minimum interval, in millis, between JWKS refetches triggered by tokens with an unknown kid. Default 30 seconds.
+     */
+    default long jwksUnknownKidRefreshIntervalMillis() {
+        return DEFAULT_JWKS_UNKNOWN_KID_REFRESH_INTERVAL_MILLIS;
+    }
+
+    /**
+     * @return maximum time, in millis, a request waits for the JWKS URL when no key is available yet. Default 5 seconds.
+     */
+    default long jwksFetchTimeoutMillis() {
+        return DEFAULT_JWKS_FETCH_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * @return algorithm used to sign tokens: RS256, ES256 or EdDSA (Ed25519). Default RS256.
+     */
+    default String jwtSigningAlgorithm() {
+        return DEFAULT_SIGNING_ALGORITHM;
+    }
+
+    /**
+     * @return algorithms accepted on validation, in addition to the signing algorithm. Tokens signed with any other algorithm are rejected.
+     * Default empty (only the signing algorithm is accepted).
+     */
+    default List<String> jwtAllowedAlgorithms() {
+        return DEFAULT_ALLOWED_ALGORITHMS;
+    }
+
+    /**
+     * @return alias of a dedicated keystore entry holding the signing key pair. Default empty, the server key pair from EncryptionUtil is used.
+     */
+    default String jwtSigningKeyAlias() {
+        return DEFAULT_SIGNING_KEY_ALIAS;
+    }
+
+    /**
+     * Reloads the options from the application properties, when the implementation caches them.
+     * Change listeners are notified only if some option changed.
+     */
+    default void refresh() {
+    }
+
+    /**
+     * @param listener invoked after the options changed, e.g. to drop state derived from them
+     */
+    default void addChangeListener(Runnable listener) {
+    }
+
+    /**
+     * @param listener listener to remove
+     */
+    default void removeChangeListener(Runnable listener) {
+    }
 }
@@ -19,9 +19,17 @@ import it.water.core.api.service.Service;
 
 /**
  * @Author Aristide Cittadino
- * Class which maps all the rest available options
+ * Class which maps all the rest available options.
+ * Options added after the first release have a default implementation returning their documented default,
+ * so existing implementations keep compiling and linking. Those defaults are defined once, by the DEFAULT_ constants.
  */
 public interface RestOptions extends Service {
+    //defaults of the options added after the first release, referenced by the implementations
+    long DEFAULT_RESTART_QUIET_PERIOD_MILLIS = 250L;
+    long DEFAULT_RESTART_MAX_DELAY_MILLIS = 5000L;
+    long DEFAULT_SERVER_DRAIN_TIMEOUT_MILLIS = 10000L;
+    boolean DEFAULT_VIRTUAL_THREADS_ENABLED = false;
+
     String frontendUrl();
 
     String servicesUrl();
@@ -42,4 +50,34 @@ public interface RestOptions extends Service {
      * water.rest.swagger.enabled property.
      */
     boolean swaggerEnabled();
+
+    /**
+     * @return milliseconds without new restart requests after which the rest api server is rebuilt.
+     * Restart requests received in the meantime are coalesced into a single rebuild, 0 rebuilds synchronously. Default 250.
+     */
+    default long restartQuietPeriodMillis() {
+        return DEFAULT_RESTART_QUIET_PERIOD_MILLIS;
+    }
+
+    /**
+     * @return maximum milliseconds a restart request can be delayed by a continuous burst of new requests. Default 5 seconds.
+     */
+    default long restartMaxDelayMillis() {
+        return DEFAULT_RESTART_MAX_DELAY_MILLIS;
+    }
+
+    /**
+     * @return milliseconds a replaced or stopped rest api server waits for its requests in flight before being destroyed. Default 10 seconds.
+     */
+    default long serverDrainTimeoutMillis() {
+        return DEFAULT_SERVER_DRAIN_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * @return true when rest resources must be invoked on virtual threads, releasing the transport threads while
+     * controllers block. Requires Java 21, ignored on older runtimes. Default false.
+     */
+    default boolean virtualThreadsEnabled() {
+        return DEFAULT_VIRTUAL_THREADS_ENABLED;
+    }
 }
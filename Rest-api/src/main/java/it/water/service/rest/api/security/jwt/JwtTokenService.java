@@ -19,7 +19,10 @@ import it.water.core.api.security.Authenticable;
 import it.water.core.api.service.Service;
 
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -38,6 +41,19 @@ public interface JwtTokenService extends Service {
      */
     String generateJwtToken(Authenticable authenticable);
 
+    /**
+     * Generates one signed jwt token for each authenticable (e.g. batch service accounts).
+     * Implementations may sign tokens in parallel, the default implementation signs them sequentially.
+     *
+     * @param authenticables authenticables to issue tokens for
+     * @return tokens in the same order as the given authenticables
+     */
+    default List<String> generateJwtTokens(Collection<? extends Authenticable> authenticables) {
+        List<String> tokens = new ArrayList<>(authenticables.size());
+        authenticables.forEach(authenticable -> tokens.add(generateJwtToken(authenticable)));
+        return tokens;
+    }
+
     /**
      * Validates jwt token in terms of signature,expiration and issuer
      *
@@ -46,6 +62,22 @@ public interface JwtTokenService extends Service {
      */
     boolean validateToken(List<String> validIssuers, String jwt);
 
+    /**
+     * Validates jwt token (signature, expiration, issuer, audience and revocation) and, on success,
+     * returns the verified token with its principals. Implementations should parse and verify the
+     * token only once, so filters can authenticate a request without calling validateToken and getPrincipals.
+     * The default implementation composes validateToken and getPrincipals for backward compatibility.
+     *
+     * @param validIssuers list of valid issuers
+     * @param jwt          raw (signed) JWT string
+     * @return the verified token, or empty if the token is not valid
+     */
+    default Optional<VerifiedJwtToken> verifyToken(List<String> validIssuers, String jwt) {
+        if (!validateToken(validIssuers, jwt))
+            return Optional.empty();
+        return Optional.of(new VerifiedJwtToken(null, null, null, null, 0L, Long.MAX_VALUE, getPrincipals(jwt), null));
+    }
+
 
     /**
      * Revokes a previously issued token (logout): the token's jti is added to the revocation
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.api.security.jwt;
+
+/**
+ * @Author Aristide Cittadino
+ * Ordered log of the revocations made on a node, used to replicate them to the other nodes.
+ * Each revocation gets a strictly increasing sequence number, so readers catch up incrementally
+ * by asking for the entries after the last sequence they applied.
+ */
+public interface RevocationFeed {
+
+    /**
+     * @param sequence   last sequence already read, 0 to read from the beginning
+     * @param maxEntries maximum number of entries to return
+     * @return the entries following the given sequence, in sequence order
+     */
+    RevocationFeedPage getChangesSince(long sequence, int maxEntries);
+}
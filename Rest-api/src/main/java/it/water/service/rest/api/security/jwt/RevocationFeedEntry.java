@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.api.security.jwt;
+
+/**
+ * @Author Aristide Cittadino
+ * Immutable entry of a {@link RevocationFeed}: a single jti revocation or a subject watermark,
+ * identified by its sequence number in the feed.
+ */
+public final class RevocationFeedEntry {
+
+    /**
+     * Kind of revocation carried by the entry.
+     */
+    public enum Type {
+        //key is a jti, epochMillis is the token expiry
+        TOKEN,
+        //key is a subject, epochMillis is the watermark: tokens issued before it are revoked
+        SUBJECT
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final String key;
+    private final long epochMillis;
+
+    /**
+     * @param sequence    position of the entry in the feed, strictly increasing
+     * @param type        kind of revocation
+     * @param key         jti or subject
+     * @param epochMillis token expiry or subject watermark in epoch millis
+     */
+    public RevocationFeedEntry(long sequence, Type type, String key, long epochMillis) {
+        this.sequence = sequence;
+        this.type = type;
+        this.key = key;
+        this.epochMillis = epochMillis;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+}
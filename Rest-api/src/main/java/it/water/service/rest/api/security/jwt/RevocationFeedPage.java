@@ -0,0 +1,69 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.api.security.jwt;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @Author Aristide Cittadino
+ * Batch of revocation feed entries following a given sequence number.
+ * The feed id identifies the feed instance: sequence numbers of different feed ids (e.g. before and after a
+ * node restart) are not comparable and a reader must start again from sequence 0.
+ * A truncated page means the reader fell so far behind that entries were dropped from the feed to respect its cap.
+ */
+public final class RevocationFeedPage {
+    private final String feedId;
+    private final long lastSequence;
+    private final List<RevocationFeedEntry> entries;
+    private final boolean hasMore;
+    private final boolean truncated;
+
+    /**
+     * @param feedId       feed instance id
+     * @param lastSequence last sequence number assigned by the feed
+     * @param entries      entries in sequence order
+     * @param hasMore      true if more entries follow the last one of this page
+     * @param truncated    true if entries following the requested sequence were dropped by the feed cap
+     */
+    public RevocationFeedPage(String feedId, long lastSequence, List<RevocationFeedEntry> entries, boolean hasMore, boolean truncated) {
+        this.feedId = feedId;
+        this.lastSequence = lastSequence;
+        this.entries = entries != null ? List.copyOf(entries) : Collections.emptyList();
+        this.hasMore = hasMore;
+        this.truncated = truncated;
+    }
+
+    public String getFeedId() {
+        return feedId;
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public List<RevocationFeedEntry> getEntries() {
+        return entries;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
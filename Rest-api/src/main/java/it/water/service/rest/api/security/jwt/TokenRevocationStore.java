@@ -15,6 +15,8 @@
  */
 package it.water.service.rest.api.security.jwt;
 
+import java.util.function.ObjLongConsumer;
+
 /**
  * @Author Aristide Cittadino
  * Denylist of revoked JWT identifiers (jti). A token is added on logout and stays denied until its
@@ -37,4 +39,42 @@ public interface TokenRevocationStore {
      * @return true if the jti has been revoked and has not yet passed its natural expiry; false for null jti
      */
     boolean isRevoked(String jti);
+
+    /**
+     * Visits the revoked jti that have not yet passed their natural expiry, e.g. to seed a cache in front of the store.
+     * The default implementation visits nothing, for stores that cannot enumerate their entries.
+     *
+     * @param consumer receives each jti with its expiry in epoch millis
+     */
+    default void forEachRevoked(ObjLongConsumer<String> consumer) {
+        //nothing to visit by default
+    }
+
+    /**
+     * Revokes, with a single entry, all the tokens of a subject issued before the given instant
+     * (e.g. after a password change or when an account is disabled). Tokens issued later stay valid.
+     * The watermark only moves forward: an older instant than the current one is ignored.
+     *
+     * @param subject                 the token subject (claim "sub"); ignored if null/blank
+     * @param issuedBeforeEpochMillis tokens whose issued-at is before this instant are revoked.
+     *                                Issued-at has second precision: tokens issued in the same second are revoked too,
+     *                                even when issued after the instant
+     */
+    void revokeAllForSubject(String subject, long issuedBeforeEpochMillis);
+
+    /**
+     * @param subject the token subject
+     * @return the instant in epoch millis before which the subject's tokens are revoked, 0 if none
+     */
+    long getSubjectRevokedBefore(String subject);
+
+    /**
+     * Visits the subject watermarks still able to revoke unexpired tokens.
+     * The default implementation visits nothing.
+     *
+     * @param consumer receives each subject with its watermark in epoch millis
+     */
+    default void forEachSubjectWatermark(ObjLongConsumer<String> consumer) {
+        //nothing to visit by default
+    }
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.api.security.jwt;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @Author Aristide Cittadino
+ * Immutable result of a successful JWT verification.
+ * It carries everything the authentication filters need (principals, jti, expiration and raw claims)
+ * so that a token is parsed and verified only once per request.
+ */
+public final class VerifiedJwtToken {
+    private final String subject;
+    private final String issuer;
+    private final List<String> audience;
+    private final String jwtId;
+    private final long issuedAtMillis;
+    private final long expiresAtMillis;
+    private final Set<Principal> principals;
+    private final Map<String, Object> claims;
+
+    /**
+     * @param subject         token subject (sub)
+     * @param issuer          token issuer (iss)
+     * @param audience        token audience (aud), may be null for legacy tokens
+     * @param jwtId           token id (jti), may be null for legacy tokens
+     * @param issuedAtMillis  issued-at (iat) in epoch millis, 0 if absent
+     * @param expiresAtMillis expiration (exp) in epoch millis, Long.MAX_VALUE if absent
+     * @param principals      user and role principals built from the claims
+     * @param claims          all the token claims
+     */
+    public VerifiedJwtToken(String subject, String issuer, List<String> audience, String jwtId, long issuedAtMillis, long expiresAtMillis, Set<Principal> principals, Map<String, Object> claims) {
+        this.subject = subject;
+        this.issuer = issuer;
+        this.audience = audience != null ? List.copyOf(audience) : Collections.emptyList();
+        this.jwtId = jwtId;
+        this.issuedAtMillis = issuedAtMillis;
+        this.expiresAtMillis = expiresAtMillis;
+        this.principals = principals != null ? Collections.unmodifiableSet(new HashSet<>(principals)) : Collections.emptySet();
+        this.claims = claims != null ? Collections.unmodifiableMap(new LinkedHashMap<>(claims)) : Collections.emptyMap();
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    public List<String> getAudience() {
+        return audience;
+    }
+
+    public String getJwtId() {
+        return jwtId;
+    }
+
+    public long getIssuedAtMillis() {
+        return issuedAtMillis;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    public Set<Principal> getPrincipals() {
+        return principals;
+    }
+
+    public Map<String, Object> getClaims() {
+        return claims;
+    }
+
+    /**
+     * @param nowMillis current time in epoch millis
+     * @return true if the token is expired at the given instant
+     */
+    public boolean isExpired(long nowMillis) {
+        return expiresAtMillis < nowMillis;
+    }
+}
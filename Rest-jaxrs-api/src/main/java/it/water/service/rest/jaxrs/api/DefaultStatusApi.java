@@ -17,11 +17,14 @@ package it.water.service.rest.jaxrs.api;
 
 import it.water.core.api.service.rest.FrameworkRestApi;
 import it.water.service.rest.api.StatusApi;
+import it.water.service.rest.api.metrics.RestEndpointStats;
+import it.water.service.rest.api.security.LoggedIn;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
+import java.util.List;
 
 /**
  * @Author Aristide Cittadino
@@ -35,4 +38,11 @@ public interface DefaultStatusApi extends StatusApi {
     @Produces(MediaType.TEXT_PLAIN)
     @Override
     String checkModuleWorking();
+
+    @LoggedIn
+    @GET
+    @Path("/metrics")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Override
+    List<RestEndpointStats> getEndpointMetrics();
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+
+/**
+ * @Author Aristide Cittadino
+ * Generates at compile time a concrete rest proxy for each @FrameworkRestApi interface.
+ * The generated class implements the interface and calls the @FrameworkRestController through its generic
+ * rest api, without reflection. The rest runtime prefers generated proxies and falls back to dynamic proxies
+ * when none is found.
+ * Interfaces whose methods cannot be delegated to a generic rest api are skipped with a note.
+ * Nothing is generated in modules which do not see the GeneratedRestProxy base class.
+ */
+@SupportedAnnotationTypes(RestProxyProcessor.FRAMEWORK_REST_API)
+public class RestProxyProcessor extends AbstractProcessor {
+    static final String FRAMEWORK_REST_API = "it.water.core.api.service.rest.FrameworkRestApi";
+    static final String GENERATED_REST_PROXY = "it.water.service.rest.api.GeneratedRestProxy";
+    static final String GENERATED_CLASS_SUFFIX = "_WaterRestProxy";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (annotations.isEmpty() || processingEnv.getElementUtils().getTypeElement(GENERATED_REST_PROXY) == null)
+            return false;
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.INTERFACE && !element.getModifiers().contains(Modifier.PRIVATE))
+                    generate((TypeElement) element);
+            }
+        }
+        //the annotation is shared with other processors (class index)
+        return false;
+    }
+
+    private void generate(TypeElement restApiInterface) {
+        RestProxySourceWriter sourceWriter = new RestProxySourceWriter(processingEnv, restApiInterface);
+        String source;
+        try {
+            source = sourceWriter.write();
+        } catch (RestProxySourceWriter.UnsupportedRestApiException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "No generated rest proxy for " + restApiInterface.getQualifiedName() + ": " + e.getMessage(), restApiInterface);
+            return;
+        }
+        String generatedClassName = sourceWriter.getGeneratedClassName();
+        try {
+            JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(generatedClassName, restApiInterface);
+            try (Writer writer = sourceFile.openWriter()) {
+                writer.write(source);
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write " + generatedClassName + ": " + e.getMessage(), restApiInterface);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.processor;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.IntersectionType;
+import javax.lang.model.type.NoType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.SimpleTypeVisitor9;
+import javax.lang.model.util.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @Author Aristide Cittadino
+ * Writes the source of the rest proxy of a single @FrameworkRestApi interface.
+ * Each method is delegated to the direct super interface (the generic rest api implemented by the controller)
+ * which declares it.
+ * Types are printed without their type-use annotations (e.g. bean validation constraints), which are not allowed
+ * in class literals and are not needed by the generated code.
+ */
+class RestProxySourceWriter {
+    private static final SourceNameVisitor SOURCE_NAME_VISITOR = new SourceNameVisitor();
+
+    private final Elements elements;
+    private final Types types;
+    private final TypeElement restApiInterface;
+    private final DeclaredType restApiType;
+    private final String packageName;
+    private final String generatedSimpleName;
+    //generic rest apis the controller is called through, one field each
+    private final List<DeclaredType> delegates = new ArrayList<>();
+
+    RestProxySourceWriter(ProcessingEnvironment processingEnv, TypeElement restApiInterface) {
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        this.restApiInterface = restApiInterface;
+        this.restApiType = (DeclaredType) restApiInterface.asType();
+        PackageElement packageElement = elements.getPackageOf(restApiInterface);
+        this.packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(restApiInterface).toString();
+        String simpleBinaryName = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+        this.generatedSimpleName = simpleBinaryName.replace('$', '_') + RestProxyProcessor.GENERATED_CLASS_SUFFIX;
+    }
+
+    String getGeneratedClassName() {
+        return packageName.isEmpty() ? generatedSimpleName : packageName + "." + generatedSimpleName;
+    }
+
+    /**
+     * Raised when the interface cannot be proxied without reflection: the interface is skipped with a note.
+     */
+    static final class UnsupportedRestApiException extends Exception {
+        UnsupportedRestApiException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * @return the proxy source
+     * @throws UnsupportedRestApiException if the interface cannot be proxied without reflection
+     */
+    String write() throws UnsupportedRestApiException {
+        if (!restApiInterface.getTypeParameters().isEmpty())
+            throw new UnsupportedRestApiException("generic interfaces are not supported");
+        String interfaceName = restApiInterface.getQualifiedName().toString();
+        StringBuilder methodsSource = new StringBuilder();
+        StringBuilder methodFields = new StringBuilder();
+        int methodIndex = 0;
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(restApiInterface))) {
+            if (method.getEnclosingElement().getKind() != ElementKind.INTERFACE || method.getModifiers().contains(Modifier.STATIC) || method.getModifiers().contains(Modifier.PRIVATE))
+                continue;
+            ExecutableType methodType = (ExecutableType) types.asMemberOf(restApiType, method);
+            int delegateIndex = findDelegate(method, methodType);
+            if (delegateIndex < 0) {
+                //default methods without a generic counterpart are simply inherited
+                if (method.getModifiers().contains(Modifier.DEFAULT))
+                    continue;
+                throw new UnsupportedRestApiException(method.getSimpleName() + " is not declared by a generic rest api");
+            }
+            String methodField = "METHOD_" + methodIndex++;
+            methodFields.append("    private static final java.lang.reflect.Method ").append(methodField).append(" = restMethod(")
+                    .append(interfaceName).append(".class, \"").append(method.getSimpleName()).append('"');
+            for (TypeMirror parameterType : methodType.getParameterTypes())
+                methodFields.append(", ").append(sourceName(types.erasure(parameterType))).append(".class");
+            methodFields.append(");\n");
+            writeMethod(methodsSource, method, methodType, methodField, "delegate" + delegateIndex);
+        }
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty())
+            source.append("package ").append(packageName).append(";\n\n");
+        source.append("@javax.annotation.processing.Generated(\"").append(RestProxyProcessor.class.getName()).append("\")\n")
+                .append("public final class ").append(generatedSimpleName).append(" extends ").append(RestProxyProcessor.GENERATED_REST_PROXY)
+                .append(" implements ").append(interfaceName).append(" {\n")
+                .append(methodFields);
+        for (int i = 0; i < delegates.size(); i++)
+            source.append("    private final ").append(sourceName(delegates.get(i))).append(" delegate").append(i).append(";\n");
+        source.append("\n    @SuppressWarnings(\"unchecked\")\n")
+                .append("    public ").append(generatedSimpleName).append("(it.water.core.api.registry.ComponentRegistry componentsRegistry, Object concreteRestController) {\n")
+                .append("        super(componentsRegistry, concreteRestController);\n");
+        for (int i = 0; i < delegates.size(); i++)
+            source.append("        this.delegate").append(i).append(" = (").append(sourceName(delegates.get(i))).append(") concreteRestController;\n");
+        source.append("    }\n")
+                .append(methodsSource)
+                .append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * @return index of the direct super interface declaring the method, -1 if none
+     */
+    private int findDelegate(ExecutableElement method, ExecutableType methodType) {
+        for (TypeMirror superType : types.directSupertypes(restApiType)) {
+            TypeElement superElement = (TypeElement) types.asElement(superType);
+            if (superElement == null || superElement.getKind() != ElementKind.INTERFACE)
+                continue;
+            for (ExecutableElement superMethod : ElementFilter.methodsIn(elements.getAllMembers(superElement))) {
+                if (superMethod.getEnclosingElement().getKind() != ElementKind.INTERFACE || superMethod.getModifiers().contains(Modifier.STATIC))
+                    continue;
+                if ((superMethod.equals(method) || elements.overrides(method, superMethod, restApiInterface))
+                        && throwsCompatible(methodType, (ExecutableType) types.asMemberOf((DeclaredType) superType, superMethod)))
+                    return delegateIndex((DeclaredType) superType);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The generated method declares the interface exceptions: the delegate must not throw anything else.
+     */
+    private boolean throwsCompatible(ExecutableType methodType, ExecutableType delegateType) {
+        TypeMirror runtimeException = elements.getTypeElement(RuntimeException.class.getName()).asType();
+        TypeMirror error = elements.getTypeElement(Error.class.getName()).asType();
+        for (TypeMirror thrown : delegateType.getThrownTypes()) {
+            boolean declared = types.isSubtype(thrown, runtimeException) || types.isSubtype(thrown, error)
+                    || methodType.getThrownTypes().stream().anyMatch(allowed -> types.isSubtype(thrown, allowed));
+            if (!declared)
+                return false;
+        }
+        return true;
+    }
+
+    private int delegateIndex(DeclaredType superType) {
+        for (int i = 0; i < delegates.size(); i++) {
+            if (types.isSameType(delegates.get(i), superType))
+                return i;
+        }
+        delegates.add(superType);
+        return delegates.size() - 1;
+    }
+
+    private void writeMethod(StringBuilder source, ExecutableElement method, ExecutableType methodType, String methodField, String delegateField) {
+        List<? extends TypeMirror> parameterTypes = methodType.getParameterTypes();
+        boolean isVoid = methodType.getReturnType().getKind() == TypeKind.VOID;
+        source.append("\n    @Override\n    public ");
+        writeTypeVariables(source, methodType.getTypeVariables());
+        source.append(sourceName(methodType.getReturnType())).append(' ').append(method.getSimpleName()).append('(');
+        StringBuilder arguments = new StringBuilder();
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if (i > 0) {
+                source.append(", ");
+                arguments.append(", ");
+            }
+            String parameterType = sourceName(parameterTypes.get(i));
+            if (method.isVarArgs() && i == parameterTypes.size() - 1)
+                parameterType = parameterType.substring(0, parameterType.length() - 2) + "...";
+            source.append(parameterType).append(" arg").append(i);
+            arguments.append("arg").append(i);
+        }
+        source.append(')');
+        List<? extends TypeMirror> thrownTypes = methodType.getThrownTypes();
+        for (int i = 0; i < thrownTypes.size(); i++)
+            source.append(i == 0 ? " throws " : ", ").append(sourceName(thrownTypes.get(i)));
+        source.append(" {\n");
+        //same arguments the dynamic proxy passes to the interceptors: null for no-arg methods
+        source.append("        Object[] args = ").append(parameterTypes.isEmpty() ? "null" : "new Object[]{" + arguments + "}").append(";\n")
+                .append("        beforeMethod(").append(methodField).append(", args);\n");
+        String invocation = delegateField + "." + method.getSimpleName() + "(" + arguments + ")";
+        if (isVoid) {
+            source.append("        ").append(invocation).append(";\n")
+                    .append("        afterMethod(").append(methodField).append(", args, null);\n");
+        } else {
+            source.append("        ").append(sourceName(methodType.getReturnType())).append(" result = ").append(invocation).append(";\n")
+                    .append("        afterMethod(").append(methodField).append(", args, result);\n")
+                    .append("        return result;\n");
+        }
+        source.append("    }\n");
+    }
+
+    private void writeTypeVariables(StringBuilder source, List<? extends TypeVariable> typeVariables) {
+        if (typeVariables.isEmpty())
+            return;
+        source.append('<');
+        for (int i = 0; i < typeVariables.size(); i++) {
+            TypeVariable typeVariable = typeVariables.get(i);
+            if (i > 0)
+                source.append(", ");
+            source.append(typeVariable.asElement().getSimpleName());
+            String bound = sourceName(typeVariable.getUpperBound());
+            if (!Object.class.getName().equals(bound))
+                source.append(" extends ").append(bound);
+        }
+        source.append("> ");
+    }
+
+    /**
+     * TypeMirror.toString() keeps the type-use annotations, the source name is built from the elements instead.
+     */
+    private static String sourceName(TypeMirror type) {
+        return type.accept(SOURCE_NAME_VISITOR, null);
+    }
+
+    /**
+     * Prints a type as it is written in source, without annotations.
+     */
+    private static final class SourceNameVisitor extends SimpleTypeVisitor9<String, Void> {
+        @Override
+        protected String defaultAction(TypeMirror type, Void unused) {
+            return type.toString();
+        }
+
+        @Override
+        public String visitPrimitive(PrimitiveType type, Void unused) {
+            return type.getKind().name().toLowerCase();
+        }
+
+        @Override
+        public String visitNoType(NoType type, Void unused) {
+            return type.getKind() == TypeKind.VOID ? "void" : defaultAction(type, unused);
+        }
+
+        @Override
+        public String visitArray(ArrayType type, Void unused) {
+            return type.getComponentType().accept(this, null) + "[]";
+        }
+
+        @Override
+        public String visitDeclared(DeclaredType type, Void unused) {
+            TypeElement element = (TypeElement) type.asElement();
+            TypeMirror enclosingType = type.getEnclosingType();
+            //inner class of a parameterized type: Outer<T>.Inner
+            String name = (enclosingType.getKind() == TypeKind.DECLARED && !((DeclaredType) enclosingType).getTypeArguments().isEmpty())
+                    ? enclosingType.accept(this, null) + "." + element.getSimpleName()
+                    : element.getQualifiedName().toString();
+            if (type.getTypeArguments().isEmpty())
+                return name;
+            return type.getTypeArguments().stream().map(argument -> argument.accept(this, null)).collect(Collectors.joining(", ", name + "<", ">"));
+        }
+
+        @Override
+        public String visitTypeVariable(TypeVariable type, Void unused) {
+            return type.asElement().getSimpleName().toString();
+        }
+
+        @Override
+        public String visitWildcard(WildcardType type, Void unused) {
+            if (type.getExtendsBound() != null)
+                return "? extends " + type.getExtendsBound().accept(this, null);
+            if (type.getSuperBound() != null)
+                return "? super " + type.getSuperBound().accept(this, null);
+            return "?";
+        }
+
+        @Override
+        public String visitIntersection(IntersectionType type, Void unused) {
+            return type.getBounds().stream().map(bound -> bound.accept(this, null)).collect(Collectors.joining(" & "));
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.processor;
+
+import it.water.core.api.service.rest.RestApi;
+import it.water.core.interceptors.WaterAbstractInterceptor;
+import it.water.service.rest.api.GeneratedRestProxy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles sample rest apis with {@link RestProxyProcessor} and checks the generated proxies.
+ */
+class RestProxyProcessorTest {
+
+    private static final String GENERIC_API = "package sample;\n" +
+            "public interface SampleApi extends it.water.core.api.service.rest.RestApi {\n" +
+            "    String echo(String value);\n" +
+            "    int sum(int... values);\n" +
+            "    void touch() throws java.io.IOException;\n" +
+            "    <T extends Number> T first(java.util.List<T> values);\n" +
+            "}\n";
+
+    private static final String FRAMEWORK_API = "package sample;\n" +
+            "@it.water.core.api.service.rest.FrameworkRestApi\n" +
+            "public interface FrameworkSampleApi extends SampleApi {\n" +
+            "    @Override\n" +
+            "    String echo(String value);\n" +
+            "    default String version() { return \"1\"; }\n" +
+            "}\n";
+
+    private static final String UNSUPPORTED_API = "package sample;\n" +
+            "@it.water.core.api.service.rest.FrameworkRestApi\n" +
+            "public interface UnsupportedApi extends SampleApi {\n" +
+            "    String onlyHere();\n" +
+            "}\n";
+
+    private static final String TYPE_USE_ANNOTATION = "package sample;\n" +
+            "@java.lang.annotation.Target(java.lang.annotation.ElementType.TYPE_USE)\n" +
+            "public @interface NotBlank {\n" +
+            "}\n";
+
+    private static final String ANNOTATED_GENERIC_API = "package sample;\n" +
+            "public interface AnnotatedApi extends it.water.core.api.service.rest.RestApi {\n" +
+            "    @NotBlank String echo(@NotBlank String value);\n" +
+            "    java.util.Map<@NotBlank String, java.util.List<? extends @NotBlank Number>> group(java.util.@NotBlank List<@NotBlank String> values);\n" +
+            "    @NotBlank String @NotBlank [] split(@NotBlank int @NotBlank [] sizes, @NotBlank String... values);\n" +
+            "}\n";
+
+    private static final String ANNOTATED_FRAMEWORK_API = "package sample;\n" +
+            "@it.water.core.api.service.rest.FrameworkRestApi\n" +
+            "public interface FrameworkAnnotatedApi extends AnnotatedApi {\n" +
+            "    @Override\n" +
+            "    @NotBlank String echo(@NotBlank String value);\n" +
+            "}\n";
+
+    @TempDir
+    Path generatedSources;
+
+    @Test
+    void generatesDelegatingProxy() throws IOException {
+        DiagnosticCollector<JavaFileObject> diagnostics = compile(GENERIC_API, FRAMEWORK_API, UNSUPPORTED_API);
+        Assertions.assertTrue(diagnostics.getDiagnostics().stream().noneMatch(d -> d.getKind() == Diagnostic.Kind.ERROR), diagnostics.getDiagnostics().toString());
+        Path proxy = generatedSources.resolve("sample/FrameworkSampleApi_WaterRestProxy.java");
+        Assertions.assertTrue(Files.exists(proxy));
+        String source = Files.readString(proxy);
+        Assertions.assertTrue(source.contains("implements sample.FrameworkSampleApi"));
+        Assertions.assertTrue(source.contains("private final sample.SampleApi delegate0;"));
+        Assertions.assertTrue(source.contains("delegate0.echo(arg0)"));
+        Assertions.assertTrue(source.contains("public int sum(int... arg0)"));
+        Assertions.assertTrue(source.contains("public void touch() throws java.io.IOException"));
+        Assertions.assertTrue(source.contains("public <T extends java.lang.Number> T first(java.util.List<T> arg0)"));
+        //default methods without a generic counterpart are inherited
+        Assertions.assertFalse(source.contains("version()"));
+    }
+
+    @Test
+    void generatesCompilableProxyForTypeUseAnnotations() throws IOException {
+        DiagnosticCollector<JavaFileObject> diagnostics = compile(TYPE_USE_ANNOTATION, ANNOTATED_GENERIC_API, ANNOTATED_FRAMEWORK_API);
+        Assertions.assertTrue(diagnostics.getDiagnostics().stream().noneMatch(d -> d.getKind() == Diagnostic.Kind.ERROR), diagnostics.getDiagnostics().toString());
+        Assertions.assertTrue(Files.exists(generatedSources.resolve("sample/FrameworkAnnotatedApi_WaterRestProxy.class")));
+        String source = Files.readString(generatedSources.resolve("sample/FrameworkAnnotatedApi_WaterRestProxy.java"));
+        Assertions.assertFalse(source.contains("NotBlank"), source);
+        Assertions.assertTrue(source.contains("restMethod(sample.FrameworkAnnotatedApi.class, \"group\", java.util.List.class)"));
+        Assertions.assertTrue(source.contains("public java.util.Map<java.lang.String, java.util.List<? extends java.lang.Number>> group(java.util.List<java.lang.String> arg0)"));
+        Assertions.assertTrue(source.contains("public java.lang.String[] split(int[] arg0, java.lang.String... arg1)"));
+    }
+
+    @Test
+    void skipsInterfacesWithMethodsNotInGenericApi() {
+        DiagnosticCollector<JavaFileObject> diagnostics = compile(GENERIC_API, UNSUPPORTED_API);
+        Assertions.assertFalse(Files.exists(generatedSources.resolve("sample/UnsupportedApi_WaterRestProxy.java")));
+        Assertions.assertTrue(diagnostics.getDiagnostics().stream()
+                .anyMatch(d -> d.getKind() == Diagnostic.Kind.NOTE && d.getMessage(null).contains("onlyHere")));
+    }
+
+    private DiagnosticCollector<JavaFileObject> compile(String... sources) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> options = List.of("-classpath", compileClasspath(),
+                "-s", generatedSources.toString(), "-d", generatedSources.toString());
+        List<JavaFileObject> units = Arrays.stream(sources).map(InMemorySource::new).map(JavaFileObject.class::cast).toList();
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, options, null, units);
+        task.setProcessors(List.of(new RestProxyProcessor()));
+        task.call();
+        return diagnostics;
+    }
+
+    //the generated proxies compile against the water rest api and interceptors
+    private static String compileClasspath() {
+        return Stream.of(RestApi.class, WaterAbstractInterceptor.class, GeneratedRestProxy.class)
+                .map(type -> {
+                    try {
+                        return Path.of(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+                    } catch (URISyntaxException e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .distinct()
+                .collect(Collectors.joining(File.pathSeparator));
+    }
+
+    private static class InMemorySource extends SimpleJavaFileObject {
+        private final String source;
+
+        InMemorySource(String source) {
+            super(URI.create("string:///" + className(source).replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.source = source;
+        }
+
+        private static String className(String source) {
+            String packageName = source.substring("package ".length(), source.indexOf(';'));
+            int nameStart = source.indexOf("interface ") + "interface ".length();
+            return packageName + "." + source.substring(nameStart, source.indexOf(' ', nameStart));
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return source;
+        }
+    }
+}
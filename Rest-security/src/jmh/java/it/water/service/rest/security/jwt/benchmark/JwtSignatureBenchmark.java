@@ -0,0 +1,103 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt.benchmark;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import it.water.service.rest.security.jwt.JwtSignatureAlgorithms;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author Aristide Cittadino
+ * Sign and verify throughput of the supported JWT signature algorithms (RS256 2048 bit, ES256, EdDSA/Ed25519),
+ * with claims shaped like the ones issued by NimbusJwtTokenService.
+ * Run with: gradle :Rest-security:jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JwtSignatureBenchmark {
+
+    @Param({"RS256", "ES256", "EdDSA"})
+    private String algorithmName;
+
+    private JWSAlgorithm algorithm;
+    private JWSSigner signer;
+    private JWSVerifier verifier;
+    private JWSHeader header;
+    private JWTClaimsSet claims;
+    private String signedToken;
+
+    @Setup
+    public void setup() throws Exception {
+        algorithm = JwtSignatureAlgorithms.parse(algorithmName);
+        KeyPair keyPair = generateKeyPair(algorithm);
+        signer = JwtSignatureAlgorithms.createSigner(algorithm, keyPair);
+        verifier = JwtSignatureAlgorithms.createVerifier(algorithm, keyPair.getPublic());
+        header = new JWSHeader.Builder(algorithm).keyID("6b6579").build();
+        claims = new JWTClaimsSet.Builder()
+                .subject("benchmarkUser")
+                .issuer("it.water.core.api.model.User")
+                .audience("it.water.core.api.model.User")
+                .jwtID(UUID.randomUUID().toString())
+                .issueTime(new Date())
+                .expirationTime(new Date(System.currentTimeMillis() + 3_600_000L))
+                .claim("roles", List.of("admin", "user"))
+                .claim("isAdmin", false)
+                .claim("loggedEntityId", 1L)
+                .build();
+        SignedJWT jwt = new SignedJWT(header, claims);
+        jwt.sign(signer);
+        signedToken = jwt.serialize();
+    }
+
+    @Benchmark
+    public String sign() throws Exception {
+        SignedJWT jwt = new SignedJWT(header, claims);
+        jwt.sign(signer);
+        return jwt.serialize();
+    }
+
+    @Benchmark
+    public boolean verify() throws Exception {
+        return SignedJWT.parse(signedToken).verify(verifier);
+    }
+
+    private static KeyPair generateKeyPair(JWSAlgorithm algorithm) throws Exception {
+        if (JWSAlgorithm.ES256.equals(algorithm)) {
+            KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+            kpg.initialize(new ECGenParameterSpec("secp256r1"));
+            return kpg.generateKeyPair();
+        }
+        if (JWSAlgorithm.EdDSA.equals(algorithm))
+            return KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        return kpg.generateKeyPair();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt.benchmark;
+
+import it.water.service.rest.api.security.jwt.TokenRevocationStore;
+import it.water.service.rest.security.jwt.InMemoryTokenRevocationStore;
+import it.water.service.rest.security.jwt.PackedUuidTokenRevocationStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author Aristide Cittadino
+ * Memory footprint of the revocation stores filled with 1M UUID jti.
+ * retainedHeapBytes is the heap still used after filling the store. The jti strings are created in setup, so the
+ * in-memory figure excludes the strings it retains (in production each one is an extra ~80 bytes).
+ * offHeapBytes is the direct memory used by the off-heap table, fill time is the benchmark score.
+ * Run with: gradle :Rest-security:jmh -Pjmh.includes=TokenRevocationFootprintBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class TokenRevocationFootprintBenchmark {
+    private static final int ENTRIES = 1_000_000;
+
+    @Param({"in-memory", "packed", "packed-off-heap"})
+    private String storeType;
+
+    private String[] jtis;
+    private long expiresAt;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long retainedHeapBytes;
+        public long offHeapBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        jtis = new String[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++)
+            jtis[i] = UUID.randomUUID().toString();
+        expiresAt = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1);
+    }
+
+    @Benchmark
+    public TokenRevocationStore fill(Footprint footprint) {
+        long before = usedHeap();
+        TokenRevocationStore store = createStore();
+        for (String jti : jtis)
+            store.revoke(jti, expiresAt);
+        footprint.retainedHeapBytes = usedHeap() - before;
+        if (store instanceof PackedUuidTokenRevocationStore packedStore && "packed-off-heap".equals(storeType))
+            footprint.offHeapBytes = packedStore.getTableBytes();
+        return store;
+    }
+
+    private TokenRevocationStore createStore() {
+        switch (storeType) {
+            case "packed":
+                return new PackedUuidTokenRevocationStore(ENTRIES, false);
+            case "packed-off-heap":
+                return new PackedUuidTokenRevocationStore(ENTRIES, true);
+            default:
+                return new InMemoryTokenRevocationStore(ENTRIES);
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++)
+            System.gc(); //NOSONAR: footprint measurement needs a collected heap
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
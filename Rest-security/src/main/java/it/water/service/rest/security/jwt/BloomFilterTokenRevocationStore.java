@@ -0,0 +1,273 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import it.water.service.rest.api.security.jwt.RevocationFeed;
+import it.water.service.rest.api.security.jwt.TokenRevocationStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * @Author Aristide Cittadino
+ * {@link TokenRevocationStore} decorator answering the common "definitely not revoked" case from a Bloom filter,
+ * with a few memory reads and no allocation. Only possible hits are checked against the backing store.
+ * <p>
+ * The filter is partitioned by token expiry: each partition covers the tokens expiring in a time window and is
+ * dropped as soon as the window has passed, so the filter never fills up with revocations of expired tokens.
+ * All revocations must go through the decorator, revocations already in the backing store are loaded
+ * at construction through forEachRevoked. On a single node register it as the TokenRevocationStore component;
+ * with replication it must sit below the {@link ReplicatedTokenRevocationStore}, which applies the replicated
+ * revocations through it (see {@link ReplicatedTokenRevocationStore#withBloomFilter(TokenRevocationStore)}).
+ * Wrapping a store that publishes a {@link RevocationFeed} is rejected: replicated revocations would bypass the filter.
+ */
+public class BloomFilterTokenRevocationStore implements TokenRevocationStore {
+    public static final long DEFAULT_PARTITION_MILLIS = 15 * 60 * 1000L;
+    public static final int DEFAULT_EXPECTED_REVOCATIONS_PER_PARTITION = 100_000;
+    public static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final TokenRevocationStore delegate;
+    private final long partitionMillis;
+    private final int bitsPerPartition;
+    private final int hashFunctions;
+    //live partitions, sorted by window. Copy on write: readers iterate a stable array.
+    private final AtomicReference<Partition[]> partitions = new AtomicReference<>(new Partition[0]);
+    private final LongAdder definitelyNotRevoked = new LongAdder();
+    private final LongAdder possiblyRevoked = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public BloomFilterTokenRevocationStore(TokenRevocationStore delegate) {
+        this(delegate, DEFAULT_PARTITION_MILLIS, DEFAULT_EXPECTED_REVOCATIONS_PER_PARTITION, DEFAULT_FALSE_POSITIVE_PROBABILITY);
+    }
+
+    /**
+     * @param delegate                        backing store, queried only on possible hits
+     * @param partitionMillis                 width of the expiry window covered by a partition
+     * @param expectedRevocationsPerPartition revocations expected per window, used to size the filters
+     * @param falsePositiveProbability        target false positive probability at the expected load
+     */
+    public BloomFilterTokenRevocationStore(TokenRevocationStore delegate, long partitionMillis, int expectedRevocationsPerPartition, double falsePositiveProbability) {
+        if (partitionMillis <= 0 || expectedRevocationsPerPartition <= 0 || falsePositiveProbability <= 0 || falsePositiveProbability >= 1)
+            throw new IllegalArgumentException("Invalid bloom filter parameters");
+        if (delegate instanceof RevocationFeed)
+            throw new IllegalArgumentException("The bloom filter must be wrapped by the replicated store, not wrap it");
+        this.delegate = delegate;
+        this.partitionMillis = partitionMillis;
+        double bits = -expectedRevocationsPerPartition * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2));
+        //whole longs, at least one
+        this.bitsPerPartition = (int) Math.min(Integer.MAX_VALUE - 63L, Math.max(64L, (long) Math.ceil(bits / 64) * 64));
+        this.hashFunctions = Math.max(1, (int) Math.round(bits / expectedRevocationsPerPartition * Math.log(2)));
+        delegate.forEachRevoked(this::addToFilter);
+    }
+
+    @Override
+    public void revoke(String jti, long expiresAtEpochMillis) {
+        if (jti == null || jti.isBlank() || expiresAtEpochMillis <= System.currentTimeMillis())
+            return;
+        //filter first: a concurrent check must never miss a revocation already visible in the delegate
+        addToFilter(jti, expiresAtEpochMillis);
+        delegate.revoke(jti, expiresAtEpochMillis);
+    }
+
+    @Override
+    public boolean isRevoked(String jti) {
+        if (jti == null)
+            return false;
+        if (!mightBeRevoked(jti)) {
+            definitelyNotRevoked.increment();
+            return false;
+        }
+        possiblyRevoked.increment();
+        boolean revoked = delegate.isRevoked(jti);
+        if (!revoked)
+            falsePositives.increment();
+        return revoked;
+    }
+
+    @Override
+    public void forEachRevoked(ObjLongConsumer<String> consumer) {
+        delegate.forEachRevoked(consumer);
+    }
+
+    //subject watermarks are a single map read in the backing store, they bypass the filter
+
+    @Override
+    public void revokeAllForSubject(String subject, long issuedBeforeEpochMillis) {
+        delegate.revokeAllForSubject(subject, issuedBeforeEpochMillis);
+    }
+
+    @Override
+    public long getSubjectRevokedBefore(String subject) {
+        return delegate.getSubjectRevokedBefore(subject);
+    }
+
+    @Override
+    public void forEachSubjectWatermark(ObjLongConsumer<String> consumer) {
+        delegate.forEachSubjectWatermark(consumer);
+    }
+
+    /**
+     * @return checks answered by the filter alone
+     */
+    public long getDefinitelyNotRevokedCount() {
+        return definitelyNotRevoked.sum();
+    }
+
+    /**
+     * @return checks forwarded to the backing store
+     */
+    public long getPossiblyRevokedCount() {
+        return possiblyRevoked.sum();
+    }
+
+    /**
+     * @return forwarded checks the backing store answered with "not revoked"
+     */
+    public long getFalsePositiveCount() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * @return observed false positive rate: false positives over all the checks of non revoked tokens
+     */
+    public double getFalsePositiveRate() {
+        long fp = falsePositives.sum();
+        long negatives = fp + definitelyNotRevoked.sum();
+        return negatives == 0 ? 0 : (double) fp / negatives;
+    }
+
+    /**
+     * @return number of live partitions
+     */
+    public int getPartitionCount() {
+        return partitions.get().length;
+    }
+
+    private boolean mightBeRevoked(String jti) {
+        long hash = hash(jti);
+        long now = System.currentTimeMillis();
+        for (Partition partition : partitions.get()) {
+            //tokens covered by an expired window are rejected by expiration validation anyway
+            if (partition.windowEndMillis > now && partition.mightContain(hash))
+                return true;
+        }
+        return false;
+    }
+
+    private void addToFilter(String jti, long expiresAtEpochMillis) {
+        partitionFor(expiresAtEpochMillis / partitionMillis).add(hash(jti));
+    }
+
+    private Partition partitionFor(long window) {
+        while (true) {
+            Partition[] current = partitions.get();
+            for (Partition partition : current) {
+                if (partition.window == window)
+                    return partition;
+            }
+            //new window: publish it together with the removal of the expired ones
+            long now = System.currentTimeMillis();
+            List<Partition> updated = new ArrayList<>(current.length + 1);
+            Partition created = new Partition(window, windowEndMillis(window), bitsPerPartition, hashFunctions);
+            for (Partition partition : current) {
+                if (partition.windowEndMillis > now)
+                    updated.add(partition);
+            }
+            updated.add(created);
+            updated.sort((first, second) -> Long.compare(first.window, second.window));
+            if (partitions.compareAndSet(current, updated.toArray(new Partition[0])))
+                return created;
+        }
+    }
+
+    /**
+     * @param window expiry window
+     * @return end of the window, Long.MAX_VALUE for the last window (e.g. tokens revoked with no expiry)
+     */
+    private long windowEndMillis(long window) {
+        try {
+            return Math.multiplyExact(Math.addExact(window, 1), partitionMillis);
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * 64 bit string hash computed over the chars, without allocating the string bytes.
+     */
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        //murmur3 finalizer, FNV alone leaves the low bits poorly mixed
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Bloom filter of the tokens expiring in one window. Bits are set with CAS, reads are plain volatile reads.
+     */
+    private static final class Partition {
+        private final long window;
+        private final long windowEndMillis;
+        private final int bits;
+        private final int hashFunctions;
+        private final AtomicLongArray words;
+
+        Partition(long window, long windowEndMillis, int bits, int hashFunctions) {
+            this.window = window;
+            this.windowEndMillis = windowEndMillis;
+            this.bits = bits;
+            this.hashFunctions = hashFunctions;
+            this.words = new AtomicLongArray(bits / 64);
+        }
+
+        void add(long hash) {
+            //Kirsch-Mitzenmacher: k indexes derived from two 32 bit hashes
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashFunctions; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bits);
+                long mask = 1L << bit;
+                int word = bit >>> 6;
+                long current = words.get(word);
+                while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask))
+                    current = words.get(word);
+            }
+        }
+
+        boolean mightContain(long hash) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashFunctions; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bits);
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0)
+                    return false;
+            }
+            return true;
+        }
+    }
+}
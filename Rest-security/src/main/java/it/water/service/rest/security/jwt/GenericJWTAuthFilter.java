@@ -18,12 +18,14 @@ package it.water.service.rest.security.jwt;
 import it.water.core.permission.exceptions.UnauthorizedException;
 import it.water.service.rest.api.security.LoggedIn;
 import it.water.service.rest.api.security.jwt.JwtTokenService;
+import it.water.service.rest.api.security.jwt.VerifiedJwtToken;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
-import java.util.*;
+import java.util.Arrays;
+import java.util.List;
 
 public class GenericJWTAuthFilter {
     private static Logger log = LoggerFactory.getLogger(GenericJWTAuthFilter.class);
@@ -48,6 +50,40 @@ public class GenericJWTAuthFilter {
         }
     }
 
+    /**
+     * Validates the token and returns its principals with a single parse and signature verification.
+     * Filters should prefer this method over validateToken followed by JwtTokenService.getPrincipals.
+     *
+     * @param jwtTokenService     jwt token service
+     * @param annotation          LoggedIn annotation on method, must not be null
+     * @param authorizationHeader Authorization Header content
+     * @return the verified token
+     * @throws UnauthorizedException if the token is missing or not valid
+     */
+    public VerifiedJwtToken verifyToken(JwtTokenService jwtTokenService, LoggedIn annotation, String authorizationHeader) {
+        log.debug("Found @LoggedIn Annotation, starting to verify JWT token");
+        String encodedToken = getTokenFromRequest(authorizationHeader, null);
+        List<String> issuers = Arrays.asList(annotation.issuers());
+        return jwtTokenService.verifyToken(issuers, encodedToken)
+                .orElseThrow(() -> new UnauthorizedException("Invalid JWT token!"));
+    }
+
+    /**
+     * Same as {@link #verifyToken(JwtTokenService, LoggedIn, String)} with the issuers precomputed in the method descriptor.
+     *
+     * @param jwtTokenService     jwt token service
+     * @param descriptor          security descriptor of the invoked method, it must require login
+     * @param authorizationHeader Authorization Header content
+     * @return the verified token
+     * @throws UnauthorizedException if the token is missing or not valid
+     */
+    public VerifiedJwtToken verifyToken(JwtTokenService jwtTokenService, RestMethodSecurityDescriptor descriptor, String authorizationHeader) {
+        log.debug("Found @LoggedIn Annotation, starting to verify JWT token");
+        String encodedToken = getTokenFromRequest(authorizationHeader, null);
+        return jwtTokenService.verifyToken(descriptor.getIssuers(), encodedToken)
+                .orElseThrow(() -> new UnauthorizedException("Invalid JWT token!"));
+    }
+
     /**
      * Extracts the JWT token strictly from the Authorization header.
      * Cookie-based extraction has been intentionally removed to eliminate the CSRF attack surface:
@@ -67,13 +103,12 @@ public class GenericJWTAuthFilter {
         return parts[1];
     }
 
-    //todo probably this utitly methods should be moved
+    /**
+     * Reflective lookup of an annotation in the method hierarchy: filters should use the cached
+     * {@link RestMethodSecurityDescriptor} on the request path instead.
+     */
     protected Annotation getAnnotationFromHierarchy(Class<? extends Annotation> annotationClass, Method method) {
-        List<Annotation> annotations = getAllAnnotationsFromHierarchy(method);
-        Optional<Annotation> optionalAnnotation = annotations.stream().filter(curAnnotation -> curAnnotation.annotationType().equals(annotationClass)).findFirst();
-        if (optionalAnnotation.isPresent())
-            return optionalAnnotation.get();
-        return null;
+        return RestMethodSecurityDescriptor.findAnnotation(annotationClass, method);
     }
 
     /**
@@ -83,52 +118,6 @@ public class GenericJWTAuthFilter {
      * @return
      */
     protected List<Annotation> getAllAnnotationsFromHierarchy(Method method) {
-        Set<Annotation> allAnnotations = new HashSet<>();
-
-        addAnnotationsFromMethod(method, allAnnotations);
-
-        Class<?> currentClass = method.getDeclaringClass().getSuperclass();
-        while (currentClass != null) {
-            try {
-                Method parentMethod = currentClass.getDeclaredMethod(method.getName(), method.getParameterTypes());
-                addAnnotationsFromMethod(parentMethod, allAnnotations);
-            } catch (NoSuchMethodException e) {
-                log.debug("No method found in super class for method {}", method.getName());
-            }
-            currentClass = currentClass.getSuperclass();
-        }
-
-        Set<Class<?>> interfaces = getAllInterfaces(method.getDeclaringClass());
-        for (Class<?> interfaceClass : interfaces) {
-            try {
-                Method interfaceMethod = interfaceClass.getMethod(method.getName(), method.getParameterTypes());
-                addAnnotationsFromMethod(interfaceMethod, allAnnotations);
-            } catch (NoSuchMethodException e) {
-                log.debug("No method found in super class for method {}", method.getName());
-            }
-        }
-
-        return new ArrayList<>(allAnnotations);
-    }
-
-    private void addAnnotationsFromMethod(Method method, Set<Annotation> annotations) {
-        annotations.addAll(Arrays.asList(method.getAnnotations()));
-    }
-
-    private Set<Class<?>> getAllInterfaces(Class<?> clazz) {
-        Set<Class<?>> interfaces = new HashSet<>();
-        while (clazz != null) {
-            getAllInterfacesRecursively(clazz, interfaces);
-            clazz = clazz.getSuperclass();
-        }
-        return interfaces;
-    }
-
-    private void getAllInterfacesRecursively(Class<?> clazz, Set<Class<?>> interfaces) {
-        for (Class<?> interfaceClass : clazz.getInterfaces()) {
-            if (interfaces.add(interfaceClass)) {
-                getAllInterfacesRecursively(interfaceClass, interfaces);
-            }
-        }
+        return RestMethodSecurityDescriptor.annotationsFromHierarchy(method);
     }
 }
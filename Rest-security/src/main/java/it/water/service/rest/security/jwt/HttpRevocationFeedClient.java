@@ -0,0 +1,99 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import com.nimbusds.jose.util.JSONObjectUtils;
+import it.water.core.model.exceptions.WaterRuntimeException;
+import it.water.service.rest.api.security.jwt.RevocationFeed;
+import it.water.service.rest.api.security.jwt.RevocationFeedEntry;
+import it.water.service.rest.api.security.jwt.RevocationFeedPage;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * @Author Aristide Cittadino
+ * {@link RevocationFeed} of a remote node, read from its security status API
+ * (GET {servicesUrl}/status/security/revocations).
+ * The endpoint is restricted to administrators: the token supplier provides the bearer token of an administrative
+ * account of the calling node.
+ */
+public class HttpRevocationFeedClient implements RevocationFeed {
+    private static final String REVOCATIONS_PATH = "/status/security/revocations";
+
+    private final String servicesUrl;
+    private final Supplier<String> tokenSupplier;
+    private final Duration timeout;
+    private final HttpClient httpClient;
+
+    /**
+     * @param servicesUrl   base url of the peer rest services
+     * @param tokenSupplier bearer token used to authenticate on the peer
+     * @param timeout       connect and request timeout
+     */
+    public HttpRevocationFeedClient(String servicesUrl, Supplier<String> tokenSupplier, Duration timeout) {
+        this.servicesUrl = servicesUrl.endsWith("/") ? servicesUrl.substring(0, servicesUrl.length() - 1) : servicesUrl;
+        this.tokenSupplier = tokenSupplier;
+        this.timeout = timeout;
+        this.httpClient = HttpClient.newBuilder().connectTimeout(timeout).build();
+    }
+
+    @Override
+    public RevocationFeedPage getChangesSince(long sequence, int maxEntries) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(servicesUrl + REVOCATIONS_PATH + "?since=" + sequence + "&limit=" + maxEntries))
+                .timeout(timeout)
+                .header("Authorization", "Bearer " + tokenSupplier.get())
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200)
+                throw new WaterRuntimeException("Revocation feed request to " + servicesUrl + " failed with status " + response.statusCode());
+            return parsePage(response.body());
+        } catch (IOException | ParseException e) {
+            throw new WaterRuntimeException("Unable to read revocation feed from " + servicesUrl + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WaterRuntimeException("Interrupted while reading revocation feed from " + servicesUrl);
+        }
+    }
+
+    static RevocationFeedPage parsePage(String json) throws ParseException {
+        Map<String, Object> page = JSONObjectUtils.parse(json);
+        List<RevocationFeedEntry> entries = new ArrayList<>();
+        Map<String, Object>[] jsonEntries = JSONObjectUtils.getJSONObjectArray(page, "entries");
+        if (jsonEntries != null) {
+            for (Map<String, Object> entry : jsonEntries) {
+                entries.add(new RevocationFeedEntry(JSONObjectUtils.getLong(entry, "sequence"),
+                        RevocationFeedEntry.Type.valueOf(JSONObjectUtils.getString(entry, "type")),
+                        JSONObjectUtils.getString(entry, "key"),
+                        JSONObjectUtils.getLong(entry, "epochMillis")));
+            }
+        }
+        return new RevocationFeedPage(JSONObjectUtils.getString(page, "feedId"), JSONObjectUtils.getLong(page, "lastSequence"), entries,
+                JSONObjectUtils.getBoolean(page, "hasMore"), JSONObjectUtils.getBoolean(page, "truncated"));
+    }
+}
@@ -16,17 +16,31 @@
 package it.water.service.rest.security.jwt;
 
 import it.water.core.interceptors.annotations.FrameworkComponent;
+import it.water.core.interceptors.annotations.Inject;
+import it.water.service.rest.api.options.JwtSecurityOptions;
 import it.water.service.rest.api.security.jwt.TokenRevocationStore;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayDeque;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
 
 /**
  * @Author Aristide Cittadino
  * Default in-process {@link TokenRevocationStore}: keeps revoked jti -> expiry until the token
- * would naturally expire, then lazily forgets it. State is per-JVM — multi-node deployments need a
+ * would naturally expire, then forgets it. State is per-JVM — multi-node deployments need a
  * shared implementation (e.g. Redis).
+ * <p>
+ * Expiry is driven by a time-bucketed index: every revoked entry is appended to the bucket of the
+ * second it expires in. Writes drain only the buckets that already expired and, above the cap, evict
+ * from the oldest bucket (soonest-to-expire entries), so revoke and expiry cost amortized O(1)
+ * without scanning or sorting the whole store. Reads never touch the index and are lock-free.
+ * <p>
+ * Subject revocations are kept as per-subject watermarks, retained for the configured token lifetime.
  */
 @Slf4j
 @FrameworkComponent
@@ -34,34 +48,58 @@ public class InMemoryTokenRevocationStore implements TokenRevocationStore {
 
     //hard cap on tracked jti to bound memory against a flood of logout/revocation calls
     private static final int MAX_KEYS = 100000;
+    //expiry index granularity
+    private static final long BUCKET_MILLIS = 1000L;
+    //same default as water.rest.security.jwt.duration.millis
+    private static final long DEFAULT_TOKEN_DURATION_MILLIS = 3600000L;
 
+    private final int maxKeys;
     private final ConcurrentHashMap<String, RevokedToken> revoked = new ConcurrentHashMap<>();
+    //expiry bucket (expiry / BUCKET_MILLIS) -> entries expiring in that bucket, guarded by indexLock
+    private final TreeMap<Long, ArrayDeque<RevokedToken>> expiryIndex = new TreeMap<>();
+    private final ReentrantLock indexLock = new ReentrantLock();
+    private final SubjectRevocationWatermarks subjectWatermarks;
+
+    //token lifetime bounds how long a subject watermark is useful
+    @Inject
+    @Setter
+    private JwtSecurityOptions jwtSecurityOptions;
 
     /**
-     * Per-jti entry. Synchronization is encapsulated here (instance methods lock on {@code this}),
-     * so callers never synchronize on a parameter or a field they don't own (avoids SonarQube S2445).
+     * Immutable per-jti entry, also referenced by its expiry bucket.
+     * Entries are removed with remove(jti, entry) so a newer revocation of the same jti is never dropped by a stale bucket.
      */
     private static final class RevokedToken {
-        private long expiresAtEpochMillis;
+        private final String jti;
+        private final long expiresAtEpochMillis;
 
-        RevokedToken(long expiresAtEpochMillis) {
+        RevokedToken(String jti, long expiresAtEpochMillis) {
+            this.jti = jti;
             this.expiresAtEpochMillis = expiresAtEpochMillis;
         }
 
-        synchronized long expiresAt() {
-            return expiresAtEpochMillis;
-        }
-
         /**
          * An entry is expired (safe to drop) once the clock passes the token's natural expiry: from
          * that moment the token is already rejected by expiration validation, so the denylist no
          * longer needs to track it.
          */
-        synchronized boolean isExpired(long now) {
+        boolean isExpired(long now) {
             return expiresAtEpochMillis <= now;
         }
     }
 
+    public InMemoryTokenRevocationStore() {
+        this(MAX_KEYS);
+    }
+
+    /**
+     * @param maxKeys maximum number of tracked jti
+     */
+    public InMemoryTokenRevocationStore(int maxKeys) {
+        this.maxKeys = maxKeys;
+        this.subjectWatermarks = new SubjectRevocationWatermarks(maxKeys, this::maxTokenLifetimeMillis);
+    }
+
     @Override
     public void revoke(String jti, long expiresAtEpochMillis) {
         if (jti == null || jti.isBlank())
@@ -70,9 +108,22 @@ public class InMemoryTokenRevocationStore implements TokenRevocationStore {
         //already-expired tokens are harmless; nothing to track
         if (expiresAtEpochMillis <= now)
             return;
-        //bound memory before inserting a potentially-new key
-        evictIfNeeded();
-        revoked.put(jti, new RevokedToken(expiresAtEpochMillis));
+        RevokedToken entry = new RevokedToken(jti, expiresAtEpochMillis);
+        indexLock.lock();
+        try {
+            RevokedToken existing = revoked.get(jti);
+            if (existing != null) {
+                //repeated logout or replicated re-apply: nothing to do unless the expiry is extended
+                if (existing.expiresAtEpochMillis >= expiresAtEpochMillis)
+                    return;
+                removeFromIndex(existing);
+            }
+            expiryIndex.computeIfAbsent(expiresAtEpochMillis / BUCKET_MILLIS, bucket -> new ArrayDeque<>()).addLast(entry);
+            revoked.put(jti, entry);
+            evictIfNeeded(now);
+        } finally {
+            indexLock.unlock();
+        }
     }
 
     @Override
@@ -91,24 +142,93 @@ public class InMemoryTokenRevocationStore implements TokenRevocationStore {
         return true;
     }
 
+    @Override
+    public void forEachRevoked(ObjLongConsumer<String> consumer) {
+        long now = now();
+        revoked.values().forEach(entry -> {
+            if (!entry.isExpired(now))
+                consumer.accept(entry.jti, entry.expiresAtEpochMillis);
+        });
+    }
+
+    @Override
+    public void revokeAllForSubject(String subject, long issuedBeforeEpochMillis) {
+        subjectWatermarks.revokeAllIssuedBefore(subject, issuedBeforeEpochMillis);
+    }
+
+    @Override
+    public long getSubjectRevokedBefore(String subject) {
+        return subjectWatermarks.getRevokedBefore(subject);
+    }
+
+    @Override
+    public void forEachSubjectWatermark(ObjLongConsumer<String> consumer) {
+        subjectWatermarks.forEach(consumer);
+    }
+
     /**
-     * Opportunistic, bounded cleanup invoked on writes:
-     * 1) drop entries whose token already expired (no live security value);
-     * 2) if still above the cap, evict the soonest-to-expire entries until under the cap.
+     * @return number of tracked jti
      */
-    private void evictIfNeeded() {
-        long now = now();
-        // pass 1: remove entries whose token already expired
-        revoked.entrySet().removeIf(e -> e.getValue().isExpired(now));
-        if (revoked.size() <= MAX_KEYS)
+    public int size() {
+        return revoked.size();
+    }
+
+    /**
+     * @return number of entries in the expiry index, at most one per tracked jti
+     */
+    public int getIndexSize() {
+        indexLock.lock();
+        try {
+            return expiryIndex.values().stream().mapToInt(ArrayDeque::size).sum();
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    //called with the index lock held, the bucket spans a single second
+    private void removeFromIndex(RevokedToken entry) {
+        long bucketKey = entry.expiresAtEpochMillis / BUCKET_MILLIS;
+        ArrayDeque<RevokedToken> bucket = expiryIndex.get(bucketKey);
+        if (bucket != null && bucket.remove(entry) && bucket.isEmpty())
+            expiryIndex.remove(bucketKey);
+    }
+
+    /**
+     * Bounded cleanup invoked on writes, with the index lock held:
+     * 1) drop the buckets whose tokens already expired (no live security value);
+     * 2) if still above the cap, evict from the oldest bucket (closest to being dropped anyway) until under the cap.
+     */
+    private void evictIfNeeded(long now) {
+        // pass 1: whole buckets ending before now hold only expired entries (compared as buckets, the end of the
+        // last one overflows for tokens revoked with no expiry)
+        Map.Entry<Long, ArrayDeque<RevokedToken>> oldest = expiryIndex.firstEntry();
+        while (oldest != null && oldest.getKey() < now / BUCKET_MILLIS) {
+            expiryIndex.pollFirstEntry().getValue().forEach(entry -> revoked.remove(entry.jti, entry));
+            oldest = expiryIndex.firstEntry();
+        }
+        if (revoked.size() <= maxKeys)
             return;
-        // pass 2: cap enforcement — evict the soonest-to-expire first (closest to being dropped anyway)
-        revoked.entrySet().stream()
-                .sorted((x, y) -> Long.compare(x.getValue().expiresAt(), y.getValue().expiresAt()))
-                .limit((long) revoked.size() - MAX_KEYS)
-                .map(Map.Entry::getKey)
-                .forEach(revoked::remove);
-        log.warn("Token revocation store exceeded {} keys; evicted soonest-to-expire entries down to the cap", MAX_KEYS);
+        // pass 2: cap enforcement — evict the soonest-to-expire buckets first
+        while (revoked.size() > maxKeys && oldest != null) {
+            RevokedToken entry = oldest.getValue().pollFirst();
+            if (entry != null)
+                revoked.remove(entry.jti, entry);
+            if (oldest.getValue().isEmpty()) {
+                expiryIndex.pollFirstEntry();
+                oldest = expiryIndex.firstEntry();
+            }
+        }
+        log.warn("Token revocation store exceeded {} keys; evicted soonest-to-expire entries down to the cap", maxKeys);
+    }
+
+    private long maxTokenLifetimeMillis() {
+        long durationMillis = jwtSecurityOptions != null ? jwtSecurityOptions.jwtTokenDurationMillis() : 0L;
+        if (durationMillis <= 0)
+            durationMillis = DEFAULT_TOKEN_DURATION_MILLIS;
+        long skewSeconds = jwtSecurityOptions != null ? jwtSecurityOptions.jwtClockSkewSeconds() : 0L;
+        if (skewSeconds <= 0)
+            skewSeconds = JWTConstants.JWT_DEFAULT_CLOCK_SKEW_SECONDS;
+        return durationMillis + skewSeconds * 1000L;
     }
 
     private long now() {
@@ -15,6 +15,7 @@
  */
 package it.water.service.rest.security.jwt;
 
+import it.water.service.rest.api.options.JwtSecurityOptions;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 
@@ -38,5 +39,38 @@ public class JWTConstants {
     public static final long JWT_DEFAULT_CLOCK_SKEW_SECONDS = 60L;
     //canonical test-mode flag, shared across the framework (same key used by Authentication/User modules)
     public static final String JWT_PROP_TEST_MODE = "water.testMode";
+    //opt-in cache of successful verifications keyed by token digest; revocation is still checked on every hit
+    public static final String JWT_PROP_VERIFIED_CACHE_ENABLED = "water.rest.security.jwt.verified.cache.enabled";
+    public static final String JWT_PROP_VERIFIED_CACHE_MAX_SIZE = "water.rest.security.jwt.verified.cache.max.size";
+    public static final boolean JWT_DEFAULT_VERIFIED_CACHE_ENABLED = JwtSecurityOptions.DEFAULT_VERIFIED_TOKEN_CACHE_ENABLED;
+    public static final long JWT_DEFAULT_VERIFIED_CACHE_MAX_SIZE = JwtSecurityOptions.DEFAULT_VERIFIED_TOKEN_CACHE_MAX_SIZE;
+    //short lived cache of rejected token digests, so replayed invalid tokens are not parsed and verified again
+    public static final String JWT_PROP_REJECTED_CACHE_ENABLED = "water.rest.security.jwt.rejected.cache.enabled";
+    public static final String JWT_PROP_REJECTED_CACHE_MAX_SIZE = "water.rest.security.jwt.rejected.cache.max.size";
+    public static final boolean JWT_DEFAULT_REJECTED_CACHE_ENABLED = JwtSecurityOptions.DEFAULT_REJECTED_TOKEN_CACHE_ENABLED;
+    public static final long JWT_DEFAULT_REJECTED_CACHE_MAX_SIZE = JwtSecurityOptions.DEFAULT_REJECTED_TOKEN_CACHE_MAX_SIZE;
+    public static final String JWT_PROP_REJECTED_CACHE_TTL_MILLIS = "water.rest.security.jwt.rejected.cache.ttl.millis";
+    public static final long JWT_DEFAULT_REJECTED_CACHE_TTL_MILLIS = JwtSecurityOptions.DEFAULT_REJECTED_TOKEN_CACHE_TTL_MILLIS;
+    //longer tokens are rejected before being parsed
+    public static final String JWT_PROP_MAX_TOKEN_LENGTH = "water.rest.security.jwt.max.token.length";
+    public static final long JWT_DEFAULT_MAX_TOKEN_LENGTH = JwtSecurityOptions.DEFAULT_MAX_TOKEN_LENGTH;
+    //JWKS key cache: ttl (refreshed ahead in background), unknown kid refetch interval and fetch timeout
+    public static final String JWT_PROP_JWKS_CACHE_TTL_MILLIS = "water.rest.security.jwt.jwks.cache.ttl.millis";
+    public static final long JWT_DEFAULT_JWKS_CACHE_TTL_MILLIS = JwtSecurityOptions.DEFAULT_JWKS_CACHE_TTL_MILLIS;
+    public static final String JWT_PROP_JWKS_UNKNOWN_KID_REFRESH_INTERVAL_MILLIS = "water.rest.security.jwt.jwks.unknown.kid.refresh.interval.millis";
+    public static final long JWT_DEFAULT_JWKS_UNKNOWN_KID_REFRESH_INTERVAL_MILLIS = JwtSecurityOptions.DEFAULT_JWKS_UNKNOWN_KID_REFRESH_INTERVAL_MILLIS;
+    public static final String JWT_PROP_JWKS_FETCH_TIMEOUT_MILLIS = "water.rest.security.jwt.jwks.fetch.timeout.millis";
+    public static final long JWT_DEFAULT_JWKS_FETCH_TIMEOUT_MILLIS = JwtSecurityOptions.DEFAULT_JWKS_FETCH_TIMEOUT_MILLIS;
+    //signature algorithm (RS256, ES256, EdDSA) and the comma separated list of algorithms accepted on validation
+    public static final String JWT_PROP_SIGNING_ALGORITHM = "water.rest.security.jwt.signing.algorithm";
+    public static final String JWT_DEFAULT_SIGNING_ALGORITHM = JwtSecurityOptions.DEFAULT_SIGNING_ALGORITHM;
+    public static final String JWT_PROP_ALLOWED_ALGORITHMS = "water.rest.security.jwt.allowed.algorithms";
+    public static final String JWT_DEFAULT_ALLOWED_ALGORITHMS = String.join(",", JwtSecurityOptions.DEFAULT_ALLOWED_ALGORITHMS);
+    //dedicated keystore entry for the signing key, the keystore is the one configured for the server key pair
+    public static final String JWT_PROP_SIGNING_KEY_ALIAS = "water.rest.security.jwt.signing.key.alias";
+    public static final String JWT_DEFAULT_SIGNING_KEY_ALIAS = JwtSecurityOptions.DEFAULT_SIGNING_KEY_ALIAS;
+    public static final String JWT_PROP_KEYSTORE_FILE = "water.keystore.file";
+    public static final String JWT_PROP_KEYSTORE_PASSWORD = "water.keystore.password";
+    public static final String JWT_PROP_PRIVATE_KEY_PASSWORD = "water.private.key.password";
     public static final String JWT_COOKIE_NAME = "HIT-AUTH";
 }
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @Author Aristide Cittadino
+ * Cache of the keys published on a JWKS URL, indexed by kid.
+ * <ul>
+ *     <li>keys are refreshed in background before the TTL expires, stale keys are served while the refresh runs;</li>
+ *     <li>concurrent fetches are collapsed in a single request to the identity provider;</li>
+ *     <li>a token with an unknown kid triggers a refetch (e.g. key rotation) at most once per configured interval;</li>
+ *     <li>request threads wait for a fetch only when no key set is available yet (or on an allowed unknown kid refetch),
+ *     and never longer than the configured fetch timeout.</li>
+ * </ul>
+ */
+public class JwksKeyCache {
+    private static final Logger log = LoggerFactory.getLogger(JwksKeyCache.class);
+    //JWKS documents are small, this bounds the memory used by a misbehaving endpoint
+    private static final int JWKS_SIZE_LIMIT_BYTES = 512 * 1024;
+
+    /**
+     * Loads a key set from a JWKS URL. Pluggable so that a local stand-in can be used in tests.
+     */
+    @FunctionalInterface
+    public interface JwksLoader {
+        JWKSet load(String jwksUrl) throws Exception;
+    }
+
+    private final String jwksUrl;
+    private final long ttlMillis;
+    private final long unknownKidRefreshIntervalMillis;
+    private final long fetchTimeoutMillis;
+    private final JwksLoader loader;
+    private final Executor executor;
+    private final AtomicReference<KeySetSnapshot> snapshot = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<KeySetSnapshot>> inFlightFetch = new AtomicReference<>();
+    private final AtomicLong lastUnknownKidRefresh = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong lastFetchFailure = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong fetchCount = new AtomicLong();
+
+    /**
+     * Immutable view of a fetched key set, published atomically.
+     */
+    private static final class KeySetSnapshot {
+        private final Map<String, JWK> keysByKid;
+        private final long fetchedAtMillis;
+
+        KeySetSnapshot(Map<String, JWK> keysByKid, long fetchedAtMillis) {
+            this.keysByKid = keysByKid;
+            this.fetchedAtMillis = fetchedAtMillis;
+        }
+    }
+
+    /**
+     * @param executor runs the fetches, owned by the caller which shuts it down
+     */
+    public JwksKeyCache(String jwksUrl, long ttlMillis, long unknownKidRefreshIntervalMillis, long fetchTimeoutMillis, Executor executor) {
+        this(jwksUrl, ttlMillis, unknownKidRefreshIntervalMillis, fetchTimeoutMillis,
+                url -> JWKSet.load(new URL(url), (int) fetchTimeoutMillis, (int) fetchTimeoutMillis, JWKS_SIZE_LIMIT_BYTES), executor);
+    }
+
+    public JwksKeyCache(String jwksUrl, long ttlMillis, long unknownKidRefreshIntervalMillis, long fetchTimeoutMillis, JwksLoader loader, Executor executor) {
+        this.jwksUrl = jwksUrl;
+        this.ttlMillis = ttlMillis;
+        this.unknownKidRefreshIntervalMillis = unknownKidRefreshIntervalMillis;
+        this.fetchTimeoutMillis = fetchTimeoutMillis;
+        this.loader = loader;
+        this.executor = executor;
+    }
+
+    public String getJwksUrl() {
+        return jwksUrl;
+    }
+
+    /**
+     * Returns the key published with the given kid.
+     * A kid missing from the cached key set triggers the rate limited refetch, so a freshly rotated key is found
+     * while the previous one is still published.
+     *
+     * @param kid kid to look for
+     * @return matching key or null if the kid is not published on the JWKS URL
+     */
+    public JWK getKey(String kid) {
+        if (kid == null)
+            return null;
+        long now = System.currentTimeMillis();
+        KeySetSnapshot current = snapshot.get();
+        if (current == null) {
+            //cold cache: nothing to serve yet, wait (bounded) for the first fetch
+            current = awaitFetch(fetch());
+            if (current == null)
+                return null;
+        } else if (now - current.fetchedAtMillis >= refreshAheadThreshold()) {
+            //refresh ahead in background, stale keys are still served meanwhile
+            fetch();
+        }
+        JWK key = current.keysByKid.get(kid);
+        if (key != null)
+            return key;
+        //unknown kid: it may be a freshly rotated key, refetch at most once per interval
+        long lastRefresh = lastUnknownKidRefresh.get();
+        if ((lastRefresh == Long.MIN_VALUE || now - lastRefresh >= unknownKidRefreshIntervalMillis) && lastUnknownKidRefresh.compareAndSet(lastRefresh, now)) {
+            log.debug("Unknown JWT key id {}, refreshing JWKS from {}", kid, jwksUrl);
+            KeySetSnapshot refreshed = awaitFetch(fetch());
+            if (refreshed != null)
+                return refreshed.keysByKid.get(kid);
+        }
+        return null;
+    }
+
+    /**
+     * @return number of fetches performed against the JWKS URL
+     */
+    public long getFetchCount() {
+        return fetchCount.get();
+    }
+
+    //refresh starts when 80% of the TTL has elapsed, so keys are renewed before they become stale
+    private long refreshAheadThreshold() {
+        return ttlMillis - ttlMillis / 5;
+    }
+
+    /**
+     * Starts a fetch, or joins the one already running.
+     *
+     * @return future completed with the new snapshot, or with null if the fetch failed
+     */
+    private CompletableFuture<KeySetSnapshot> fetch() {
+        //after a failed fetch, back off for the same interval used for unknown kids instead of hammering the endpoint
+        long lastFailure = lastFetchFailure.get();
+        if (lastFailure != Long.MIN_VALUE && System.currentTimeMillis() - lastFailure < unknownKidRefreshIntervalMillis)
+            return CompletableFuture.completedFuture(snapshot.get());
+        CompletableFuture<KeySetSnapshot> running = inFlightFetch.get();
+        if (running != null)
+            return running;
+        CompletableFuture<KeySetSnapshot> newFetch = new CompletableFuture<>();
+        if (!inFlightFetch.compareAndSet(null, newFetch)) {
+            //another thread started a fetch in the meantime (it may have already completed)
+            running = inFlightFetch.get();
+            return running != null ? running : CompletableFuture.completedFuture(snapshot.get());
+        }
+        try {
+            executor.execute(() -> runFetch(newFetch));
+        } catch (RuntimeException e) {
+            log.error(e.getMessage(), e);
+            inFlightFetch.compareAndSet(newFetch, null);
+            newFetch.complete(null);
+        }
+        return newFetch;
+    }
+
+    private void runFetch(CompletableFuture<KeySetSnapshot> future) {
+        KeySetSnapshot result = null;
+        try {
+            fetchCount.incrementAndGet();
+            JWKSet jwkSet = loader.load(jwksUrl);
+            Map<String, JWK> keysByKid = new HashMap<>();
+            for (JWK jwk : jwkSet.getKeys()) {
+                if (jwk.getKeyID() != null)
+                    keysByKid.put(jwk.getKeyID(), jwk);
+            }
+            result = new KeySetSnapshot(Collections.unmodifiableMap(keysByKid), System.currentTimeMillis());
+            snapshot.set(result);
+            lastFetchFailure.set(Long.MIN_VALUE);
+        } catch (Exception e) {
+            //keep serving the previous key set
+            lastFetchFailure.set(System.currentTimeMillis());
+            log.error("Could not load JWKS from {}: {}", jwksUrl, e.getMessage());
+        } finally {
+            inFlightFetch.compareAndSet(future, null);
+            future.complete(result);
+        }
+    }
+
+    private KeySetSnapshot awaitFetch(CompletableFuture<KeySetSnapshot> future) {
+        try {
+            return future.get(fetchTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            log.warn("Timeout waiting for JWKS from {}", jwksUrl);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+        return snapshot.get();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.jwk.JWK;
+
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @Author Aristide Cittadino
+ * Keeps the JWS signer and verifiers built for the current keys, so they are not rebuilt for every token.
+ * Nimbus signers and verifiers are thread safe, the same instance is shared by all requests.
+ * An entry is rebuilt only when the key (or the algorithm) changes, e.g. after a key rotation.
+ */
+public class JwtCryptoCache {
+    //JWKS endpoints publish a handful of keys, the map is reset if rotations make it grow past this bound
+    static final int MAX_JWK_VERIFIERS = 32;
+
+    private final AtomicReference<Entry<KeyPair, JWSSigner>> signer = new AtomicReference<>();
+    private final AtomicReference<Entry<PublicKey, JWSVerifier>> verifier = new AtomicReference<>();
+    private final Map<JWK, JWSVerifier> jwkVerifiers = new ConcurrentHashMap<>();
+
+    /**
+     * @param algorithm signature algorithm
+     * @param keyPair   current signing key pair
+     * @return signer bound to the given key pair
+     */
+    public JWSSigner getSigner(JWSAlgorithm algorithm, KeyPair keyPair) {
+        Entry<KeyPair, JWSSigner> current = signer.get();
+        if (current != null && current.algorithm.equals(algorithm) && sameKey(current.key.getPrivate(), keyPair.getPrivate()))
+            return current.value;
+        JWSSigner newSigner = JwtSignatureAlgorithms.createSigner(algorithm, keyPair);
+        signer.set(new Entry<>(algorithm, keyPair, newSigner));
+        return newSigner;
+    }
+
+    /**
+     * @param algorithm signature algorithm
+     * @param publicKey current local verification key
+     * @return verifier bound to the given key
+     */
+    public JWSVerifier getVerifier(JWSAlgorithm algorithm, PublicKey publicKey) {
+        Entry<PublicKey, JWSVerifier> current = verifier.get();
+        if (current != null && current.algorithm.equals(algorithm) && sameKey(current.key, publicKey))
+            return current.value;
+        JWSVerifier newVerifier = JwtSignatureAlgorithms.createVerifier(algorithm, publicKey);
+        verifier.set(new Entry<>(algorithm, publicKey, newVerifier));
+        return newVerifier;
+    }
+
+    /**
+     * @param algorithm signature algorithm
+     * @param jwk       public key published on the JWKS URL
+     * @return verifier bound to the given JWK
+     */
+    public JWSVerifier getVerifier(JWSAlgorithm algorithm, JWK jwk) {
+        JWSVerifier cached = jwkVerifiers.get(jwk);
+        if (cached != null && cached.supportedJWSAlgorithms().contains(algorithm))
+            return cached;
+        JWSVerifier newVerifier = JwtSignatureAlgorithms.createVerifier(algorithm, jwk);
+        if (jwkVerifiers.size() >= MAX_JWK_VERIFIERS)
+            jwkVerifiers.clear();
+        jwkVerifiers.put(jwk, newVerifier);
+        return newVerifier;
+    }
+
+    /**
+     * Drops all the cached instances.
+     */
+    public void clear() {
+        signer.set(null);
+        verifier.set(null);
+        jwkVerifiers.clear();
+    }
+
+    //identity check first: EncryptionUtil usually returns the same instances, equals compares the encoded keys
+    private static boolean sameKey(Key cached, Key current) {
+        return cached == current || cached.equals(current);
+    }
+
+    private static final class Entry<K, V> {
+        private final JWSAlgorithm algorithm;
+        private final K key;
+        private final V value;
+
+        Entry(JWSAlgorithm algorithm, K key, V value) {
+            this.algorithm = algorithm;
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -23,18 +23,32 @@ import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * @Author Aristide Cittadino
  * Basic Properties for rest security module. Loaded by default from the main application prop file.
+ * Options are compiled into an immutable snapshot, so the authentication hot path performs no property lookups.
+ * The snapshot is re-read from the application properties at most once per second (or on refresh) and replaced,
+ * notifying the change listeners, only when some option actually changed.
  */
 @FrameworkComponent
 public class JwtSecurityOptionsImpl implements JwtSecurityOptions {
     private static Logger log = LoggerFactory.getLogger(JwtSecurityOptionsImpl.class);
-    private static final String DEBUG_MSG = "getting property Jwt Security Option: {} with Value: {}";
+    private static final long REVALIDATION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
     @Inject
     @Setter
     private ApplicationProperties applicationProperties;
 
+    private final AtomicReference<OptionsSnapshot> snapshot = new AtomicReference<>();
+    private final AtomicLong nextRevalidationNanos = new AtomicLong();
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+
     /**
      * Default false
      *
@@ -42,16 +56,12 @@ public class JwtSecurityOptionsImpl implements JwtSecurityOptions {
      */
     @Override
     public boolean validateJwtWithJwsUrl() {
-        boolean value = applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_VALIDATE_BY_JWS, false);
-        log.debug(DEBUG_MSG, "validateJwtWithJWSUrl", value);
-        return value;
+        return snapshot().validateJwtWithJwsUrl();
     }
 
     @Override
     public String jwtKeyId() {
-        String value = applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_VALIDATE_BY_JWS_KEY_ID, "");
-        log.debug(DEBUG_MSG, "jwtKeyId", value);
-        return value;
+        return snapshot().jwtKeyId();
     }
 
     /**
@@ -61,9 +71,7 @@ public class JwtSecurityOptionsImpl implements JwtSecurityOptions {
      */
     @Override
     public boolean encryptJWTToken() {
-        boolean value = applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_ENCRYPT_JWT_TOKEN, false);
-        log.debug(DEBUG_MSG, "encryptJWTToken", value);
-        return value;
+        return snapshot().encryptJWTToken();
     }
 
     /**
@@ -73,9 +81,7 @@ public class JwtSecurityOptionsImpl implements JwtSecurityOptions {
      */
     @Override
     public String jwsURL() {
-        String value = applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_JWS_URL, "");
-        log.debug(DEBUG_MSG, "jwsURL", value);
-        return value;
+        return snapshot().jwsURL();
     }
 
     /**
@@ -85,16 +91,12 @@ public class JwtSecurityOptionsImpl implements JwtSecurityOptions {
      */
     @Override
     public long jwtTokenDurationMillis() {
-        long value = applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_JWT_DURATION_MILLIS, 3600000l);
-        log.debug(DEBUG_MSG, "jwtTokenDurationMillis", value);
-        return value;
+        return snapshot().jwtTokenDurationMillis();
     }
 
     @Override
     public boolean validateJwt() {
-        boolean validationEnabled = applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_VALIDATION_ENABLED, true);
-        log.debug(DEBUG_MSG, "jwt Validation Enabled", validationEnabled);
-        return validationEnabled;
+        return snapshot().validateJwt();
     }
 
     /**
@@ -104,9 +106,7 @@ public class JwtSecurityOptionsImpl implements JwtSecurityOptions {
      */
     @Override
     public String jwtAudience() {
-        String value = applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_AUDIENCE, "");
-        log.debug(DEBUG_MSG, "jwtAudience", value);
-        return value;
+        return snapshot().jwtAudience();
     }
 
     /**
@@ -116,9 +116,7 @@ public class JwtSecurityOptionsImpl implements JwtSecurityOptions {
      */
     @Override
     public long jwtClockSkewSeconds() {
-        long value = applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_CLOCK_SKEW_SECONDS, JWTConstants.JWT_DEFAULT_CLOCK_SKEW_SECONDS);
-        log.debug(DEBUG_MSG, "jwtClockSkewSeconds", value);
-        return value;
+        return snapshot().jwtClockSkewSeconds();
     }
 
     /**
@@ -128,8 +126,233 @@ public class JwtSecurityOptionsImpl implements JwtSecurityOptions {
      */
     @Override
     public boolean testMode() {
-        boolean value = applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_TEST_MODE, false);
-        log.debug(DEBUG_MSG, "testMode", value);
-        return value;
+        return snapshot().testMode();
+    }
+
+    /**
+     * Default false.
+     *
+     * @return
+     */
+    @Override
+    public boolean verifiedTokenCacheEnabled() {
+        return snapshot().verifiedTokenCacheEnabled();
+    }
+
+    /**
+     * Default 10000 entries.
+     *
+     * @return
+     */
+    @Override
+    public long verifiedTokenCacheMaxSize() {
+        return snapshot().verifiedTokenCacheMaxSize();
+    }
+
+    /**
+     * Default true.
+     *
+     * @return
+     */
+    @Override
+    public boolean rejectedTokenCacheEnabled() {
+        return snapshot().rejectedTokenCacheEnabled();
+    }
+
+    /**
+     * Default 10000 entries.
+     *
+     * @return
+     */
+    @Override
+    public long rejectedTokenCacheMaxSize() {
+        return snapshot().rejectedTokenCacheMaxSize();
+    }
+
+    /**
+     * Default 30 seconds.
+     *
+     * @return
+     */
+    @Override
+    public long rejectedTokenCacheTtlMillis() {
+        return snapshot().rejectedTokenCacheTtlMillis();
+    }
+
+    /**
+     * Default 8192 chars.
+     *
+     * @return
+     */
+    @Override
+    public long jwtMaxTokenLength() {
+        return snapshot().jwtMaxTokenLength();
+    }
+
+    /**
+     * Default 10 minutes.
+     *
+     * @return
+     */
+    @Override
+    public long jwksCacheTtlMillis() {
+        return snapshot().jwksCacheTtlMillis();
+    }
+
+    /**
+     * Default 30 seconds.
+     *
+     * @return
+     */
+    @Override
+    public long jwksUnknownKidRefreshIntervalMillis() {
+        return snapshot().jwksUnknownKidRefreshIntervalMillis();
+    }
+
+    /**
+     * Default 5 seconds.
+     *
+     * @return
+     */
+    @Override
+    public long jwksFetchTimeoutMillis() {
+        return snapshot().jwksFetchTimeoutMillis();
+    }
+
+    /**
+     * Default RS256.
+     *
+     * @return
+     */
+    @Override
+    public String jwtSigningAlgorithm() {
+        return snapshot().jwtSigningAlgorithm();
+    }
+
+    /**
+     * Default empty: only the signing algorithm is accepted.
+     *
+     * @return
+     */
+    @Override
+    public List<String> jwtAllowedAlgorithms() {
+        return snapshot().jwtAllowedAlgorithms();
+    }
+
+    /**
+     * Default empty: the server key pair is used.
+     *
+     * @return
+     */
+    @Override
+    public String jwtSigningKeyAlias() {
+        return snapshot().jwtSigningKeyAlias();
+    }
+
+    @Override
+    public void refresh() {
+        reloadSnapshot();
+    }
+
+    @Override
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    @Override
+    public void removeChangeListener(Runnable listener) {
+        changeListeners.remove(listener);
+    }
+
+    private OptionsSnapshot snapshot() {
+        OptionsSnapshot current = snapshot.get();
+        if (current == null)
+            return reloadSnapshot();
+        long now = System.nanoTime();
+        long nextRevalidation = nextRevalidationNanos.get();
+        //only one thread per interval re-reads the properties, the others keep using the current snapshot
+        if (now - nextRevalidation >= 0 && nextRevalidationNanos.compareAndSet(nextRevalidation, now + REVALIDATION_INTERVAL_NANOS))
+            return reloadSnapshot();
+        return current;
+    }
+
+    private synchronized OptionsSnapshot reloadSnapshot() {
+        OptionsSnapshot current = snapshot.get();
+        OptionsSnapshot loaded = loadSnapshot();
+        nextRevalidationNanos.set(System.nanoTime() + REVALIDATION_INTERVAL_NANOS);
+        if (loaded.equals(current))
+            return current;
+        snapshot.set(loaded);
+        log.debug("Jwt Security Options loaded: {}", loaded);
+        //first load is not a change
+        if (current != null)
+            notifyChange();
+        return loaded;
+    }
+
+    private void notifyChange() {
+        for (Runnable listener : changeListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    private OptionsSnapshot loadSnapshot() {
+        return new OptionsSnapshot(
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_VALIDATE_BY_JWS, false),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_VALIDATE_BY_JWS_KEY_ID, ""),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_ENCRYPT_JWT_TOKEN, false),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_JWS_URL, ""),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_JWT_DURATION_MILLIS, 3600000L),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_VALIDATION_ENABLED, true),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_AUDIENCE, ""),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_CLOCK_SKEW_SECONDS, JWTConstants.JWT_DEFAULT_CLOCK_SKEW_SECONDS),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_TEST_MODE, false),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_VERIFIED_CACHE_ENABLED, JWTConstants.JWT_DEFAULT_VERIFIED_CACHE_ENABLED),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_VERIFIED_CACHE_MAX_SIZE, JWTConstants.JWT_DEFAULT_VERIFIED_CACHE_MAX_SIZE),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_REJECTED_CACHE_ENABLED, JWTConstants.JWT_DEFAULT_REJECTED_CACHE_ENABLED),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_REJECTED_CACHE_MAX_SIZE, JWTConstants.JWT_DEFAULT_REJECTED_CACHE_MAX_SIZE),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_REJECTED_CACHE_TTL_MILLIS, JWTConstants.JWT_DEFAULT_REJECTED_CACHE_TTL_MILLIS),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_MAX_TOKEN_LENGTH, JWTConstants.JWT_DEFAULT_MAX_TOKEN_LENGTH),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_JWKS_CACHE_TTL_MILLIS, JWTConstants.JWT_DEFAULT_JWKS_CACHE_TTL_MILLIS),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_JWKS_UNKNOWN_KID_REFRESH_INTERVAL_MILLIS, JWTConstants.JWT_DEFAULT_JWKS_UNKNOWN_KID_REFRESH_INTERVAL_MILLIS),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_JWKS_FETCH_TIMEOUT_MILLIS, JWTConstants.JWT_DEFAULT_JWKS_FETCH_TIMEOUT_MILLIS),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_SIGNING_ALGORITHM, JWTConstants.JWT_DEFAULT_SIGNING_ALGORITHM),
+                splitList(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_ALLOWED_ALGORITHMS, JWTConstants.JWT_DEFAULT_ALLOWED_ALGORITHMS)),
+                applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_SIGNING_KEY_ALIAS, JWTConstants.JWT_DEFAULT_SIGNING_KEY_ALIAS));
+    }
+
+    private static List<String> splitList(String value) {
+        return Arrays.stream(value.split(",")).map(String::trim).filter(item -> !item.isEmpty()).toList();
+    }
+
+    /**
+     * Immutable view of all the options, published atomically.
+     */
+    private record OptionsSnapshot(
+            boolean validateJwtWithJwsUrl,
+            String jwtKeyId,
+            boolean encryptJWTToken,
+            String jwsURL,
+            long jwtTokenDurationMillis,
+            boolean validateJwt,
+            String jwtAudience,
+            long jwtClockSkewSeconds,
+            boolean testMode,
+            boolean verifiedTokenCacheEnabled,
+            long verifiedTokenCacheMaxSize,
+            boolean rejectedTokenCacheEnabled,
+            long rejectedTokenCacheMaxSize,
+            long rejectedTokenCacheTtlMillis,
+            long jwtMaxTokenLength,
+            long jwksCacheTtlMillis,
+            long jwksUnknownKidRefreshIntervalMillis,
+            long jwksFetchTimeoutMillis,
+            String jwtSigningAlgorithm,
+            List<String> jwtAllowedAlgorithms,
+            String jwtSigningKeyAlias) {
     }
 }
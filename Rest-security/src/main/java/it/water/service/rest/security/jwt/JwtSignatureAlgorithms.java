@@ -0,0 +1,192 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.ECDSASigner;
+import com.nimbusds.jose.crypto.ECDSAVerifier;
+import com.nimbusds.jose.crypto.Ed25519Signer;
+import com.nimbusds.jose.crypto.Ed25519Verifier;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.util.Base64URL;
+import it.water.core.model.exceptions.WaterRuntimeException;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+
+import java.io.IOException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * @Author Aristide Cittadino
+ * Supported JWT signature algorithms and the factories for their signers, verifiers and public JWKs.
+ * Supported algorithms are RS256 (RSA keys), ES256 (EC P-256 keys) and EdDSA (Ed25519 keys).
+ * EdDSA requires Google Tink at runtime (com.google.crypto.tink:tink).
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class JwtSignatureAlgorithms {
+    private static final String ED25519 = "Ed25519";
+
+    /**
+     * Parses a configured algorithm name. "Ed25519" is accepted as an alias of EdDSA.
+     *
+     * @param name algorithm name (RS256, ES256, EdDSA or Ed25519), blank means RS256
+     * @return the algorithm
+     * @throws WaterRuntimeException if the algorithm is not supported
+     */
+    public static JWSAlgorithm parse(String name) {
+        if (name == null || name.isBlank())
+            return JWSAlgorithm.RS256;
+        String trimmed = name.trim();
+        if (JWSAlgorithm.RS256.getName().equalsIgnoreCase(trimmed))
+            return JWSAlgorithm.RS256;
+        if (JWSAlgorithm.ES256.getName().equalsIgnoreCase(trimmed))
+            return JWSAlgorithm.ES256;
+        if (JWSAlgorithm.EdDSA.getName().equalsIgnoreCase(trimmed) || ED25519.equalsIgnoreCase(trimmed))
+            return JWSAlgorithm.EdDSA;
+        throw new WaterRuntimeException("Unsupported JWT signature algorithm: " + name.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * @param names            configured allowed algorithms
+     * @param signingAlgorithm algorithm used for signing, always allowed
+     * @return the allowed algorithms set
+     */
+    public static Set<JWSAlgorithm> parseAllowed(Collection<String> names, JWSAlgorithm signingAlgorithm) {
+        Set<JWSAlgorithm> allowed = new LinkedHashSet<>();
+        allowed.add(signingAlgorithm);
+        if (names != null) {
+            names.stream().filter(name -> name != null && !name.isBlank()).forEach(name -> allowed.add(parse(name)));
+        }
+        return Set.copyOf(allowed);
+    }
+
+    /**
+     * @param algorithm signature algorithm
+     * @param keyPair   key pair whose private key matches the algorithm
+     * @return signer
+     */
+    public static JWSSigner createSigner(JWSAlgorithm algorithm, KeyPair keyPair) {
+        PrivateKey privateKey = keyPair.getPrivate();
+        try {
+            if (JWSAlgorithm.RS256.equals(algorithm) && privateKey instanceof RSAPrivateKey)
+                return new RSASSASigner(privateKey);
+            if (JWSAlgorithm.ES256.equals(algorithm) && privateKey instanceof ECPrivateKey ecPrivateKey)
+                return new ECDSASigner(ecPrivateKey);
+            if (JWSAlgorithm.EdDSA.equals(algorithm) && isEd25519(privateKey))
+                return new Ed25519Signer(toOctetKeyPair(keyPair.getPublic(), privateKey, null));
+        } catch (JOSEException e) {
+            throw new WaterRuntimeException(e.getMessage());
+        }
+        throw new WaterRuntimeException("Signing key " + privateKey.getAlgorithm() + " is not compatible with " + algorithm);
+    }
+
+    /**
+     * @param algorithm signature algorithm
+     * @param publicKey public key matching the algorithm
+     * @return verifier
+     */
+    public static JWSVerifier createVerifier(JWSAlgorithm algorithm, PublicKey publicKey) {
+        try {
+            if (JWSAlgorithm.RS256.equals(algorithm) && publicKey instanceof RSAPublicKey rsaPublicKey)
+                return new RSASSAVerifier(rsaPublicKey);
+            if (JWSAlgorithm.ES256.equals(algorithm) && publicKey instanceof ECPublicKey ecPublicKey && Curve.P_256.equals(Curve.forECParameterSpec(ecPublicKey.getParams())))
+                return new ECDSAVerifier(ecPublicKey);
+            if (JWSAlgorithm.EdDSA.equals(algorithm) && isEd25519(publicKey))
+                return new Ed25519Verifier(toOctetKeyPair(publicKey, null, null));
+        } catch (JOSEException e) {
+            throw new WaterRuntimeException(e.getMessage());
+        }
+        throw new WaterRuntimeException("Verification key " + publicKey.getAlgorithm() + " is not compatible with " + algorithm);
+    }
+
+    /**
+     * @param algorithm signature algorithm
+     * @param jwk       public JWK (e.g. from a JWKS URL) matching the algorithm
+     * @return verifier
+     */
+    public static JWSVerifier createVerifier(JWSAlgorithm algorithm, JWK jwk) {
+        try {
+            if (JWSAlgorithm.RS256.equals(algorithm) && jwk instanceof RSAKey rsaKey)
+                return new RSASSAVerifier(rsaKey);
+            if (JWSAlgorithm.ES256.equals(algorithm) && jwk instanceof ECKey ecKey && Curve.P_256.equals(ecKey.getCurve()))
+                return new ECDSAVerifier(ecKey);
+            if (JWSAlgorithm.EdDSA.equals(algorithm) && jwk instanceof OctetKeyPair okp && Curve.Ed25519.equals(okp.getCurve()))
+                return new Ed25519Verifier(okp.toPublicJWK());
+        } catch (JOSEException e) {
+            throw new WaterRuntimeException(e.getMessage());
+        }
+        throw new WaterRuntimeException("JWK " + jwk.getKeyType() + " is not compatible with " + algorithm);
+    }
+
+    /**
+     * @param algorithm signature algorithm
+     * @param publicKey public key matching the algorithm
+     * @param keyId     key id to publish
+     * @return public JWK
+     */
+    public static JWK toPublicJWK(JWSAlgorithm algorithm, PublicKey publicKey, String keyId) {
+        if (publicKey instanceof RSAPublicKey rsaPublicKey)
+            return new RSAKey.Builder(rsaPublicKey).algorithm(algorithm).keyID(keyId).build();
+        if (publicKey instanceof ECPublicKey ecPublicKey)
+            return new ECKey.Builder(Curve.forECParameterSpec(ecPublicKey.getParams()), ecPublicKey).algorithm(algorithm).keyID(keyId).build();
+        if (isEd25519(publicKey))
+            return new OctetKeyPair.Builder(toOctetKeyPair(publicKey, null, keyId)).algorithm(algorithm).build();
+        throw new WaterRuntimeException("Unsupported public key type: " + publicKey.getAlgorithm());
+    }
+
+    private static boolean isEd25519(java.security.Key key) {
+        return ED25519.equalsIgnoreCase(key.getAlgorithm()) || JWSAlgorithm.EdDSA.getName().equalsIgnoreCase(key.getAlgorithm());
+    }
+
+    /**
+     * Converts JCA Ed25519 keys to an OKP JWK, extracting the raw key bytes from their X.509/PKCS#8 encodings.
+     */
+    private static OctetKeyPair toOctetKeyPair(PublicKey publicKey, PrivateKey privateKey, String keyId) {
+        try {
+            byte[] x = SubjectPublicKeyInfo.getInstance(publicKey.getEncoded()).getPublicKeyData().getBytes();
+            OctetKeyPair.Builder builder = new OctetKeyPair.Builder(Curve.Ed25519, Base64URL.encode(x)).keyID(keyId);
+            if (privateKey != null) {
+                byte[] d = ASN1OctetString.getInstance(PrivateKeyInfo.getInstance(privateKey.getEncoded()).parsePrivateKey()).getOctets();
+                builder.d(Base64URL.encode(d));
+            }
+            return builder.build();
+        } catch (IOException e) {
+            throw new WaterRuntimeException(e.getMessage());
+        }
+    }
+}
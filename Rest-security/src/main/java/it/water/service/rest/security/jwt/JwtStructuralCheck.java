@@ -0,0 +1,68 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+/**
+ * @Author Aristide Cittadino
+ * Allocation free shape check of a compact JWS, run before any base64 decoding or JSON parsing:
+ * bounded length, exactly three non empty segments, base64url alphabet only, and header and payload
+ * both encoding a JSON object (a leading '{' is always encoded as 'e').
+ * Passing the check does not make a token valid, failing it makes it certainly invalid.
+ */
+final class JwtStructuralCheck {
+    private static final boolean[] BASE64_URL = new boolean[128];
+
+    static {
+        for (char c = 'A'; c <= 'Z'; c++)
+            BASE64_URL[c] = true;
+        for (char c = 'a'; c <= 'z'; c++)
+            BASE64_URL[c] = true;
+        for (char c = '0'; c <= '9'; c++)
+            BASE64_URL[c] = true;
+        BASE64_URL['-'] = true;
+        BASE64_URL['_'] = true;
+    }
+
+    private JwtStructuralCheck() {
+    }
+
+    /**
+     * @param token     raw token
+     * @param maxLength maximum accepted length, in chars
+     * @return true if the token has the shape of a compact JWS
+     */
+    static boolean isWellFormed(String token, int maxLength) {
+        int length = token.length();
+        if (length > maxLength)
+            return false;
+        int segmentStart = 0;
+        int dots = 0;
+        for (int i = 0; i < length; i++) {
+            char c = token.charAt(i);
+            if (c == '.') {
+                //empty segment, or a fourth one (JWE tokens have five and are not accepted)
+                if (i == segmentStart || ++dots > 2)
+                    return false;
+                segmentStart = i + 1;
+            } else if (c >= 128 || !BASE64_URL[c]) {
+                return false;
+            } else if (i == segmentStart && dots < 2 && c != 'e') {
+                return false;
+            }
+        }
+        return dots == 2 && segmentStart < length;
+    }
+}
@@ -0,0 +1,500 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import it.water.core.model.exceptions.WaterRuntimeException;
+import it.water.service.rest.api.options.JwtSecurityOptions;
+import it.water.service.rest.api.security.jwt.TokenRevocationStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * @Author Aristide Cittadino
+ * {@link TokenRevocationStore} persisted in a memory-mapped, append-only file, so revocations survive restarts
+ * and bundle reactivations. Checks are served by an in-memory {@link PackedUuidTokenRevocationStore} index,
+ * replayed from the file at startup: isRevoked is as fast as the in-memory stores.
+ * <p>
+ * Record format, after an 8 bytes header (magic, version):
+ * <pre>
+ *   UUID jti:  [type=1][msb 8][lsb 8][exp 8][crc32 4]                 29 bytes
+ *   other jti: [type=2][length 2][utf-8 bytes][exp 8][crc32 4]
+ *   subject:   [type=3][length 2][utf-8 bytes][revoked before 8][crc32 4]
+ * </pre>
+ * Replay stops at the first empty or corrupted record (e.g. a write torn by a crash).
+ * The file is compacted periodically, rewriting only the non expired revocations. Compaction is triggered by
+ * writes and runs in background: the new file is written aside while revocations keep being appended to the
+ * current one, then the records appended meanwhile are copied over and the files are swapped.
+ */
+@Slf4j
+public class MappedFileTokenRevocationStore implements TokenRevocationStore, Closeable {
+    public static final long DEFAULT_COMPACTION_INTERVAL_MILLIS = 60 * 60 * 1000L;
+
+    private static final int MAGIC = 0x5752564b;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final byte TYPE_UUID = 1;
+    private static final byte TYPE_STRING = 2;
+    private static final byte TYPE_SUBJECT = 3;
+    private static final int UUID_RECORD_BYTES = 1 + 16 + 8 + 4;
+    private static final int MIN_MAPPED_BYTES = 64 * 1024;
+    private static final int MAX_KEY_BYTES = 0xffff;
+
+    private final Path file;
+    private final long compactionIntervalMillis;
+    private final PackedUuidTokenRevocationStore index;
+    //guards the current log file and its write position
+    private final ReentrantLock writeLock = new ReentrantLock();
+    //one compaction at a time, never held by request threads
+    private final ReentrantLock compactionLock = new ReentrantLock();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    //null once closed. Guarded by writeLock.
+    private LogFile logFile;
+    private long nextCompactionMillis;
+    //created on the first compaction, shut down on close. Guarded by writeLock.
+    private ExecutorService compactionExecutor;
+
+    public MappedFileTokenRevocationStore(Path file) {
+        this(file, PackedUuidTokenRevocationStore.DEFAULT_MAX_KEYS, DEFAULT_COMPACTION_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param file                     revocation file, created if missing
+     * @param maxKeys                  maximum number of revocations kept in the in-memory index
+     * @param compactionIntervalMillis minimum interval between two compactions
+     */
+    public MappedFileTokenRevocationStore(Path file, int maxKeys, long compactionIntervalMillis) {
+        this.file = file;
+        this.compactionIntervalMillis = compactionIntervalMillis;
+        this.index = new PackedUuidTokenRevocationStore(maxKeys, false);
+        try {
+            openAndReplay();
+        } catch (IOException e) {
+            throw new WaterRuntimeException("Unable to open token revocation file " + file + ": " + e.getMessage());
+        }
+        this.nextCompactionMillis = System.currentTimeMillis() + compactionIntervalMillis;
+    }
+
+    @Override
+    public void revoke(String jti, long expiresAtEpochMillis) {
+        if (jti == null || jti.isBlank())
+            return;
+        long now = System.currentTimeMillis();
+        if (expiresAtEpochMillis <= now)
+            return;
+        writeLock.lock();
+        try {
+            currentLogFile().append(PackedUuidTokenRevocationStore.isCanonicalUuid(jti) ? TYPE_UUID : TYPE_STRING, jti, expiresAtEpochMillis);
+            index.revoke(jti, expiresAtEpochMillis);
+            scheduleCompactionIfNeeded(now);
+        } catch (IOException e) {
+            throw new WaterRuntimeException("Unable to persist token revocation: " + e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void revokeAllForSubject(String subject, long issuedBeforeEpochMillis) {
+        if (subject == null || subject.isBlank())
+            return;
+        writeLock.lock();
+        try {
+            //applied first: a watermark rejected by the index is not persisted
+            index.revokeAllForSubject(subject, issuedBeforeEpochMillis);
+            currentLogFile().append(TYPE_SUBJECT, subject, issuedBeforeEpochMillis);
+            scheduleCompactionIfNeeded(System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new WaterRuntimeException("Unable to persist subject revocation: " + e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isRevoked(String jti) {
+        return index.isRevoked(jti);
+    }
+
+    @Override
+    public void forEachRevoked(ObjLongConsumer<String> consumer) {
+        index.forEachRevoked(consumer);
+    }
+
+    @Override
+    public long getSubjectRevokedBefore(String subject) {
+        return index.getSubjectRevokedBefore(subject);
+    }
+
+    @Override
+    public void forEachSubjectWatermark(ObjLongConsumer<String> consumer) {
+        index.forEachSubjectWatermark(consumer);
+    }
+
+    /**
+     * @param jwtSecurityOptions options providing the token lifetime, which bounds the subject watermarks retention
+     */
+    public void setJwtSecurityOptions(JwtSecurityOptions jwtSecurityOptions) {
+        index.setJwtSecurityOptions(jwtSecurityOptions);
+    }
+
+    /**
+     * Rewrites the file with the non expired revocations and subject watermarks only.
+     * Revocations are not blocked while the new file is written, only while the files are swapped.
+     */
+    public void compact() {
+        compactionLock.lock();
+        try {
+            int compactFrom;
+            writeLock.lock();
+            try {
+                if (logFile == null)
+                    return;
+                //every record before this position is already in the index
+                compactFrom = logFile.writePosition;
+            } finally {
+                writeLock.unlock();
+            }
+            Path compactedPath = file.resolveSibling(file.getFileName() + ".compact");
+            Files.deleteIfExists(compactedPath);
+            LogFile compacted = LogFile.open(compactedPath, MIN_MAPPED_BYTES);
+            try {
+                compacted.writeHeader();
+                writeIndex(compacted);
+                swap(compacted, compactedPath, compactFrom);
+            } finally {
+                compacted.close();
+                Files.deleteIfExists(compactedPath);
+            }
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            throw new WaterRuntimeException("Unable to compact token revocation file " + file + ": " + e.getMessage());
+        } finally {
+            compactionLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of revocations currently held in the index
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return bytes used by the records in the file
+     */
+    public int getFileBytes() {
+        writeLock.lock();
+        try {
+            return logFile != null ? logFile.writePosition : 0;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Flushes the mapped file to disk and releases it. A compaction still running is discarded.
+     */
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            if (compactionExecutor != null) {
+                compactionExecutor.shutdown();
+                compactionExecutor = null;
+            }
+            if (logFile != null) {
+                logFile.force();
+                logFile.close();
+            }
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        } finally {
+            logFile = null;
+            writeLock.unlock();
+        }
+    }
+
+    private LogFile currentLogFile() throws IOException {
+        if (logFile == null)
+            throw new IOException("token revocation file " + file + " is closed");
+        return logFile;
+    }
+
+    private void scheduleCompactionIfNeeded(long now) {
+        if (now < nextCompactionMillis || !compactionScheduled.compareAndSet(false, true))
+            return;
+        nextCompactionMillis = now + compactionIntervalMillis;
+        try {
+            getCompactionExecutor().execute(() -> {
+                try {
+                    compact();
+                } catch (RuntimeException e) {
+                    log.warn("Background compaction of {} failed, retrying on the next interval: {}", file, e.getMessage());
+                } finally {
+                    compactionScheduled.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            compactionScheduled.set(false);
+            log.warn("Unable to schedule the compaction of {}: {}", file, e.getMessage());
+        }
+    }
+
+    private ExecutorService getCompactionExecutor() {
+        if (compactionExecutor == null) {
+            compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "water-revocation-compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return compactionExecutor;
+    }
+
+    private void writeIndex(LogFile compacted) throws IOException {
+        IOException[] failure = new IOException[1];
+        index.forEachRevoked((jti, expiresAt) -> {
+            try {
+                compacted.append(PackedUuidTokenRevocationStore.isCanonicalUuid(jti) ? TYPE_UUID : TYPE_STRING, jti, expiresAt);
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        index.forEachSubjectWatermark((subject, revokedBefore) -> {
+            try {
+                compacted.append(TYPE_SUBJECT, subject, revokedBefore);
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null)
+            throw failure[0];
+    }
+
+    /**
+     * Copies the records appended since the compaction started and replaces the current file with the compacted one.
+     * Records both in the index snapshot and in the copied tail are replayed twice, which is harmless.
+     */
+    private void swap(LogFile compacted, Path compactedPath, int compactFrom) throws IOException {
+        writeLock.lock();
+        try {
+            if (logFile == null)
+                return;
+            compacted.copyRecords(logFile, compactFrom, logFile.writePosition);
+            compacted.force();
+            int compactedPosition = compacted.writePosition;
+            compacted.close();
+            logFile.close();
+            try {
+                Files.move(compactedPath, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                logFile = LogFile.open(file, Math.max(Files.size(file), MIN_MAPPED_BYTES));
+                logFile.writePosition = compactedPosition;
+            } catch (IOException e) {
+                //whichever file is in place holds every revocation: reopen it, writes fail until it is open again
+                logFile = null;
+                openAndReplay();
+                throw e;
+            }
+            nextCompactionMillis = System.currentTimeMillis() + compactionIntervalMillis;
+            log.debug("Token revocation file {} compacted to {} bytes", file, compactedPosition);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void openAndReplay() throws IOException {
+        long existingBytes = Files.exists(file) ? Files.size(file) : 0;
+        logFile = LogFile.open(file, Math.max(existingBytes, MIN_MAPPED_BYTES));
+        if (existingBytes < HEADER_BYTES || logFile.mapped.getInt(0) != MAGIC) {
+            if (existingBytes >= HEADER_BYTES)
+                log.warn("Token revocation file {} has an unknown format, starting from an empty one", file);
+            logFile.writeHeader();
+            return;
+        }
+        replay();
+    }
+
+    private void replay() {
+        long now = System.currentTimeMillis();
+        int position = HEADER_BYTES;
+        int replayed = 0;
+        while (true) {
+            int recordEnd = readRecord(position, now);
+            if (recordEnd < 0)
+                break;
+            position = recordEnd;
+            replayed++;
+        }
+        logFile.writePosition = position;
+        log.debug("Replayed {} token revocation records from {}", replayed, file);
+    }
+
+    /**
+     * @return end position of the record, -1 at the end of the log or on a corrupted record
+     */
+    private int readRecord(int position, long now) {
+        MappedByteBuffer mapped = logFile.mapped;
+        int limit = mapped.capacity();
+        if (position >= limit)
+            return -1;
+        byte type = mapped.get(position);
+        String key;
+        int valuePosition;
+        if (type == TYPE_UUID && position + UUID_RECORD_BYTES <= limit) {
+            key = new UUID(mapped.getLong(position + 1), mapped.getLong(position + 9)).toString();
+            valuePosition = position + 17;
+        } else if ((type == TYPE_STRING || type == TYPE_SUBJECT) && position + 3 <= limit) {
+            int length = mapped.getShort(position + 1) & 0xffff;
+            if (position + 3 + length + 12 > limit)
+                return -1;
+            byte[] bytes = new byte[length];
+            mapped.get(position + 3, bytes);
+            key = new String(bytes, StandardCharsets.UTF_8);
+            valuePosition = position + 3 + length;
+        } else {
+            return -1;
+        }
+        long value = mapped.getLong(valuePosition);
+        int recordEnd = valuePosition + 12;
+        if (logFile.checksum(position, valuePosition + 8) != mapped.getInt(valuePosition + 8)) {
+            log.warn("Corrupted token revocation record at {} in {}, ignoring the rest of the file", position, file);
+            return -1;
+        }
+        if (type == TYPE_SUBJECT)
+            index.revokeAllForSubject(key, value);
+        else if (value > now)
+            index.revoke(key, value);
+        return recordEnd;
+    }
+
+    /**
+     * A mapped log file with its write position. Not thread safe: the live file is guarded by the store write lock,
+     * a file being compacted is used by the compacting thread only.
+     */
+    private static final class LogFile {
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+        private MappedByteBuffer mapped;
+        private int writePosition;
+
+        private LogFile(FileChannel channel, MappedByteBuffer mapped) {
+            this.channel = channel;
+            this.mapped = mapped;
+        }
+
+        static LogFile open(Path path, long bytes) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                return new LogFile(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes));
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        void writeHeader() {
+            mapped.putInt(0, MAGIC);
+            mapped.putInt(4, VERSION);
+            //an empty record marks the end of the log
+            mapped.put(HEADER_BYTES, (byte) 0);
+            writePosition = HEADER_BYTES;
+        }
+
+        void append(byte type, String key, long value) throws IOException {
+            boolean uuid = type == TYPE_UUID;
+            byte[] bytes = uuid ? null : key.getBytes(StandardCharsets.UTF_8);
+            if (bytes != null && bytes.length > MAX_KEY_BYTES)
+                throw new IOException("jti or subject too long");
+            int recordBytes = uuid ? UUID_RECORD_BYTES : 1 + 2 + bytes.length + 8 + 4;
+            //room for the record plus the empty end marker
+            ensureCapacity(writePosition + recordBytes + 1);
+            int position = writePosition;
+            int valuePosition;
+            if (uuid) {
+                UUID parsed = UUID.fromString(key);
+                mapped.putLong(position + 1, parsed.getMostSignificantBits());
+                mapped.putLong(position + 9, parsed.getLeastSignificantBits());
+                valuePosition = position + 17;
+            } else {
+                mapped.putShort(position + 1, (short) bytes.length);
+                mapped.put(position + 3, bytes);
+                valuePosition = position + 3 + bytes.length;
+            }
+            mapped.putLong(valuePosition, value);
+            //end marker first: a record is never followed by stale bytes read as valid records
+            mapped.put(position + recordBytes, (byte) 0);
+            mapped.put(position, type);
+            mapped.putInt(valuePosition + 8, checksum(position, valuePosition + 8));
+            writePosition = position + recordBytes;
+        }
+
+        /**
+         * Appends the records found between the given positions of another log, as they are:
+         * checksums do not depend on the record position.
+         */
+        void copyRecords(LogFile source, int from, int to) throws IOException {
+            int length = to - from;
+            if (length <= 0)
+                return;
+            ensureCapacity(writePosition + length + 1);
+            mapped.put(writePosition + length, (byte) 0);
+            mapped.put(writePosition, source.mapped, from, length);
+            writePosition += length;
+        }
+
+        int checksum(int from, int to) {
+            crc.reset();
+            crc.update(mapped.slice(from, to - from));
+            return (int) crc.getValue();
+        }
+
+        void force() {
+            mapped.force();
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+
+        private void ensureCapacity(int bytes) throws IOException {
+            if (bytes <= mapped.capacity())
+                return;
+            long newSize = Math.max(bytes, (long) mapped.capacity() * 2);
+            if (newSize > Integer.MAX_VALUE)
+                throw new IOException("Token revocation file too large, compaction required");
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, newSize);
+        }
+    }
+}
@@ -16,15 +16,13 @@
 package it.water.service.rest.security.jwt;
 
 import com.nimbusds.jose.*;
-import com.nimbusds.jose.crypto.RSASSASigner;
-import com.nimbusds.jose.crypto.RSASSAVerifier;
 import com.nimbusds.jose.jwk.JWK;
-import com.nimbusds.jose.jwk.JWKSet;
-import com.nimbusds.jose.jwk.RSAKey;
 import com.nimbusds.jwt.JWT;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.JWTParser;
 import com.nimbusds.jwt.SignedJWT;
+import it.water.core.api.bundle.ApplicationProperties;
+import it.water.core.api.interceptors.OnDeactivate;
 import it.water.core.api.security.Authenticable;
 import it.water.core.api.security.EncryptionUtil;
 import it.water.core.interceptors.annotations.FrameworkComponent;
@@ -34,19 +32,24 @@ import it.water.core.security.model.principal.RolePrincipal;
 import it.water.service.rest.api.options.JwtSecurityOptions;
 import it.water.service.rest.api.security.jwt.JwtTokenService;
 import it.water.service.rest.api.security.jwt.TokenRevocationStore;
+import it.water.service.rest.api.security.jwt.VerifiedJwtToken;
 import lombok.Setter;
 import org.bouncycastle.util.encoders.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.URL;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.security.Principal;
-import java.security.interfaces.RSAPrivateKey;
-import java.security.interfaces.RSAPublicKey;
+import java.security.*;
+import java.security.cert.Certificate;
 import java.text.ParseException;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @Author Aristide Cittadino
@@ -55,6 +58,10 @@ import java.util.*;
 @FrameworkComponent
 public class NimbusJwtTokenService implements JwtTokenService {
     private static Logger log = LoggerFactory.getLogger(NimbusJwtTokenService.class);
+    //bulk issuance runs on a bounded pool, when the queue is full the caller signs the token itself
+    private static final int ISSUE_QUEUE_SIZE = 1024;
+    //token rejections are expected under attack: a few warnings per interval, stack traces only at debug
+    private static final RateLimitedLog rejectionLog = new RateLimitedLog(log, 10, 60_000L);
     @Inject
     @Setter
     private EncryptionUtil encryptionUtil;
@@ -67,21 +74,34 @@ public class NimbusJwtTokenService implements JwtTokenService {
     @Setter
     private TokenRevocationStore tokenRevocationStore;
 
-    //simple thread-safe cache of the JWKS public key, keyed by the JWKS URL it was loaded from.
-    //avoids hitting the JWKS endpoint on every validation. Refreshed automatically if the URL changes.
-    //url and key are published together as a single immutable holder, so a reader can never see a key
-    //paired with the wrong URL.
-    private final java.util.concurrent.atomic.AtomicReference<JwksCacheEntry> jwksCache = new java.util.concurrent.atomic.AtomicReference<>();
+    //used only to load a dedicated signing key from the server keystore
+    @Inject
+    @Setter
+    private ApplicationProperties applicationProperties;
 
-    private static final class JwksCacheEntry {
-        private final String url;
-        private final RSAPublicKey key;
+    //signing key pair loaded from the keystore, keyed by its alias
+    private final AtomicReference<KeystoreKeyPair> keystoreKeyPair = new AtomicReference<>();
 
-        JwksCacheEntry(String url, RSAPublicKey key) {
-            this.url = url;
-            this.key = key;
-        }
-    }
+    //cache of the keys published on the JWKS URL, indexed by kid and refreshed in background.
+    //it is bound to the URL it loads from and replaced when the configured URL changes.
+    private final AtomicReference<JwksKeyCache> jwksKeyCache = new AtomicReference<>();
+    //runs the JWKS fetches, created with the first cache and shut down on deactivation
+    private ExecutorService jwksRefreshExecutor;
+
+    //signing and allowed algorithms parsed from the options
+    private final AtomicReference<AlgorithmSettings> algorithmSettings = new AtomicReference<>();
+
+    //signer and verifiers built once per key, rebuilt only when the key changes
+    private final JwtCryptoCache cryptoCache = new JwtCryptoCache();
+
+    //bulk issuance pool, created on the first bulk issuance and shut down on deactivation
+    private ExecutorService issueExecutor;
+
+    //opt-in cache of successful verifications, created lazily when enabled
+    private volatile VerifiedTokenCache verifiedTokenCache;
+
+    //cache of recent rejections, created lazily when enabled
+    private volatile RejectedTokenCache rejectedTokenCache;
 
     /**
      * Generates jwt token from an authenticable.
@@ -98,6 +118,48 @@ public class NimbusJwtTokenService implements JwtTokenService {
         return signedJWT.serialize();
     }
 
+    /**
+     * Signs the tokens in parallel on a bounded executor, tokens are returned in the authenticables order.
+     *
+     * @param authenticables authenticables to issue tokens for
+     * @return generated tokens
+     */
+    @Override
+    public List<String> generateJwtTokens(Collection<? extends Authenticable> authenticables) {
+        if (authenticables.size() <= 1)
+            return JwtTokenService.super.generateJwtTokens(authenticables);
+        List<CompletableFuture<String>> futures = new ArrayList<>(authenticables.size());
+        Executor executor = getIssueExecutor();
+        authenticables.forEach(authenticable -> futures.add(CompletableFuture.supplyAsync(() -> generateJwtToken(authenticable), executor)));
+        List<String> tokens = new ArrayList<>(futures.size());
+        try {
+            futures.forEach(future -> tokens.add(future.join()));
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(false));
+            if (e.getCause() instanceof WaterRuntimeException waterRuntimeException)
+                throw waterRuntimeException;
+            throw new WaterRuntimeException(e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+        }
+        return tokens;
+    }
+
+    /**
+     * Stops the bulk issuance and the JWKS refresh threads, the tokens being signed are completed.
+     * The JWKS keys are fetched again if the service is reactivated.
+     */
+    @OnDeactivate
+    public synchronized void onDeactivate() {
+        if (issueExecutor != null) {
+            issueExecutor.shutdown();
+            issueExecutor = null;
+        }
+        jwksKeyCache.set(null);
+        if (jwksRefreshExecutor != null) {
+            jwksRefreshExecutor.shutdown();
+            jwksRefreshExecutor = null;
+        }
+    }
+
     /**
      * Validates the JWT Token from the inner key or from the JWS URL depending on property:
      * it.water.service.rest.security.jwt.validate.by.jws
@@ -107,64 +169,220 @@ public class NimbusJwtTokenService implements JwtTokenService {
      */
     @Override
     public boolean validateToken(List<String> validIssuers, String jwtStr) {
-        if (jwtStr == null || jwtStr.isBlank())
-            return false;
+        return verifyToken(validIssuers, jwtStr).isPresent();
+    }
+
+    /**
+     * Parses and verifies the token only once: signature, expiration, not-before, issuer, audience and revocation
+     * are all checked on the same parsed token and principals are built from the same claims.
+     *
+     * @param validIssuers list of valid issuers
+     * @param jwtStr       raw (signed) JWT string
+     * @return the verified token, or empty if the token is not valid
+     */
+    @Override
+    public Optional<VerifiedJwtToken> verifyToken(List<String> validIssuers, String jwtStr) {
+        if (!isWellFormed(jwtStr))
+            return Optional.empty();
+        VerifiedTokenCache cache = getVerifiedTokenCache();
+        RejectedTokenCache rejectedCache = getRejectedTokenCache();
+        //one digest shared by both caches
+        TokenDigest digest = cache != null || rejectedCache != null ? TokenDigest.of(jwtStr) : null;
+        long now = Instant.now().toEpochMilli();
+        if (rejectedCache != null && rejectedCache.isRejected(digest, now))
+            return Optional.empty();
+        if (cache != null) {
+            //cache hit skips parsing and signature verification, issuer, audience, revocation and the JWKS key are always re-checked
+            VerifiedJwtToken cached = cache.get(digest, now, this::isJwksKeyStillPublished);
+            if (cached != null)
+                return validateIssuers(validIssuers, cached.getIssuer()) && validateAudience(validIssuers, cached.getAudience()) && !isRevoked(cached.getJwtId(), cached.getSubject(), cached.getIssuedAtMillis()) ? Optional.of(cached) : Optional.empty();
+        }
         try {
             SignedJWT signedJWT = SignedJWT.parse(jwtStr);
-            return verifySignature(jwtStr) && validateIssuers(validIssuers, signedJWT) && validateAudience(validIssuers, signedJWT) && !isRevoked(signedJWT);
+            JWTClaimsSet claimsSet = signedJWT.getJWTClaimsSet();
+            SignatureVerification verification = verifySignature(signedJWT, claimsSet);
+            SignatureCheck signatureCheck = verification.check;
+            //issuer and audience depend on the caller: their failures are not remembered
+            if (signatureCheck == SignatureCheck.INVALID || signatureCheck == SignatureCheck.VALID && isRevoked(claimsSet.getJWTID(), claimsSet.getSubject(), claimsSet.getIssueTime())) {
+                rememberRejection(rejectedCache, digest, now);
+            } else if (signatureCheck == SignatureCheck.VALID && validateIssuers(validIssuers, claimsSet.getIssuer()) && validateAudience(validIssuers, claimsSet.getAudience())) {
+                VerifiedJwtToken verifiedToken = toVerifiedToken(claimsSet);
+                if (cache != null)
+                    cache.put(digest, verifiedToken, verification.jwksKey);
+                return Optional.of(verifiedToken);
+            }
         } catch (ParseException e) {
-            return false;
+            log.debug("Unparseable JWT token: {}", e.getMessage());
+            rememberRejection(rejectedCache, digest, now);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return the verified token cache, or null when disabled by water.rest.security.jwt.verified.cache.enabled.
+     * The cache is created lazily with the configured max size and exposes its hit/miss/eviction counters.
+     */
+    public VerifiedTokenCache getVerifiedTokenCache() {
+        if (jwtSecurityOptions == null || !jwtSecurityOptions.verifiedTokenCacheEnabled())
+            return null;
+        VerifiedTokenCache cache = verifiedTokenCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = verifiedTokenCache;
+                if (cache == null) {
+                    long maxSize = jwtSecurityOptions.verifiedTokenCacheMaxSize();
+                    if (maxSize <= 0)
+                        maxSize = JWTConstants.JWT_DEFAULT_VERIFIED_CACHE_MAX_SIZE;
+                    cache = new VerifiedTokenCache((int) Math.min(maxSize, Integer.MAX_VALUE));
+                    //verifications done with previous options (keys, algorithms) must not be served anymore
+                    jwtSecurityOptions.addChangeListener(cache::invalidateAll);
+                    verifiedTokenCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @return the rejected token cache, or null when disabled by water.rest.security.jwt.rejected.cache.enabled.
+     * The cache is created lazily with the configured max size and ttl and exposes its counters.
+     */
+    public RejectedTokenCache getRejectedTokenCache() {
+        if (jwtSecurityOptions == null || !jwtSecurityOptions.rejectedTokenCacheEnabled())
+            return null;
+        RejectedTokenCache cache = rejectedTokenCache;
+        if (cache == null) {
+            synchronized (this) {
+                cache = rejectedTokenCache;
+                if (cache == null) {
+                    long maxSize = positiveOrDefault(jwtSecurityOptions.rejectedTokenCacheMaxSize(), JWTConstants.JWT_DEFAULT_REJECTED_CACHE_MAX_SIZE);
+                    long ttlMillis = positiveOrDefault(jwtSecurityOptions.rejectedTokenCacheTtlMillis(), JWTConstants.JWT_DEFAULT_REJECTED_CACHE_TTL_MILLIS);
+                    cache = new RejectedTokenCache((int) Math.min(maxSize, Integer.MAX_VALUE), ttlMillis);
+                    //a token rejected with the previous keys or algorithms may be valid now
+                    jwtSecurityOptions.addChangeListener(cache::invalidateAll);
+                    rejectedTokenCache = cache;
+                }
+            }
         }
+        return cache;
+    }
+
+    private void rememberRejection(RejectedTokenCache rejectedCache, TokenDigest digest, long nowMillis) {
+        if (rejectedCache != null)
+            rejectedCache.reject(digest, nowMillis);
     }
 
     /**
-     * Checks the revocation denylist by jti. A token without a jti (e.g. legacy) is treated as
-     * not-revoked so validation does not NPE on it.
+     * Cheap structural check run before any parsing, see {@link JwtStructuralCheck}.
      *
-     * @param signedJWT parsed token
-     * @return true if the token's jti is present in the revocation store
+     * @param jwtStr raw token
+     * @return true if the token may be a valid compact JWS
+     */
+    private boolean isWellFormed(String jwtStr) {
+        if (jwtStr == null || jwtStr.isBlank())
+            return false;
+        long maxLength = jwtSecurityOptions != null ? positiveOrDefault(jwtSecurityOptions.jwtMaxTokenLength(), JWTConstants.JWT_DEFAULT_MAX_TOKEN_LENGTH) : JWTConstants.JWT_DEFAULT_MAX_TOKEN_LENGTH;
+        if (JwtStructuralCheck.isWellFormed(jwtStr, (int) Math.min(maxLength, Integer.MAX_VALUE)))
+            return true;
+        log.debug("Malformed JWT token rejected before parsing, length {}", jwtStr.length());
+        return false;
+    }
+
+    private boolean isRevoked(String jti, String subject, Date issueTime) {
+        return isRevoked(jti, subject, issueTime != null ? issueTime.getTime() : 0L);
+    }
+
+    /**
+     * Checks the revocation denylist by jti and the subject watermark by issued-at. A token without a jti
+     * (e.g. legacy) is treated as not-revoked by jti so validation does not NPE on it.
+     * A token without iat is revoked by any subject watermark.
+     *
+     * @param jti            token id
+     * @param subject        token subject
+     * @param issuedAtMillis token issued-at in epoch millis, 0 if absent
+     * @return true if the token's jti is present in the revocation store or the token was issued before its subject watermark
      */
-    private boolean isRevoked(SignedJWT signedJWT) {
+    private boolean isRevoked(String jti, String subject, long issuedAtMillis) {
         if (tokenRevocationStore == null)
             return false;
+        if (jti != null && tokenRevocationStore.isRevoked(jti))
+            return true;
+        if (subject == null)
+            return false;
+        //iat is truncated to the second: every token issued in the watermark second is revoked, also the ones issued after it
+        long revokedBefore = tokenRevocationStore.getSubjectRevokedBefore(subject);
+        return revokedBefore > 0 && issuedAtMillis < revokedBefore;
+    }
+
+    /**
+     * A cached verification done with a JWKS key is served only while that same key is published:
+     * a key removed from the JWKS, replaced under the same kid or missing after a JWKS URL change
+     * invalidates the tokens it verified.
+     *
+     * @param verificationKey key the cached token was verified with
+     * @return true if the key is still published on the configured JWKS URL
+     */
+    private boolean isJwksKeyStillPublished(JWK verificationKey) {
         try {
-            String jti = signedJWT.getJWTClaimsSet().getJWTID();
-            return jti != null && tokenRevocationStore.isRevoked(jti);
-        } catch (ParseException e) {
-            log.error(e.getMessage(), e);
+            return jwtSecurityOptions.validateJwtWithJwsUrl() && verificationKey.equals(retrievePublicKeyFromJWSUrl(verificationKey.getKeyID()));
+        } catch (RuntimeException e) {
+            log.debug("Unable to check JWKS key {}: {}", verificationKey.getKeyID(), e.getMessage());
             return false;
         }
     }
 
-    private boolean verifySignature(String jwtStr) {
+    /**
+     * Verifies algorithm, signature, expiration and not-before.
+     *
+     * @param signedJWT parsed token
+     * @param claimsSet parsed token claims
+     * @return INVALID when the token can never become valid, RETRYABLE when it could later
+     * (not yet valid, verification key not available, signature checked against a key the token does not name)
+     */
+    private SignatureCheck checkSignature(SignedJWT signedJWT, JWTClaimsSet claimsSet) {
+        return verifySignature(signedJWT, claimsSet).check;
+    }
+
+    /**
+     * @param signedJWT parsed token
+     * @param claimsSet parsed token claims
+     * @return outcome of {@link #checkSignature(SignedJWT, JWTClaimsSet)} with the JWKS key used, if any
+     */
+    private SignatureVerification verifySignature(SignedJWT signedJWT, JWTClaimsSet claimsSet) {
+        JWK publicKey = null;
         try {
-            RSAPublicKey publicKey = null;
-            boolean verified = false;
+            //algorithm pinning: only the configured algorithms (RS256 by default) are accepted on the verify path.
+            //This rejects "alg" downgrade/confusion attacks (e.g. forged "none" or HS256 headers) before any
+            //cryptographic verification is attempted (and before any JWKS fetch).
+            JWSAlgorithm algorithm = signedJWT.getHeader().getAlgorithm();
+            if (!getAllowedAlgorithms().contains(algorithm)) {
+                rejectionLog.warn("Rejecting JWT: unexpected signing algorithm {}", algorithm);
+                return new SignatureVerification(SignatureCheck.INVALID, null);
+            }
+            JWSVerifier verifier = null;
+            boolean keyNamedByToken = true;
             if (jwtSecurityOptions.validateJwtWithJwsUrl()) {
-                String keyId = jwtSecurityOptions.jwtKeyId();
+                String headerKeyId = signedJWT.getHeader().getKeyID();
+                String keyId = toJwksKeyId(headerKeyId);
                 publicKey = retrievePublicKeyFromJWSUrl(keyId);
                 if (publicKey == null)
-                    throw new WaterRuntimeException("No Public Key found matching {} Key ID" + keyId);
+                    throw new WaterRuntimeException("No Public Key found matching Key ID " + keyId);
+                verifier = cryptoCache.getVerifier(algorithm, publicKey);
+                keyNamedByToken = headerKeyId != null;
             } else {
-                publicKey = (RSAPublicKey) encryptionUtil.getServerKeyPair().getPublic();
-            }
-            SignedJWT signedJWT = getSignedJWTToken(jwtStr);
-            if (signedJWT != null) {
-                //algorithm pinning: only RS256 is accepted on the verify path. This rejects "alg"
-                //downgrade/confusion attacks (e.g. forged "none" or HS256 headers) before any
-                //cryptographic verification is attempted.
-                if (!JWSAlgorithm.RS256.equals(signedJWT.getHeader().getAlgorithm())) {
-                    log.warn("Rejecting JWT: unexpected signing algorithm {}", signedJWT.getHeader().getAlgorithm());
-                    return false;
-                }
-                JWSVerifier verifier = new RSASSAVerifier(publicKey);
-                verified = signedJWT.verify(verifier) && validateExpiration(signedJWT) && validateNotBefore(signedJWT);
-                return verified;
+                verifier = cryptoCache.getVerifier(algorithm, getSigningKeyPair().getPublic());
             }
+            //a mismatch against the configured key id, used for tokens without kid, may be fixed by a key rotation
+            if (!signedJWT.verify(verifier))
+                return new SignatureVerification(keyNamedByToken ? SignatureCheck.INVALID : SignatureCheck.RETRYABLE, publicKey);
+            if (!validateExpiration(claimsSet))
+                return new SignatureVerification(SignatureCheck.INVALID, publicKey);
+            return new SignatureVerification(validateNotBefore(claimsSet) ? SignatureCheck.VALID : SignatureCheck.RETRYABLE, publicKey);
         } catch (Exception e) {
-            log.error(e.getMessage(), e);
+            rejectionLog.warn("Rejecting JWT: {}", e.getMessage());
+            log.debug(e.getMessage(), e);
         }
-        return false;
+        return new SignatureVerification(SignatureCheck.RETRYABLE, publicKey);
     }
 
     /**
@@ -172,21 +390,16 @@ public class NimbusJwtTokenService implements JwtTokenService {
      * configured clock-skew leeway) is rejected. A token without nbf (e.g. legacy) is accepted
      * so validation never NPEs and stays backward compatible.
      *
-     * @param jwtToken parsed token
+     * @param claimsSet parsed token claims
      * @return true if the token is not used before its nbf time
      */
-    private boolean validateNotBefore(SignedJWT jwtToken) {
-        try {
-            Date notBefore = jwtToken.getJWTClaimsSet().getNotBeforeTime();
-            if (notBefore == null)
-                return true; //legacy token without nbf: do not reject on nbf alone
-            long skewMillis = jwtSecurityOptions.jwtClockSkewSeconds() * 1000L;
-            long nowWithSkew = Instant.now().toEpochMilli() + skewMillis;
-            return notBefore.getTime() <= nowWithSkew;
-        } catch (ParseException e) {
-            log.error(e.getMessage(), e);
-            return false;
-        }
+    private boolean validateNotBefore(JWTClaimsSet claimsSet) {
+        Date notBefore = claimsSet.getNotBeforeTime();
+        if (notBefore == null)
+            return true; //legacy token without nbf: do not reject on nbf alone
+        long skewMillis = jwtSecurityOptions.jwtClockSkewSeconds() * 1000L;
+        long nowWithSkew = Instant.now().toEpochMilli() + skewMillis;
+        return notBefore.getTime() <= nowWithSkew;
     }
 
     /**
@@ -200,53 +413,37 @@ public class NimbusJwtTokenService implements JwtTokenService {
      * </ul>
      *
      * @param validIssuers list of valid issuers (used as the default expected audience set)
-     * @param jwtToken     parsed token
+     * @param audience     token audience
      * @return true if the audience is acceptable
      */
-    private boolean validateAudience(List<String> validIssuers, SignedJWT jwtToken) {
-        try {
-            List<String> audience = jwtToken.getJWTClaimsSet().getAudience();
-            if (audience == null || audience.isEmpty()) {
-                //legacy token without aud: accept so pre-existing tokens keep working
-                return true;
-            }
-            String configured = jwtSecurityOptions.jwtAudience();
-            if (configured != null && !configured.isBlank())
-                return audience.contains(configured);
-            //default audience equals the issuer: accept when aud intersects the valid issuers
-            return validIssuers != null && !Collections.disjoint(audience, validIssuers);
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
-            return false;
+    private boolean validateAudience(List<String> validIssuers, List<String> audience) {
+        if (audience == null || audience.isEmpty()) {
+            //legacy token without aud: accept so pre-existing tokens keep working
+            return true;
         }
+        String configured = jwtSecurityOptions.jwtAudience();
+        if (configured != null && !configured.isBlank())
+            return audience.contains(configured);
+        //default audience equals the issuer: accept when aud intersects the valid issuers
+        return validIssuers != null && !Collections.disjoint(audience, validIssuers);
     }
 
     /**
      * @param validIssuers list of valid possible issuers
-     * @param jwtToken
+     * @param issuer       token issuer
      * @return
      */
-    private boolean validateIssuers(List<String> validIssuers, SignedJWT jwtToken) {
-        try {
-            return validIssuers.contains(jwtToken.getJWTClaimsSet().getIssuer());
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
-        }
-        return false;
+    private boolean validateIssuers(List<String> validIssuers, String issuer) {
+        return validIssuers != null && validIssuers.contains(issuer);
     }
 
     /**
-     * @param jwtToken
+     * @param claimsSet parsed token claims
      * @return true if token is still valid
      */
-    private boolean validateExpiration(SignedJWT jwtToken) {
-        try {
-            Date expirationTime = jwtToken.getJWTClaimsSet().getExpirationTime();
-            return !expirationTime.before(new Date(Instant.now().toEpochMilli()));
-        } catch (ParseException e) {
-            log.error(e.getMessage(), e);
-            return false;
-        }
+    private boolean validateExpiration(JWTClaimsSet claimsSet) {
+        Date expirationTime = claimsSet.getExpirationTime();
+        return expirationTime != null && !expirationTime.before(new Date(Instant.now().toEpochMilli()));
     }
 
     /**
@@ -256,35 +453,71 @@ public class NimbusJwtTokenService implements JwtTokenService {
      * @return
      */
     @Override
-    @SuppressWarnings("unchecked")
     public Set<Principal> getPrincipals(String jwtTokenStr) {
-        if (!verifySignature(jwtTokenStr))
+        if (!isWellFormed(jwtTokenStr))
             return Collections.emptySet();
-
+        RejectedTokenCache rejectedCache = getRejectedTokenCache();
+        TokenDigest digest = rejectedCache != null ? TokenDigest.of(jwtTokenStr) : null;
+        long now = Instant.now().toEpochMilli();
+        if (rejectedCache != null && rejectedCache.isRejected(digest, now))
+            return Collections.emptySet();
+        SignedJWT jwtToken = getSignedJWTToken(jwtTokenStr);
+        if (jwtToken == null) {
+            rememberRejection(rejectedCache, digest, now);
+            return Collections.emptySet();
+        }
         try {
-            Set<Principal> principals = new HashSet<>();
-            SignedJWT jwtToken = getSignedJWTToken(jwtTokenStr);
-            if (jwtToken != null) {
-                JWTClaimsSet claimsSet = jwtToken.getJWTClaimsSet();
-                List<String> rolesNames = (List<String>) claimsSet.getClaim(JWTConstants.JWT_CLAIM_ROLES);
-                String user = claimsSet.getSubject();
-                boolean isAdmin = claimsSet.getBooleanClaim(JWTConstants.JWT_CLAIM_IS_ADMIN);
-                long loggedEntityId = claimsSet.getLongClaim(JWTConstants.JWT_CLAIM_LOGGED_ENTITY_ID);
-                Long companyId = claimsSet.getLongClaim(JWTConstants.JWT_CLAIM_COMPANY_ID);
-                String impersonatedBy = claimsSet.getStringClaim(JWTConstants.JWT_CLAIM_IMPERSONATED_BY);
-                if (rolesNames != null && !rolesNames.isEmpty())
-                    rolesNames.forEach(role -> principals.add(new RolePrincipal(role)));
-                if (user != null && !user.isBlank()) {
-                    principals.add(new it.water.core.security.model.principal.UserPrincipal(user, isAdmin, loggedEntityId, claimsSet.getSubject(), companyId, impersonatedBy));
-                }
-                return principals;
-            }
+            JWTClaimsSet claimsSet = jwtToken.getJWTClaimsSet();
+            SignatureCheck signatureCheck = checkSignature(jwtToken, claimsSet);
+            if (signatureCheck == SignatureCheck.VALID)
+                return buildPrincipals(claimsSet);
+            if (signatureCheck == SignatureCheck.INVALID)
+                rememberRejection(rejectedCache, digest, now);
         } catch (Exception e) {
-            log.error(e.getMessage(), e);
+            rejectionLog.warn("Rejecting JWT: {}", e.getMessage());
+            log.debug(e.getMessage(), e);
         }
         return Collections.emptySet();
     }
 
+    /**
+     * Builds user and role principals from already verified claims.
+     * Missing isAdmin/loggedEntityId claims are treated as false/0 instead of failing on unboxing.
+     *
+     * @param claimsSet verified token claims
+     * @return principals
+     * @throws ParseException if a claim has an unexpected type
+     */
+    private Set<Principal> buildPrincipals(JWTClaimsSet claimsSet) throws ParseException {
+        Set<Principal> principals = new HashSet<>();
+        Object rolesClaim = claimsSet.getClaim(JWTConstants.JWT_CLAIM_ROLES);
+        String user = claimsSet.getSubject();
+        Boolean isAdmin = claimsSet.getBooleanClaim(JWTConstants.JWT_CLAIM_IS_ADMIN);
+        Long loggedEntityId = claimsSet.getLongClaim(JWTConstants.JWT_CLAIM_LOGGED_ENTITY_ID);
+        Long companyId = claimsSet.getLongClaim(JWTConstants.JWT_CLAIM_COMPANY_ID);
+        String impersonatedBy = claimsSet.getStringClaim(JWTConstants.JWT_CLAIM_IMPERSONATED_BY);
+        if (rolesClaim instanceof Collection<?> rolesNames)
+            rolesNames.forEach(role -> principals.add(new RolePrincipal(String.valueOf(role))));
+        if (user != null && !user.isBlank()) {
+            principals.add(new it.water.core.security.model.principal.UserPrincipal(user, Boolean.TRUE.equals(isAdmin), loggedEntityId != null ? loggedEntityId : 0L, user, companyId, impersonatedBy));
+        }
+        return principals;
+    }
+
+    /**
+     * @param claimsSet verified token claims
+     * @return immutable verified token
+     * @throws ParseException if a claim has an unexpected type
+     */
+    private VerifiedJwtToken toVerifiedToken(JWTClaimsSet claimsSet) throws ParseException {
+        Date issueTime = claimsSet.getIssueTime();
+        Date expirationTime = claimsSet.getExpirationTime();
+        return new VerifiedJwtToken(claimsSet.getSubject(), claimsSet.getIssuer(), claimsSet.getAudience(), claimsSet.getJWTID(),
+                issueTime != null ? issueTime.getTime() : 0L,
+                expirationTime != null ? expirationTime.getTime() : Long.MAX_VALUE,
+                buildPrincipals(claimsSet), claimsSet.getClaims());
+    }
+
     /**
      * Revokes a raw token by extracting its jti and expiration and storing them in the revocation
      * denylist until natural expiry. Idempotent and safe: unparseable tokens or tokens with no jti
@@ -315,10 +548,7 @@ public class NimbusJwtTokenService implements JwtTokenService {
 
     @Override
     public String getJWK() {
-        JWK jwk = new RSAKey.Builder((RSAPublicKey) encryptionUtil.getServerKeyPair().getPublic())
-                .algorithm(JWSAlgorithm.RS256)
-                .keyID(jwtSecurityOptions.jwtKeyId())
-                .build();
+        JWK jwk = JwtSignatureAlgorithms.toPublicJWK(getSigningAlgorithm(), getSigningKeyPair().getPublic(), jwtSecurityOptions.jwtKeyId());
         return jwk.toPublicJWK().toJSONString();
     }
 
@@ -329,13 +559,13 @@ public class NimbusJwtTokenService implements JwtTokenService {
      * @return
      */
     private SignedJWT generateSignedJWT(Authenticable authenticable) {
-        RSAPrivateKey privateKey = (RSAPrivateKey) encryptionUtil.getServerKeyPair().getPrivate();
+        JWSAlgorithm algorithm = getSigningAlgorithm();
         JWTClaimsSet jwtClaimsSet = generateClaims(authenticable);
-        JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.RS256)
+        JWSHeader header = new JWSHeader.Builder(algorithm)
                 .keyID(getKeyId())
                 .build();
         SignedJWT signedJWT = new SignedJWT(header, jwtClaimsSet);
-        JWSSigner signer = new RSASSASigner(privateKey);
+        JWSSigner signer = cryptoCache.getSigner(algorithm, getSigningKeyPair());
         try {
             signedJWT.sign(signer);
         } catch (JOSEException e) {
@@ -344,6 +574,73 @@ public class NimbusJwtTokenService implements JwtTokenService {
         return signedJWT;
     }
 
+    /**
+     * @return configured signing algorithm, RS256 by default
+     */
+    private JWSAlgorithm getSigningAlgorithm() {
+        return getAlgorithmSettings().signingAlgorithm;
+    }
+
+    /**
+     * @return algorithms accepted on validation: the signing algorithm plus the configured allowed ones
+     */
+    private Set<JWSAlgorithm> getAllowedAlgorithms() {
+        return getAlgorithmSettings().allowedAlgorithms;
+    }
+
+    /**
+     * Algorithms are parsed again only when the configured values change: options return the same instances
+     * until they are reloaded, so the check is usually an identity comparison.
+     */
+    private AlgorithmSettings getAlgorithmSettings() {
+        String signingAlgorithmName = jwtSecurityOptions.jwtSigningAlgorithm();
+        List<String> allowedAlgorithmNames = jwtSecurityOptions.jwtAllowedAlgorithms();
+        AlgorithmSettings current = algorithmSettings.get();
+        if (current != null && current.matches(signingAlgorithmName, allowedAlgorithmNames))
+            return current;
+        JWSAlgorithm signingAlgorithm = JwtSignatureAlgorithms.parse(signingAlgorithmName);
+        AlgorithmSettings settings = new AlgorithmSettings(signingAlgorithmName, allowedAlgorithmNames, signingAlgorithm, JwtSignatureAlgorithms.parseAllowed(allowedAlgorithmNames, signingAlgorithm));
+        algorithmSettings.set(settings);
+        return settings;
+    }
+
+    /**
+     * Signing key material: the server key pair from EncryptionUtil or, when water.rest.security.jwt.signing.key.alias
+     * is set, the dedicated entry of the server keystore.
+     *
+     * @return signing key pair
+     */
+    private KeyPair getSigningKeyPair() {
+        String alias = jwtSecurityOptions.jwtSigningKeyAlias();
+        if (alias == null || alias.isBlank())
+            return encryptionUtil.getServerKeyPair();
+        KeystoreKeyPair cached = keystoreKeyPair.get();
+        if (cached != null && cached.alias.equals(alias))
+            return cached.keyPair;
+        KeyPair keyPair = loadKeyPairFromKeystore(alias);
+        keystoreKeyPair.set(new KeystoreKeyPair(alias, keyPair));
+        return keyPair;
+    }
+
+    private KeyPair loadKeyPairFromKeystore(String alias) {
+        if (applicationProperties == null)
+            throw new WaterRuntimeException("Application properties not available, cannot load JWT signing key " + alias);
+        String keystoreFile = applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_KEYSTORE_FILE, "");
+        String keystorePassword = applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_KEYSTORE_PASSWORD, "");
+        String keyPassword = applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_PRIVATE_KEY_PASSWORD, keystorePassword);
+        try (InputStream keystoreStream = new FileInputStream(keystoreFile)) {
+            KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keyStore.load(keystoreStream, keystorePassword.toCharArray());
+            Key privateKey = keyStore.getKey(alias, keyPassword.toCharArray());
+            Certificate certificate = keyStore.getCertificate(alias);
+            if (!(privateKey instanceof PrivateKey) || certificate == null)
+                throw new WaterRuntimeException("No key pair found in keystore for JWT signing key alias: " + alias);
+            return new KeyPair(certificate.getPublicKey(), (PrivateKey) privateKey);
+        } catch (IOException | GeneralSecurityException e) {
+            throw new WaterRuntimeException("Unable to load JWT signing key " + alias + ": " + e.getMessage());
+        }
+    }
+
     /**
      * Generates claims from the authenticable
      *
@@ -409,43 +706,53 @@ public class NimbusJwtTokenService implements JwtTokenService {
                 return signedJWT;
             }
         } catch (Exception e) {
-            log.error(e.getMessage(), e);
+            rejectionLog.warn("Unparseable JWT token: {}", e.getMessage());
+            log.debug(e.getMessage(), e);
         }
         return null;
     }
 
     /**
-     * Retrieve jwt token from the configured jws url from property: it.water.service.rest.security.jwt.jws.url
-     * <p>
-     * //@param signedJWT
+     * Retrieve the public key from the configured jws url from property: it.water.service.rest.security.jwt.jws.url
+     * Keys are served from the JWKS cache, which never blocks on the identity provider once warm.
      *
-     * @return
+     * @param keyId kid from the token header or, when the token has none, the key id configured with
+     *              water.service.rest.security.jwt.validate.by.jws.key.id
+     * @return the published key, null if the kid is unknown
      */
-    private RSAPublicKey retrievePublicKeyFromJWSUrl(String keyId) {
+    private JWK retrievePublicKeyFromJWSUrl(String keyId) {
         String jwsUrl = jwtSecurityOptions.jwsURL();
         //enforce https for the JWKS endpoint so the public key cannot be swapped by a network MITM.
         //plaintext http is only tolerated in test mode (spring/localhost test runners).
         enforceHttpsJwksUrl(jwsUrl);
-        //serve from cache when the URL is unchanged: avoids hitting the JWKS endpoint on every validation
-        JwksCacheEntry cached = jwksCache.get();
-        if (cached != null && jwsUrl != null && jwsUrl.equals(cached.url)) {
-            return cached.key;
-        }
-        try {
-            URL jwksURL = new URL(jwsUrl);
-            JWKSet jwkSet = JWKSet.load(jwksURL);
-            // Find the JWK that matches the 'kid' from the JWS token's header
-            JWK matchingKey = jwkSet.getKeyByKeyId(keyId);
-            if (matchingKey != null) {
-                RSAPublicKey publicKey = matchingKey.toRSAKey().toRSAPublicKey();
-                //publish url and key together as one immutable holder
-                jwksCache.set(new JwksCacheEntry(jwsUrl, publicKey));
-                return publicKey;
-            }
-        } catch (Exception e) {
-            log.error(e.getMessage(), e);
+        if (jwsUrl == null || jwsUrl.isBlank())
+            return null;
+        return getJwksKeyCache(jwsUrl).getKey(keyId);
+    }
+
+    private JwksKeyCache getJwksKeyCache(String jwsUrl) {
+        JwksKeyCache cache = jwksKeyCache.get();
+        if (cache != null && cache.getJwksUrl().equals(jwsUrl))
+            return cache;
+        JwksKeyCache newCache = new JwksKeyCache(jwsUrl,
+                positiveOrDefault(jwtSecurityOptions.jwksCacheTtlMillis(), JWTConstants.JWT_DEFAULT_JWKS_CACHE_TTL_MILLIS),
+                positiveOrDefault(jwtSecurityOptions.jwksUnknownKidRefreshIntervalMillis(), JWTConstants.JWT_DEFAULT_JWKS_UNKNOWN_KID_REFRESH_INTERVAL_MILLIS),
+                positiveOrDefault(jwtSecurityOptions.jwksFetchTimeoutMillis(), JWTConstants.JWT_DEFAULT_JWKS_FETCH_TIMEOUT_MILLIS),
+                getJwksRefreshExecutor());
+        //the url changed (or first use): the new cache replaces the old one, concurrent callers converge on the winner
+        if (jwksKeyCache.compareAndSet(cache, newCache)) {
+            //verifications done with keys of the previous url must not be served anymore
+            VerifiedTokenCache verifiedCache = verifiedTokenCache;
+            if (cache != null && verifiedCache != null)
+                verifiedCache.invalidateAll();
+            return newCache;
         }
-        return null;
+        JwksKeyCache winner = jwksKeyCache.get();
+        return winner != null ? winner : newCache;
+    }
+
+    private long positiveOrDefault(long value, long defaultValue) {
+        return value > 0 ? value : defaultValue;
     }
 
     /**
@@ -473,4 +780,99 @@ public class NimbusJwtTokenService implements JwtTokenService {
     private String getKeyId() {
         return Hex.toHexString(jwtSecurityOptions.jwtKeyId().getBytes(StandardCharsets.UTF_8));
     }
+
+    /**
+     * Maps the token header kid to the kid published on the JWKS URL.
+     * Tokens issued by Water carry the hex form of the configured key id (see {@link #getKeyId()}) while
+     * {@link #getJWK()} publishes the configured key id itself, so both resolve to the configured key id.
+     * The configured key id is also used for tokens not naming their key.
+     *
+     * @param headerKeyId kid from the token header, may be null
+     * @return kid to look up on the JWKS URL
+     */
+    private String toJwksKeyId(String headerKeyId) {
+        String configuredKeyId = jwtSecurityOptions.jwtKeyId();
+        if (headerKeyId == null || (configuredKeyId != null && headerKeyId.equals(getKeyId())))
+            return configuredKeyId;
+        return headerKeyId;
+    }
+
+    private enum SignatureCheck {
+        VALID,
+        //can never become valid: safe to remember the rejection
+        INVALID,
+        //may become valid later, e.g. before nbf or while the JWKS key is not available
+        RETRYABLE
+    }
+
+    private static final class SignatureVerification {
+        private final SignatureCheck check;
+        //JWKS key the signature was checked with, null with the local key
+        private final JWK jwksKey;
+
+        SignatureVerification(SignatureCheck check, JWK jwksKey) {
+            this.check = check;
+            this.jwksKey = jwksKey;
+        }
+    }
+
+    private static final class AlgorithmSettings {
+        private final String signingAlgorithmName;
+        private final List<String> allowedAlgorithmNames;
+        private final JWSAlgorithm signingAlgorithm;
+        private final Set<JWSAlgorithm> allowedAlgorithms;
+
+        AlgorithmSettings(String signingAlgorithmName, List<String> allowedAlgorithmNames, JWSAlgorithm signingAlgorithm, Set<JWSAlgorithm> allowedAlgorithms) {
+            this.signingAlgorithmName = signingAlgorithmName;
+            this.allowedAlgorithmNames = allowedAlgorithmNames;
+            this.signingAlgorithm = signingAlgorithm;
+            this.allowedAlgorithms = allowedAlgorithms;
+        }
+
+        boolean matches(String signingAlgorithmName, List<String> allowedAlgorithmNames) {
+            return (this.signingAlgorithmName == signingAlgorithmName || Objects.equals(this.signingAlgorithmName, signingAlgorithmName))
+                    && (this.allowedAlgorithmNames == allowedAlgorithmNames || Objects.equals(this.allowedAlgorithmNames, allowedAlgorithmNames));
+        }
+    }
+
+    private static final class KeystoreKeyPair {
+        private final String alias;
+        private final KeyPair keyPair;
+
+        KeystoreKeyPair(String alias, KeyPair keyPair) {
+            this.alias = alias;
+            this.keyPair = keyPair;
+        }
+    }
+
+    private synchronized ExecutorService getJwksRefreshExecutor() {
+        if (jwksRefreshExecutor == null) {
+            jwksRefreshExecutor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "water-jwks-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return jwksRefreshExecutor;
+    }
+
+    private synchronized ExecutorService getIssueExecutor() {
+        if (issueExecutor == null)
+            issueExecutor = createIssueExecutor();
+        return issueExecutor;
+    }
+
+    private static ExecutorService createIssueExecutor() {
+        int threads = Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        //a rejected task is run by the caller, also when the pool has been shut down meanwhile
+        RejectedExecutionHandler callerRuns = (runnable, pool) -> runnable.run();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(ISSUE_QUEUE_SIZE), runnable -> {
+            Thread thread = new Thread(runnable, "water-jwt-issuer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, callerRuns);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 }
@@ -0,0 +1,383 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import it.water.service.rest.api.options.JwtSecurityOptions;
+import it.water.service.rest.api.security.jwt.TokenRevocationStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * @Author Aristide Cittadino
+ * Memory-compact {@link TokenRevocationStore} for large denylists.
+ * Tokens issued by NimbusJwtTokenService always carry a UUID jti: those are stored as two longs plus
+ * the expiry long (24 bytes per slot) in an open-addressing, linear-probing primitive table, optionally
+ * allocated off-heap so a large denylist adds no GC pressure. Non-UUID jti (e.g. from other issuers)
+ * fall back to an {@link InMemoryTokenRevocationStore}, which also keeps the subject watermarks.
+ * <p>
+ * Reads use optimistic stamps and never block. Expired entries are swept incrementally on writes,
+ * above the cap the soonest-to-expire entry among a small sample is evicted.
+ * The store is not registered by default: register it as TokenRevocationStore component with a higher
+ * priority to replace the default in-memory one.
+ */
+@Slf4j
+public class PackedUuidTokenRevocationStore implements TokenRevocationStore {
+    public static final int DEFAULT_MAX_KEYS = 1_000_000;
+
+    private static final int SLOT_LONGS = 3;
+    private static final int MIN_CAPACITY = 1024;
+    //slots examined by the incremental sweep on each write
+    private static final int SWEEP_STEP = 8;
+    //occupied slots compared when an entry must be evicted to respect the cap
+    private static final int EVICTION_SAMPLE = 8;
+    private static final int UUID_LENGTH = 36;
+
+    private final int maxKeys;
+    private final boolean offHeap;
+    private final InMemoryTokenRevocationStore fallback;
+    private final StampedLock lock = new StampedLock();
+
+    //slot i: [msb, lsb, expiresAt], expiresAt == 0 marks an empty slot. Replaced (not mutated) on resize.
+    private LongBuffer table;
+    private int capacity;
+    private int size;
+    private int sweepCursor;
+
+    public PackedUuidTokenRevocationStore() {
+        this(DEFAULT_MAX_KEYS, false);
+    }
+
+    /**
+     * @param maxKeys maximum number of tracked UUID jti (the fallback store keeps its own cap)
+     * @param offHeap true to allocate the table in direct memory
+     */
+    public PackedUuidTokenRevocationStore(int maxKeys, boolean offHeap) {
+        if (maxKeys <= 0)
+            throw new IllegalArgumentException("maxKeys must be greater than zero");
+        this.maxKeys = maxKeys;
+        this.offHeap = offHeap;
+        this.fallback = new InMemoryTokenRevocationStore();
+        this.capacity = MIN_CAPACITY;
+        this.table = allocate(capacity);
+    }
+
+    @Override
+    public void revoke(String jti, long expiresAtEpochMillis) {
+        if (jti == null || jti.isBlank())
+            return;
+        long now = System.currentTimeMillis();
+        if (expiresAtEpochMillis <= now)
+            return;
+        if (!isCanonicalUuid(jti)) {
+            fallback.revoke(jti, expiresAtEpochMillis);
+            return;
+        }
+        long msb = parseHex(jti, 0, 8) << 32 | parseHex(jti, 9, 13) << 16 | parseHex(jti, 14, 18);
+        long lsb = parseHex(jti, 19, 23) << 48 | parseHex(jti, 24, 36);
+        long stamp = lock.writeLock();
+        try {
+            sweep(now);
+            put(msb, lsb, expiresAtEpochMillis, now);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean isRevoked(String jti) {
+        if (jti == null)
+            return false;
+        if (!isCanonicalUuid(jti))
+            return fallback.isRevoked(jti);
+        long msb = parseHex(jti, 0, 8) << 32 | parseHex(jti, 9, 13) << 16 | parseHex(jti, 14, 18);
+        long lsb = parseHex(jti, 19, 23) << 48 | parseHex(jti, 24, 36);
+        long stamp = lock.tryOptimisticRead();
+        long expiresAt = lookup(msb, lsb);
+        if (!lock.validate(stamp)) {
+            //a write happened meanwhile, read again under the shared lock
+            stamp = lock.readLock();
+            try {
+                expiresAt = lookup(msb, lsb);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        //expired entries are treated as absent and dropped by the sweep
+        return expiresAt > System.currentTimeMillis();
+    }
+
+    @Override
+    public void forEachRevoked(ObjLongConsumer<String> consumer) {
+        long now = System.currentTimeMillis();
+        long stamp = lock.readLock();
+        try {
+            for (int slot = 0; slot < capacity; slot++) {
+                long expiresAt = table.get(slot * SLOT_LONGS + 2);
+                if (expiresAt > now)
+                    consumer.accept(new UUID(table.get(slot * SLOT_LONGS), table.get(slot * SLOT_LONGS + 1)).toString(), expiresAt);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        fallback.forEachRevoked(consumer);
+    }
+
+    @Override
+    public void revokeAllForSubject(String subject, long issuedBeforeEpochMillis) {
+        fallback.revokeAllForSubject(subject, issuedBeforeEpochMillis);
+    }
+
+    @Override
+    public long getSubjectRevokedBefore(String subject) {
+        return fallback.getSubjectRevokedBefore(subject);
+    }
+
+    @Override
+    public void forEachSubjectWatermark(ObjLongConsumer<String> consumer) {
+        fallback.forEachSubjectWatermark(consumer);
+    }
+
+    /**
+     * @param jwtSecurityOptions options providing the token lifetime, which bounds the subject watermarks retention
+     */
+    public void setJwtSecurityOptions(JwtSecurityOptions jwtSecurityOptions) {
+        fallback.setJwtSecurityOptions(jwtSecurityOptions);
+    }
+
+    /**
+     * @return number of tracked jti, including the ones not yet swept after their expiry
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size + fallback.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return bytes allocated by the primitive table
+     */
+    public long getTableBytes() {
+        long stamp = lock.readLock();
+        try {
+            return (long) capacity * SLOT_LONGS * Long.BYTES;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private long lookup(long msb, long lsb) {
+        //local copies: a concurrent resize replaces both, the stamp validation discards torn reads
+        LongBuffer currentTable = table;
+        int mask = currentTable.capacity() / SLOT_LONGS - 1;
+        int slot = hash(msb, lsb) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            int base = slot * SLOT_LONGS;
+            long expiresAt = currentTable.get(base + 2);
+            if (expiresAt == 0)
+                return 0;
+            if (currentTable.get(base) == msb && currentTable.get(base + 1) == lsb)
+                return expiresAt;
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    private void put(long msb, long lsb, long expiresAt, long now) {
+        int mask = capacity - 1;
+        int slot = hash(msb, lsb) & mask;
+        while (true) {
+            int base = slot * SLOT_LONGS;
+            long current = table.get(base + 2);
+            if (current == 0)
+                break;
+            if (table.get(base) == msb && table.get(base + 1) == lsb) {
+                table.put(base + 2, Math.max(current, expiresAt));
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size >= maxKeys) {
+            evictOne(now);
+            //the eviction may have shifted entries into the free slot found above
+            put(msb, lsb, expiresAt, now);
+            return;
+        }
+        int base = slot * SLOT_LONGS;
+        table.put(base, msb);
+        table.put(base + 1, lsb);
+        table.put(base + 2, expiresAt);
+        size++;
+        //linear probing keeps short chains up to half full
+        if (size * 2 > capacity)
+            resize(capacity * 2);
+    }
+
+    /**
+     * Incremental sweep: a few slots per write, so expiry costs amortized O(1) without full scans.
+     */
+    private void sweep(long now) {
+        for (int i = 0; i < SWEEP_STEP && size > 0; i++) {
+            int slot = sweepCursor & (capacity - 1);
+            long expiresAt = table.get(slot * SLOT_LONGS + 2);
+            if (expiresAt != 0 && expiresAt <= now)
+                //backward shift may move another entry here: the slot is examined again
+                removeAt(slot);
+            else
+                sweepCursor = slot + 1;
+        }
+    }
+
+    /**
+     * Evicts the soonest-to-expire entry among a sample of occupied slots.
+     */
+    private void evictOne(long now) {
+        int victim = -1;
+        long victimExpiry = Long.MAX_VALUE;
+        int sampled = 0;
+        int slot = sweepCursor & (capacity - 1);
+        for (int scanned = 0; scanned < capacity && sampled < EVICTION_SAMPLE; scanned++) {
+            long expiresAt = table.get(slot * SLOT_LONGS + 2);
+            if (expiresAt != 0) {
+                sampled++;
+                if (expiresAt < victimExpiry) {
+                    victim = slot;
+                    victimExpiry = expiresAt;
+                }
+                if (expiresAt <= now)
+                    break;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+        sweepCursor = slot + 1;
+        if (victim >= 0) {
+            removeAt(victim);
+            if (victimExpiry > now)
+                log.warn("Token revocation store exceeded {} keys; evicted a soonest-to-expire entry", maxKeys);
+        }
+    }
+
+    /**
+     * Removes a slot with backward-shift deletion, so lookups never need tombstones.
+     */
+    private void removeAt(int slot) {
+        int mask = capacity - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (table.get(next * SLOT_LONGS + 2) != 0) {
+            int home = hash(table.get(next * SLOT_LONGS), table.get(next * SLOT_LONGS + 1)) & mask;
+            //the entry can fill the hole only if its home slot is not cyclically in (hole, next]
+            boolean canMove = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (canMove) {
+                copySlot(next, hole);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        int base = hole * SLOT_LONGS;
+        table.put(base, 0);
+        table.put(base + 1, 0);
+        table.put(base + 2, 0);
+        size--;
+    }
+
+    private void copySlot(int from, int to) {
+        for (int i = 0; i < SLOT_LONGS; i++)
+            table.put(to * SLOT_LONGS + i, table.get(from * SLOT_LONGS + i));
+    }
+
+    private void resize(int newCapacity) {
+        LongBuffer oldTable = table;
+        int oldCapacity = capacity;
+        LongBuffer newTable = allocate(newCapacity);
+        int mask = newCapacity - 1;
+        long now = System.currentTimeMillis();
+        int newSize = 0;
+        for (int i = 0; i < oldCapacity; i++) {
+            long expiresAt = oldTable.get(i * SLOT_LONGS + 2);
+            //expired entries are not copied
+            if (expiresAt != 0 && expiresAt > now) {
+                long msb = oldTable.get(i * SLOT_LONGS);
+                long lsb = oldTable.get(i * SLOT_LONGS + 1);
+                int slot = hash(msb, lsb) & mask;
+                while (newTable.get(slot * SLOT_LONGS + 2) != 0)
+                    slot = (slot + 1) & mask;
+                newTable.put(slot * SLOT_LONGS, msb);
+                newTable.put(slot * SLOT_LONGS + 1, lsb);
+                newTable.put(slot * SLOT_LONGS + 2, expiresAt);
+                newSize++;
+            }
+        }
+        table = newTable;
+        capacity = newCapacity;
+        size = newSize;
+        sweepCursor = 0;
+    }
+
+    private LongBuffer allocate(int slots) {
+        int longs = slots * SLOT_LONGS;
+        if (offHeap)
+            return ByteBuffer.allocateDirect(longs * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+        return LongBuffer.allocate(longs);
+    }
+
+    private static int hash(long msb, long lsb) {
+        //murmur3 finalizer: UUIDs are random but their version/variant bits are not
+        long h = msb ^ Long.rotateLeft(lsb, 32);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * Only the canonical lowercase form produced by UUID.toString is packed, so two different jti
+     * strings never map to the same key.
+     */
+    static boolean isCanonicalUuid(String jti) {
+        if (jti.length() != UUID_LENGTH)
+            return false;
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = jti.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-')
+                    return false;
+            } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseHex(String value, int from, int to) {
+        long result = 0;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            result = result << 4 | (c <= '9' ? c - '0' : c - 'a' + 10);
+        }
+        return result;
+    }
+}
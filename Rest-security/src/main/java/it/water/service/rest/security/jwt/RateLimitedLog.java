@@ -0,0 +1,81 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author Aristide Cittadino
+ * Warning log allowing at most a fixed number of messages per interval. Messages beyond it are only counted,
+ * and the count is reported by the first message of the next interval, so a flood of invalid requests
+ * cannot fill the disk or keep the appender busy.
+ */
+public class RateLimitedLog {
+    private final Logger log;
+    private final int maxMessagesPerInterval;
+    private final long intervalMillis;
+    private final AtomicLong intervalStartMillis = new AtomicLong();
+    private final AtomicInteger messagesInInterval = new AtomicInteger();
+    private final LongAdder suppressed = new LongAdder();
+    private final LongAdder totalSuppressed = new LongAdder();
+
+    /**
+     * @param log                    target logger
+     * @param maxMessagesPerInterval messages logged per interval, the others are suppressed
+     * @param intervalMillis         interval length
+     */
+    public RateLimitedLog(Logger log, int maxMessagesPerInterval, long intervalMillis) {
+        this.log = log;
+        this.maxMessagesPerInterval = maxMessagesPerInterval;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Logs a warning, unless the messages of the current interval are exhausted.
+     *
+     * @param format slf4j message format
+     * @param args   message arguments
+     */
+    public void warn(String format, Object... args) {
+        if (!log.isWarnEnabled())
+            return;
+        long now = System.currentTimeMillis();
+        long start = intervalStartMillis.get();
+        if (now - start >= intervalMillis && intervalStartMillis.compareAndSet(start, now)) {
+            messagesInInterval.set(0);
+            long previouslySuppressed = suppressed.sumThenReset();
+            if (previouslySuppressed > 0)
+                log.warn("{} similar messages suppressed in the last {} ms", previouslySuppressed, now - start);
+        }
+        if (messagesInInterval.incrementAndGet() > maxMessagesPerInterval) {
+            suppressed.increment();
+            totalSuppressed.increment();
+            return;
+        }
+        log.warn(format, args);
+    }
+
+    /**
+     * @return messages suppressed since creation
+     */
+    public long getSuppressedCount() {
+        return totalSuppressed.sum();
+    }
+}
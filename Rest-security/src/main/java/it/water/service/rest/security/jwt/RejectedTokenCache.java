@@ -0,0 +1,197 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author Aristide Cittadino
+ * Short lived, bounded cache of recently rejected tokens, keyed by the SHA-256 digest of the raw token.
+ * A token replayed during a flood is rejected with one digest and one map lookup, without parsing it
+ * or verifying its signature again.
+ * <p>
+ * Only rejections that cannot turn into a success are cached: unparseable tokens, bad signatures,
+ * disallowed algorithms, expired and revoked tokens. Entries live for a fixed time to live, so segments
+ * are insertion ordered and the eldest entry is always the first to expire.
+ */
+public class RejectedTokenCache {
+    public static final int DEFAULT_STRIPES = 16;
+
+    private final Segment[] segments;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxEntries maximum number of remembered rejections (approximate, enforced per stripe)
+     * @param ttlMillis  how long a rejection is remembered
+     */
+    public RejectedTokenCache(int maxEntries, long ttlMillis) {
+        if (maxEntries <= 0 || ttlMillis <= 0)
+            throw new IllegalArgumentException("maxEntries and ttlMillis must be greater than zero");
+        int segmentsCount = Integer.highestOneBit(Math.max(1, Math.min(DEFAULT_STRIPES, maxEntries)) * 2 - 1);
+        int segmentCapacity = (maxEntries + segmentsCount - 1) / segmentsCount;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.segments = new Segment[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++)
+            this.segments[i] = new Segment(segmentCapacity);
+    }
+
+    /**
+     * @param rawToken  raw JWT string
+     * @param nowMillis current time in epoch millis
+     * @return true if the token was rejected less than ttl millis ago
+     */
+    public boolean isRejected(String rawToken, long nowMillis) {
+        return isRejected(TokenDigest.of(rawToken), nowMillis);
+    }
+
+    boolean isRejected(TokenDigest key, long nowMillis) {
+        boolean rejected = segmentFor(key).contains(key, nowMillis);
+        if (rejected)
+            hits.increment();
+        return rejected;
+    }
+
+    /**
+     * @param rawToken  rejected raw JWT string
+     * @param nowMillis current time in epoch millis
+     */
+    public void reject(String rawToken, long nowMillis) {
+        reject(TokenDigest.of(rawToken), nowMillis);
+    }
+
+    void reject(TokenDigest key, long nowMillis) {
+        rejections.increment();
+        segmentFor(key).put(key, nowMillis + ttlMillis);
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments)
+            segment.clear();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    /**
+     * @return tokens rejected straight from the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return rejections added to the cache
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * @return number of entries removed because of the size bound or because their ttl elapsed
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private Segment segmentFor(TokenDigest key) {
+        return segments[key.stripeHash() & (segments.length - 1)];
+    }
+
+    /**
+     * Insertion ordered segment guarded by its own lock, values are the entry expiry in epoch millis.
+     */
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<TokenDigest, Long> entries;
+
+        Segment(int capacity) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<TokenDigest, Long> eldest) {
+                    boolean evict = size() > capacity;
+                    if (evict)
+                        evictions.increment();
+                    return evict;
+                }
+            };
+        }
+
+        boolean contains(TokenDigest key, long nowMillis) {
+            lock.lock();
+            try {
+                Long expiresAt = entries.get(key);
+                if (expiresAt == null)
+                    return false;
+                if (expiresAt > nowMillis)
+                    return true;
+                entries.remove(key);
+                evictions.increment();
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(TokenDigest key, long expiresAt) {
+            lock.lock();
+            try {
+                //re-inserted at the tail, keeping the segment ordered by expiry
+                entries.remove(key);
+                entries.put(key, expiresAt);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                entries.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
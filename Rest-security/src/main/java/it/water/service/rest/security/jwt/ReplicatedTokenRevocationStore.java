@@ -0,0 +1,230 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import it.water.service.rest.api.security.jwt.RevocationFeed;
+import it.water.service.rest.api.security.jwt.RevocationFeedEntry;
+import it.water.service.rest.api.security.jwt.RevocationFeedPage;
+import it.water.service.rest.api.security.jwt.TokenRevocationStore;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * @Author Aristide Cittadino
+ * {@link TokenRevocationStore} decorator publishing the local revocations as a {@link RevocationFeed}:
+ * every revoke and subject revocation is appended to an ordered log with a strictly increasing sequence number,
+ * so the other nodes pull only what they have not applied yet (see {@link RevocationFeedReplicator}).
+ * <p>
+ * Revocations received from peers are applied with {@link #applyReplicated(RevocationFeedEntry)} and are not
+ * logged again, so nodes pulling from each other never echo entries back. Checks go straight to the backing store.
+ * The log is bounded: entries of expired tokens are dropped periodically and, above the cap, the oldest entries go first.
+ * The store is not registered by default: register it as TokenRevocationStore component to use it, it must be
+ * the outermost decorator so the SecurityStatusApi finds the feed. A {@link BloomFilterTokenRevocationStore} goes
+ * below it, so replicated revocations reach the filter too: use {@link #withBloomFilter(TokenRevocationStore)}.
+ * Each peer is then pulled by a {@link RevocationFeedReplicator} started on this store.
+ */
+@Slf4j
+public class ReplicatedTokenRevocationStore implements TokenRevocationStore, RevocationFeed {
+    public static final int DEFAULT_MAX_LOG_ENTRIES = 100_000;
+    private static final long LOG_COMPACTION_INTERVAL_MILLIS = 60_000L;
+
+    private final TokenRevocationStore delegate;
+    private final int maxLogEntries;
+    //a new id on each instance: sequence numbers restart with the node
+    private final String feedId = UUID.randomUUID().toString();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    //entries in sequence order, the ones before head have been trimmed. Guarded by lock.
+    private List<RevocationFeedEntry> entries = new ArrayList<>();
+    private int head;
+    private long lastSequence;
+    //highest sequence dropped by the cap (not by expiry): readers behind it missed live entries
+    private long trimmedSequence;
+    private long nextCompactionMillis;
+
+    public ReplicatedTokenRevocationStore(TokenRevocationStore delegate) {
+        this(delegate, DEFAULT_MAX_LOG_ENTRIES);
+    }
+
+    /**
+     * Builds the replicated store with a bloom filter front, stacked in the only supported order:
+     * replicated, then bloom filter, then the backing store.
+     *
+     * @param backing backing store
+     * @return store to register as TokenRevocationStore component
+     */
+    public static ReplicatedTokenRevocationStore withBloomFilter(TokenRevocationStore backing) {
+        return new ReplicatedTokenRevocationStore(new BloomFilterTokenRevocationStore(backing));
+    }
+
+    /**
+     * @param delegate      backing store
+     * @param maxLogEntries maximum number of entries kept in the feed
+     */
+    public ReplicatedTokenRevocationStore(TokenRevocationStore delegate, int maxLogEntries) {
+        if (maxLogEntries <= 0)
+            throw new IllegalArgumentException("maxLogEntries must be greater than zero");
+        if (delegate instanceof RevocationFeed)
+            throw new IllegalArgumentException("The replicated store must be the outermost revocation store");
+        this.delegate = delegate;
+        this.maxLogEntries = maxLogEntries;
+        this.nextCompactionMillis = System.currentTimeMillis() + LOG_COMPACTION_INTERVAL_MILLIS;
+    }
+
+    @Override
+    public void revoke(String jti, long expiresAtEpochMillis) {
+        if (jti == null || jti.isBlank() || expiresAtEpochMillis <= System.currentTimeMillis())
+            return;
+        delegate.revoke(jti, expiresAtEpochMillis);
+        append(RevocationFeedEntry.Type.TOKEN, jti, expiresAtEpochMillis);
+    }
+
+    @Override
+    public boolean isRevoked(String jti) {
+        return delegate.isRevoked(jti);
+    }
+
+    @Override
+    public void forEachRevoked(ObjLongConsumer<String> consumer) {
+        delegate.forEachRevoked(consumer);
+    }
+
+    @Override
+    public void revokeAllForSubject(String subject, long issuedBeforeEpochMillis) {
+        if (subject == null || subject.isBlank())
+            return;
+        delegate.revokeAllForSubject(subject, issuedBeforeEpochMillis);
+        append(RevocationFeedEntry.Type.SUBJECT, subject, issuedBeforeEpochMillis);
+    }
+
+    @Override
+    public long getSubjectRevokedBefore(String subject) {
+        return delegate.getSubjectRevokedBefore(subject);
+    }
+
+    @Override
+    public void forEachSubjectWatermark(ObjLongConsumer<String> consumer) {
+        delegate.forEachSubjectWatermark(consumer);
+    }
+
+    /**
+     * Applies a revocation pulled from a peer to the backing store, without publishing it in the local feed.
+     * It goes through the whole decorator chain below this store, bloom filter included.
+     *
+     * @param entry replicated entry
+     */
+    public void applyReplicated(RevocationFeedEntry entry) {
+        if (entry.getType() == RevocationFeedEntry.Type.SUBJECT)
+            delegate.revokeAllForSubject(entry.getKey(), entry.getEpochMillis());
+        else
+            delegate.revoke(entry.getKey(), entry.getEpochMillis());
+    }
+
+    @Override
+    public RevocationFeedPage getChangesSince(long sequence, int maxEntries) {
+        lock.readLock().lock();
+        try {
+            int from = firstIndexAfter(sequence);
+            int to = (int) Math.min(entries.size(), (long) from + Math.max(0, maxEntries));
+            return new RevocationFeedPage(feedId, lastSequence, entries.subList(from, to), to < entries.size(), sequence < trimmedSequence);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return id of this feed instance
+     */
+    public String getFeedId() {
+        return feedId;
+    }
+
+    /**
+     * @return last sequence number assigned
+     */
+    public long getLastSequence() {
+        lock.readLock().lock();
+        try {
+            return lastSequence;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of entries in the feed
+     */
+    public int getLogSize() {
+        lock.readLock().lock();
+        try {
+            return entries.size() - head;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void append(RevocationFeedEntry.Type type, String key, long epochMillis) {
+        lock.writeLock().lock();
+        try {
+            entries.add(new RevocationFeedEntry(++lastSequence, type, key, epochMillis));
+            if (entries.size() - head > maxLogEntries) {
+                trimmedSequence = entries.get(head).getSequence();
+                entries.set(head++, null);
+                log.debug("Revocation feed exceeded {} entries, oldest entry trimmed", maxLogEntries);
+            }
+            long now = System.currentTimeMillis();
+            if (now >= nextCompactionMillis || head > entries.size() / 2)
+                compact(now);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the trimmed slots and the entries of expired tokens: readers asking for an older sequence simply
+     * get the next retained entries, what they miss could not revoke a live token anymore.
+     * Subject watermarks are kept until trimmed by the cap.
+     */
+    private void compact(long now) {
+        List<RevocationFeedEntry> retained = new ArrayList<>(entries.size() - head);
+        for (int i = head; i < entries.size(); i++) {
+            RevocationFeedEntry entry = entries.get(i);
+            if (entry.getType() == RevocationFeedEntry.Type.SUBJECT || entry.getEpochMillis() > now)
+                retained.add(entry);
+        }
+        entries = retained;
+        head = 0;
+        nextCompactionMillis = now + LOG_COMPACTION_INTERVAL_MILLIS;
+    }
+
+    //binary search of the first retained entry with a sequence greater than the given one
+    private int firstIndexAfter(long sequence) {
+        int low = head;
+        int high = entries.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries.get(mid).getSequence() <= sequence)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import it.water.service.rest.api.security.LoggedIn;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author Aristide Cittadino
+ * Immutable security requirements of a rest method: the {@link LoggedIn} annotation found in the method hierarchy
+ * (the method itself, the overridden superclass methods and the implemented interface methods) and its issuers.
+ * <p>
+ * Descriptors are resolved once per method and cached per declaring class through a {@link ClassValue},
+ * so a request costs a single map lookup and the cache never keeps an unloaded bundle class alive.
+ */
+public final class RestMethodSecurityDescriptor {
+    private static final RestMethodSecurityDescriptor NOT_SECURED = new RestMethodSecurityDescriptor(null);
+    private static final ClassValue<Map<Method, RestMethodSecurityDescriptor>> DESCRIPTORS = new ClassValue<>() {
+        @Override
+        protected Map<Method, RestMethodSecurityDescriptor> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private final LoggedIn loggedIn;
+    private final List<String> issuers;
+
+    private RestMethodSecurityDescriptor(LoggedIn loggedIn) {
+        this.loggedIn = loggedIn;
+        this.issuers = loggedIn != null ? List.of(loggedIn.issuers()) : Collections.emptyList();
+    }
+
+    /**
+     * @param method rest method
+     * @return the cached descriptor of the method, resolved on first use
+     */
+    public static RestMethodSecurityDescriptor of(Method method) {
+        Map<Method, RestMethodSecurityDescriptor> descriptors = DESCRIPTORS.get(method.getDeclaringClass());
+        RestMethodSecurityDescriptor descriptor = descriptors.get(method);
+        if (descriptor == null)
+            descriptor = descriptors.computeIfAbsent(method, RestMethodSecurityDescriptor::resolve);
+        return descriptor;
+    }
+
+    /**
+     * Resolves the descriptors of all the public methods of a rest class in advance, e.g. when it is registered.
+     *
+     * @param restClass rest api interface or controller class
+     */
+    public static void precompute(Class<?> restClass) {
+        for (Method method : restClass.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers()) && method.getDeclaringClass() != Object.class)
+                of(method);
+        }
+    }
+
+    /**
+     * @return true if the method requires a valid JWT token
+     */
+    public boolean isLoginRequired() {
+        return loggedIn != null;
+    }
+
+    /**
+     * @return the LoggedIn annotation, null if the method does not require login
+     */
+    public LoggedIn getLoggedIn() {
+        return loggedIn;
+    }
+
+    /**
+     * @return immutable list of the issuers accepted by the method, empty if the method does not require login
+     */
+    public List<String> getIssuers() {
+        return issuers;
+    }
+
+    private static RestMethodSecurityDescriptor resolve(Method method) {
+        LoggedIn loggedIn = (LoggedIn) findAnnotation(LoggedIn.class, method);
+        return loggedIn != null ? new RestMethodSecurityDescriptor(loggedIn) : NOT_SECURED;
+    }
+
+    static Annotation findAnnotation(Class<? extends Annotation> annotationClass, Method method) {
+        return annotationsFromHierarchy(method).stream()
+                .filter(annotation -> annotation.annotationType().equals(annotationClass))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Collects the annotations of the method, of the overridden superclass methods and of the implemented interface methods.
+     * Methods are looked up among the public or declared methods, without throwing on the classes not declaring them.
+     *
+     * @param method rest method
+     * @return annotations found in the hierarchy, the method ones first
+     */
+    static List<Annotation> annotationsFromHierarchy(Method method) {
+        Set<Annotation> allAnnotations = new LinkedHashSet<>(Arrays.asList(method.getAnnotations()));
+        Class<?> currentClass = method.getDeclaringClass().getSuperclass();
+        while (currentClass != null) {
+            addAnnotations(findMethod(currentClass.getDeclaredMethods(), method), allAnnotations);
+            currentClass = currentClass.getSuperclass();
+        }
+        for (Class<?> interfaceClass : allInterfaces(method.getDeclaringClass()))
+            addAnnotations(findMethod(interfaceClass.getMethods(), method), allAnnotations);
+        return new ArrayList<>(allAnnotations);
+    }
+
+    private static Method findMethod(Method[] candidates, Method method) {
+        for (Method candidate : candidates) {
+            if (candidate.getName().equals(method.getName()) && Arrays.equals(candidate.getParameterTypes(), method.getParameterTypes()))
+                return candidate;
+        }
+        return null;
+    }
+
+    private static void addAnnotations(Method method, Set<Annotation> annotations) {
+        if (method != null)
+            annotations.addAll(Arrays.asList(method.getAnnotations()));
+    }
+
+    private static Set<Class<?>> allInterfaces(Class<?> clazz) {
+        Set<Class<?>> interfaces = new LinkedHashSet<>();
+        while (clazz != null) {
+            addInterfaces(clazz, interfaces);
+            clazz = clazz.getSuperclass();
+        }
+        return interfaces;
+    }
+
+    private static void addInterfaces(Class<?> clazz, Set<Class<?>> interfaces) {
+        for (Class<?> interfaceClass : clazz.getInterfaces()) {
+            if (interfaces.add(interfaceClass))
+                addInterfaces(interfaceClass, interfaces);
+        }
+    }
+}
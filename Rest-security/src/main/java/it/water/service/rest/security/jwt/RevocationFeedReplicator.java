@@ -0,0 +1,183 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import it.water.service.rest.api.security.jwt.RevocationFeed;
+import it.water.service.rest.api.security.jwt.RevocationFeedEntry;
+import it.water.service.rest.api.security.jwt.RevocationFeedPage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author Aristide Cittadino
+ * Pulls the revocation feed of a peer node and applies its entries to the local {@link ReplicatedTokenRevocationStore}.
+ * Each poll reads the entries after the last applied sequence in batches, so catching up after a partition
+ * only transfers what was missed. Failures are retried with an exponential backoff with jitter.
+ * If the peer restarts (new feed id) the replicator reads its new feed from the beginning.
+ * One replicator is needed for each peer.
+ */
+@Slf4j
+public class RevocationFeedReplicator implements Closeable {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final long DEFAULT_POLL_INTERVAL_MILLIS = 1000L;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 60_000L;
+    //bounds the work of a single poll, a replicator far behind continues on the next one
+    private static final int MAX_BATCHES_PER_POLL = 100;
+
+    private final String peerName;
+    private final RevocationFeed peer;
+    private final ReplicatedTokenRevocationStore localStore;
+    private final int batchSize;
+    private final long pollIntervalMillis;
+    private final long maxBackoffMillis;
+
+    //poll state, guarded by this
+    private String peerFeedId;
+    private long lastAppliedSequence;
+    private int consecutiveFailures;
+    private ScheduledExecutorService scheduler;
+
+    public RevocationFeedReplicator(String peerName, RevocationFeed peer, ReplicatedTokenRevocationStore localStore) {
+        this(peerName, peer, localStore, DEFAULT_BATCH_SIZE, DEFAULT_POLL_INTERVAL_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * @param peerName           name of the peer, used in logs and thread names
+     * @param peer               feed of the peer node, e.g. an {@link HttpRevocationFeedClient}
+     * @param localStore         local store receiving the replicated revocations
+     * @param batchSize          maximum entries requested per call
+     * @param pollIntervalMillis delay between two polls when the peer is reachable
+     * @param maxBackoffMillis   maximum delay between two polls when the peer is failing
+     */
+    public RevocationFeedReplicator(String peerName, RevocationFeed peer, ReplicatedTokenRevocationStore localStore, int batchSize, long pollIntervalMillis, long maxBackoffMillis) {
+        if (batchSize <= 0 || pollIntervalMillis <= 0 || maxBackoffMillis < pollIntervalMillis)
+            throw new IllegalArgumentException("Invalid replicator parameters");
+        this.peerName = peerName;
+        this.peer = peer;
+        this.localStore = localStore;
+        this.batchSize = batchSize;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Starts polling the peer in background on a dedicated daemon thread.
+     */
+    public synchronized void start() {
+        if (scheduler != null)
+            return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "water-revocation-replicator-" + peerName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(this::pollAndReschedule);
+    }
+
+    /**
+     * Stops the background polling.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    /**
+     * Reads and applies the peer entries after the last applied sequence.
+     *
+     * @return number of entries applied
+     * @throws RuntimeException if the peer cannot be read, entries applied before the failure are kept
+     */
+    public synchronized int pollOnce() {
+        int applied = 0;
+        for (int batch = 0; batch < MAX_BATCHES_PER_POLL; batch++) {
+            RevocationFeedPage page = peer.getChangesSince(lastAppliedSequence, batchSize);
+            if (peerFeedId != null && !peerFeedId.equals(page.getFeedId())) {
+                log.info("Revocation feed of {} restarted, reading it from the beginning", peerName);
+                peerFeedId = page.getFeedId();
+                lastAppliedSequence = 0;
+                continue;
+            }
+            peerFeedId = page.getFeedId();
+            if (page.isTruncated())
+                log.warn("Replication from {} fell behind the feed cap, some revocations were missed", peerName);
+            for (RevocationFeedEntry entry : page.getEntries()) {
+                localStore.applyReplicated(entry);
+                lastAppliedSequence = entry.getSequence();
+                applied++;
+            }
+            if (!page.isHasMore() || page.getEntries().isEmpty())
+                break;
+        }
+        return applied;
+    }
+
+    /**
+     * @return last peer sequence applied locally
+     */
+    public synchronized long getLastAppliedSequence() {
+        return lastAppliedSequence;
+    }
+
+    /**
+     * @return number of failed polls since the last successful one
+     */
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @param failures consecutive failures
+     * @return delay before the next poll: the poll interval doubled on each failure, up to the max backoff, with jitter
+     */
+    long backoffMillis(int failures) {
+        if (failures <= 0)
+            return pollIntervalMillis;
+        long backoff = pollIntervalMillis << Math.min(failures, 20);
+        backoff = Math.min(backoff, maxBackoffMillis);
+        //full range jitter on the upper half: nodes failing together do not retry together
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    private void pollAndReschedule() {
+        long delay;
+        try {
+            pollOnce();
+            synchronized (this) {
+                consecutiveFailures = 0;
+            }
+            delay = pollIntervalMillis;
+        } catch (RuntimeException e) {
+            int failures;
+            synchronized (this) {
+                failures = ++consecutiveFailures;
+            }
+            delay = backoffMillis(failures);
+            log.warn("Unable to replicate revocations from {} ({} consecutive failures), retrying in {} ms: {}", peerName, failures, delay, e.getMessage());
+        }
+        synchronized (this) {
+            if (scheduler != null && !scheduler.isShutdown())
+                scheduler.schedule(this::pollAndReschedule, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+}
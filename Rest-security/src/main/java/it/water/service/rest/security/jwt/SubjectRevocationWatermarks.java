@@ -0,0 +1,281 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import it.water.core.model.exceptions.WaterRuntimeException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * @Author Aristide Cittadino
+ * Per-subject "revoked before" watermarks: one entry per subject revokes all of its tokens issued before
+ * the watermark, whatever their number.
+ * <p>
+ * Watermarks are kept in an open-addressing, linear-probing table of subjects and primitive longs, so an entry
+ * costs a reference and a long. Reads use optimistic stamps and never block.
+ * <p>
+ * A watermark is useless once every token issued before it has expired, that is after the retention
+ * (the maximum token lifetime). Expiry is driven by a time-bucketed index: each subject is appended to the
+ * bucket of the second its watermark falls in, writes drain only the buckets already past the retention.
+ * Watermarks within the retention are never dropped: above the cap a new subject is rejected.
+ */
+@Slf4j
+public class SubjectRevocationWatermarks {
+    //expiry index granularity
+    private static final long BUCKET_MILLIS = 1000L;
+    private static final int MIN_CAPACITY = 64;
+
+    private final int maxSubjects;
+    private final LongSupplier retentionMillis;
+    private final StampedLock lock = new StampedLock();
+    //watermark bucket (watermark / BUCKET_MILLIS) -> subjects whose watermark falls in that bucket, guarded by the write lock
+    private final TreeMap<Long, ArrayDeque<String>> expiryIndex = new TreeMap<>();
+
+    //replaced (not mutated) on resize, so a reader always sees arrays of the same size
+    private Table table;
+    private int size;
+
+    /**
+     * Slot i holds subjects[i] with its watermark revokedBefore[i], a null subject marks an empty slot.
+     */
+    private static final class Table {
+        private final String[] subjects;
+        private final long[] revokedBefore;
+        private final int mask;
+
+        Table(int capacity) {
+            this.subjects = new String[capacity];
+            this.revokedBefore = new long[capacity];
+            this.mask = capacity - 1;
+        }
+    }
+
+    /**
+     * @param maxSubjects     maximum number of tracked subjects
+     * @param retentionMillis maximum token lifetime: a watermark older than this cannot revoke a live token
+     */
+    public SubjectRevocationWatermarks(int maxSubjects, LongSupplier retentionMillis) {
+        if (maxSubjects <= 0)
+            throw new IllegalArgumentException("maxSubjects must be greater than zero");
+        this.maxSubjects = maxSubjects;
+        this.retentionMillis = retentionMillis;
+        this.table = new Table(MIN_CAPACITY);
+    }
+
+    /**
+     * Moves the subject watermark forward, an older instant is ignored.
+     * A watermark older than the retention is ignored too, since every token issued before it has expired.
+     *
+     * @param subject                 token subject, ignored if null/blank
+     * @param issuedBeforeEpochMillis tokens issued before this instant are revoked
+     * @throws WaterRuntimeException if the subject is new and the cap is reached by watermarks still within the retention
+     */
+    public void revokeAllIssuedBefore(String subject, long issuedBeforeEpochMillis) {
+        if (subject == null || subject.isBlank())
+            return;
+        long oldestUseful = System.currentTimeMillis() - retentionMillis.getAsLong();
+        if (issuedBeforeEpochMillis <= oldestUseful)
+            return;
+        long stamp = lock.writeLock();
+        try {
+            expire(oldestUseful);
+            int slot = find(table, subject);
+            if (slot >= 0) {
+                long current = table.revokedBefore[slot];
+                if (current >= issuedBeforeEpochMillis)
+                    return;
+                removeFromIndex(subject, current);
+                table.revokedBefore[slot] = issuedBeforeEpochMillis;
+            } else {
+                if (size >= maxSubjects) {
+                    //dropping a live watermark would silently restore the tokens it revokes
+                    log.error("Subject revocation watermarks reached {} subjects; rejecting the revocation of {}", maxSubjects, subject);
+                    throw new WaterRuntimeException("Subject revocation capacity of " + maxSubjects + " subjects reached");
+                }
+                insert(subject, issuedBeforeEpochMillis);
+            }
+            expiryIndex.computeIfAbsent(issuedBeforeEpochMillis / BUCKET_MILLIS, bucket -> new ArrayDeque<>()).addLast(subject);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @param subject token subject
+     * @return the subject watermark in epoch millis, 0 if none
+     */
+    public long getRevokedBefore(String subject) {
+        if (subject == null)
+            return 0L;
+        long stamp = lock.tryOptimisticRead();
+        long revokedBefore = lookup(subject);
+        if (!lock.validate(stamp)) {
+            //a write happened meanwhile, read again under the shared lock
+            stamp = lock.readLock();
+            try {
+                revokedBefore = lookup(subject);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return revokedBefore;
+    }
+
+    /**
+     * @param consumer receives each subject with its watermark, expired watermarks are skipped
+     */
+    public void forEach(ObjLongConsumer<String> consumer) {
+        long oldestUseful = System.currentTimeMillis() - retentionMillis.getAsLong();
+        String[] subjects;
+        long[] revokedBefore;
+        int count = 0;
+        long stamp = lock.readLock();
+        try {
+            subjects = new String[size];
+            revokedBefore = new long[size];
+            for (int slot = 0; slot <= table.mask; slot++) {
+                if (table.subjects[slot] != null && table.revokedBefore[slot] > oldestUseful) {
+                    subjects[count] = table.subjects[slot];
+                    revokedBefore[count++] = table.revokedBefore[slot];
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        //visited outside of the lock: the consumer may write watermarks back
+        for (int i = 0; i < count; i++)
+            consumer.accept(subjects[i], revokedBefore[i]);
+    }
+
+    /**
+     * @return number of tracked subjects, including the ones not yet drained after the retention
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private long lookup(String subject) {
+        //local copy: a concurrent resize replaces the table, the stamp validation discards torn reads
+        Table currentTable = table;
+        int slot = find(currentTable, subject);
+        return slot >= 0 ? currentTable.revokedBefore[slot] : 0L;
+    }
+
+    /**
+     * Drains, with the write lock held, the buckets whose watermarks are all past the retention.
+     * The bucket spanning the retention limit is kept whole, its watermarks are dropped at most a second late.
+     */
+    private void expire(long oldestUseful) {
+        Map.Entry<Long, ArrayDeque<String>> oldest = expiryIndex.firstEntry();
+        while (oldest != null && oldest.getKey() < oldestUseful / BUCKET_MILLIS) {
+            expiryIndex.pollFirstEntry().getValue().forEach(subject -> {
+                int slot = find(table, subject);
+                if (slot >= 0)
+                    removeAt(slot);
+            });
+            oldest = expiryIndex.firstEntry();
+        }
+    }
+
+    //called with the write lock held, each subject is indexed once under its current watermark
+    private void removeFromIndex(String subject, long revokedBefore) {
+        long bucketKey = revokedBefore / BUCKET_MILLIS;
+        ArrayDeque<String> bucket = expiryIndex.get(bucketKey);
+        if (bucket != null && bucket.remove(subject) && bucket.isEmpty())
+            expiryIndex.remove(bucketKey);
+    }
+
+    private static int find(Table table, String subject) {
+        int slot = hash(subject) & table.mask;
+        for (int probes = 0; probes <= table.mask; probes++) {
+            String current = table.subjects[slot];
+            if (current == null)
+                return -1;
+            if (current.equals(subject))
+                return slot;
+            slot = (slot + 1) & table.mask;
+        }
+        return -1;
+    }
+
+    private void insert(String subject, long revokedBefore) {
+        int slot = hash(subject) & table.mask;
+        while (table.subjects[slot] != null)
+            slot = (slot + 1) & table.mask;
+        table.subjects[slot] = subject;
+        table.revokedBefore[slot] = revokedBefore;
+        size++;
+        //linear probing keeps short chains up to half full
+        if (size * 2 > table.subjects.length)
+            resize(table.subjects.length * 2);
+    }
+
+    /**
+     * Removes a slot with backward-shift deletion, so lookups never need tombstones.
+     */
+    private void removeAt(int slot) {
+        int mask = table.mask;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (table.subjects[next] != null) {
+            int home = hash(table.subjects[next]) & mask;
+            //the entry can fill the hole only if its home slot is not cyclically in (hole, next]
+            boolean canMove = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (canMove) {
+                table.subjects[hole] = table.subjects[next];
+                table.revokedBefore[hole] = table.revokedBefore[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table.subjects[hole] = null;
+        table.revokedBefore[hole] = 0L;
+        size--;
+    }
+
+    private void resize(int newCapacity) {
+        Table oldTable = table;
+        Table newTable = new Table(newCapacity);
+        for (int i = 0; i <= oldTable.mask; i++) {
+            String subject = oldTable.subjects[i];
+            if (subject != null) {
+                int slot = hash(subject) & newTable.mask;
+                while (newTable.subjects[slot] != null)
+                    slot = (slot + 1) & newTable.mask;
+                newTable.subjects[slot] = subject;
+                newTable.revokedBefore[slot] = oldTable.revokedBefore[i];
+            }
+        }
+        table = newTable;
+    }
+
+    private static int hash(String subject) {
+        //String caches its hash code, spread it so the low bits used by the mask depend on all of them
+        int h = subject.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import it.water.core.model.exceptions.WaterRuntimeException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * @Author Aristide Cittadino
+ * SHA-256 digest of a raw token stored as four longs: the raw token itself is never retained.
+ * Computed once per request and shared by the verified and rejected token caches.
+ */
+final class TokenDigest {
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new WaterRuntimeException(e.getMessage());
+        }
+    });
+
+    private final long d0;
+    private final long d1;
+    private final long d2;
+    private final long d3;
+
+    private TokenDigest(long d0, long d1, long d2, long d3) {
+        this.d0 = d0;
+        this.d1 = d1;
+        this.d2 = d2;
+        this.d3 = d3;
+    }
+
+    static TokenDigest of(String rawToken) {
+        MessageDigest digest = SHA_256.get();
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest(rawToken.getBytes(StandardCharsets.US_ASCII)));
+        return new TokenDigest(hash.getLong(), hash.getLong(), hash.getLong(), hash.getLong());
+    }
+
+    //uses different digest bits than hashCode so entries of the same stripe still spread inside its map
+    int stripeHash() {
+        return (int) d1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof TokenDigest other))
+            return false;
+        return d0 == other.d0 && d1 == other.d1 && d2 == other.d2 && d3 == other.d3;
+    }
+
+    @Override
+    public int hashCode() {
+        //digest bits are already uniformly distributed
+        return (int) (d0 ^ (d0 >>> 32));
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import com.nimbusds.jose.jwk.JWK;
+import it.water.service.rest.api.security.jwt.VerifiedJwtToken;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * @Author Aristide Cittadino
+ * Bounded cache of successful JWT verifications, keyed by the SHA-256 digest of the raw token.
+ * It lets repeated requests with the same bearer token skip the signature verification.
+ * <p>
+ * The cache is split in lock-striped LRU segments so concurrent requests rarely contend.
+ * An entry is never served past the token expiration (exp).
+ * Revocation, issuer and audience checks are not cached: callers must still run them on every hit.
+ * Verifications done with a JWKS key remember that key: on a hit the caller checks it is still published,
+ * so tokens signed with a key removed from the JWKS (rotation, compromise) stop being served.
+ */
+public class VerifiedTokenCache {
+    public static final int DEFAULT_STRIPES = 16;
+
+    private final Segment[] segments;
+    private final int maxEntries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public VerifiedTokenCache(int maxEntries) {
+        this(maxEntries, DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param maxEntries maximum number of cached verifications (approximate, enforced per stripe)
+     * @param stripes    number of independently locked segments, rounded up to a power of two
+     */
+    public VerifiedTokenCache(int maxEntries, int stripes) {
+        if (maxEntries <= 0)
+            throw new IllegalArgumentException("maxEntries must be greater than zero");
+        int segmentsCount = Integer.highestOneBit(Math.max(1, Math.min(stripes, maxEntries)) * 2 - 1);
+        int segmentCapacity = (maxEntries + segmentsCount - 1) / segmentsCount;
+        this.maxEntries = maxEntries;
+        this.segments = new Segment[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++)
+            this.segments[i] = new Segment(segmentCapacity);
+    }
+
+    /**
+     * @param rawToken  raw JWT string
+     * @param nowMillis current time in epoch millis
+     * @return the cached verification, or null if absent or expired
+     */
+    public VerifiedJwtToken get(String rawToken, long nowMillis) {
+        return get(TokenDigest.of(rawToken), nowMillis);
+    }
+
+    VerifiedJwtToken get(TokenDigest key, long nowMillis) {
+        return get(key, nowMillis, verificationKey -> true);
+    }
+
+    /**
+     * @param key                   token digest
+     * @param nowMillis             current time in epoch millis
+     * @param verificationKeyActive tells whether the JWKS key used for the verification is still published
+     * @return the cached verification, or null if absent, expired or verified with a key no longer active
+     */
+    VerifiedJwtToken get(TokenDigest key, long nowMillis, Predicate<JWK> verificationKeyActive) {
+        VerifiedJwtToken cached = segmentFor(key).get(key, nowMillis, verificationKeyActive);
+        if (cached == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return cached;
+    }
+
+    /**
+     * Caches a successful verification. Already expired tokens are not cached.
+     *
+     * @param rawToken      raw JWT string
+     * @param verifiedToken successful verification result
+     */
+    public void put(String rawToken, VerifiedJwtToken verifiedToken) {
+        put(TokenDigest.of(rawToken), verifiedToken);
+    }
+
+    void put(TokenDigest key, VerifiedJwtToken verifiedToken) {
+        put(key, verifiedToken, null);
+    }
+
+    /**
+     * @param key             token digest
+     * @param verifiedToken   successful verification result
+     * @param verificationKey JWKS key the signature was verified with, null when verified with the local key
+     */
+    void put(TokenDigest key, VerifiedJwtToken verifiedToken, JWK verificationKey) {
+        if (verifiedToken.isExpired(System.currentTimeMillis()))
+            return;
+        segmentFor(key).put(key, new Entry(verifiedToken, verificationKey));
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments)
+            segment.clear();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of entries removed because of the size bound, because their token expired
+     * or because their verification key is no longer published
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private Segment segmentFor(TokenDigest key) {
+        return segments[key.stripeHash() & (segments.length - 1)];
+    }
+
+    /**
+     * Access-ordered LRU segment guarded by its own lock.
+     */
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<TokenDigest, Entry> entries;
+
+        Segment(int capacity) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<TokenDigest, Entry> eldest) {
+                    boolean evict = size() > capacity;
+                    if (evict)
+                        evictions.increment();
+                    return evict;
+                }
+            };
+        }
+
+        VerifiedJwtToken get(TokenDigest key, long nowMillis, Predicate<JWK> verificationKeyActive) {
+            Entry entry;
+            lock.lock();
+            try {
+                entry = entries.get(key);
+                if (entry == null)
+                    return null;
+                if (entry.token.isExpired(nowMillis)) {
+                    entries.remove(key);
+                    evictions.increment();
+                    return null;
+                }
+            } finally {
+                lock.unlock();
+            }
+            //the key check may refetch the JWKS: run it outside the segment lock
+            if (entry.verificationKey == null || verificationKeyActive.test(entry.verificationKey))
+                return entry.token;
+            remove(key, entry);
+            return null;
+        }
+
+        void remove(TokenDigest key, Entry entry) {
+            lock.lock();
+            try {
+                if (entries.remove(key, entry))
+                    evictions.increment();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(TokenDigest key, Entry entry) {
+            lock.lock();
+            try {
+                entries.put(key, entry);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                entries.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final VerifiedJwtToken token;
+        private final JWK verificationKey;
+
+        Entry(VerifiedJwtToken token, JWK verificationKey) {
+            this.token = token;
+            this.verificationKey = verificationKey;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security;
+
+import it.water.service.rest.security.jwt.BloomFilterTokenRevocationStore;
+import it.water.service.rest.security.jwt.InMemoryTokenRevocationStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the Bloom filter front of the revocation store: negatives answered without the backing store,
+ * hits confirmed by it, partitions dropped with the tokens they cover and false positive metrics.
+ */
+class BloomFilterTokenRevocationStoreTest {
+
+    private static final long FAR_FUTURE_MILLIS = System.currentTimeMillis() + 3_600_000L;
+
+    @Test
+    void notRevokedTokens_answeredByTheFilter() {
+        InMemoryTokenRevocationStore backing = spy(new InMemoryTokenRevocationStore());
+        BloomFilterTokenRevocationStore store = new BloomFilterTokenRevocationStore(backing);
+        Assertions.assertFalse(store.isRevoked(UUID.randomUUID().toString()));
+        Assertions.assertFalse(store.isRevoked(null));
+        verify(backing, never()).isRevoked(anyString());
+        Assertions.assertEquals(1, store.getDefinitelyNotRevokedCount());
+    }
+
+    @Test
+    void revokedTokens_confirmedByTheBackingStore() {
+        InMemoryTokenRevocationStore backing = spy(new InMemoryTokenRevocationStore());
+        BloomFilterTokenRevocationStore store = new BloomFilterTokenRevocationStore(backing);
+        String jti = UUID.randomUUID().toString();
+        store.revoke(jti, FAR_FUTURE_MILLIS);
+        Assertions.assertTrue(store.isRevoked(jti));
+        verify(backing).revoke(jti, FAR_FUTURE_MILLIS);
+        verify(backing).isRevoked(jti);
+        Assertions.assertEquals(1, store.getPossiblyRevokedCount());
+        Assertions.assertEquals(0, store.getFalsePositiveCount());
+    }
+
+    @Test
+    void existingRevocations_loadedFromTheBackingStore() {
+        InMemoryTokenRevocationStore backing = new InMemoryTokenRevocationStore();
+        String jti = UUID.randomUUID().toString();
+        backing.revoke(jti, FAR_FUTURE_MILLIS);
+        BloomFilterTokenRevocationStore store = new BloomFilterTokenRevocationStore(backing);
+        Assertions.assertTrue(store.isRevoked(jti));
+    }
+
+    @Test
+    void revocationsWithoutExpiry_neverMissed() {
+        for (long partitionMillis : new long[]{1L, 60_000L}) {
+            BloomFilterTokenRevocationStore store = new BloomFilterTokenRevocationStore(new InMemoryTokenRevocationStore(), partitionMillis, 1000, 0.01);
+            String jti = UUID.randomUUID().toString();
+            store.revoke(jti, Long.MAX_VALUE);
+            Assertions.assertTrue(store.isRevoked(jti));
+            Assertions.assertEquals(0, store.getDefinitelyNotRevokedCount());
+        }
+    }
+
+    @Test
+    void partitions_droppedWhenTheirTokensExpire() throws InterruptedException {
+        BloomFilterTokenRevocationStore store = new BloomFilterTokenRevocationStore(new InMemoryTokenRevocationStore(), 50L, 1000, 0.01);
+        String shortLived = UUID.randomUUID().toString();
+        store.revoke(shortLived, System.currentTimeMillis() + 20L);
+        Assertions.assertEquals(1, store.getPartitionCount());
+        Thread.sleep(120L); //NOSONAR: necessary to test natural expiry; no Awaitility available
+        Assertions.assertFalse(store.isRevoked(shortLived));
+        store.revoke(UUID.randomUUID().toString(), FAR_FUTURE_MILLIS);
+        Assertions.assertEquals(1, store.getPartitionCount(), "The expired partition must be dropped");
+    }
+
+    @Test
+    void falsePositiveRate_closeToTheConfiguredProbability() {
+        int expected = 10_000;
+        BloomFilterTokenRevocationStore store = new BloomFilterTokenRevocationStore(new InMemoryTokenRevocationStore(), 3_600_000L * 4, expected, 0.01);
+        for (int i = 0; i < expected; i++)
+            store.revoke(UUID.randomUUID().toString(), FAR_FUTURE_MILLIS);
+        int checks = 100_000;
+        for (int i = 0; i < checks; i++)
+            Assertions.assertFalse(store.isRevoked(UUID.randomUUID().toString()));
+        Assertions.assertEquals(checks, store.getDefinitelyNotRevokedCount() + store.getFalsePositiveCount());
+        Assertions.assertTrue(store.getFalsePositiveRate() < 0.02, "False positive rate too high: " + store.getFalsePositiveRate());
+    }
+}
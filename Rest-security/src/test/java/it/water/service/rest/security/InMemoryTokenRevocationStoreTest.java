@@ -15,16 +15,20 @@
  */
 package it.water.service.rest.security;
 
+import it.water.core.model.exceptions.WaterRuntimeException;
 import it.water.service.rest.security.jwt.InMemoryTokenRevocationStore;
+import it.water.service.rest.security.jwt.SubjectRevocationWatermarks;
 import it.water.service.rest.api.security.jwt.TokenRevocationStore;
 import org.junit.jupiter.api.*;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Regression tests for M13 — InMemoryTokenRevocationStore.
  *
  * Tests the revoke / isRevoked / expiry / bounded-eviction semantics directly
  * on the store, independently of the JWT layer. Uses plain JUnit 5 — no
- * WaterTestExtension needed since the store has no framework injections.
+ * WaterTestExtension needed since the store's only injection (options) is optional.
  */
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
@@ -158,6 +162,22 @@ class InMemoryTokenRevocationStoreTest {
                 "jti must still be revoked after duplicate revocation");
     }
 
+    @Test
+    @Order(20)
+    void revoke_sameJtiRepeatedly_indexedOnce() {
+        InMemoryTokenRevocationStore repeatedStore = new InMemoryTokenRevocationStore();
+        long expiry = System.currentTimeMillis() + 60_000L;
+        for (int i = 0; i < 1000; i++)
+            repeatedStore.revoke("logout-spam", expiry - i);
+        Assertions.assertEquals(1, repeatedStore.size());
+        Assertions.assertEquals(1, repeatedStore.getIndexSize(),
+                "Re-revoking a jti with the same or an earlier expiry must not grow the expiry index");
+        //a later expiry replaces the indexed entry
+        repeatedStore.revoke("logout-spam", expiry + 10_000L);
+        Assertions.assertEquals(1, repeatedStore.getIndexSize());
+        Assertions.assertTrue(repeatedStore.isRevoked("logout-spam"));
+    }
+
     // -------------------------------------------------------------------
     // Bounded eviction: store enforces MAX_KEYS cap
     // -------------------------------------------------------------------
@@ -204,4 +224,171 @@ class InMemoryTokenRevocationStoreTest {
         Assertions.assertFalse(store.isRevoked(notRevokedJti),
                 "A different jti must NOT be reported as revoked");
     }
+
+    // -------------------------------------------------------------------
+    // Time-bucketed expiry index
+    // -------------------------------------------------------------------
+
+    @Test
+    @Order(13)
+    void capEnforcement_evictsSoonestToExpireWithoutSorting() {
+        InMemoryTokenRevocationStore boundedStore = new InMemoryTokenRevocationStore(3);
+        long now = System.currentTimeMillis();
+        boundedStore.revoke("expires-last", now + 40_000L);
+        boundedStore.revoke("expires-first", now + 10_000L);
+        boundedStore.revoke("expires-third", now + 30_000L);
+        boundedStore.revoke("expires-second", now + 20_000L);
+        Assertions.assertEquals(3, boundedStore.size());
+        Assertions.assertFalse(boundedStore.isRevoked("expires-first"),
+                "The soonest-to-expire entry must be evicted first when the cap is exceeded");
+        Assertions.assertTrue(boundedStore.isRevoked("expires-second"));
+        Assertions.assertTrue(boundedStore.isRevoked("expires-third"));
+        Assertions.assertTrue(boundedStore.isRevoked("expires-last"));
+    }
+
+    @Test
+    @Order(14)
+    void expiredBuckets_drainedOnWrite() throws InterruptedException {
+        InMemoryTokenRevocationStore bucketStore = new InMemoryTokenRevocationStore();
+        for (int i = 0; i < 100; i++)
+            bucketStore.revoke("short-lived-" + i, System.currentTimeMillis() + 20L);
+        Assertions.assertEquals(100, bucketStore.size());
+        //bucket granularity is one second
+        Thread.sleep(2100L); //NOSONAR: necessary to test natural expiry; no Awaitility available
+        bucketStore.revoke("long-lived", FAR_FUTURE_MILLIS);
+        Assertions.assertEquals(1, bucketStore.size(),
+                "Expired entries must be dropped by the next write even if they were never read");
+        Assertions.assertTrue(bucketStore.isRevoked("long-lived"));
+    }
+
+    @Test
+    @Order(15)
+    void reRevocation_notDroppedByStaleBucket() throws InterruptedException {
+        InMemoryTokenRevocationStore bucketStore = new InMemoryTokenRevocationStore();
+        bucketStore.revoke("re-revoked", System.currentTimeMillis() + 20L);
+        bucketStore.revoke("re-revoked", FAR_FUTURE_MILLIS);
+        Thread.sleep(2100L); //NOSONAR: necessary to test natural expiry; no Awaitility available
+        bucketStore.revoke("trigger-drain", FAR_FUTURE_MILLIS);
+        Assertions.assertTrue(bucketStore.isRevoked("re-revoked"),
+                "Draining the first expiry bucket must not drop the newer revocation of the same jti");
+    }
+
+    @Test
+    @Order(16)
+    void logoutStorm_aboveCap_staysBounded() throws InterruptedException {
+        int cap = 10_000;
+        InMemoryTokenRevocationStore boundedStore = new InMemoryTokenRevocationStore(cap);
+        int threads = 4;
+        int perThread = 10_000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int worker = t;
+            workers[t] = new Thread(() -> {
+                long base = System.currentTimeMillis() + 60_000L;
+                for (int i = 0; i < perThread; i++) {
+                    String jti = "storm-" + worker + "-" + i;
+                    boundedStore.revoke(jti, base + i);
+                    boundedStore.isRevoked(jti);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers)
+            worker.join();
+        Assertions.assertEquals(cap, boundedStore.size());
+        //latest (farthest expiry) revocations survive
+        Assertions.assertTrue(boundedStore.isRevoked("storm-0-" + (perThread - 1)));
+    }
+
+    @Test
+    @Order(16)
+    void revokeWithoutExpiry_neverDrainedByTheIndex() {
+        store.revoke("forever", Long.MAX_VALUE);
+        store.revoke("next", FAR_FUTURE_MILLIS);
+        Assertions.assertTrue(store.isRevoked("forever"));
+        Assertions.assertTrue(store.isRevoked("next"));
+    }
+
+    // -------------------------------------------------------------------
+    // Subject watermarks
+    // -------------------------------------------------------------------
+
+    @Test
+    @Order(17)
+    void subjectWatermark_onlyMovesForward() {
+        long now = System.currentTimeMillis();
+        Assertions.assertEquals(0L, store.getSubjectRevokedBefore("alice"));
+        store.revokeAllForSubject("alice", now);
+        store.revokeAllForSubject("alice", now - 10_000L);
+        Assertions.assertEquals(now, store.getSubjectRevokedBefore("alice"));
+        store.revokeAllForSubject("alice", now + 1);
+        Assertions.assertEquals(now + 1, store.getSubjectRevokedBefore("alice"));
+        Assertions.assertEquals(0L, store.getSubjectRevokedBefore("bob"));
+        Assertions.assertEquals(0L, store.getSubjectRevokedBefore(null));
+        Assertions.assertDoesNotThrow(() -> store.revokeAllForSubject(null, now));
+        Assertions.assertDoesNotThrow(() -> store.revokeAllForSubject(" ", now));
+        int[] visited = new int[1];
+        store.forEachSubjectWatermark((subject, watermark) -> visited[0]++);
+        Assertions.assertEquals(1, visited[0]);
+    }
+
+    @Test
+    @Order(18)
+    void subjectWatermarks_olderThanRetentionSwept() {
+        long now = System.currentTimeMillis();
+        SubjectRevocationWatermarks watermarks = new SubjectRevocationWatermarks(100, () -> 1000L);
+        watermarks.revokeAllIssuedBefore("stale", now - 5000L);
+        //first write sweeps: every token issued before the stale watermark has already expired
+        watermarks.revokeAllIssuedBefore("fresh", now);
+        Assertions.assertEquals(1, watermarks.size());
+        Assertions.assertEquals(0L, watermarks.getRevokedBefore("stale"));
+        Assertions.assertEquals(now, watermarks.getRevokedBefore("fresh"));
+    }
+
+    @Test
+    @Order(19)
+    void subjectWatermarks_aboveCap_newSubjectRejected() {
+        long now = System.currentTimeMillis();
+        SubjectRevocationWatermarks watermarks = new SubjectRevocationWatermarks(2, () -> 3_600_000L);
+        watermarks.revokeAllIssuedBefore("first", now - 3);
+        watermarks.revokeAllIssuedBefore("second", now - 2);
+        Assertions.assertThrows(WaterRuntimeException.class, () -> watermarks.revokeAllIssuedBefore("third", now - 1));
+        //live watermarks are never dropped, and can still move forward
+        watermarks.revokeAllIssuedBefore("first", now);
+        Assertions.assertEquals(2, watermarks.size());
+        Assertions.assertEquals(now, watermarks.getRevokedBefore("first"));
+        Assertions.assertEquals(now - 2, watermarks.getRevokedBefore("second"));
+        Assertions.assertEquals(0L, watermarks.getRevokedBefore("third"));
+    }
+
+    @Test
+    @Order(20)
+    void subjectWatermarks_pastRetention_freeTheCap() {
+        long now = System.currentTimeMillis();
+        AtomicLong retentionMillis = new AtomicLong(3_600_000L);
+        SubjectRevocationWatermarks watermarks = new SubjectRevocationWatermarks(2, retentionMillis::get);
+        watermarks.revokeAllIssuedBefore("first", now - 10_000L);
+        watermarks.revokeAllIssuedBefore("second", now - 10_000L);
+        //tokens now live one second: every token issued before both watermarks has expired
+        retentionMillis.set(1000L);
+        watermarks.revokeAllIssuedBefore("third", now);
+        Assertions.assertEquals(1, watermarks.size());
+        Assertions.assertEquals(0L, watermarks.getRevokedBefore("first"));
+        Assertions.assertEquals(now, watermarks.getRevokedBefore("third"));
+    }
+
+    @Test
+    @Order(21)
+    void subjectWatermarks_manySubjects_allFoundAfterResize() {
+        long now = System.currentTimeMillis();
+        SubjectRevocationWatermarks watermarks = new SubjectRevocationWatermarks(10_000, () -> 3_600_000L);
+        for (int i = 0; i < 10_000; i++)
+            watermarks.revokeAllIssuedBefore("subject-" + i, now + i);
+        Assertions.assertEquals(10_000, watermarks.size());
+        for (int i = 0; i < 10_000; i++)
+            Assertions.assertEquals(now + i, watermarks.getRevokedBefore("subject-" + i));
+        int[] visited = new int[1];
+        watermarks.forEach((subject, watermark) -> visited[0]++);
+        Assertions.assertEquals(10_000, visited[0]);
+    }
 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security;
+
+import it.water.service.rest.security.jwt.MappedFileTokenRevocationStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Tests the memory-mapped revocation store: persistence across reopen, compaction of expired records,
+ * file growth, subject watermarks and tolerance to a torn record at the end of the file.
+ */
+class MappedFileTokenRevocationStoreTest {
+
+    private static final long FAR_FUTURE_MILLIS = System.currentTimeMillis() + 3_600_000L;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void revocations_surviveReopen() {
+        Path file = tempDir.resolve("revocations.log");
+        String uuidJti = UUID.randomUUID().toString();
+        try (MappedFileTokenRevocationStore store = new MappedFileTokenRevocationStore(file)) {
+            store.revoke(uuidJti, FAR_FUTURE_MILLIS);
+            store.revoke("custom-jti-è", FAR_FUTURE_MILLIS);
+            store.revoke("expired", System.currentTimeMillis() - 1);
+            Assertions.assertTrue(store.isRevoked(uuidJti));
+            Assertions.assertEquals(2, store.size());
+        }
+        try (MappedFileTokenRevocationStore reopened = new MappedFileTokenRevocationStore(file)) {
+            Assertions.assertTrue(reopened.isRevoked(uuidJti));
+            Assertions.assertTrue(reopened.isRevoked("custom-jti-è"));
+            Assertions.assertFalse(reopened.isRevoked("expired"));
+            Assertions.assertFalse(reopened.isRevoked(UUID.randomUUID().toString()));
+            Assertions.assertEquals(2, reopened.size());
+            //appends after the replayed records
+            reopened.revoke("after-reopen", FAR_FUTURE_MILLIS);
+        }
+        try (MappedFileTokenRevocationStore reopened = new MappedFileTokenRevocationStore(file)) {
+            Assertions.assertEquals(3, reopened.size());
+            Assertions.assertTrue(reopened.isRevoked("after-reopen"));
+        }
+    }
+
+    @Test
+    void compaction_dropsExpiredRecords() throws InterruptedException {
+        Path file = tempDir.resolve("revocations.log");
+        try (MappedFileTokenRevocationStore store = new MappedFileTokenRevocationStore(file)) {
+            for (int i = 0; i < 100; i++)
+                store.revoke(UUID.randomUUID().toString(), System.currentTimeMillis() + 30L);
+            String live = UUID.randomUUID().toString();
+            store.revoke(live, FAR_FUTURE_MILLIS);
+            int bytesBefore = store.getFileBytes();
+            Thread.sleep(60L); //NOSONAR: necessary to test natural expiry; no Awaitility available
+            store.compact();
+            Assertions.assertTrue(store.getFileBytes() < bytesBefore);
+            Assertions.assertTrue(store.isRevoked(live));
+            store.revoke("after-compaction", FAR_FUTURE_MILLIS);
+        }
+        try (MappedFileTokenRevocationStore reopened = new MappedFileTokenRevocationStore(file)) {
+            Assertions.assertEquals(2, reopened.size());
+            Assertions.assertTrue(reopened.isRevoked("after-compaction"));
+        }
+    }
+
+    @Test
+    void periodicCompaction_triggeredByWrites() throws InterruptedException {
+        Path file = tempDir.resolve("revocations.log");
+        try (MappedFileTokenRevocationStore store = new MappedFileTokenRevocationStore(file, 1000, 50L)) {
+            for (int i = 0; i < 20; i++)
+                store.revoke(UUID.randomUUID().toString(), System.currentTimeMillis() + 20L);
+            Thread.sleep(60L); //NOSONAR: necessary to test natural expiry; no Awaitility available
+            store.revoke("trigger", FAR_FUTURE_MILLIS);
+            //compaction runs in background: header plus the only live record once done
+            int expectedBytes = 8 + 1 + 2 + "trigger".length() + 8 + 4;
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (store.getFileBytes() != expectedBytes && System.currentTimeMillis() < deadline)
+                Thread.sleep(10L); //NOSONAR: waits for the background compaction; no Awaitility available
+            Assertions.assertEquals(expectedBytes, store.getFileBytes());
+        }
+    }
+
+    @Test
+    void revocationsDuringCompaction_areKept() throws InterruptedException {
+        Path file = tempDir.resolve("revocations.log");
+        List<String> jtis = new ArrayList<>();
+        try (MappedFileTokenRevocationStore store = new MappedFileTokenRevocationStore(file)) {
+            for (int i = 0; i < 5_000; i++)
+                store.revoke(UUID.randomUUID().toString(), FAR_FUTURE_MILLIS);
+            Thread compaction = new Thread(store::compact);
+            compaction.start();
+            for (int i = 0; i < 2_000; i++) {
+                String jti = UUID.randomUUID().toString();
+                jtis.add(jti);
+                store.revoke(jti, FAR_FUTURE_MILLIS);
+            }
+            compaction.join();
+            store.revoke("after-compaction", FAR_FUTURE_MILLIS);
+        }
+        try (MappedFileTokenRevocationStore reopened = new MappedFileTokenRevocationStore(file)) {
+            Assertions.assertEquals(7_001, reopened.size());
+            jtis.forEach(jti -> Assertions.assertTrue(reopened.isRevoked(jti)));
+            Assertions.assertTrue(reopened.isRevoked("after-compaction"));
+        }
+    }
+
+    @Test
+    void fileGrows_beyondInitialMapping() {
+        Path file = tempDir.resolve("revocations.log");
+        List<String> jtis = new ArrayList<>();
+        try (MappedFileTokenRevocationStore store = new MappedFileTokenRevocationStore(file)) {
+            //29 bytes per record: well beyond the initial 64KB mapping
+            for (int i = 0; i < 10_000; i++) {
+                String jti = UUID.randomUUID().toString();
+                jtis.add(jti);
+                store.revoke(jti, FAR_FUTURE_MILLIS);
+            }
+        }
+        try (MappedFileTokenRevocationStore reopened = new MappedFileTokenRevocationStore(file)) {
+            Assertions.assertEquals(10_000, reopened.size());
+            jtis.forEach(jti -> Assertions.assertTrue(reopened.isRevoked(jti)));
+        }
+    }
+
+    @Test
+    void tornRecord_replayStopsAtLastValidRecord() throws IOException {
+        Path file = tempDir.resolve("revocations.log");
+        String first = UUID.randomUUID().toString();
+        String second = UUID.randomUUID().toString();
+        int firstRecordEnd;
+        try (MappedFileTokenRevocationStore store = new MappedFileTokenRevocationStore(file)) {
+            store.revoke(first, FAR_FUTURE_MILLIS);
+            firstRecordEnd = store.getFileBytes();
+            store.revoke(second, FAR_FUTURE_MILLIS);
+        }
+        //corrupt the expiry of the second record, as an interrupted write would
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(firstRecordEnd + 20L);
+            raf.writeByte(0x7f);
+        }
+        try (MappedFileTokenRevocationStore reopened = new MappedFileTokenRevocationStore(file)) {
+            Assertions.assertTrue(reopened.isRevoked(first));
+            Assertions.assertFalse(reopened.isRevoked(second));
+            Assertions.assertEquals(firstRecordEnd, reopened.getFileBytes());
+            //the torn record is overwritten by the next revocation
+            reopened.revoke(second, FAR_FUTURE_MILLIS);
+        }
+        try (MappedFileTokenRevocationStore reopened = new MappedFileTokenRevocationStore(file)) {
+            Assertions.assertTrue(reopened.isRevoked(second));
+        }
+    }
+
+    @Test
+    void subjectWatermarks_surviveReopenAndCompaction() {
+        Path file = tempDir.resolve("revocations.log");
+        long watermark = System.currentTimeMillis();
+        try (MappedFileTokenRevocationStore store = new MappedFileTokenRevocationStore(file)) {
+            store.revokeAllForSubject("alice", watermark - 1000L);
+            store.revokeAllForSubject("alice", watermark);
+            store.compact();
+            store.revokeAllForSubject("bob", watermark);
+        }
+        try (MappedFileTokenRevocationStore reopened = new MappedFileTokenRevocationStore(file)) {
+            Assertions.assertEquals(watermark, reopened.getSubjectRevokedBefore("alice"));
+            Assertions.assertEquals(watermark, reopened.getSubjectRevokedBefore("bob"));
+            Assertions.assertEquals(0L, reopened.getSubjectRevokedBefore("carol"));
+        }
+    }
+}
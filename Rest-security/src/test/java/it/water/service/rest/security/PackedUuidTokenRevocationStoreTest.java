@@ -0,0 +1,136 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security;
+
+import it.water.service.rest.security.jwt.PackedUuidTokenRevocationStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tests the packed UUID revocation table: UUID and fallback jti, expiry sweep, cap enforcement
+ * and consistency of the open-addressing table after removals.
+ */
+class PackedUuidTokenRevocationStoreTest {
+
+    private static final long FAR_FUTURE_MILLIS = System.currentTimeMillis() + 3_600_000L;
+
+    @Test
+    void uuidJti_revokedAndChecked() {
+        PackedUuidTokenRevocationStore store = new PackedUuidTokenRevocationStore();
+        String jti = UUID.randomUUID().toString();
+        store.revoke(jti, FAR_FUTURE_MILLIS);
+        Assertions.assertTrue(store.isRevoked(jti));
+        Assertions.assertFalse(store.isRevoked(UUID.randomUUID().toString()));
+        Assertions.assertFalse(store.isRevoked(null));
+        Assertions.assertEquals(1, store.size());
+    }
+
+    @Test
+    void nonCanonicalJti_usesStringFallback() {
+        PackedUuidTokenRevocationStore store = new PackedUuidTokenRevocationStore();
+        String uuid = UUID.randomUUID().toString();
+        store.revoke("custom-jti", FAR_FUTURE_MILLIS);
+        store.revoke(uuid, FAR_FUTURE_MILLIS);
+        Assertions.assertTrue(store.isRevoked("custom-jti"));
+        //same UUID in uppercase is a different jti string
+        Assertions.assertFalse(store.isRevoked(uuid.toUpperCase(Locale.ROOT)));
+        store.revoke("   ", FAR_FUTURE_MILLIS);
+        Assertions.assertEquals(2, store.size());
+    }
+
+    @Test
+    void expiredJti_notRevokedAndSwept() throws InterruptedException {
+        PackedUuidTokenRevocationStore store = new PackedUuidTokenRevocationStore();
+        store.revoke(UUID.randomUUID().toString(), System.currentTimeMillis() - 1);
+        Assertions.assertEquals(0, store.size(), "Already expired tokens must not be stored");
+        List<String> shortLived = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            String jti = UUID.randomUUID().toString();
+            shortLived.add(jti);
+            store.revoke(jti, System.currentTimeMillis() + 30L);
+        }
+        Thread.sleep(60L); //NOSONAR: necessary to test natural expiry; no Awaitility available
+        shortLived.forEach(jti -> Assertions.assertFalse(store.isRevoked(jti)));
+        //each write sweeps a few slots of the table: enough writes to cover it drop every expired entry
+        for (int i = 0; i < 1024; i++)
+            store.revoke(UUID.randomUUID().toString(), FAR_FUTURE_MILLIS);
+        Assertions.assertEquals(1024, store.size());
+    }
+
+    @Test
+    void capEnforced_andTableConsistentAfterEvictions() {
+        int cap = 1000;
+        PackedUuidTokenRevocationStore store = new PackedUuidTokenRevocationStore(cap, false);
+        List<String> jtis = new ArrayList<>();
+        for (int i = 0; i < 5 * cap; i++) {
+            String jti = UUID.randomUUID().toString();
+            jtis.add(jti);
+            store.revoke(jti, FAR_FUTURE_MILLIS + i);
+        }
+        Assertions.assertEquals(cap, store.size());
+        //every entry still in the table must be reachable after the backward-shift deletions
+        long revoked = jtis.stream().filter(store::isRevoked).count();
+        Assertions.assertEquals(cap, revoked);
+    }
+
+    @Test
+    void offHeapTable_behavesLikeHeapTable() {
+        PackedUuidTokenRevocationStore store = new PackedUuidTokenRevocationStore(10_000, true);
+        List<String> jtis = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            String jti = UUID.randomUUID().toString();
+            jtis.add(jti);
+            store.revoke(jti, FAR_FUTURE_MILLIS);
+        }
+        Assertions.assertTrue(jtis.stream().allMatch(store::isRevoked));
+        //24 bytes per slot, table kept at most half full
+        Assertions.assertTrue(store.getTableBytes() <= 4L * 5_000 * 24);
+    }
+
+    @Test
+    void concurrentReadsDuringWrites_neverMissRevokedJti() throws InterruptedException {
+        PackedUuidTokenRevocationStore store = new PackedUuidTokenRevocationStore();
+        List<String> stable = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String jti = UUID.randomUUID().toString();
+            stable.add(jti);
+            store.revoke(jti, FAR_FUTURE_MILLIS);
+        }
+        AtomicBoolean missed = new AtomicBoolean();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                for (String jti : stable) {
+                    if (!store.isRevoked(jti))
+                        missed.set(true);
+                }
+            }
+        });
+        reader.start();
+        //writes trigger several resizes while the reader runs
+        for (int i = 0; i < 50_000; i++)
+            store.revoke(UUID.randomUUID().toString(), FAR_FUTURE_MILLIS);
+        running.set(false);
+        reader.join();
+        Assertions.assertFalse(missed.get());
+    }
+}
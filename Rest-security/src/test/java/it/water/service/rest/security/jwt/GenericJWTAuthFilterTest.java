@@ -17,12 +17,17 @@ package it.water.service.rest.security.jwt;
 
 import it.water.core.permission.exceptions.UnauthorizedException;
 import it.water.service.rest.api.security.LoggedIn;
+import it.water.service.rest.api.security.jwt.JwtTokenService;
+import it.water.service.rest.api.security.jwt.VerifiedJwtToken;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 /**
  * Covers the reflection-hierarchy utility methods of {@link GenericJWTAuthFilter}
@@ -74,6 +79,25 @@ class GenericJWTAuthFilterTest {
         }
     }
 
+    private interface CustomIssuersApi {
+        @LoggedIn(issuers = {"issuerA", "issuerB"})
+        void securedMethod();
+
+        void openMethod();
+    }
+
+    private static class CustomIssuersController implements CustomIssuersApi {
+        @Override
+        public void securedMethod() {
+            // fixture only: issuers are declared on the interface method
+        }
+
+        @Override
+        public void openMethod() {
+            // fixture only: no login required
+        }
+    }
+
     private static class NoAnnotationAtAll {
         public void plainMethod() {
             // fixture only: no annotation anywhere in the hierarchy
@@ -178,4 +202,71 @@ class GenericJWTAuthFilterTest {
         String token = filter.getTokenFromRequest("Bearer abc123", null);
         Assertions.assertEquals("abc123", token);
     }
+
+    // -------------------------------------------------------------------
+    // verifyToken (single-pass verification)
+    // -------------------------------------------------------------------
+
+    @Test
+    void verifyTokenValidTokenReturnsVerifiedToken() throws NoSuchMethodException {
+        LoggedIn annotation = DirectAnnotated.class.getMethod("directMethod").getAnnotation(LoggedIn.class);
+        JwtTokenService jwtTokenService = Mockito.mock(JwtTokenService.class);
+        VerifiedJwtToken verified = new VerifiedJwtToken("user", "issuer", List.of("issuer"), "jti", 0L, Long.MAX_VALUE, Set.of(), null);
+        Mockito.when(jwtTokenService.verifyToken(List.of(annotation.issuers()), "abc123")).thenReturn(Optional.of(verified));
+        Assertions.assertSame(verified, filter.verifyToken(jwtTokenService, annotation, "Bearer abc123"));
+        Mockito.verify(jwtTokenService, Mockito.never()).getPrincipals(Mockito.anyString());
+        Mockito.verify(jwtTokenService, Mockito.never()).validateToken(Mockito.anyList(), Mockito.anyString());
+    }
+
+    @Test
+    void verifyTokenInvalidTokenThrows() throws NoSuchMethodException {
+        LoggedIn annotation = DirectAnnotated.class.getMethod("directMethod").getAnnotation(LoggedIn.class);
+        JwtTokenService jwtTokenService = Mockito.mock(JwtTokenService.class);
+        Mockito.when(jwtTokenService.verifyToken(Mockito.anyList(), Mockito.anyString())).thenReturn(Optional.empty());
+        Assertions.assertThrows(UnauthorizedException.class,
+                () -> filter.verifyToken(jwtTokenService, annotation, "Bearer abc123"));
+    }
+
+    // -------------------------------------------------------------------
+    // RestMethodSecurityDescriptor (cached per-method security requirements)
+    // -------------------------------------------------------------------
+
+    @Test
+    void descriptorIsResolvedOnceAndCached() throws NoSuchMethodException {
+        Method method = InterfaceImpl.class.getMethod("interfaceMethod");
+        RestMethodSecurityDescriptor descriptor = RestMethodSecurityDescriptor.of(method);
+        Assertions.assertSame(descriptor, RestMethodSecurityDescriptor.of(method));
+        Assertions.assertTrue(descriptor.isLoginRequired());
+        Assertions.assertEquals(List.of("it.water.core.api.model.User"), descriptor.getIssuers());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> descriptor.getIssuers().clear());
+    }
+
+    @Test
+    void descriptorResolvesIssuersFromInterfaceMethod() throws NoSuchMethodException {
+        RestMethodSecurityDescriptor.precompute(CustomIssuersController.class);
+        RestMethodSecurityDescriptor secured = RestMethodSecurityDescriptor.of(CustomIssuersController.class.getMethod("securedMethod"));
+        Assertions.assertTrue(secured.isLoginRequired());
+        Assertions.assertEquals(List.of("issuerA", "issuerB"), secured.getIssuers());
+        RestMethodSecurityDescriptor open = RestMethodSecurityDescriptor.of(CustomIssuersController.class.getMethod("openMethod"));
+        Assertions.assertFalse(open.isLoginRequired());
+        Assertions.assertNull(open.getLoggedIn());
+        Assertions.assertTrue(open.getIssuers().isEmpty());
+    }
+
+    @Test
+    void descriptorWithoutAnnotationDoesNotRequireLogin() throws NoSuchMethodException {
+        RestMethodSecurityDescriptor descriptor = RestMethodSecurityDescriptor.of(NoAnnotationAtAll.class.getMethod("plainMethod"));
+        Assertions.assertFalse(descriptor.isLoginRequired());
+        Assertions.assertSame(descriptor, RestMethodSecurityDescriptor.of(DirectAnnotated.class.getMethod("toString")));
+    }
+
+    @Test
+    void verifyTokenWithDescriptorUsesPrecomputedIssuers() throws NoSuchMethodException {
+        RestMethodSecurityDescriptor descriptor = RestMethodSecurityDescriptor.of(CustomIssuersController.class.getMethod("securedMethod"));
+        JwtTokenService jwtTokenService = Mockito.mock(JwtTokenService.class);
+        VerifiedJwtToken verified = new VerifiedJwtToken("user", "issuerA", List.of("issuerA"), "jti", 0L, Long.MAX_VALUE, Set.of(), null);
+        Mockito.when(jwtTokenService.verifyToken(List.of("issuerA", "issuerB"), "abc123")).thenReturn(Optional.of(verified));
+        Assertions.assertSame(verified, filter.verifyToken(jwtTokenService, descriptor, "Bearer abc123"));
+        Assertions.assertThrows(UnauthorizedException.class, () -> filter.verifyToken(jwtTokenService, descriptor, "Bearer other"));
+    }
 }
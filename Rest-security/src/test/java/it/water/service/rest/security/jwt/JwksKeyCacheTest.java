@@ -0,0 +1,152 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unit tests for {@link JwksKeyCache}: kid indexing, fetch collapsing, unknown kid rate limiting,
+ * stale serving on refresh failures and loading from a local file stand-in.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class JwksKeyCacheTest {
+    private static final String JWKS_URL = "https://idp.example.com/jwks.json";
+
+    private RSAKey firstKey;
+    private RSAKey secondKey;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @BeforeAll
+    void generateKeys() throws Exception {
+        firstKey = new RSAKeyGenerator(2048).keyID("first").generate().toPublicJWK();
+        secondKey = new RSAKeyGenerator(2048).keyID("second").generate().toPublicJWK();
+    }
+
+    @Test
+    void keysAreIndexedByKid() {
+        JwksKeyCache cache = new JwksKeyCache(JWKS_URL, 60000, 60000, 1000, url -> new JWKSet(Arrays.asList(firstKey, secondKey)), executor);
+        Assertions.assertEquals("second", cache.getKey("second").getKeyID());
+        Assertions.assertEquals("first", cache.getKey("first").getKeyID());
+        Assertions.assertNull(cache.getKey(null));
+        Assertions.assertEquals(1, cache.getFetchCount());
+        //a missing kid never falls back to another published key
+        Assertions.assertNull(cache.getKey("missing"));
+        Assertions.assertEquals(2, cache.getFetchCount());
+    }
+
+    @Test
+    void concurrentColdFetchesAreCollapsed() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        JwksKeyCache cache = new JwksKeyCache(JWKS_URL, 60000, 60000, 5000, url -> {
+            loads.incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            return new JWKSet(firstKey);
+        }, executor);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        List<Future<JWK>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            results.add(callers.submit(() -> cache.getKey("first")));
+        Thread.sleep(200);
+        release.countDown();
+        for (Future<JWK> result : results)
+            Assertions.assertEquals("first", result.get(5, TimeUnit.SECONDS).getKeyID());
+        callers.shutdown();
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    void unknownKidRefetchIsRateLimitedAndPicksUpRotatedKeys() {
+        AtomicReference<JWKSet> published = new AtomicReference<>(new JWKSet(firstKey));
+        JwksKeyCache cache = new JwksKeyCache(JWKS_URL, 60000, 60000, 1000, url -> published.get(), executor);
+        Assertions.assertNotNull(cache.getKey("first"));
+        //key rotation on the identity provider: the first unknown kid triggers one refetch
+        published.set(new JWKSet(Arrays.asList(firstKey, secondKey)));
+        Assertions.assertNotNull(cache.getKey("second"));
+        Assertions.assertEquals(2, cache.getFetchCount());
+        //further unknown kids within the interval never hit the identity provider
+        for (int i = 0; i < 10; i++)
+            Assertions.assertNull(cache.getKey("forged-" + i));
+        Assertions.assertEquals(2, cache.getFetchCount());
+    }
+
+    @Test
+    void rotatedKeyIsFetchedWhileThePreviousKeyIsStillPublished() {
+        AtomicReference<JWKSet> published = new AtomicReference<>(new JWKSet(firstKey));
+        JwksKeyCache cache = new JwksKeyCache(JWKS_URL, 60000, 60000, 1000, url -> published.get(), executor);
+        Assertions.assertEquals("first", cache.getKey("first").getKeyID());
+        //the identity provider publishes the new key next to the old one
+        published.set(new JWKSet(Arrays.asList(firstKey, secondKey)));
+        Assertions.assertEquals("first", cache.getKey("first").getKeyID());
+        Assertions.assertEquals(1, cache.getFetchCount());
+        Assertions.assertEquals("second", cache.getKey("second").getKeyID());
+        Assertions.assertEquals(2, cache.getFetchCount());
+    }
+
+    @Test
+    void staleKeysAreServedWhenBackgroundRefreshFails() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        JwksKeyCache cache = new JwksKeyCache(JWKS_URL, 50, 60000, 1000, url -> {
+            if (loads.incrementAndGet() > 1)
+                throw new IllegalStateException("identity provider down");
+            return new JWKSet(firstKey);
+        }, executor);
+        Assertions.assertNotNull(cache.getKey("first"));
+        Thread.sleep(100);
+        //ttl elapsed: refresh runs in background and fails, the stale key keeps being served
+        Assertions.assertNotNull(cache.getKey("first"));
+        Thread.sleep(100);
+        Assertions.assertNotNull(cache.getKey("first"));
+        Assertions.assertEquals(2, loads.get(), "after a failure refreshes must back off");
+    }
+
+    @Test
+    void coldFetchFailureReturnsNullWithinTimeout() {
+        JwksKeyCache cache = new JwksKeyCache(JWKS_URL, 60000, 60000, 200, url -> {
+            Thread.sleep(5000);
+            return new JWKSet(firstKey);
+        }, executor);
+        long start = System.currentTimeMillis();
+        Assertions.assertNull(cache.getKey("first"));
+        Assertions.assertTrue(System.currentTimeMillis() - start < 2000, "request thread must not wait past the fetch timeout");
+    }
+
+    @Test
+    void keysAreLoadedFromLocalFile() {
+        String fileUrl = new File("src/test/resources/certs/public_key.json").toURI().toString();
+        JwksKeyCache cache = new JwksKeyCache(fileUrl, 60000, 60000, 5000, executor);
+        Assertions.assertNotNull(cache.getKey("key"));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class JwtCryptoCacheTest {
+    private KeyPair firstKeyPair;
+    private KeyPair secondKeyPair;
+
+    @BeforeAll
+    void generateKeys() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        firstKeyPair = kpg.generateKeyPair();
+        secondKeyPair = kpg.generateKeyPair();
+    }
+
+    @Test
+    void signerIsReusedUntilTheKeyChanges() {
+        JwtCryptoCache cache = new JwtCryptoCache();
+        JWSSigner signer = cache.getSigner(JWSAlgorithm.RS256, firstKeyPair);
+        Assertions.assertSame(signer, cache.getSigner(JWSAlgorithm.RS256, firstKeyPair));
+        //a key pair reloaded from the keystore is a different instance holding the same key
+        Assertions.assertSame(signer, cache.getSigner(JWSAlgorithm.RS256, new KeyPair(firstKeyPair.getPublic(), firstKeyPair.getPrivate())));
+        Assertions.assertNotSame(signer, cache.getSigner(JWSAlgorithm.RS256, secondKeyPair));
+    }
+
+    @Test
+    void localVerifierIsReusedUntilTheKeyChanges() {
+        JwtCryptoCache cache = new JwtCryptoCache();
+        JWSVerifier verifier = cache.getVerifier(JWSAlgorithm.RS256, firstKeyPair.getPublic());
+        Assertions.assertSame(verifier, cache.getVerifier(JWSAlgorithm.RS256, firstKeyPair.getPublic()));
+        Assertions.assertNotSame(verifier, cache.getVerifier(JWSAlgorithm.RS256, secondKeyPair.getPublic()));
+        cache.clear();
+        Assertions.assertNotSame(verifier, cache.getVerifier(JWSAlgorithm.RS256, firstKeyPair.getPublic()));
+    }
+
+    @Test
+    void jwkVerifiersAreCachedPerKeyAndBounded() throws Exception {
+        JwtCryptoCache cache = new JwtCryptoCache();
+        RSAKey first = new RSAKeyGenerator(2048).keyID("first").generate().toPublicJWK();
+        RSAKey second = new RSAKeyGenerator(2048).keyID("second").generate().toPublicJWK();
+        JWSVerifier firstVerifier = cache.getVerifier(JWSAlgorithm.RS256, first);
+        JWSVerifier secondVerifier = cache.getVerifier(JWSAlgorithm.RS256, second);
+        Assertions.assertNotSame(firstVerifier, secondVerifier);
+        //the same key parsed again from a refreshed JWKS document
+        Assertions.assertSame(firstVerifier, cache.getVerifier(JWSAlgorithm.RS256, JWK.parse(first.toJSONString())));
+        Assertions.assertSame(secondVerifier, cache.getVerifier(JWSAlgorithm.RS256, second));
+        RSAKey signingKey = new RSAKeyGenerator(2048).generate();
+        for (int i = 0; i < JwtCryptoCache.MAX_JWK_VERIFIERS + 1; i++)
+            cache.getVerifier(JWSAlgorithm.RS256, new RSAKey.Builder(signingKey.toRSAPublicKey()).keyID("kid-" + i).build());
+        Assertions.assertNotSame(firstVerifier, cache.getVerifier(JWSAlgorithm.RS256, first));
+    }
+}
@@ -23,15 +23,20 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
- * Unit tests for {@link JwtSecurityOptionsImpl} — every getter simply delegates to
+ * Unit tests for {@link JwtSecurityOptionsImpl} — every getter reads a snapshot loaded through
  * {@link ApplicationProperties#getPropertyOrDefault}, so we cover both the default-value
- * path (property absent) and the overridden-value path (property configured) for each one.
+ * path (property absent) and the overridden-value path (property configured) for each one,
+ * plus snapshot reuse and change notification.
  */
 @ExtendWith(MockitoExtension.class)
 class JwtSecurityOptionsImplTest {
@@ -67,6 +72,18 @@ class JwtSecurityOptionsImplTest {
         Assertions.assertEquals("", jwtSecurityOptions.jwtAudience(), "jwtAudience must default to empty string");
         Assertions.assertEquals(JWTConstants.JWT_DEFAULT_CLOCK_SKEW_SECONDS, jwtSecurityOptions.jwtClockSkewSeconds(), "jwtClockSkewSeconds must default to 60s");
         Assertions.assertFalse(jwtSecurityOptions.testMode(), "testMode must default to false");
+        Assertions.assertFalse(jwtSecurityOptions.verifiedTokenCacheEnabled(), "verifiedTokenCacheEnabled must default to false");
+        Assertions.assertEquals(JWTConstants.JWT_DEFAULT_VERIFIED_CACHE_MAX_SIZE, jwtSecurityOptions.verifiedTokenCacheMaxSize(), "verifiedTokenCacheMaxSize must default to 10000");
+        Assertions.assertTrue(jwtSecurityOptions.rejectedTokenCacheEnabled(), "rejectedTokenCacheEnabled must default to true");
+        Assertions.assertEquals(JWTConstants.JWT_DEFAULT_REJECTED_CACHE_MAX_SIZE, jwtSecurityOptions.rejectedTokenCacheMaxSize(), "rejectedTokenCacheMaxSize must default to 10000");
+        Assertions.assertEquals(JWTConstants.JWT_DEFAULT_REJECTED_CACHE_TTL_MILLIS, jwtSecurityOptions.rejectedTokenCacheTtlMillis(), "rejectedTokenCacheTtlMillis must default to 30 seconds");
+        Assertions.assertEquals(JWTConstants.JWT_DEFAULT_MAX_TOKEN_LENGTH, jwtSecurityOptions.jwtMaxTokenLength(), "jwtMaxTokenLength must default to 8192");
+        Assertions.assertEquals(JWTConstants.JWT_DEFAULT_JWKS_CACHE_TTL_MILLIS, jwtSecurityOptions.jwksCacheTtlMillis(), "jwksCacheTtlMillis must default to 10 minutes");
+        Assertions.assertEquals(JWTConstants.JWT_DEFAULT_JWKS_UNKNOWN_KID_REFRESH_INTERVAL_MILLIS, jwtSecurityOptions.jwksUnknownKidRefreshIntervalMillis(), "jwksUnknownKidRefreshIntervalMillis must default to 30 seconds");
+        Assertions.assertEquals(JWTConstants.JWT_DEFAULT_JWKS_FETCH_TIMEOUT_MILLIS, jwtSecurityOptions.jwksFetchTimeoutMillis(), "jwksFetchTimeoutMillis must default to 5 seconds");
+        Assertions.assertEquals("RS256", jwtSecurityOptions.jwtSigningAlgorithm(), "jwtSigningAlgorithm must default to RS256");
+        Assertions.assertTrue(jwtSecurityOptions.jwtAllowedAlgorithms().isEmpty(), "jwtAllowedAlgorithms must default to empty");
+        Assertions.assertEquals("", jwtSecurityOptions.jwtSigningKeyAlias(), "jwtSigningKeyAlias must default to empty string");
     }
 
     @Test
@@ -80,6 +97,18 @@ class JwtSecurityOptionsImplTest {
         when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_AUDIENCE, "")).thenReturn("my-audience");
         when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_CLOCK_SKEW_SECONDS, JWTConstants.JWT_DEFAULT_CLOCK_SKEW_SECONDS)).thenReturn(120L);
         when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_TEST_MODE, false)).thenReturn(true);
+        when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_VERIFIED_CACHE_ENABLED, false)).thenReturn(true);
+        when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_VERIFIED_CACHE_MAX_SIZE, JWTConstants.JWT_DEFAULT_VERIFIED_CACHE_MAX_SIZE)).thenReturn(500L);
+        when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_REJECTED_CACHE_ENABLED, true)).thenReturn(false);
+        when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_REJECTED_CACHE_MAX_SIZE, JWTConstants.JWT_DEFAULT_REJECTED_CACHE_MAX_SIZE)).thenReturn(200L);
+        when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_REJECTED_CACHE_TTL_MILLIS, JWTConstants.JWT_DEFAULT_REJECTED_CACHE_TTL_MILLIS)).thenReturn(5000L);
+        when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_MAX_TOKEN_LENGTH, JWTConstants.JWT_DEFAULT_MAX_TOKEN_LENGTH)).thenReturn(4096L);
+        when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_JWKS_CACHE_TTL_MILLIS, JWTConstants.JWT_DEFAULT_JWKS_CACHE_TTL_MILLIS)).thenReturn(60000L);
+        when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_JWKS_UNKNOWN_KID_REFRESH_INTERVAL_MILLIS, JWTConstants.JWT_DEFAULT_JWKS_UNKNOWN_KID_REFRESH_INTERVAL_MILLIS)).thenReturn(1000L);
+        when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_JWKS_FETCH_TIMEOUT_MILLIS, JWTConstants.JWT_DEFAULT_JWKS_FETCH_TIMEOUT_MILLIS)).thenReturn(2000L);
+        when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_SIGNING_ALGORITHM, JWTConstants.JWT_DEFAULT_SIGNING_ALGORITHM)).thenReturn("ES256");
+        when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_ALLOWED_ALGORITHMS, "")).thenReturn("RS256, EdDSA");
+        when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_SIGNING_KEY_ALIAS, "")).thenReturn("jwt-signing");
 
         Assertions.assertTrue(jwtSecurityOptions.validateJwtWithJwsUrl());
         Assertions.assertEquals("myKeyId", jwtSecurityOptions.jwtKeyId());
@@ -90,5 +119,55 @@ class JwtSecurityOptionsImplTest {
         Assertions.assertEquals("my-audience", jwtSecurityOptions.jwtAudience());
         Assertions.assertEquals(120L, jwtSecurityOptions.jwtClockSkewSeconds());
         Assertions.assertTrue(jwtSecurityOptions.testMode());
+        Assertions.assertTrue(jwtSecurityOptions.verifiedTokenCacheEnabled());
+        Assertions.assertEquals(500L, jwtSecurityOptions.verifiedTokenCacheMaxSize());
+        Assertions.assertFalse(jwtSecurityOptions.rejectedTokenCacheEnabled());
+        Assertions.assertEquals(200L, jwtSecurityOptions.rejectedTokenCacheMaxSize());
+        Assertions.assertEquals(5000L, jwtSecurityOptions.rejectedTokenCacheTtlMillis());
+        Assertions.assertEquals(4096L, jwtSecurityOptions.jwtMaxTokenLength());
+        Assertions.assertEquals(60000L, jwtSecurityOptions.jwksCacheTtlMillis());
+        Assertions.assertEquals(1000L, jwtSecurityOptions.jwksUnknownKidRefreshIntervalMillis());
+        Assertions.assertEquals(2000L, jwtSecurityOptions.jwksFetchTimeoutMillis());
+        Assertions.assertEquals("ES256", jwtSecurityOptions.jwtSigningAlgorithm());
+        Assertions.assertEquals(java.util.List.of("RS256", "EdDSA"), jwtSecurityOptions.jwtAllowedAlgorithms());
+        Assertions.assertEquals("jwt-signing", jwtSecurityOptions.jwtSigningKeyAlias());
+    }
+
+    @Test
+    void optionsAreReadOnceAndReloadedOnRefresh() {
+        when(applicationProperties.getPropertyOrDefault(anyString(), anyBoolean()))
+                .thenAnswer(invocation -> invocation.getArgument(1));
+        when(applicationProperties.getPropertyOrDefault(anyString(), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(1));
+        when(applicationProperties.getPropertyOrDefault(anyString(), anyLong()))
+                .thenAnswer(invocation -> invocation.getArgument(1));
+        AtomicInteger changes = new AtomicInteger();
+        jwtSecurityOptions.addChangeListener(changes::incrementAndGet);
+
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertTrue(jwtSecurityOptions.validateJwt());
+            Assertions.assertEquals("", jwtSecurityOptions.jwtAudience());
+        }
+        //the whole snapshot is loaded once, getters perform no property lookups
+        verify(applicationProperties, times(1)).getPropertyOrDefault(JWTConstants.JWT_PROP_VALIDATION_ENABLED, true);
+        verify(applicationProperties, times(1)).getPropertyOrDefault(JWTConstants.JWT_PROP_AUDIENCE, "");
+
+        //unchanged properties: no notification
+        jwtSecurityOptions.refresh();
+        Assertions.assertEquals(0, changes.get());
+
+        when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_AUDIENCE, "")).thenReturn("new-audience");
+        jwtSecurityOptions.refresh();
+        Assertions.assertEquals("new-audience", jwtSecurityOptions.jwtAudience());
+        Assertions.assertEquals(1, changes.get());
+        Runnable failingListener = () -> {
+            throw new IllegalStateException("listener failure");
+        };
+        jwtSecurityOptions.addChangeListener(failingListener);
+        when(applicationProperties.getPropertyOrDefault(JWTConstants.JWT_PROP_AUDIENCE, "")).thenReturn("other-audience");
+        jwtSecurityOptions.refresh();
+        //a failing listener does not prevent the others from being notified
+        Assertions.assertEquals(2, changes.get());
+        Assertions.assertEquals("other-audience", jwtSecurityOptions.jwtAudience());
     }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import it.water.core.model.exceptions.WaterRuntimeException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.List;
+import java.util.Set;
+
+class JwtSignatureAlgorithmsTest {
+
+    @Test
+    void parseSupportedAlgorithms() {
+        Assertions.assertEquals(JWSAlgorithm.RS256, JwtSignatureAlgorithms.parse(null));
+        Assertions.assertEquals(JWSAlgorithm.RS256, JwtSignatureAlgorithms.parse(" "));
+        Assertions.assertEquals(JWSAlgorithm.ES256, JwtSignatureAlgorithms.parse("es256"));
+        Assertions.assertEquals(JWSAlgorithm.EdDSA, JwtSignatureAlgorithms.parse("EdDSA"));
+        Assertions.assertEquals(JWSAlgorithm.EdDSA, JwtSignatureAlgorithms.parse("Ed25519"));
+        Assertions.assertThrows(WaterRuntimeException.class, () -> JwtSignatureAlgorithms.parse("HS256"));
+        Assertions.assertThrows(WaterRuntimeException.class, () -> JwtSignatureAlgorithms.parse("none"));
+    }
+
+    @Test
+    void allowedAlgorithmsAlwaysContainSigningAlgorithm() {
+        Assertions.assertEquals(Set.of(JWSAlgorithm.ES256), JwtSignatureAlgorithms.parseAllowed(List.of(), JWSAlgorithm.ES256));
+        Assertions.assertEquals(Set.of(JWSAlgorithm.RS256, JWSAlgorithm.EdDSA), JwtSignatureAlgorithms.parseAllowed(List.of("Ed25519"), JWSAlgorithm.RS256));
+        Assertions.assertThrows(WaterRuntimeException.class, () -> JwtSignatureAlgorithms.parseAllowed(List.of("HS256"), JWSAlgorithm.RS256));
+    }
+
+    @Test
+    void rs256RoundTrip() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        assertRoundTrip(JWSAlgorithm.RS256, kpg.generateKeyPair(), "RSA");
+    }
+
+    @Test
+    void es256RoundTrip() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+        kpg.initialize(new ECGenParameterSpec("secp256r1"));
+        assertRoundTrip(JWSAlgorithm.ES256, kpg.generateKeyPair(), "EC");
+    }
+
+    @Test
+    void eddsaRoundTrip() throws Exception {
+        assertRoundTrip(JWSAlgorithm.EdDSA, KeyPairGenerator.getInstance("Ed25519").generateKeyPair(), "OKP");
+    }
+
+    @Test
+    void keyNotMatchingAlgorithmIsRejected() throws Exception {
+        KeyPairGenerator rsa = KeyPairGenerator.getInstance("RSA");
+        rsa.initialize(2048);
+        KeyPair rsaKeyPair = rsa.generateKeyPair();
+        KeyPairGenerator ec = KeyPairGenerator.getInstance("EC");
+        ec.initialize(new ECGenParameterSpec("secp384r1"));
+        KeyPair p384KeyPair = ec.generateKeyPair();
+        Assertions.assertThrows(WaterRuntimeException.class, () -> JwtSignatureAlgorithms.createSigner(JWSAlgorithm.ES256, rsaKeyPair));
+        Assertions.assertThrows(WaterRuntimeException.class, () -> JwtSignatureAlgorithms.createVerifier(JWSAlgorithm.EdDSA, rsaKeyPair.getPublic()));
+        //ES256 is bound to the P-256 curve
+        Assertions.assertThrows(WaterRuntimeException.class, () -> JwtSignatureAlgorithms.createVerifier(JWSAlgorithm.ES256, p384KeyPair.getPublic()));
+        JWK rsaJwk = JwtSignatureAlgorithms.toPublicJWK(JWSAlgorithm.RS256, rsaKeyPair.getPublic(), "key");
+        Assertions.assertThrows(WaterRuntimeException.class, () -> JwtSignatureAlgorithms.createVerifier(JWSAlgorithm.ES256, rsaJwk));
+    }
+
+    private void assertRoundTrip(JWSAlgorithm algorithm, KeyPair keyPair, String expectedKty) throws Exception {
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(algorithm).keyID("key").build(), new JWTClaimsSet.Builder().subject("testUser").build());
+        jwt.sign(JwtSignatureAlgorithms.createSigner(algorithm, keyPair));
+        SignedJWT parsed = SignedJWT.parse(jwt.serialize());
+        Assertions.assertTrue(parsed.verify(JwtSignatureAlgorithms.createVerifier(algorithm, keyPair.getPublic())));
+        JWK publicJwk = JwtSignatureAlgorithms.toPublicJWK(algorithm, keyPair.getPublic(), "key");
+        Assertions.assertEquals(expectedKty, publicJwk.getKeyType().getValue());
+        Assertions.assertFalse(publicJwk.isPrivate());
+        Assertions.assertTrue(parsed.verify(JwtSignatureAlgorithms.createVerifier(algorithm, JWK.parse(publicJwk.toJSONString()))));
+    }
+}
@@ -18,27 +18,41 @@ package it.water.service.rest.security.jwt;
 import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.JWSSigner;
+import com.nimbusds.jose.crypto.ECDSASigner;
 import com.nimbusds.jose.crypto.MACSigner;
 import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 import it.water.core.api.security.EncryptionUtil;
 import it.water.core.model.exceptions.WaterRuntimeException;
+import it.water.core.security.model.principal.RolePrincipal;
 import it.water.service.rest.api.options.JwtSecurityOptions;
 import it.water.service.rest.api.security.jwt.TokenRevocationStore;
+import it.water.service.rest.api.security.jwt.VerifiedJwtToken;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.SecureRandom;
+import java.security.interfaces.ECPrivateKey;
 import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import org.mockito.junit.jupiter.MockitoSettings;
@@ -498,4 +512,560 @@ class NimbusJwtTokenServiceMockTest {
                 service.validateToken(VALID_ISSUERS, "garbage.not.a.jwt"),
                 "validateToken with unparseable input must return false");
     }
+
+    // -------------------------------------------------------------------
+    // single-pass verification: verifyToken returns principals and claims
+    // -------------------------------------------------------------------
+
+    @Test
+    @Order(20)
+    void verifyToken_validToken_returnsPrincipalsWithSingleVerification() throws Exception {
+        stubForLocalKeyValidation();
+        clearInvocations(encryptionUtil);
+
+        Date exp = nowPlusSeconds(3600);
+        JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.RS256).build();
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject("testUser")
+                .issuer(TEST_ISSUER)
+                .audience(TEST_ISSUER)
+                .expirationTime(exp)
+                .issueTime(new Date())
+                .jwtID("jti-20")
+                .claim(JWTConstants.JWT_CLAIM_ROLES, List.of("admin-role"))
+                .build();
+        SignedJWT jwt = new SignedJWT(header, claims);
+        jwt.sign(new RSASSASigner((RSAPrivateKey) rsaKeyPair.getPrivate()));
+
+        Optional<VerifiedJwtToken> verified = service.verifyToken(VALID_ISSUERS, jwt.serialize());
+        Assertions.assertTrue(verified.isPresent());
+        Assertions.assertEquals("testUser", verified.get().getSubject());
+        Assertions.assertEquals("jti-20", verified.get().getJwtId());
+        Assertions.assertEquals(exp.getTime() / 1000, verified.get().getExpiresAtMillis() / 1000);
+        Assertions.assertTrue(verified.get().getPrincipals().stream().anyMatch(p -> p instanceof RolePrincipal && p.getName().equals("admin-role")));
+        //missing isAdmin / loggedEntityId claims must not prevent the user principal from being built
+        Assertions.assertTrue(verified.get().getPrincipals().stream().anyMatch(p -> p.getName().equals("testUser") && !(p instanceof RolePrincipal)));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> verified.get().getPrincipals().clear());
+        //key is resolved once: the signature is verified only once per call
+        verify(encryptionUtil, times(1)).getServerKeyPair();
+    }
+
+    @Test
+    @Order(21)
+    void verifyToken_revokedToken_returnsEmpty() throws Exception {
+        stubForLocalKeyValidation();
+        when(tokenRevocationStore.isRevoked(anyString())).thenReturn(true);
+
+        String token = buildValidRs256Token(TEST_ISSUER, TEST_ISSUER, new Date(), nowPlusSeconds(3600));
+        Assertions.assertFalse(service.verifyToken(VALID_ISSUERS, token).isPresent());
+    }
+
+    @Test
+    @Order(22)
+    void verifyToken_nullOrGarbageToken_returnsEmpty() {
+        Assertions.assertFalse(service.verifyToken(VALID_ISSUERS, null).isPresent());
+        Assertions.assertFalse(service.verifyToken(VALID_ISSUERS, "garbage.not.a.jwt").isPresent());
+    }
+
+    // -------------------------------------------------------------------
+    // verified token cache
+    // -------------------------------------------------------------------
+
+    @Test
+    @Order(23)
+    void verifyToken_cacheEnabled_skipsSignatureVerificationButChecksRevocation() throws Exception {
+        stubForLocalKeyValidation();
+        when(jwtSecurityOptions.verifiedTokenCacheEnabled()).thenReturn(true);
+        when(jwtSecurityOptions.verifiedTokenCacheMaxSize()).thenReturn(100L);
+        NimbusJwtTokenService cachingService = new NimbusJwtTokenService();
+        cachingService.setEncryptionUtil(encryptionUtil);
+        cachingService.setJwtSecurityOptions(jwtSecurityOptions);
+        cachingService.setTokenRevocationStore(tokenRevocationStore);
+        clearInvocations(encryptionUtil);
+
+        String token = buildValidRs256Token(TEST_ISSUER, TEST_ISSUER, new Date(), nowPlusSeconds(3600));
+        Assertions.assertTrue(cachingService.verifyToken(VALID_ISSUERS, token).isPresent());
+        Assertions.assertTrue(cachingService.verifyToken(VALID_ISSUERS, token).isPresent());
+        verify(encryptionUtil, times(1)).getServerKeyPair();
+        Assertions.assertEquals(1, cachingService.getVerifiedTokenCache().getHits());
+
+        //issuer is re-checked on hit
+        Assertions.assertFalse(cachingService.verifyToken(List.of("otherIssuer"), token).isPresent());
+        //revocation is re-checked on hit
+        when(tokenRevocationStore.isRevoked(anyString())).thenReturn(true);
+        Assertions.assertFalse(cachingService.verifyToken(VALID_ISSUERS, token).isPresent());
+        verify(encryptionUtil, times(1)).getServerKeyPair();
+    }
+
+    @Test
+    @Order(24)
+    void verifyToken_cacheDisabledByDefault() {
+        Assertions.assertNull(service.getVerifiedTokenCache());
+    }
+
+    // -------------------------------------------------------------------
+    // JWKS key cache: lookup by token header kid
+    // -------------------------------------------------------------------
+
+    @Test
+    @Order(25)
+    void validateToken_jwsFile_keyResolvedByHeaderKid() throws Exception {
+        RSAKey publishedKey = new RSAKey.Builder((RSAPublicKey) rsaKeyPair.getPublic()).keyID("rotated-kid").build();
+        Path jwksFile = Files.createTempFile("jwks", ".json");
+        Files.writeString(jwksFile, new JWKSet(publishedKey).toString());
+        stubForLocalKeyValidation();
+        when(jwtSecurityOptions.validateJwtWithJwsUrl()).thenReturn(true);
+        when(jwtSecurityOptions.jwsURL()).thenReturn(jwksFile.toUri().toString());
+        when(jwtSecurityOptions.jwtKeyId()).thenReturn("key");
+
+        JWSHeader header = new JWSHeader.Builder(JWSAlgorithm.RS256).keyID("rotated-kid").build();
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject("testUser")
+                .issuer(TEST_ISSUER)
+                .audience(TEST_ISSUER)
+                .expirationTime(nowPlusSeconds(3600))
+                .jwtID(UUID.randomUUID().toString())
+                .build();
+        SignedJWT jwt = new SignedJWT(header, claims);
+        jwt.sign(new RSASSASigner((RSAPrivateKey) rsaKeyPair.getPrivate()));
+        try {
+            Assertions.assertTrue(service.validateToken(VALID_ISSUERS, jwt.serialize()),
+                    "The key published under the token header kid must be used even if it differs from the configured key id");
+        } finally {
+            Files.deleteIfExists(jwksFile);
+        }
+    }
+
+    @Test
+    @Order(25)
+    void validateToken_jwsFile_rotatedKidRefetchedWhileConfiguredKidStillPublished() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(RSA_KEY_SIZE);
+        KeyPair previousKeyPair = kpg.generateKeyPair();
+        RSAKey previousKey = new RSAKey.Builder((RSAPublicKey) previousKeyPair.getPublic()).keyID("key").build();
+        RSAKey rotatedKey = new RSAKey.Builder((RSAPublicKey) rsaKeyPair.getPublic()).keyID("rotated-kid").build();
+        Path jwksFile = Files.createTempFile("jwks", ".json");
+        Files.writeString(jwksFile, new JWKSet(previousKey).toString());
+        stubForLocalKeyValidation();
+        when(jwtSecurityOptions.validateJwtWithJwsUrl()).thenReturn(true);
+        when(jwtSecurityOptions.jwsURL()).thenReturn(jwksFile.toUri().toString());
+        when(jwtSecurityOptions.jwtKeyId()).thenReturn("key");
+        try {
+            Assertions.assertTrue(service.validateToken(VALID_ISSUERS, signWithKid(previousKeyPair, "key")));
+            //the identity provider rotates the key and keeps publishing the previous one
+            Files.writeString(jwksFile, new JWKSet(List.of(previousKey, rotatedKey)).toString());
+            Assertions.assertTrue(service.validateToken(VALID_ISSUERS, signWithKid(rsaKeyPair, "rotated-kid")),
+                    "A kid missing from the cached key set must trigger a refetch, not a fallback to the configured key");
+            //tokens without kid keep using the configured key id
+            Assertions.assertTrue(service.validateToken(VALID_ISSUERS, signWithKid(previousKeyPair, null)));
+        } finally {
+            Files.deleteIfExists(jwksFile);
+        }
+    }
+
+    private String signWithKid(KeyPair keyPair, String kid) throws Exception {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject("testUser")
+                .issuer(TEST_ISSUER)
+                .audience(TEST_ISSUER)
+                .expirationTime(nowPlusSeconds(3600))
+                .jwtID(UUID.randomUUID().toString())
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(kid).build(), claims);
+        jwt.sign(new RSASSASigner((RSAPrivateKey) keyPair.getPrivate()));
+        return jwt.serialize();
+    }
+
+    // -------------------------------------------------------------------
+    // configurable signature algorithms (ES256 / EdDSA)
+    // -------------------------------------------------------------------
+
+    @Test
+    @Order(26)
+    void generateJwtToken_es256Configured_signsAndValidatesWithEcKey() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+        kpg.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair ecKeyPair = kpg.generateKeyPair();
+        stubForLocalKeyValidation();
+        when(encryptionUtil.getServerKeyPair()).thenReturn(ecKeyPair);
+        when(jwtSecurityOptions.jwtSigningAlgorithm()).thenReturn("ES256");
+        when(jwtSecurityOptions.jwtKeyId()).thenReturn("key");
+        when(jwtSecurityOptions.jwtTokenDurationMillis()).thenReturn(ONE_HOUR_MILLIS);
+
+        String token = service.generateJwtToken(new TestUser("testUser", Set.of()));
+        Assertions.assertEquals(JWSAlgorithm.ES256, SignedJWT.parse(token).getHeader().getAlgorithm());
+        Assertions.assertTrue(service.validateToken(List.of(TestUser.class.getName()), token));
+        Assertions.assertTrue(service.getJWK().contains("\"kty\":\"EC\""));
+    }
+
+    @Test
+    @Order(27)
+    void validateToken_allowedAlgorithmNotConfigured_rejected() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+        kpg.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair ecKeyPair = kpg.generateKeyPair();
+        stubForLocalKeyValidation();
+        when(encryptionUtil.getServerKeyPair()).thenReturn(ecKeyPair);
+
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.ES256).build(), new JWTClaimsSet.Builder()
+                .subject("testUser")
+                .issuer(TEST_ISSUER)
+                .audience(TEST_ISSUER)
+                .expirationTime(nowPlusSeconds(3600))
+                .build());
+        jwt.sign(new ECDSASigner((ECPrivateKey) ecKeyPair.getPrivate()));
+        //RS256 only by default: an ES256 token must be rejected even if it is correctly signed
+        Assertions.assertFalse(service.validateToken(VALID_ISSUERS, jwt.serialize()));
+        //once ES256 is explicitly allowed it is accepted
+        when(jwtSecurityOptions.jwtAllowedAlgorithms()).thenReturn(List.of("ES256"));
+        Assertions.assertTrue(service.validateToken(VALID_ISSUERS, jwt.serialize()));
+    }
+
+    @Test
+    @Order(28)
+    void validateToken_eddsaConfigured_acceptsEd25519AndRejectsRs256() throws Exception {
+        KeyPair edKeyPair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        stubForLocalKeyValidation();
+        when(encryptionUtil.getServerKeyPair()).thenReturn(edKeyPair);
+        when(jwtSecurityOptions.jwtSigningAlgorithm()).thenReturn("Ed25519");
+
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.EdDSA).build(), new JWTClaimsSet.Builder()
+                .subject("testUser")
+                .issuer(TEST_ISSUER)
+                .audience(TEST_ISSUER)
+                .expirationTime(nowPlusSeconds(3600))
+                .build());
+        jwt.sign(JwtSignatureAlgorithms.createSigner(JWSAlgorithm.EdDSA, edKeyPair));
+        Assertions.assertTrue(service.validateToken(VALID_ISSUERS, jwt.serialize()));
+        //RS256 is not in the allowed set anymore
+        Assertions.assertFalse(service.validateToken(VALID_ISSUERS, buildValidRs256Token(TEST_ISSUER, TEST_ISSUER, null, nowPlusSeconds(3600))));
+    }
+
+    // -------------------------------------------------------------------
+    // bulk issuance
+    // -------------------------------------------------------------------
+
+    @Test
+    @Order(29)
+    void generateJwtTokens_signsInParallelPreservingOrder() throws Exception {
+        stubForLocalKeyValidation();
+        when(jwtSecurityOptions.jwtKeyId()).thenReturn("key");
+        when(jwtSecurityOptions.jwtTokenDurationMillis()).thenReturn(ONE_HOUR_MILLIS);
+        List<TestUser> users = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            users.add(new TestUser("batch-" + i, Set.of()));
+
+        List<String> tokens = service.generateJwtTokens(users);
+        Assertions.assertEquals(users.size(), tokens.size());
+        for (int i = 0; i < users.size(); i++) {
+            Assertions.assertEquals("batch-" + i, SignedJWT.parse(tokens.get(i)).getJWTClaimsSet().getSubject());
+            Assertions.assertTrue(service.validateToken(List.of(TestUser.class.getName()), tokens.get(i)));
+        }
+        Assertions.assertTrue(service.generateJwtTokens(List.of()).isEmpty());
+    }
+
+    @Test
+    @Order(30)
+    void generateJwtTokens_signingFailure_isPropagated() {
+        stubForLocalKeyValidation();
+        when(jwtSecurityOptions.jwtKeyId()).thenReturn("key");
+        when(jwtSecurityOptions.jwtSigningAlgorithm()).thenReturn("ES256");
+        List<TestUser> users = List.of(new TestUser("first", Set.of()), new TestUser("second", Set.of()));
+        //RSA server key with an ES256 signing algorithm
+        Assertions.assertThrows(WaterRuntimeException.class, () -> service.generateJwtTokens(users));
+    }
+
+    @Test
+    @Order(30)
+    void generateJwtTokens_afterDeactivation_stillIssued() throws Exception {
+        stubForLocalKeyValidation();
+        when(jwtSecurityOptions.jwtKeyId()).thenReturn("key");
+        NimbusJwtTokenService issuingService = new NimbusJwtTokenService();
+        issuingService.setEncryptionUtil(encryptionUtil);
+        issuingService.setJwtSecurityOptions(jwtSecurityOptions);
+        List<TestUser> users = List.of(new TestUser("first", Set.of()), new TestUser("second", Set.of()));
+        Assertions.assertEquals(2, issuingService.generateJwtTokens(users).size());
+        //the issuer threads are stopped, a reactivated service starts new ones
+        issuingService.onDeactivate();
+        Assertions.assertEquals(2, issuingService.generateJwtTokens(users).size());
+        issuingService.onDeactivate();
+        Assertions.assertDoesNotThrow(issuingService::onDeactivate);
+    }
+
+    @Test
+    @Order(31)
+    void verifiedTokenCache_invalidatedWhenOptionsChange() throws Exception {
+        stubForLocalKeyValidation();
+        when(jwtSecurityOptions.verifiedTokenCacheEnabled()).thenReturn(true);
+        when(jwtSecurityOptions.verifiedTokenCacheMaxSize()).thenReturn(100L);
+        NimbusJwtTokenService cachingService = new NimbusJwtTokenService();
+        cachingService.setEncryptionUtil(encryptionUtil);
+        cachingService.setJwtSecurityOptions(jwtSecurityOptions);
+        cachingService.setTokenRevocationStore(tokenRevocationStore);
+
+        String token = buildValidRs256Token(TEST_ISSUER, TEST_ISSUER, new Date(), nowPlusSeconds(3600));
+        Assertions.assertTrue(cachingService.verifyToken(VALID_ISSUERS, token).isPresent());
+        Assertions.assertEquals(1, cachingService.getVerifiedTokenCache().size());
+        ArgumentCaptor<Runnable> listener = ArgumentCaptor.forClass(Runnable.class);
+        verify(jwtSecurityOptions).addChangeListener(listener.capture());
+        listener.getValue().run();
+        Assertions.assertEquals(0, cachingService.getVerifiedTokenCache().size());
+    }
+
+    // -------------------------------------------------------------------
+    // subject watermark revocation
+    // -------------------------------------------------------------------
+
+    private String buildRs256TokenIssuedAt(Date issueTime) throws Exception {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject("testUser")
+                .issuer(TEST_ISSUER)
+                .audience(TEST_ISSUER)
+                .issueTime(issueTime)
+                .expirationTime(nowPlusSeconds(3600))
+                .jwtID(UUID.randomUUID().toString())
+                .build();
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).build(), claims);
+        jwt.sign(new RSASSASigner((RSAPrivateKey) rsaKeyPair.getPrivate()));
+        return jwt.serialize();
+    }
+
+    @Test
+    @Order(32)
+    void verifyToken_issuedBeforeSubjectWatermark_returnsEmpty() throws Exception {
+        stubForLocalKeyValidation();
+        long watermarkSecond = System.currentTimeMillis() / 1000 * 1000;
+        long watermark = watermarkSecond + 500L;
+        when(tokenRevocationStore.getSubjectRevokedBefore("testUser")).thenReturn(watermark);
+
+        Assertions.assertFalse(service.verifyToken(VALID_ISSUERS, buildRs256TokenIssuedAt(new Date(watermark - 10_000L))).isPresent());
+        //without iat the token cannot prove it was issued after the watermark
+        Assertions.assertFalse(service.verifyToken(VALID_ISSUERS, buildRs256TokenIssuedAt(null)).isPresent());
+        //issued earlier in the watermark second
+        Assertions.assertFalse(service.verifyToken(VALID_ISSUERS, buildRs256TokenIssuedAt(new Date(watermark - 400L))).isPresent());
+        //iat has second precision: a token issued later in the watermark second cannot be told apart
+        Assertions.assertFalse(service.verifyToken(VALID_ISSUERS, buildRs256TokenIssuedAt(new Date(watermark + 100L))).isPresent());
+        Assertions.assertTrue(service.verifyToken(VALID_ISSUERS, buildRs256TokenIssuedAt(new Date(watermarkSecond + 1000L))).isPresent());
+    }
+
+    @Test
+    @Order(32)
+    void verifyToken_subjectWatermarkBelowOneSecond_revokesTokensWithoutIat() throws Exception {
+        stubForLocalKeyValidation();
+        when(tokenRevocationStore.getSubjectRevokedBefore("testUser")).thenReturn(500L);
+        Assertions.assertFalse(service.verifyToken(VALID_ISSUERS, buildRs256TokenIssuedAt(null)).isPresent());
+        Assertions.assertTrue(service.verifyToken(VALID_ISSUERS, buildRs256TokenIssuedAt(new Date())).isPresent());
+    }
+
+    @Test
+    @Order(33)
+    void verifyToken_cacheHit_checksSubjectWatermark() throws Exception {
+        stubForLocalKeyValidation();
+        when(jwtSecurityOptions.verifiedTokenCacheEnabled()).thenReturn(true);
+        when(jwtSecurityOptions.verifiedTokenCacheMaxSize()).thenReturn(100L);
+        NimbusJwtTokenService cachingService = new NimbusJwtTokenService();
+        cachingService.setEncryptionUtil(encryptionUtil);
+        cachingService.setJwtSecurityOptions(jwtSecurityOptions);
+        cachingService.setTokenRevocationStore(tokenRevocationStore);
+
+        long issuedAt = System.currentTimeMillis() - 10_000L;
+        String token = buildRs256TokenIssuedAt(new Date(issuedAt));
+        Assertions.assertTrue(cachingService.verifyToken(VALID_ISSUERS, token).isPresent());
+        when(tokenRevocationStore.getSubjectRevokedBefore("testUser")).thenReturn(System.currentTimeMillis());
+        Assertions.assertFalse(cachingService.verifyToken(VALID_ISSUERS, token).isPresent());
+        Assertions.assertEquals(1, cachingService.getVerifiedTokenCache().getHits());
+    }
+
+    // -------------------------------------------------------------------
+    // invalid token admission gate
+    // -------------------------------------------------------------------
+
+    private NimbusJwtTokenService createRejectingService() {
+        when(jwtSecurityOptions.rejectedTokenCacheEnabled()).thenReturn(true);
+        when(jwtSecurityOptions.rejectedTokenCacheMaxSize()).thenReturn(100L);
+        when(jwtSecurityOptions.rejectedTokenCacheTtlMillis()).thenReturn(60_000L);
+        NimbusJwtTokenService rejectingService = new NimbusJwtTokenService();
+        rejectingService.setEncryptionUtil(encryptionUtil);
+        rejectingService.setJwtSecurityOptions(jwtSecurityOptions);
+        rejectingService.setTokenRevocationStore(tokenRevocationStore);
+        return rejectingService;
+    }
+
+    @Test
+    @Order(34)
+    void verifyToken_badSignature_rejectedFromCacheOnReplay() throws Exception {
+        stubForLocalKeyValidation();
+        NimbusJwtTokenService rejectingService = createRejectingService();
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(RSA_KEY_SIZE);
+        SignedJWT forged = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).build(), new JWTClaimsSet.Builder()
+                .subject("testUser").issuer(TEST_ISSUER).audience(TEST_ISSUER).expirationTime(nowPlusSeconds(3600)).build());
+        forged.sign(new RSASSASigner(kpg.generateKeyPair().getPrivate()));
+        String token = forged.serialize();
+        clearInvocations(encryptionUtil);
+
+        Assertions.assertFalse(rejectingService.verifyToken(VALID_ISSUERS, token).isPresent());
+        Assertions.assertFalse(rejectingService.verifyToken(VALID_ISSUERS, token).isPresent());
+        Assertions.assertTrue(rejectingService.getPrincipals(token).isEmpty());
+        //the signature was verified only once
+        verify(encryptionUtil, times(1)).getServerKeyPair();
+        Assertions.assertEquals(2, rejectingService.getRejectedTokenCache().getHits());
+        //expired tokens cannot become valid either
+        String expired = buildValidRs256Token(TEST_ISSUER, TEST_ISSUER, null, nowMinusSeconds(10));
+        Assertions.assertFalse(rejectingService.verifyToken(VALID_ISSUERS, expired).isPresent());
+        Assertions.assertEquals(2, rejectingService.getRejectedTokenCache().size());
+    }
+
+    @Test
+    @Order(35)
+    void verifyToken_retryableRejections_notRemembered() throws Exception {
+        stubForLocalKeyValidation();
+        NimbusJwtTokenService rejectingService = createRejectingService();
+
+        //not yet valid: it will be accepted later
+        String notYetValid = buildValidRs256Token(TEST_ISSUER, TEST_ISSUER, new Date(System.currentTimeMillis() + FAR_FUTURE_NBF_MILLIS), nowPlusSeconds(7200));
+        Assertions.assertFalse(rejectingService.verifyToken(VALID_ISSUERS, notYetValid).isPresent());
+        //issuer mismatch depends on the caller
+        String token = buildValidRs256Token(TEST_ISSUER, TEST_ISSUER, new Date(), nowPlusSeconds(3600));
+        Assertions.assertFalse(rejectingService.verifyToken(List.of("otherIssuer"), token).isPresent());
+        Assertions.assertEquals(0, rejectingService.getRejectedTokenCache().size());
+        Assertions.assertTrue(rejectingService.verifyToken(VALID_ISSUERS, token).isPresent());
+    }
+
+    @Test
+    @Order(36)
+    void verifyToken_malformedAndRevokedTokens_rejectedWithoutVerification() throws Exception {
+        stubForLocalKeyValidation();
+        NimbusJwtTokenService rejectingService = createRejectingService();
+        clearInvocations(encryptionUtil);
+
+        //structural check: rejected before parsing and before touching the cache
+        Assertions.assertFalse(rejectingService.verifyToken(VALID_ISSUERS, "garbage.not.a.jwt").isPresent());
+        Assertions.assertTrue(rejectingService.getPrincipals("garbage.not.a.jwt").isEmpty());
+        when(jwtSecurityOptions.jwtMaxTokenLength()).thenReturn(64L);
+        String token = buildValidRs256Token(TEST_ISSUER, TEST_ISSUER, new Date(), nowPlusSeconds(3600));
+        Assertions.assertFalse(rejectingService.verifyToken(VALID_ISSUERS, token).isPresent());
+        when(jwtSecurityOptions.jwtMaxTokenLength()).thenReturn(0L);
+        verify(encryptionUtil, never()).getServerKeyPair();
+        Assertions.assertEquals(0, rejectingService.getRejectedTokenCache().size());
+
+        //revocation is permanent
+        when(tokenRevocationStore.isRevoked(anyString())).thenReturn(true);
+        Assertions.assertFalse(rejectingService.verifyToken(VALID_ISSUERS, token).isPresent());
+        Assertions.assertFalse(rejectingService.verifyToken(VALID_ISSUERS, token).isPresent());
+        verify(encryptionUtil, times(1)).getServerKeyPair();
+        Assertions.assertEquals(1, rejectingService.getRejectedTokenCache().getHits());
+    }
+
+    @Test
+    @Order(37)
+    void rejectedTokenCache_invalidatedWhenOptionsChange() throws Exception {
+        stubForLocalKeyValidation();
+        NimbusJwtTokenService rejectingService = createRejectingService();
+        clearInvocations(jwtSecurityOptions);
+
+        String expired = buildValidRs256Token(TEST_ISSUER, TEST_ISSUER, null, nowMinusSeconds(10));
+        Assertions.assertFalse(rejectingService.verifyToken(VALID_ISSUERS, expired).isPresent());
+        Assertions.assertEquals(1, rejectingService.getRejectedTokenCache().size());
+        ArgumentCaptor<Runnable> listener = ArgumentCaptor.forClass(Runnable.class);
+        verify(jwtSecurityOptions).addChangeListener(listener.capture());
+        listener.getValue().run();
+        Assertions.assertEquals(0, rejectingService.getRejectedTokenCache().size());
+    }
+
+    @Test
+    @Order(38)
+    void rejectedTokenCache_disabled_returnsNull() {
+        when(jwtSecurityOptions.rejectedTokenCacheEnabled()).thenReturn(false);
+        Assertions.assertNull(service.getRejectedTokenCache());
+    }
+
+    @Test
+    @Order(39)
+    void verifyToken_jwsSignatureMismatch_rememberedOnlyForTheKeyNamedByTheToken() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(RSA_KEY_SIZE);
+        KeyPair configuredKeyPair = kpg.generateKeyPair();
+        RSAKey configuredKey = new RSAKey.Builder((RSAPublicKey) configuredKeyPair.getPublic()).keyID("key").build();
+        Path jwksFile = Files.createTempFile("jwks", ".json");
+        Files.writeString(jwksFile, new JWKSet(configuredKey).toString());
+        stubForLocalKeyValidation();
+        when(jwtSecurityOptions.validateJwtWithJwsUrl()).thenReturn(true);
+        when(jwtSecurityOptions.jwsURL()).thenReturn(jwksFile.toUri().toString());
+        when(jwtSecurityOptions.jwtKeyId()).thenReturn("key");
+        NimbusJwtTokenService rejectingService = createRejectingService();
+        try {
+            //no kid: verified against the configured key id, the identity provider may have rotated it
+            Assertions.assertFalse(rejectingService.verifyToken(VALID_ISSUERS, signWithKid(rsaKeyPair, null)).isPresent());
+            Assertions.assertEquals(0, rejectingService.getRejectedTokenCache().size());
+            //the token names the key it does not match: it can never become valid
+            Assertions.assertFalse(rejectingService.verifyToken(VALID_ISSUERS, signWithKid(rsaKeyPair, "key")).isPresent());
+            Assertions.assertEquals(1, rejectingService.getRejectedTokenCache().size());
+            Assertions.assertTrue(rejectingService.verifyToken(VALID_ISSUERS, signWithKid(configuredKeyPair, null)).isPresent());
+        } finally {
+            Files.deleteIfExists(jwksFile);
+        }
+    }
+
+    @Test
+    @Order(40)
+    void verifyToken_cachedToken_rejectedOnceItsKeyIsRemovedFromJwks() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(RSA_KEY_SIZE);
+        RSAKey compromisedKey = new RSAKey.Builder((RSAPublicKey) rsaKeyPair.getPublic()).keyID("compromised").build();
+        RSAKey otherKey = new RSAKey.Builder((RSAPublicKey) kpg.generateKeyPair().getPublic()).keyID("other").build();
+        Path jwksFile = Files.createTempFile("jwks", ".json");
+        Files.writeString(jwksFile, new JWKSet(List.of(compromisedKey, otherKey)).toString());
+        stubForLocalKeyValidation();
+        when(jwtSecurityOptions.validateJwtWithJwsUrl()).thenReturn(true);
+        when(jwtSecurityOptions.jwsURL()).thenReturn(jwksFile.toUri().toString());
+        when(jwtSecurityOptions.jwtKeyId()).thenReturn("other");
+        //every lookup refreshes the key set in background
+        when(jwtSecurityOptions.jwksCacheTtlMillis()).thenReturn(1L);
+        when(jwtSecurityOptions.verifiedTokenCacheEnabled()).thenReturn(true);
+        when(jwtSecurityOptions.verifiedTokenCacheMaxSize()).thenReturn(100L);
+        NimbusJwtTokenService cachingService = new NimbusJwtTokenService();
+        cachingService.setEncryptionUtil(encryptionUtil);
+        cachingService.setJwtSecurityOptions(jwtSecurityOptions);
+        cachingService.setTokenRevocationStore(tokenRevocationStore);
+        String token = signWithKid(rsaKeyPair, "compromised");
+        try {
+            Assertions.assertTrue(cachingService.verifyToken(VALID_ISSUERS, token).isPresent());
+            Assertions.assertTrue(cachingService.verifyToken(VALID_ISSUERS, token).isPresent());
+            Assertions.assertEquals(1, cachingService.getVerifiedTokenCache().getHits());
+            //the identity provider withdraws the key
+            Files.writeString(jwksFile, new JWKSet(otherKey).toString());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (cachingService.verifyToken(VALID_ISSUERS, token).isPresent() && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            Assertions.assertFalse(cachingService.verifyToken(VALID_ISSUERS, token).isPresent(),
+                    "A cached token must be rejected once its signing key is no longer published");
+            Assertions.assertEquals(0, cachingService.getVerifiedTokenCache().size());
+        } finally {
+            Files.deleteIfExists(jwksFile);
+        }
+    }
+
+    @Test
+    @Order(41)
+    void generateJwtToken_validatedAgainstItsOwnPublishedJwks() throws Exception {
+        stubForLocalKeyValidation();
+        when(jwtSecurityOptions.jwtKeyId()).thenReturn("key");
+        when(jwtSecurityOptions.jwtTokenDurationMillis()).thenReturn(ONE_HOUR_MILLIS);
+        NimbusJwtTokenService issuingService = new NimbusJwtTokenService();
+        issuingService.setEncryptionUtil(encryptionUtil);
+        issuingService.setJwtSecurityOptions(jwtSecurityOptions);
+        issuingService.setTokenRevocationStore(tokenRevocationStore);
+        String token = issuingService.generateJwtToken(new TestUser("testUser", Set.of()));
+        Path jwksFile = Files.createTempFile("jwks", ".json");
+        Files.writeString(jwksFile, "{\"keys\":[" + issuingService.getJWK() + "]}");
+        when(jwtSecurityOptions.validateJwtWithJwsUrl()).thenReturn(true);
+        when(jwtSecurityOptions.jwsURL()).thenReturn(jwksFile.toUri().toString());
+        try {
+            Assertions.assertTrue(issuingService.validateToken(List.of(TestUser.class.getName()), token),
+                    "A token issued by the service must validate against the key set it publishes");
+        } finally {
+            Files.deleteIfExists(jwksFile);
+        }
+    }
 }
@@ -20,6 +20,7 @@ import it.water.core.permission.exceptions.UnauthorizedException;
 import it.water.core.security.model.principal.UserPrincipal;
 import it.water.core.testing.utils.bundle.TestRuntimeInitializer;
 import it.water.core.testing.utils.junit.WaterTestExtension;
+import it.water.service.rest.api.options.JwtSecurityOptions;
 import it.water.service.rest.api.security.LoggedIn;
 import it.water.service.rest.api.security.jwt.JwtTokenService;
 import com.nimbusds.jwt.SignedJWT;
@@ -264,15 +265,21 @@ class RestSecurityTest implements Service {
         File publicKey = new File("src/test/resources/certs/public_key.json");
         TestRuntimeInitializer.getInstance().getApplicationProperties().override(JWTConstants.JWT_PROP_VALIDATE_BY_JWS, "true");
         TestRuntimeInitializer.getInstance().getApplicationProperties().override(JWTConstants.JWT_PROP_JWS_URL, publicKey.toURI().toString());
+        getJwtSecurityOptions().refresh();
         TestUser u = new TestUser("fakeUser", Collections.emptySet());
         String token = getJwtTokenService().generateJwtToken(u);
         String jwk = getJwtTokenService().getJWK();
         System.out.println(jwk);
         Assertions.assertTrue(getJwtTokenService().validateToken(Collections.singletonList(TestUser.class.getName()), token));
         TestRuntimeInitializer.getInstance().getApplicationProperties().override(JWTConstants.JWT_PROP_VALIDATE_BY_JWS, "false");
+        getJwtSecurityOptions().refresh();
     }
 
 
+    private JwtSecurityOptions getJwtSecurityOptions() {
+        return TestRuntimeInitializer.getInstance().getComponentRegistry().findComponent(JwtSecurityOptions.class, null);
+    }
+
     private JwtTokenService getJwtTokenService() {
         return TestRuntimeInitializer.getInstance().getComponentRegistry().findComponent(JwtTokenService.class, null);
     }
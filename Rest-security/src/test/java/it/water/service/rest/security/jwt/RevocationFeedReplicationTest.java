@@ -0,0 +1,232 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import it.water.service.rest.api.security.jwt.RevocationFeed;
+import it.water.service.rest.api.security.jwt.RevocationFeedEntry;
+import it.water.service.rest.api.security.jwt.RevocationFeedPage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replication of revocations between two in-process nodes: each node has its own store published as a feed,
+ * and a replicator pulling the feed of the other node.
+ */
+class RevocationFeedReplicationTest {
+
+    private static final long FAR_FUTURE_MILLIS = System.currentTimeMillis() + 3_600_000L;
+
+    /**
+     * Peer feed stand-in: counts the calls and fails while the network is partitioned.
+     */
+    private static class PeerLink implements RevocationFeed {
+        private RevocationFeed target;
+        private final AtomicBoolean partitioned = new AtomicBoolean();
+        private final AtomicInteger calls = new AtomicInteger();
+        private final AtomicInteger transferredEntries = new AtomicInteger();
+
+        PeerLink(RevocationFeed target) {
+            this.target = target;
+        }
+
+        @Override
+        public RevocationFeedPage getChangesSince(long sequence, int maxEntries) {
+            calls.incrementAndGet();
+            if (partitioned.get())
+                throw new IllegalStateException("peer unreachable");
+            RevocationFeedPage page = target.getChangesSince(sequence, maxEntries);
+            transferredEntries.addAndGet(page.getEntries().size());
+            return page;
+        }
+    }
+
+    @Test
+    void logoutOnNodeA_visibleOnNodeB_withoutEcho() {
+        ReplicatedTokenRevocationStore nodeA = new ReplicatedTokenRevocationStore(new InMemoryTokenRevocationStore());
+        ReplicatedTokenRevocationStore nodeB = new ReplicatedTokenRevocationStore(new InMemoryTokenRevocationStore());
+        RevocationFeedReplicator bPullsA = new RevocationFeedReplicator("nodeA", nodeA, nodeB);
+        RevocationFeedReplicator aPullsB = new RevocationFeedReplicator("nodeB", nodeB, nodeA);
+
+        String jti = UUID.randomUUID().toString();
+        nodeA.revoke(jti, FAR_FUTURE_MILLIS);
+        Assertions.assertFalse(nodeB.isRevoked(jti));
+        Assertions.assertEquals(1, bPullsA.pollOnce());
+        Assertions.assertTrue(nodeB.isRevoked(jti));
+        //replicated entries are not published again by node B
+        Assertions.assertEquals(0, nodeB.getLogSize());
+        Assertions.assertEquals(0, aPullsB.pollOnce());
+        Assertions.assertEquals(0, bPullsA.pollOnce());
+        Assertions.assertEquals(1, bPullsA.getLastAppliedSequence());
+    }
+
+    @Test
+    void subjectWatermark_replicated() {
+        ReplicatedTokenRevocationStore nodeA = new ReplicatedTokenRevocationStore(new InMemoryTokenRevocationStore());
+        ReplicatedTokenRevocationStore nodeB = new ReplicatedTokenRevocationStore(new InMemoryTokenRevocationStore());
+        long watermark = System.currentTimeMillis();
+        nodeA.revokeAllForSubject("alice", watermark);
+        new RevocationFeedReplicator("nodeA", nodeA, nodeB).pollOnce();
+        Assertions.assertEquals(watermark, nodeB.getSubjectRevokedBefore("alice"));
+    }
+
+    @Test
+    void catchUp_isBatched() {
+        ReplicatedTokenRevocationStore nodeA = new ReplicatedTokenRevocationStore(new InMemoryTokenRevocationStore());
+        ReplicatedTokenRevocationStore nodeB = new ReplicatedTokenRevocationStore(new InMemoryTokenRevocationStore());
+        PeerLink link = new PeerLink(nodeA);
+        RevocationFeedReplicator replicator = new RevocationFeedReplicator("nodeA", link, nodeB, 2, 1000L, 60_000L);
+        for (int i = 0; i < 5; i++)
+            nodeA.revoke("jti-" + i, FAR_FUTURE_MILLIS);
+        Assertions.assertEquals(5, replicator.pollOnce());
+        Assertions.assertEquals(3, link.calls.get());
+        for (int i = 0; i < 5; i++)
+            Assertions.assertTrue(nodeB.isRevoked("jti-" + i));
+    }
+
+    @Test
+    void catchUpAfterPartition_isIncremental() {
+        ReplicatedTokenRevocationStore nodeA = new ReplicatedTokenRevocationStore(new InMemoryTokenRevocationStore());
+        ReplicatedTokenRevocationStore nodeB = new ReplicatedTokenRevocationStore(new InMemoryTokenRevocationStore());
+        PeerLink link = new PeerLink(nodeA);
+        RevocationFeedReplicator replicator = new RevocationFeedReplicator("nodeA", link, nodeB);
+        for (int i = 0; i < 10; i++)
+            nodeA.revoke("before-" + i, FAR_FUTURE_MILLIS);
+        Assertions.assertEquals(10, replicator.pollOnce());
+
+        link.partitioned.set(true);
+        for (int i = 0; i < 3; i++)
+            nodeA.revoke("during-" + i, FAR_FUTURE_MILLIS);
+        Assertions.assertThrows(IllegalStateException.class, replicator::pollOnce);
+        Assertions.assertFalse(nodeB.isRevoked("during-0"));
+
+        link.partitioned.set(false);
+        link.transferredEntries.set(0);
+        Assertions.assertEquals(3, replicator.pollOnce());
+        //only the missed entries are transferred
+        Assertions.assertEquals(3, link.transferredEntries.get());
+        Assertions.assertTrue(nodeB.isRevoked("during-2"));
+    }
+
+    @Test
+    void peerRestart_feedReadFromBeginning() {
+        ReplicatedTokenRevocationStore nodeA = new ReplicatedTokenRevocationStore(new InMemoryTokenRevocationStore());
+        ReplicatedTokenRevocationStore nodeB = new ReplicatedTokenRevocationStore(new InMemoryTokenRevocationStore());
+        PeerLink link = new PeerLink(nodeA);
+        RevocationFeedReplicator replicator = new RevocationFeedReplicator("nodeA", link, nodeB);
+        for (int i = 0; i < 5; i++)
+            nodeA.revoke("old-" + i, FAR_FUTURE_MILLIS);
+        replicator.pollOnce();
+
+        //node A restarts: new feed, sequences start again from 1
+        ReplicatedTokenRevocationStore restartedA = new ReplicatedTokenRevocationStore(new InMemoryTokenRevocationStore());
+        restartedA.revoke("new-0", FAR_FUTURE_MILLIS);
+        link.target = restartedA;
+        Assertions.assertEquals(1, replicator.pollOnce());
+        Assertions.assertTrue(nodeB.isRevoked("new-0"));
+        Assertions.assertEquals(1, replicator.getLastAppliedSequence());
+    }
+
+    @Test
+    void feedCap_trimsOldestAndFlagsLateReaders() {
+        ReplicatedTokenRevocationStore node = new ReplicatedTokenRevocationStore(new InMemoryTokenRevocationStore(), 2);
+        for (int i = 0; i < 3; i++)
+            node.revoke("jti-" + i, FAR_FUTURE_MILLIS);
+        Assertions.assertEquals(2, node.getLogSize());
+        RevocationFeedPage page = node.getChangesSince(0, 10);
+        Assertions.assertTrue(page.isTruncated());
+        Assertions.assertEquals(2, page.getEntries().get(0).getSequence());
+        Assertions.assertFalse(node.getChangesSince(1, 10).isTruncated());
+        Assertions.assertEquals(3, page.getLastSequence());
+        Assertions.assertEquals(node.getFeedId(), page.getFeedId());
+        //expired tokens are neither stored nor published
+        node.revoke("expired", System.currentTimeMillis() - 1);
+        Assertions.assertEquals(3, node.getLastSequence());
+    }
+
+    @Test
+    void backoff_growsAndIsCapped() {
+        ReplicatedTokenRevocationStore node = new ReplicatedTokenRevocationStore(new InMemoryTokenRevocationStore());
+        RevocationFeedReplicator replicator = new RevocationFeedReplicator("peer", node, node, 10, 100L, 1000L);
+        Assertions.assertEquals(100L, replicator.backoffMillis(0));
+        long first = replicator.backoffMillis(1);
+        Assertions.assertTrue(first >= 100L && first <= 200L);
+        for (int failures = 4; failures < 40; failures++) {
+            long backoff = replicator.backoffMillis(failures);
+            Assertions.assertTrue(backoff >= 500L && backoff <= 1000L);
+        }
+    }
+
+    @Test
+    void backgroundReplication_recoversAfterFailures() throws InterruptedException {
+        ReplicatedTokenRevocationStore nodeA = new ReplicatedTokenRevocationStore(new InMemoryTokenRevocationStore());
+        ReplicatedTokenRevocationStore nodeB = new ReplicatedTokenRevocationStore(new InMemoryTokenRevocationStore());
+        PeerLink link = new PeerLink(nodeA);
+        link.partitioned.set(true);
+        try (RevocationFeedReplicator replicator = new RevocationFeedReplicator("nodeA", link, nodeB, 100, 10L, 40L)) {
+            replicator.start();
+            nodeA.revoke("background", FAR_FUTURE_MILLIS);
+            long deadline = System.currentTimeMillis() + 5000L;
+            while (replicator.getConsecutiveFailures() < 2 && System.currentTimeMillis() < deadline)
+                Thread.sleep(5L); //NOSONAR: waiting for the background poller; no Awaitility available
+            Assertions.assertTrue(replicator.getConsecutiveFailures() >= 2);
+            link.partitioned.set(false);
+            while (!nodeB.isRevoked("background") && System.currentTimeMillis() < deadline)
+                Thread.sleep(5L); //NOSONAR: waiting for the background poller; no Awaitility available
+            Assertions.assertTrue(nodeB.isRevoked("background"));
+        }
+    }
+
+    @Test
+    void replicatedRevocation_reachesBloomFilter() {
+        ReplicatedTokenRevocationStore nodeA = ReplicatedTokenRevocationStore.withBloomFilter(new InMemoryTokenRevocationStore());
+        ReplicatedTokenRevocationStore nodeB = ReplicatedTokenRevocationStore.withBloomFilter(new InMemoryTokenRevocationStore());
+        String jti = UUID.randomUUID().toString();
+        nodeA.revoke(jti, FAR_FUTURE_MILLIS);
+        Assertions.assertFalse(nodeB.isRevoked(jti));
+        Assertions.assertEquals(1, new RevocationFeedReplicator("nodeA", nodeA, nodeB).pollOnce());
+        //the outermost store of node B rejects the token: the filter does not answer "definitely not revoked"
+        Assertions.assertTrue(nodeB.isRevoked(jti));
+    }
+
+    @Test
+    void bloomFilter_cannotWrapReplicatedStore() {
+        ReplicatedTokenRevocationStore replicated = new ReplicatedTokenRevocationStore(new InMemoryTokenRevocationStore());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BloomFilterTokenRevocationStore(replicated));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ReplicatedTokenRevocationStore(replicated));
+    }
+
+    @Test
+    void httpClient_parsesFeedPage() throws Exception {
+        String json = "{\"feedId\":\"feed-1\",\"lastSequence\":7,\"hasMore\":true,\"truncated\":false,\"entries\":["
+                + "{\"sequence\":6,\"type\":\"TOKEN\",\"key\":\"jti-6\",\"epochMillis\":" + FAR_FUTURE_MILLIS + "},"
+                + "{\"sequence\":7,\"type\":\"SUBJECT\",\"key\":\"alice\",\"epochMillis\":1000}]}";
+        RevocationFeedPage page = HttpRevocationFeedClient.parsePage(json);
+        Assertions.assertEquals("feed-1", page.getFeedId());
+        Assertions.assertEquals(7, page.getLastSequence());
+        Assertions.assertTrue(page.isHasMore());
+        Assertions.assertFalse(page.isTruncated());
+        Assertions.assertEquals(2, page.getEntries().size());
+        RevocationFeedEntry subject = page.getEntries().get(1);
+        Assertions.assertEquals(RevocationFeedEntry.Type.SUBJECT, subject.getType());
+        Assertions.assertEquals("alice", subject.getKey());
+        Assertions.assertEquals(1000L, subject.getEpochMillis());
+        Assertions.assertEquals(FAR_FUTURE_MILLIS, page.getEntries().get(0).getEpochMillis());
+    }
+}
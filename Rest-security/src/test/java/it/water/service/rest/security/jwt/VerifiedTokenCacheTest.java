@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.security.jwt;
+
+import it.water.service.rest.api.security.jwt.VerifiedJwtToken;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Unit tests for {@link VerifiedTokenCache}: digest keyed lookups, expiry-aware reads,
+ * size bound and hit/miss/eviction counters.
+ */
+class VerifiedTokenCacheTest {
+
+    private VerifiedJwtToken verifiedToken(String jti, long expiresAtMillis) {
+        return new VerifiedJwtToken("user", "issuer", List.of("issuer"), jti, 0L, expiresAtMillis, Set.of(), null);
+    }
+
+    @Test
+    void getReturnsCachedVerificationAndCountsHitsAndMisses() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        long now = System.currentTimeMillis();
+        VerifiedJwtToken token = verifiedToken("jti-1", now + 60000);
+        Assertions.assertNull(cache.get("a.b.c", now));
+        cache.put("a.b.c", token);
+        Assertions.assertSame(token, cache.get("a.b.c", now));
+        Assertions.assertNull(cache.get("a.b.d", now));
+        Assertions.assertEquals(1, cache.getHits());
+        Assertions.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void expiredEntryIsNeverServed() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10);
+        long now = System.currentTimeMillis();
+        cache.put("a.b.c", verifiedToken("jti-1", now + 1000));
+        Assertions.assertNull(cache.get("a.b.c", now + 1001));
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertEquals(1, cache.getEvictions());
+        //already expired tokens are not cached at all
+        cache.put("x.y.z", verifiedToken("jti-2", now - 1));
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    void sizeIsBoundedAndEvictionsAreCounted() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(64, 4);
+        long exp = System.currentTimeMillis() + 60000;
+        for (int i = 0; i < 1000; i++)
+            cache.put("token." + i, verifiedToken("jti-" + i, exp));
+        Assertions.assertTrue(cache.size() <= 64, "cache must stay within its bound");
+        Assertions.assertEquals(1000 - cache.size(), cache.getEvictions());
+        cache.invalidateAll();
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    void invalidMaxEntriesIsRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new VerifiedTokenCache(0));
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.registry.filter.ComponentFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author Aristide Cittadino
+ * Cache of the component registry lookups done on the request path (filters, json deserialization),
+ * shared by all the rest components using the same registry.
+ * <p>
+ * The cache is invalidated whenever rest apis are registered or unregistered and when the rest server restarts,
+ * which is when bundles come and go. The registry exposes no registration callback, so as a safety net
+ * against components replaced by other modules each entry is looked up again at most once per revalidation interval.
+ */
+public class ComponentLookupCache {
+    private static final Logger log = LoggerFactory.getLogger(ComponentLookupCache.class);
+    private static final long REVALIDATION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    //one cache per registry. Caches are weakly referenced: each one holds its registry, which would otherwise
+    //keep its own key reachable. A registry is collected once no component uses its cache anymore.
+    private static final Map<ComponentRegistry, WeakReference<ComponentLookupCache>> CACHES = new WeakHashMap<>();
+
+    private final ComponentRegistry componentRegistry;
+    private final ConcurrentHashMap<LookupKey, CachedLookup> lookups = new ConcurrentHashMap<>();
+    //a lookup started before an invalidation must not be served after it
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    ComponentLookupCache(ComponentRegistry componentRegistry) {
+        this.componentRegistry = componentRegistry;
+    }
+
+    /**
+     * @param componentRegistry component registry
+     * @return the lookup cache shared by all the components using this registry
+     */
+    public static ComponentLookupCache of(ComponentRegistry componentRegistry) {
+        synchronized (CACHES) {
+            WeakReference<ComponentLookupCache> reference = CACHES.get(componentRegistry);
+            ComponentLookupCache cache = reference != null ? reference.get() : null;
+            if (cache == null) {
+                cache = new ComponentLookupCache(componentRegistry);
+                CACHES.put(componentRegistry, new WeakReference<>(cache));
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Drops the cached lookups of every registry, to be invoked when components are registered or unregistered.
+     */
+    public static void invalidateAll() {
+        List<ComponentLookupCache> caches = new ArrayList<>();
+        synchronized (CACHES) {
+            CACHES.values().forEach(reference -> {
+                ComponentLookupCache cache = reference.get();
+                if (cache != null)
+                    caches.add(cache);
+            });
+        }
+        caches.forEach(ComponentLookupCache::invalidate);
+    }
+
+    /**
+     * Looks up a required component: lookup failures are propagated and never cached.
+     *
+     * @param componentClass component class
+     * @return the component
+     */
+    public <T> T findComponent(Class<T> componentClass) {
+        LookupKey key = new LookupKey(componentClass, null, null);
+        long currentGeneration = generation.get();
+        CachedLookup cached = lookups.get(key);
+        if (cached != null && !cached.isStale(System.nanoTime(), currentGeneration)) {
+            hits.increment();
+            return componentClass.cast(cached.component);
+        }
+        misses.increment();
+        T component = componentRegistry.findComponent(componentClass, null);
+        if (component != null)
+            lookups.put(key, new CachedLookup(component, null, currentGeneration));
+        return component;
+    }
+
+    /**
+     * Looks up an optional component by a registration property. The filter is built once per key.
+     * Absence is not cached: a component registered later must be found by the next lookup.
+     *
+     * @param componentClass component class
+     * @param propertyName   registration property name
+     * @param propertyValue  registration property value
+     * @return the component or null if none is registered
+     */
+    public <T> T findOptionalComponent(Class<T> componentClass, String propertyName, String propertyValue) {
+        LookupKey key = new LookupKey(componentClass, propertyName, propertyValue);
+        long currentGeneration = generation.get();
+        CachedLookup cached = lookups.get(key);
+        if (cached != null && cached.component != null && !cached.isStale(System.nanoTime(), currentGeneration)) {
+            hits.increment();
+            return componentClass.cast(cached.component);
+        }
+        misses.increment();
+        T component = null;
+        ComponentFilter filter = cached != null ? cached.filter : null;
+        try {
+            if (filter == null)
+                filter = componentRegistry.getComponentFilterBuilder().createFilter(propertyName, propertyValue);
+            component = componentRegistry.findComponent(componentClass, filter);
+        } catch (Exception e) {
+            log.debug(e.getMessage(), e);
+        }
+        if (filter != null)
+            lookups.put(key, new CachedLookup(component, filter, currentGeneration));
+        return component;
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        lookups.clear();
+    }
+
+    public int size() {
+        return lookups.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private static final class CachedLookup {
+        private final Object component;
+        private final ComponentFilter filter;
+        private final long generation;
+        private final long revalidateAtNanos;
+
+        CachedLookup(Object component, ComponentFilter filter, long generation) {
+            this.component = component;
+            this.filter = filter;
+            this.generation = generation;
+            this.revalidateAtNanos = System.nanoTime() + REVALIDATION_INTERVAL_NANOS;
+        }
+
+        boolean isStale(long nowNanos, long currentGeneration) {
+            return generation != currentGeneration || nowNanos - revalidateAtNanos >= 0;
+        }
+    }
+
+    private static final class LookupKey {
+        private final Class<?> componentClass;
+        private final String propertyName;
+        private final String propertyValue;
+
+        LookupKey(Class<?> componentClass, String propertyName, String propertyValue) {
+            this.componentClass = componentClass;
+            this.propertyName = propertyName;
+            this.propertyValue = propertyValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof LookupKey other))
+                return false;
+            return componentClass == other.componentClass && Objects.equals(propertyName, other.propertyName) && Objects.equals(propertyValue, other.propertyValue);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(componentClass, propertyName, propertyValue);
+        }
+    }
+}
@@ -16,62 +16,177 @@
 
 package it.water.service.rest;
 
+import it.water.core.api.interceptors.OnDeactivate;
 import it.water.core.api.service.rest.RestApi;
 import it.water.core.api.service.rest.RestApiManager;
 import it.water.core.api.service.rest.RestApiRegistry;
 import it.water.core.interceptors.annotations.FrameworkComponent;
 import it.water.core.interceptors.annotations.Inject;
+import it.water.service.rest.api.options.RestOptions;
 import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 @FrameworkComponent
 public class RestApiRegistryImpl implements RestApiRegistry {
     private Logger log = LoggerFactory.getLogger(RestApiRegistryImpl.class);
-    private Map<Class<? extends RestApi>, Class<? extends RestApi>> registeredRestApis = new HashMap<>();
-    private UUID currentUuid = UUID.randomUUID();
-    private UUID lastUuid = null;
+    //registrations are published as immutable snapshots, readers never lock
+    private final AtomicReference<RestApiRegistrySnapshot> snapshot = new AtomicReference<>(RestApiRegistrySnapshot.EMPTY);
+    //version of the snapshot the rest api manager has been last restarted with
+    private final AtomicLong lastRestartedVersion = new AtomicLong(RestApiRegistrySnapshot.UNVERSIONED);
     @Inject
     @Setter
     private RestApiManager restApiManager;
+    @Inject
+    @Setter
+    private RestOptions restOptions;
+    //pending coalesced restart, guarded by restartLock
+    private final Object restartLock = new Object();
+    private ScheduledExecutorService restartScheduler;
+    private ScheduledFuture<?> pendingRestart;
+    private long firstPendingRequestNanos;
+    private final AtomicLong restartRequests = new AtomicLong();
+    private final AtomicLong serverRebuilds = new AtomicLong();
 
     @Override
     public void addRestApiService(Class<? extends RestApi> restApiInterface, Class<? extends RestApi> concreteClass) {
         log.debug("Registering rest api interface {}", restApiInterface.getName());
-        currentUuid = UUID.randomUUID();
-        this.registeredRestApis.computeIfAbsent(restApiInterface, key -> concreteClass);
+        //the first registration of an interface wins
+        snapshot.updateAndGet(current -> current.withRestApi(restApiInterface, concreteClass));
+        //a module is being installed: components looked up on the request path may have changed
+        ComponentLookupCache.invalidateAll();
     }
 
     @Override
     public void removeRestApiService(Class<? extends RestApi> restApi) {
         log.debug("Removing rest api registration interface {}", restApi.getName());
-        if (this.registeredRestApis.containsKey(restApi)) {
-            currentUuid = UUID.randomUUID();
-            this.registeredRestApis.remove(restApi);
-        }
+        RestApiRegistrySnapshot previous = snapshot.getAndUpdate(current -> current.withoutRestApi(restApi));
+        if (previous.getRestApis().containsKey(restApi))
+            ComponentLookupCache.invalidateAll();
     }
 
     @Override
     public Class<?> getRestApiImplementation(Class<? extends RestApi> restApi) {
-        return registeredRestApis.get(restApi);
+        return snapshot.get().getRestApis().get(restApi);
     }
 
+    /**
+     * Restart requests are coalesced: the server is rebuilt once no new request has been received for the quiet period,
+     * or when the oldest pending request has waited for the maximum delay.
+     * Without rest options, or with a quiet period of 0, the server is rebuilt synchronously.
+     */
     @Override
     public void sendRestartApiManagerRestartRequest() {
-        if (!currentUuid.equals(lastUuid) && restApiManager != null) {
-            lastUuid = currentUuid;
+        if (restApiManager == null)
+            return;
+        restartRequests.incrementAndGet();
+        long quietPeriodMillis = (restOptions != null) ? restOptions.restartQuietPeriodMillis() : 0;
+        if (quietPeriodMillis <= 0) {
+            restartIfChanged();
+            return;
+        }
+        long maxDelayMillis = Math.max(quietPeriodMillis, restOptions.restartMaxDelayMillis());
+        synchronized (restartLock) {
+            long now = System.nanoTime();
+            if (pendingRestart == null)
+                firstPendingRequestNanos = now;
+            else
+                pendingRestart.cancel(false);
+            long deadline = Math.min(now + TimeUnit.MILLISECONDS.toNanos(quietPeriodMillis), firstPendingRequestNanos + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis));
+            pendingRestart = getRestartScheduler().schedule(this::runPendingRestart, Math.max(0, deadline - now), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @return restart requests received since startup
+     */
+    public long getRestartRequestCount() {
+        return restartRequests.get();
+    }
+
+    /**
+     * @return times the rest api server has actually been rebuilt
+     */
+    public long getServerRebuildCount() {
+        return serverRebuilds.get();
+    }
+
+    /**
+     * @return restart requests which did not cause a rebuild, because coalesced or because nothing changed
+     */
+    public long getAvoidedRebuildCount() {
+        return Math.max(0, restartRequests.get() - serverRebuilds.get());
+    }
+
+    private void runPendingRestart() {
+        synchronized (restartLock) {
+            pendingRestart = null;
+        }
+        try {
+            restartIfChanged();
+        } catch (Exception e) {
+            log.error("Error while restarting rest api server: {}", e.getMessage(), e);
+        }
+    }
+
+    private synchronized void restartIfChanged() {
+        long version = snapshot.get().getVersion();
+        if (lastRestartedVersion.get() != version) {
+            long start = System.nanoTime();
             restApiManager.startRestApiServer();
+            //recorded only once started, so a failed rebuild is retried on the next request
+            lastRestartedVersion.set(version);
+            long rebuilds = serverRebuilds.incrementAndGet();
+            log.info("Rest api server rebuilt in {} ms: {} rebuilds, {} avoided out of {} restart requests", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), rebuilds, getAvoidedRebuildCount(), restartRequests.get());
+        }
+    }
+
+    /**
+     * Cancels the pending coalesced restart, if any, and stops the restart scheduler.
+     */
+    @OnDeactivate
+    public void onDeactivate() {
+        synchronized (restartLock) {
+            if (pendingRestart != null) {
+                pendingRestart.cancel(false);
+                pendingRestart = null;
+            }
+            if (restartScheduler != null) {
+                restartScheduler.shutdownNow();
+                restartScheduler = null;
+            }
+        }
+    }
+
+    private ScheduledExecutorService getRestartScheduler() {
+        if (restartScheduler == null) {
+            restartScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "water-rest-restart");
+                thread.setDaemon(true);
+                return thread;
+            });
         }
+        return restartScheduler;
     }
 
     @Override
     public Map<Class<? extends RestApi>, Class<?>> getRegisteredRestApis() {
-        return Collections.unmodifiableMap(registeredRestApis);
+        return snapshot.get().getRestApis();
+    }
+
+    /**
+     * @return the current immutable snapshot of the registrations
+     */
+    public RestApiRegistrySnapshot getSnapshot() {
+        return snapshot.get();
     }
 
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest;
+
+import it.water.core.api.service.rest.RestApi;
+import it.water.core.api.service.rest.RestApiRegistry;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @Author Aristide Cittadino
+ * Immutable view of the rest apis registered at a given version.
+ * Every change to the registry publishes a new snapshot with a higher version, so readers get a consistent view
+ * without locking and rest api managers can apply only the changes between the snapshot they deployed and the current one.
+ */
+public final class RestApiRegistrySnapshot {
+    /**
+     * Version of the snapshots copied from registries which do not publish versions: they are never considered up to date.
+     */
+    public static final long UNVERSIONED = -1;
+    public static final RestApiRegistrySnapshot EMPTY = new RestApiRegistrySnapshot(0, Collections.emptyMap());
+
+    private final long version;
+    private final Map<Class<? extends RestApi>, Class<?>> restApis;
+
+    private RestApiRegistrySnapshot(long version, Map<Class<? extends RestApi>, Class<?>> restApis) {
+        this.version = version;
+        this.restApis = restApis;
+    }
+
+    /**
+     * @param restApiRegistry rest api registry
+     * @return the current snapshot of the registry, an unversioned copy of its apis if it does not publish snapshots
+     */
+    public static RestApiRegistrySnapshot of(RestApiRegistry restApiRegistry) {
+        if (restApiRegistry instanceof RestApiRegistryImpl restApiRegistryImpl)
+            return restApiRegistryImpl.getSnapshot();
+        return new RestApiRegistrySnapshot(UNVERSIONED, Collections.unmodifiableMap(new HashMap<>(restApiRegistry.getRegisteredRestApis())));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return unmodifiable map rest api interface -> rest controller class
+     */
+    public Map<Class<? extends RestApi>, Class<?>> getRestApis() {
+        return restApis;
+    }
+
+    /**
+     * @return true if this snapshot is known to have the same content of the other one
+     */
+    public boolean isSameVersion(RestApiRegistrySnapshot other) {
+        return other != null && version != UNVERSIONED && version == other.version;
+    }
+
+    /**
+     * @return a new snapshot with the registration added, this snapshot if the api is already registered
+     */
+    RestApiRegistrySnapshot withRestApi(Class<? extends RestApi> restApiInterface, Class<?> concreteClass) {
+        if (restApis.containsKey(restApiInterface))
+            return this;
+        Map<Class<? extends RestApi>, Class<?>> updated = new HashMap<>(restApis);
+        updated.put(restApiInterface, concreteClass);
+        return new RestApiRegistrySnapshot(version + 1, Collections.unmodifiableMap(updated));
+    }
+
+    /**
+     * @return a new snapshot without the registration, this snapshot if the api is not registered
+     */
+    RestApiRegistrySnapshot withoutRestApi(Class<? extends RestApi> restApiInterface) {
+        if (!restApis.containsKey(restApiInterface))
+            return this;
+        Map<Class<? extends RestApi>, Class<?>> updated = new HashMap<>(restApis);
+        updated.remove(restApiInterface);
+        return new RestApiRegistrySnapshot(version + 1, Collections.unmodifiableMap(updated));
+    }
+
+    /**
+     * @param previous snapshot the changes are computed from, null is handled as an empty registry
+     * @return the registrations added, removed and bound to a different controller since the previous snapshot
+     */
+    public Changes changesSince(RestApiRegistrySnapshot previous) {
+        Map<Class<? extends RestApi>, Class<?>> previousApis = (previous != null) ? previous.restApis : Collections.emptyMap();
+        Map<Class<? extends RestApi>, Class<?>> added = new HashMap<>();
+        Map<Class<? extends RestApi>, Class<?>> replaced = new HashMap<>();
+        Set<Class<? extends RestApi>> removed = new HashSet<>();
+        restApis.forEach((restApi, concreteClass) -> {
+            Class<?> previousClass = previousApis.get(restApi);
+            if (previousClass == null)
+                added.put(restApi, concreteClass);
+            else if (previousClass != concreteClass)
+                replaced.put(restApi, concreteClass);
+        });
+        previousApis.keySet().forEach(restApi -> {
+            if (!restApis.containsKey(restApi))
+                removed.add(restApi);
+        });
+        return new Changes(Collections.unmodifiableMap(added), Collections.unmodifiableMap(replaced), Collections.unmodifiableSet(removed));
+    }
+
+    /**
+     * Differences between two snapshots.
+     */
+    public static final class Changes {
+        private final Map<Class<? extends RestApi>, Class<?>> added;
+        private final Map<Class<? extends RestApi>, Class<?>> replaced;
+        private final Set<Class<? extends RestApi>> removed;
+
+        private Changes(Map<Class<? extends RestApi>, Class<?>> added, Map<Class<? extends RestApi>, Class<?>> replaced, Set<Class<? extends RestApi>> removed) {
+            this.added = added;
+            this.replaced = replaced;
+            this.removed = removed;
+        }
+
+        /**
+         * @return new rest apis with their controller
+         */
+        public Map<Class<? extends RestApi>, Class<?>> getAdded() {
+            return added;
+        }
+
+        /**
+         * @return rest apis registered in both snapshots with a different controller, mapped to the new one
+         */
+        public Map<Class<? extends RestApi>, Class<?>> getReplaced() {
+            return replaced;
+        }
+
+        /**
+         * @return rest apis no longer registered
+         */
+        public Set<Class<? extends RestApi>> getRemoved() {
+            return removed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && replaced.isEmpty() && removed.isEmpty();
+        }
+    }
+}
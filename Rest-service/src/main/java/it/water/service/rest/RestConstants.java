@@ -15,6 +15,8 @@
  */
 package it.water.service.rest;
 
+import it.water.service.rest.api.options.RestOptions;
+
 public class RestConstants {
 
     private RestConstants() {
@@ -34,4 +36,18 @@ public class RestConstants {
 
     //#36: Swagger is disabled by default (secure-by-default), enable explicitly with this property.
     public static final String REST_PROP_SWAGGER_ENABLED = "water.rest.swagger.enabled";
+
+    //restart requests are coalesced: one rebuild of the rest api server per burst of module registrations
+    public static final String REST_PROP_RESTART_QUIET_PERIOD_MILLIS = "water.rest.restart.quietPeriod.millis";
+    public static final String REST_PROP_RESTART_MAX_DELAY_MILLIS = "water.rest.restart.maxDelay.millis";
+    public static final long REST_DEFAULT_RESTART_QUIET_PERIOD_MILLIS = RestOptions.DEFAULT_RESTART_QUIET_PERIOD_MILLIS;
+    public static final long REST_DEFAULT_RESTART_MAX_DELAY_MILLIS = RestOptions.DEFAULT_RESTART_MAX_DELAY_MILLIS;
+
+    //a replaced rest api server is destroyed once its requests in flight complete, at most after this timeout
+    public static final String REST_PROP_SERVER_DRAIN_TIMEOUT_MILLIS = "water.rest.server.drainTimeout.millis";
+    public static final long REST_DEFAULT_SERVER_DRAIN_TIMEOUT_MILLIS = RestOptions.DEFAULT_SERVER_DRAIN_TIMEOUT_MILLIS;
+
+    //rest resource invocations on virtual threads, available from Java 21
+    public static final String REST_PROP_VIRTUAL_THREADS_ENABLED = "water.rest.virtualThreads.enabled";
+    public static final boolean REST_DEFAULT_VIRTUAL_THREADS_ENABLED = RestOptions.DEFAULT_VIRTUAL_THREADS_ENABLED;
 }
@@ -18,56 +18,212 @@ package it.water.service.rest;
 import it.water.core.api.registry.ComponentRegistry;
 import it.water.core.api.service.rest.RestApi;
 import it.water.core.interceptors.WaterAbstractInterceptor;
+import it.water.service.rest.api.GeneratedRestProxy;
+import it.water.service.rest.api.RestInterceptorClassifier;
 import lombok.Getter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @Author Aristide Cittadino
  * This class implements the concept of Rest Controller Proxy.
  * Each Rest Controller registered will be instantiated with specific interface suppoting
  * different rest service frameworks like Spring MVC, Apache CXF or Rest Easy.
+ * Proxies generated at compile time for the interface are preferred, the dynamic proxy is the fallback.
  */
 public class RestControllerProxy extends WaterAbstractInterceptor<RestApi> implements InvocationHandler {
     private static Logger log = LoggerFactory.getLogger(RestControllerProxy.class);
+    //interface to implementation dispatch, resolved once per controller class
+    private static final ClassValue<DispatchTable> DISPATCH_TABLES = new ClassValue<>() {
+        @Override
+        protected DispatchTable computeValue(Class<?> controllerClass) {
+            return new DispatchTable(controllerClass);
+        }
+    };
+    //compile time generated proxy of each rest api interface, if any
+    private static final ClassValue<GeneratedProxyFactory> GENERATED_PROXIES = new ClassValue<>() {
+        @Override
+        protected GeneratedProxyFactory computeValue(Class<?> restApiInterface) {
+            return GeneratedProxyFactory.load(restApiInterface);
+        }
+    };
     private Object concreteRestController;
+    private DispatchTable dispatchTable;
     @Getter
     private ComponentRegistry componentsRegistry;
 
     public RestControllerProxy(Object concreteRestController, ComponentRegistry componentRegistry) {
         this.concreteRestController = concreteRestController;
         this.componentsRegistry = componentRegistry;
+        this.dispatchTable = DISPATCH_TABLES.get(concreteRestController.getClass());
     }
 
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
         log.debug("Invoking method {} with args {}", method, args);
-        Class<?>[] argsClasses = (args == null) ? null : new Class[args.length];
-        for (int i = 0; argsClasses != null && i < args.length; i++) {
-            argsClasses[i] = method.getParameterTypes()[i];
-        }
         //Since invocation happens on the generic interface, the system must match the interface method with the implementation
-        //So we search for the same method inside the annotated @FrameworkRestController class and invokes it
-        Method concreteRestControllerMethod = concreteRestController.getClass().getMethod(method.getName(), argsClasses);
-        if (concreteRestControllerMethod != null) {
+        //The matching method of the annotated @FrameworkRestController class is resolved once and invoked through a method handle
+        Dispatch dispatch = dispatchTable.get(method);
+        //methods without interceptor annotations skip the interceptors entirely
+        if (dispatch.intercepted)
             executeInterceptorBeforeMethod((RestApi) concreteRestController, method, args);
-            Object invoke = concreteRestControllerMethod.invoke(concreteRestController, args);
+        Object invoke = dispatch.handle.invokeExact(concreteRestController, args);
+        if (dispatch.intercepted)
             executeInterceptorAfterMethod((RestApi) concreteRestController, method, args, invoke);
-            return invoke;
-        }
-        return null;
+        return invoke;
     }
 
     public static Object createRestProxy(ComponentRegistry componentsRegistry,Class<?> concreteRestApiInterface, Object concreteRestControllerInstance) {
         log.debug("Creating Rest Proxy for {} with instance {}", concreteRestApiInterface, concreteRestControllerInstance);
+        if (concreteRestApiInterface != null) {
+            Object generatedProxy = GENERATED_PROXIES.get(concreteRestApiInterface).create(componentsRegistry, concreteRestControllerInstance);
+            if (generatedProxy != null)
+                return generatedProxy;
+        }
         RestControllerProxy restControllerProxy = new RestControllerProxy(concreteRestControllerInstance,componentsRegistry);
         if (concreteRestApiInterface != null) {
             return Proxy.newProxyInstance(RestControllerProxy.class.getClassLoader(), new Class[]{concreteRestApiInterface}, restControllerProxy);
         }
         return null;
     }
+
+    /**
+     * @param restProxy proxy created with createRestProxy
+     * @return the controller behind the proxy, the object itself if it is not a rest proxy
+     */
+    public static Object getConcreteRestController(Object restProxy) {
+        if (restProxy instanceof GeneratedRestProxy generatedRestProxy)
+            return generatedRestProxy.getConcreteRestController();
+        if (restProxy != null && Proxy.isProxyClass(restProxy.getClass()) && Proxy.getInvocationHandler(restProxy) instanceof RestControllerProxy restControllerProxy)
+            return restControllerProxy.concreteRestController;
+        return restProxy;
+    }
+
+    /**
+     * Resolves in advance the generated proxy or the dispatch of all the interface methods, e.g. when the rest api is registered.
+     *
+     * @param concreteRestApiInterface    rest api interface exposed by the proxy
+     * @param concreteRestControllerClass @FrameworkRestController class implementing it
+     */
+    public static void precompile(Class<?> concreteRestApiInterface, Class<?> concreteRestControllerClass) {
+        if (GENERATED_PROXIES.get(concreteRestApiInterface).supports(concreteRestControllerClass))
+            return;
+        DispatchTable table = DISPATCH_TABLES.get(concreteRestControllerClass);
+        for (Method method : concreteRestApiInterface.getMethods()) {
+            try {
+                table.get(method);
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                log.warn("Rest method {} cannot be dispatched to {}: {}", method, concreteRestControllerClass.getName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Implementation method handle, adapted to the (Object, Object[])Object shape, and interceptors need of a rest method.
+     */
+    private record Dispatch(MethodHandle handle, boolean intercepted) {
+    }
+
+    /**
+     * Interface method to dispatch, resolved once per controller class.
+     */
+    private static final class DispatchTable {
+        private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+        private final Class<?> controllerClass;
+        private final RestInterceptorClassifier interceptorClassifier;
+        private final ConcurrentHashMap<Method, Dispatch> dispatches = new ConcurrentHashMap<>();
+
+        DispatchTable(Class<?> controllerClass) {
+            this.controllerClass = controllerClass;
+            this.interceptorClassifier = RestInterceptorClassifier.of(controllerClass);
+        }
+
+        Dispatch get(Method interfaceMethod) throws NoSuchMethodException, IllegalAccessException {
+            Dispatch dispatch = dispatches.get(interfaceMethod);
+            if (dispatch == null) {
+                dispatch = new Dispatch(resolve(interfaceMethod), interceptorClassifier.needsInterceptors(interfaceMethod));
+                Dispatch existing = dispatches.putIfAbsent(interfaceMethod, dispatch);
+                if (existing != null)
+                    dispatch = existing;
+            }
+            return dispatch;
+        }
+
+        private MethodHandle resolve(Method interfaceMethod) throws NoSuchMethodException, IllegalAccessException {
+            Method implementation = controllerClass.getMethod(interfaceMethod.getName(), interfaceMethod.getParameterTypes());
+            int parameterCount = implementation.getParameterCount();
+            //void methods return null, primitives are boxed and a null args array is accepted for no-arg methods
+            return MethodHandles.publicLookup().unreflect(implementation)
+                    .asType(MethodType.genericMethodType(parameterCount + 1))
+                    .asSpreader(Object[].class, parameterCount)
+                    .asType(INVOKER_TYPE);
+        }
+    }
+
+    /**
+     * Creates the compile time generated proxy of a rest api interface.
+     * Controllers which do not implement the generic apis expected by the generated class use the dynamic proxy.
+     */
+    private static final class GeneratedProxyFactory {
+        private static final GeneratedProxyFactory NONE = new GeneratedProxyFactory(null);
+        private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, ComponentRegistry.class, Object.class);
+        private final MethodHandle constructor;
+        private final Set<Class<?>> unsupportedControllers = ConcurrentHashMap.newKeySet();
+
+        private GeneratedProxyFactory(MethodHandle constructor) {
+            this.constructor = constructor;
+        }
+
+        static GeneratedProxyFactory load(Class<?> restApiInterface) {
+            String generatedClassName = GeneratedRestProxy.generatedClassName(restApiInterface);
+            try {
+                Class<?> generatedClass = Class.forName(generatedClassName, true, restApiInterface.getClassLoader());
+                if (!restApiInterface.isAssignableFrom(generatedClass) || !GeneratedRestProxy.class.isAssignableFrom(generatedClass))
+                    return NONE;
+                MethodHandle constructor = MethodHandles.publicLookup()
+                        .findConstructor(generatedClass, MethodType.methodType(void.class, ComponentRegistry.class, Object.class))
+                        .asType(CONSTRUCTOR_TYPE);
+                log.debug("Using generated rest proxy {}", generatedClassName);
+                return new GeneratedProxyFactory(constructor);
+            } catch (ClassNotFoundException | LinkageError e) {
+                log.debug("No generated rest proxy for {}, using dynamic proxy", restApiInterface.getName());
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                log.warn("Generated rest proxy {} cannot be used: {}", generatedClassName, e.getMessage());
+            }
+            return NONE;
+        }
+
+        boolean supports(Class<?> controllerClass) {
+            return constructor != null && !unsupportedControllers.contains(controllerClass);
+        }
+
+        /**
+         * @return the generated proxy, null if the dynamic proxy must be used
+         */
+        Object create(ComponentRegistry componentsRegistry, Object concreteRestController) {
+            if (!supports(concreteRestController.getClass()))
+                return null;
+            try {
+                return (Object) constructor.invokeExact(componentsRegistry, concreteRestController);
+            } catch (ClassCastException e) {
+                //the controller does not implement the generic apis the generated proxy delegates to
+                log.warn("Controller {} cannot be used by the generated rest proxy, using dynamic proxy", concreteRestController.getClass().getName());
+                unsupportedControllers.add(concreteRestController.getClass());
+                return null;
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+    }
 }
@@ -97,4 +97,32 @@ public class RestOptionsImpl implements RestOptions {
             return Boolean.parseBoolean(String.valueOf(applicationProperties.getProperty(RestConstants.REST_PROP_SWAGGER_ENABLED)));
         return false;
     }
+
+    @Override
+    public long restartQuietPeriodMillis() {
+        if (applicationProperties.getProperty(RestConstants.REST_PROP_RESTART_QUIET_PERIOD_MILLIS) != null)
+            return Long.parseLong(String.valueOf(applicationProperties.getProperty(RestConstants.REST_PROP_RESTART_QUIET_PERIOD_MILLIS)));
+        return RestConstants.REST_DEFAULT_RESTART_QUIET_PERIOD_MILLIS;
+    }
+
+    @Override
+    public long restartMaxDelayMillis() {
+        if (applicationProperties.getProperty(RestConstants.REST_PROP_RESTART_MAX_DELAY_MILLIS) != null)
+            return Long.parseLong(String.valueOf(applicationProperties.getProperty(RestConstants.REST_PROP_RESTART_MAX_DELAY_MILLIS)));
+        return RestConstants.REST_DEFAULT_RESTART_MAX_DELAY_MILLIS;
+    }
+
+    @Override
+    public long serverDrainTimeoutMillis() {
+        if (applicationProperties.getProperty(RestConstants.REST_PROP_SERVER_DRAIN_TIMEOUT_MILLIS) != null)
+            return Long.parseLong(String.valueOf(applicationProperties.getProperty(RestConstants.REST_PROP_SERVER_DRAIN_TIMEOUT_MILLIS)));
+        return RestConstants.REST_DEFAULT_SERVER_DRAIN_TIMEOUT_MILLIS;
+    }
+
+    @Override
+    public boolean virtualThreadsEnabled() {
+        if (applicationProperties.getProperty(RestConstants.REST_PROP_VIRTUAL_THREADS_ENABLED) != null)
+            return Boolean.parseBoolean(String.valueOf(applicationProperties.getProperty(RestConstants.REST_PROP_VIRTUAL_THREADS_ENABLED)));
+        return RestConstants.REST_DEFAULT_VIRTUAL_THREADS_ENABLED;
+    }
 }
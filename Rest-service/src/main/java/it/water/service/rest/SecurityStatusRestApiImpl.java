@@ -0,0 +1,72 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package it.water.service.rest;
+
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.permission.SecurityContext;
+import it.water.core.api.service.rest.FrameworkRestController;
+import it.water.core.interceptors.annotations.Inject;
+import it.water.core.permission.exceptions.UnauthorizedException;
+import it.water.repository.entity.model.exceptions.NoResultException;
+import it.water.service.rest.api.SecurityStatusApi;
+import it.water.service.rest.api.security.jwt.RevocationFeed;
+import it.water.service.rest.api.security.jwt.RevocationFeedPage;
+import it.water.service.rest.api.security.jwt.TokenRevocationStore;
+import lombok.Setter;
+
+
+/**
+ * @Author Aristide Cittadino.
+ * Cross-framework implementation of the SecurityStatusApi.
+ * The revocation feed is available only when the registered TokenRevocationStore publishes one
+ * (e.g. a ReplicatedTokenRevocationStore).
+ * It lists every revoked token and every revoked subject, so it is served only to administrators:
+ * peer nodes pull it with the token of an administrative account.
+ */
+
+@FrameworkRestController(referredRestApi = SecurityStatusApi.class)
+public class SecurityStatusRestApiImpl implements SecurityStatusApi {
+    //upper bound of a single page, whatever the requested limit
+    public static final int MAX_REVOCATION_FEED_PAGE_SIZE = 5000;
+
+    @Inject
+    @Setter
+    private TokenRevocationStore tokenRevocationStore;
+
+    @Inject
+    @Setter
+    private Runtime runtime;
+
+    /**
+     * @param since last sequence number already applied by the caller
+     * @param limit maximum number of entries, capped to MAX_REVOCATION_FEED_PAGE_SIZE
+     * @return revocations made after the given sequence number
+     * @throws UnauthorizedException if the caller is not an administrator
+     * @throws NoResultException     if the token revocation store does not publish a feed
+     */
+    @Override
+    public RevocationFeedPage getRevocationFeed(long since, int limit) {
+        SecurityContext securityContext = (runtime != null) ? runtime.getSecurityContext() : null;
+        if (securityContext == null || !securityContext.isAdmin())
+            throw new UnauthorizedException("Revocation feed is available only to administrators");
+        if (!(tokenRevocationStore instanceof RevocationFeed revocationFeed))
+            throw new NoResultException();
+        int pageSize = Math.max(1, Math.min(limit, MAX_REVOCATION_FEED_PAGE_SIZE));
+        return revocationFeed.getChangesSince(Math.max(0L, since), pageSize);
+    }
+
+}
@@ -17,8 +17,17 @@
 
 package it.water.service.rest;
 
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.permission.SecurityContext;
 import it.water.core.api.service.rest.FrameworkRestController;
+import it.water.core.interceptors.annotations.Inject;
+import it.water.core.permission.exceptions.UnauthorizedException;
 import it.water.service.rest.api.StatusApi;
+import it.water.service.rest.api.metrics.RestEndpointStats;
+import it.water.service.rest.metrics.RestEndpointMetrics;
+import lombok.Setter;
+
+import java.util.List;
 
 
 /**
@@ -27,11 +36,17 @@ import it.water.service.rest.api.StatusApi;
  * At runtime the bundle initializer will instantiate a proxy of this class making it implementing framework specific interfaces
  * with the right rest annotations (Spring MVC or JAX RS).
  * Swagger annotation can stay in the cross framework class since are valid for every framework.
+ * Endpoint metrics expose the whole rest inventory with its error and latency profiles,
+ * so they are served only to administrators.
  */
 
 @FrameworkRestController(referredRestApi = StatusApi.class)
 public class StatusRestApiImpl implements StatusApi {
 
+    @Inject
+    @Setter
+    private Runtime runtime;
+
     /**
      * Simple service for checking module status
      *
@@ -42,5 +57,17 @@ public class StatusRestApiImpl implements StatusApi {
         return "Water Rest Module works!";
     }
 
+    /**
+     * @return invocation metrics of the rest methods served by this runtime
+     * @throws UnauthorizedException if the caller is not an administrator
+     */
+    @Override
+    public List<RestEndpointStats> getEndpointMetrics() {
+        SecurityContext securityContext = (runtime != null) ? runtime.getSecurityContext() : null;
+        if (securityContext == null || !securityContext.isAdmin())
+            throw new UnauthorizedException("Endpoint metrics are available only to administrators");
+        return RestEndpointMetrics.getInstance().snapshot();
+    }
+
 }
 
@@ -6,19 +6,15 @@ import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
 import it.water.core.api.model.EntityExtension;
 import it.water.core.api.model.ExpandableEntity;
 import it.water.core.api.registry.ComponentRegistry;
-import it.water.core.api.registry.filter.ComponentFilter;
 import it.water.core.api.service.EntityExtensionService;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import it.water.service.rest.ComponentLookupCache;
 
 import java.io.IOException;
 import java.util.Map;
 
 public class WaterJsonDeserializer extends JsonDeserializer<Object> implements ContextualDeserializer {
-    private final Logger logger = LoggerFactory.getLogger(WaterJsonDeserializer.class);
-
     private static ObjectMapper objectMapper;
-    private ComponentRegistry componentRegistry;
+    private ComponentLookupCache componentLookupCache;
     private JavaType currentEntityType;
 
     static {
@@ -28,7 +24,7 @@ public class WaterJsonDeserializer extends JsonDeserializer<Object> implements C
     }
 
     public WaterJsonDeserializer(ComponentRegistry componentRegistry) {
-        this.componentRegistry = componentRegistry;
+        this.componentLookupCache = ComponentLookupCache.of(componentRegistry);
     }
 
     @Override
@@ -58,12 +54,7 @@ public class WaterJsonDeserializer extends JsonDeserializer<Object> implements C
     }
 
     private EntityExtensionService checkExtensionServiceExists(Object entity) {
-        try {
-            ComponentFilter filter = componentRegistry.getComponentFilterBuilder().createFilter(EntityExtensionService.RELATED_ENTITY_PROPERTY, entity.getClass().getName());
-            return componentRegistry.findComponent(EntityExtensionService.class, filter);
-        } catch (Exception e) {
-            logger.debug(e.getMessage(), e);
-        }
-        return null;
+        //the registry filter is built once per entity type and a found extension service is reused
+        return componentLookupCache.findOptionalComponent(EntityExtensionService.class, EntityExtensionService.RELATED_ENTITY_PROPERTY, entity.getClass().getName());
     }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author Aristide Cittadino
+ * Lock free log-linear latency histogram with fixed buckets: values below 8 have their own bucket, then each power
+ * of two is split in 8 linear sub-buckets, so a bucket is at most 12.5% wide relative to its values.
+ * Values up to 2^36 (about 19 hours in microseconds) are distinguished, larger ones fall in the last bucket.
+ * Recording is a few arithmetic operations and atomic increments, with no allocation. Buckets are striped by thread
+ * to spread the contention of concurrent requests.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 35;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    private static final int MAX_STRIPES = 4;
+
+    private final int stripeMask;
+    private final AtomicLongArray buckets;
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+    public LatencyHistogram() {
+        int stripes = Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors())));
+        this.stripeMask = stripes - 1;
+        this.buckets = new AtomicLongArray(stripes * BUCKETS);
+    }
+
+    /**
+     * @param value non negative value, negative values are recorded as 0
+     */
+    public void record(long value) {
+        long v = Math.max(0L, value);
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        buckets.incrementAndGet(stripe * BUCKETS + bucketIndex(v));
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    /**
+     * @return totals of the histogram, summed over the stripes
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            long count = buckets.get(i);
+            counts[i % BUCKETS] += count;
+            total += count;
+        }
+        return new Snapshot(counts, total, sum.sum(), max.get());
+    }
+
+    public void reset() {
+        for (int i = 0; i < buckets.length(); i++)
+            buckets.set(i, 0L);
+        sum.reset();
+        max.reset();
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT)
+            return BUCKETS - 1;
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest value falling in the bucket
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long lowerBound = (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Consistent enough view of the histogram: concurrent recordings may be partially included.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param quantile between 0 and 1
+         * @return upper bound of the bucket holding the quantile, never above the max recorded value
+         */
+        public long getValueAtQuantile(double quantile) {
+            if (count == 0)
+                return 0;
+            long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                if (cumulative >= rank)
+                    return Math.min(bucketUpperBound(i), max);
+            }
+            return max;
+        }
+    }
+}
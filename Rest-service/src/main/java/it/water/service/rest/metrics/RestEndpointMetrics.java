@@ -0,0 +1,172 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.metrics;
+
+import it.water.service.rest.api.metrics.RestEndpointStats;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * @Author Aristide Cittadino
+ * Per rest method invocation metrics: in flight invocations, calls, errors by http status and latency histogram.
+ * Recorded by the rest frameworks around each resource method invocation (CXF filter, Spring handler interceptor)
+ * where the final http status is known, and exposed by the status api.
+ * Recording uses striped counters and does not allocate.
+ * Endpoints are kept per declaring class through a {@link ClassValue}, so the metrics of an uninstalled bundle
+ * never keep its classes alive: they are dropped with the class.
+ */
+public class RestEndpointMetrics {
+    private static final RestEndpointMetrics INSTANCE = new RestEndpointMetrics();
+
+    //classes with recorded endpoints, weakly referenced: only used to list the endpoints
+    private final Queue<WeakReference<Class<?>>> endpointClasses = new ConcurrentLinkedQueue<>();
+    private final ClassValue<Map<Method, Endpoint>> endpoints = new ClassValue<>() {
+        @Override
+        protected Map<Method, Endpoint> computeValue(Class<?> type) {
+            endpointClasses.add(new WeakReference<>(type));
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    /**
+     * @return metrics shared by all the rest frameworks of the runtime
+     */
+    public static RestEndpointMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param restMethod resource method
+     * @return metrics of the method, created on first use
+     */
+    public Endpoint endpoint(Method restMethod) {
+        Map<Method, Endpoint> classEndpoints = endpoints.get(restMethod.getDeclaringClass());
+        Endpoint endpoint = classEndpoints.get(restMethod);
+        if (endpoint == null)
+            endpoint = classEndpoints.computeIfAbsent(restMethod, Endpoint::new);
+        return endpoint;
+    }
+
+    /**
+     * @return statistics of each invoked rest method, by endpoint name
+     */
+    public List<RestEndpointStats> snapshot() {
+        //a class value may be computed more than once under contention, each class is listed once
+        Set<Map<Method, Endpoint>> classEndpoints = Collections.newSetFromMap(new IdentityHashMap<>());
+        forEachEndpointClass(type -> classEndpoints.add(endpoints.get(type)));
+        List<RestEndpointStats> stats = new ArrayList<>();
+        classEndpoints.forEach(methodEndpoints -> methodEndpoints.values().forEach(endpoint -> stats.add(endpoint.stats())));
+        stats.sort(Comparator.comparing(RestEndpointStats::getEndpoint));
+        return stats;
+    }
+
+    /**
+     * Drops all the recorded metrics.
+     */
+    public void reset() {
+        forEachEndpointClass(type -> endpoints.get(type).clear());
+    }
+
+    private void forEachEndpointClass(Consumer<Class<?>> action) {
+        Iterator<WeakReference<Class<?>>> iterator = endpointClasses.iterator();
+        while (iterator.hasNext()) {
+            Class<?> type = iterator.next().get();
+            if (type == null)
+                iterator.remove();
+            else
+                action.accept(type);
+        }
+    }
+
+    /**
+     * Metrics of a single rest method.
+     */
+    public static final class Endpoint {
+        private static final int FIRST_ERROR_STATUS = 400;
+        private static final int LAST_ERROR_STATUS = 599;
+
+        private final String name;
+        private final LongAdder inFlight = new LongAdder();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final AtomicLongArray errorsByStatus = new AtomicLongArray(LAST_ERROR_STATUS - FIRST_ERROR_STATUS + 1);
+        private final LatencyHistogram latencyMicros = new LatencyHistogram();
+
+        Endpoint(Method restMethod) {
+            //fully qualified: same named apis of different modules must stay distinguishable
+            this.name = restMethod.getDeclaringClass().getName() + "." + restMethod.getName()
+                    + Arrays.stream(restMethod.getParameterTypes()).map(Class::getSimpleName).collect(Collectors.joining(",", "(", ")"));
+        }
+
+        /**
+         * @return start time to pass to {@link #end(long, int)}
+         */
+        public long start() {
+            inFlight.increment();
+            return System.nanoTime();
+        }
+
+        /**
+         * @param startNanos value returned by start
+         * @param httpStatus response status
+         */
+        public void end(long startNanos, int httpStatus) {
+            latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+            inFlight.decrement();
+            calls.increment();
+            if (httpStatus >= FIRST_ERROR_STATUS) {
+                errors.increment();
+                errorsByStatus.incrementAndGet(Math.min(httpStatus, LAST_ERROR_STATUS) - FIRST_ERROR_STATUS);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        RestEndpointStats stats() {
+            Map<Integer, Long> byStatus = new HashMap<>();
+            for (int i = 0; i < errorsByStatus.length(); i++) {
+                long count = errorsByStatus.get(i);
+                if (count > 0)
+                    byStatus.put(FIRST_ERROR_STATUS + i, count);
+            }
+            LatencyHistogram.Snapshot latency = latencyMicros.snapshot();
+            RestEndpointStats.Latency latencyStats = new RestEndpointStats.Latency(latency.getMean(), latency.getValueAtQuantile(0.5),
+                    latency.getValueAtQuantile(0.9), latency.getValueAtQuantile(0.99), latency.getValueAtQuantile(0.999), latency.getMax());
+            return new RestEndpointStats(name, inFlight.sum(), calls.sum(), errors.sum(), byStatus, latencyStats);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.registry.filter.ComponentFilter;
+import it.water.core.api.registry.filter.ComponentFilterBuilder;
+import it.water.core.api.service.rest.RestApi;
+import it.water.service.rest.api.options.RestOptions;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link ComponentLookupCache}: cached lookups, invalidation on rest api (un)registration
+ * and optional lookups whose absence is never cached.
+ */
+@ExtendWith(MockitoExtension.class)
+class ComponentLookupCacheTest {
+
+    private interface SampleRestApi extends RestApi {
+        // marker interface used only to trigger a registration
+    }
+
+    private interface SampleExtension {
+        // marker type of an optional component
+    }
+
+    @Mock
+    private ComponentRegistry componentRegistry;
+
+    @Mock
+    private RestOptions restOptions;
+
+    private ComponentLookupCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ComponentLookupCache(componentRegistry);
+    }
+
+    @Test
+    void requiredLookupIsCachedUntilInvalidated() {
+        when(componentRegistry.findComponent(RestOptions.class, null)).thenReturn(restOptions);
+        Assertions.assertSame(restOptions, cache.findComponent(RestOptions.class));
+        Assertions.assertSame(restOptions, cache.findComponent(RestOptions.class));
+        verify(componentRegistry, times(1)).findComponent(RestOptions.class, null);
+        Assertions.assertEquals(1, cache.getHits());
+        Assertions.assertEquals(1, cache.getMisses());
+
+        cache.invalidate();
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertSame(restOptions, cache.findComponent(RestOptions.class));
+        verify(componentRegistry, times(2)).findComponent(RestOptions.class, null);
+    }
+
+    @Test
+    void requiredLookupFailureIsPropagatedAndNotCached() {
+        when(componentRegistry.findComponent(RestOptions.class, null)).thenThrow(new IllegalStateException("not found")).thenReturn(restOptions);
+        Assertions.assertThrows(IllegalStateException.class, () -> cache.findComponent(RestOptions.class));
+        Assertions.assertSame(restOptions, cache.findComponent(RestOptions.class));
+    }
+
+    @Test
+    void restApiRegistrationInvalidatesSharedCaches() {
+        ComponentLookupCache shared = ComponentLookupCache.of(componentRegistry);
+        Assertions.assertSame(shared, ComponentLookupCache.of(componentRegistry));
+        when(componentRegistry.findComponent(RestOptions.class, null)).thenReturn(restOptions);
+        shared.findComponent(RestOptions.class);
+        Assertions.assertEquals(1, shared.size());
+
+        RestApiRegistryImpl restApiRegistry = new RestApiRegistryImpl();
+        restApiRegistry.addRestApiService(SampleRestApi.class, SampleRestApi.class);
+        Assertions.assertEquals(0, shared.size());
+        shared.findComponent(RestOptions.class);
+        restApiRegistry.removeRestApiService(SampleRestApi.class);
+        Assertions.assertEquals(0, shared.size());
+    }
+
+    @Test
+    void optionalLookupBuildsFilterOnceAndNeverCachesAbsence() {
+        ComponentFilterBuilder filterBuilder = mock(ComponentFilterBuilder.class);
+        ComponentFilter filter = mock(ComponentFilter.class);
+        SampleExtension extension = new SampleExtension() {
+        };
+        when(componentRegistry.getComponentFilterBuilder()).thenReturn(filterBuilder);
+        when(filterBuilder.createFilter("entity", "Sample")).thenReturn(filter);
+        when(componentRegistry.findComponent(SampleExtension.class, filter)).thenReturn(null, null, extension);
+
+        Assertions.assertNull(cache.findOptionalComponent(SampleExtension.class, "entity", "Sample"));
+        Assertions.assertNull(cache.findOptionalComponent(SampleExtension.class, "entity", "Sample"));
+        //registered meanwhile: found by the next lookup, then served from the cache
+        Assertions.assertSame(extension, cache.findOptionalComponent(SampleExtension.class, "entity", "Sample"));
+        Assertions.assertSame(extension, cache.findOptionalComponent(SampleExtension.class, "entity", "Sample"));
+        verify(componentRegistry, times(3)).findComponent(SampleExtension.class, filter);
+        verify(filterBuilder, times(1)).createFilter("entity", "Sample");
+    }
+
+    @Test
+    void optionalLookupFailureReturnsNull() {
+        when(componentRegistry.getComponentFilterBuilder()).thenThrow(new IllegalStateException("no builder"));
+        Assertions.assertNull(cache.findOptionalComponent(SampleExtension.class, "entity", "Sample"));
+        Assertions.assertEquals(0, cache.size());
+    }
+}
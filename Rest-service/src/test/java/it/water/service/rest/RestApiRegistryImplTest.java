@@ -17,6 +17,7 @@ package it.water.service.rest;
 
 import it.water.core.api.service.rest.RestApi;
 import it.water.core.api.service.rest.RestApiManager;
+import it.water.service.rest.api.options.RestOptions;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -26,9 +27,14 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.Map;
 
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Unit tests for {@link RestApiRegistryImpl}. Only {@link Class} references to marker
@@ -136,4 +142,61 @@ class RestApiRegistryImplTest {
                 "sendRestartApiManagerRestartRequest must tolerate a never-injected (null) RestApiManager");
         verify(restApiManager, never()).startRestApiServer();
     }
+
+    @Test
+    void restartRequestsInABurstAreCoalescedIntoOneRebuild() {
+        registry.setRestOptions(restOptions(100, 10_000));
+        registry.addRestApiService(SampleRestApi.class, SampleRestApiImpl.class);
+        registry.sendRestartApiManagerRestartRequest();
+        registry.addRestApiService(OtherRestApi.class, SampleRestApiImpl.class);
+        registry.sendRestartApiManagerRestartRequest();
+        registry.sendRestartApiManagerRestartRequest();
+        verify(restApiManager, never()).startRestApiServer();
+        verify(restApiManager, timeout(2000).times(1)).startRestApiServer();
+        verify(restApiManager, after(300).times(1)).startRestApiServer();
+        Assertions.assertEquals(3, registry.getRestartRequestCount());
+        Assertions.assertEquals(1, registry.getServerRebuildCount());
+        Assertions.assertEquals(2, registry.getAvoidedRebuildCount());
+    }
+
+    @Test
+    void continuousRestartRequestsAreNotDelayedBeyondMaxDelay() throws InterruptedException {
+        registry.setRestOptions(restOptions(200, 300));
+        long end = System.currentTimeMillis() + 1000;
+        while (System.currentTimeMillis() < end) {
+            registry.addRestApiService(SampleRestApi.class, SampleRestApiImpl.class);
+            registry.removeRestApiService(SampleRestApi.class);
+            registry.sendRestartApiManagerRestartRequest();
+            //new requests always arrive within the quiet period
+            Thread.sleep(20); //NOSONAR: requests must be spread over time
+        }
+        verify(restApiManager, timeout(1000).atLeast(2)).startRestApiServer();
+    }
+
+    @Test
+    void failedRebuildIsRetriedOnTheNextRestartRequest() {
+        doThrow(new IllegalStateException("port in use")).doNothing().when(restApiManager).startRestApiServer();
+        registry.addRestApiService(SampleRestApi.class, SampleRestApiImpl.class);
+        Assertions.assertThrows(IllegalStateException.class, registry::sendRestartApiManagerRestartRequest);
+        Assertions.assertEquals(0, registry.getServerRebuildCount());
+        registry.sendRestartApiManagerRestartRequest();
+        verify(restApiManager, times(2)).startRestApiServer();
+        Assertions.assertEquals(1, registry.getServerRebuildCount());
+    }
+
+    @Test
+    void deactivationCancelsThePendingRestart() {
+        registry.setRestOptions(restOptions(100, 10_000));
+        registry.addRestApiService(SampleRestApi.class, SampleRestApiImpl.class);
+        registry.sendRestartApiManagerRestartRequest();
+        registry.onDeactivate();
+        verify(restApiManager, after(300).never()).startRestApiServer();
+    }
+
+    private RestOptions restOptions(long quietPeriodMillis, long maxDelayMillis) {
+        RestOptions restOptions = mock(RestOptions.class);
+        when(restOptions.restartQuietPeriodMillis()).thenReturn(quietPeriodMillis);
+        when(restOptions.restartMaxDelayMillis()).thenReturn(maxDelayMillis);
+        return restOptions;
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest;
+
+import it.water.core.api.service.rest.RestApi;
+import it.water.core.api.service.rest.RestApiRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for the versioned snapshots published by {@link RestApiRegistryImpl}.
+ */
+class RestApiRegistrySnapshotTest {
+
+    private interface FirstApi extends RestApi {
+    }
+
+    private interface SecondApi extends RestApi {
+    }
+
+    private interface ThirdApi extends RestApi {
+    }
+
+    private interface FourthApi extends RestApi {
+    }
+
+    private static class FirstController implements FirstApi {
+    }
+
+    private static class OtherFirstController implements FirstApi {
+    }
+
+    private static class SecondController implements SecondApi {
+    }
+
+    @Test
+    void everyChangePublishesANewVersion() {
+        RestApiRegistryImpl registry = new RestApiRegistryImpl();
+        RestApiRegistrySnapshot empty = registry.getSnapshot();
+        registry.addRestApiService(FirstApi.class, FirstController.class);
+        RestApiRegistrySnapshot first = registry.getSnapshot();
+        Assertions.assertTrue(first.getVersion() > empty.getVersion());
+        //snapshots already taken never change
+        Assertions.assertTrue(empty.getRestApis().isEmpty());
+        Assertions.assertEquals(FirstController.class, first.getRestApis().get(FirstApi.class));
+        //no change, same snapshot
+        registry.addRestApiService(FirstApi.class, OtherFirstController.class);
+        registry.removeRestApiService(SecondApi.class);
+        Assertions.assertSame(first, registry.getSnapshot());
+        Assertions.assertTrue(first.isSameVersion(registry.getSnapshot()));
+        registry.removeRestApiService(FirstApi.class);
+        Assertions.assertTrue(registry.getSnapshot().getVersion() > first.getVersion());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> first.getRestApis().remove(FirstApi.class));
+    }
+
+    @Test
+    void changesBetweenSnapshots() {
+        RestApiRegistryImpl registry = new RestApiRegistryImpl();
+        registry.addRestApiService(FirstApi.class, FirstController.class);
+        RestApiRegistrySnapshot deployed = registry.getSnapshot();
+        registry.removeRestApiService(FirstApi.class);
+        registry.addRestApiService(FirstApi.class, OtherFirstController.class);
+        registry.addRestApiService(SecondApi.class, SecondController.class);
+        RestApiRegistrySnapshot.Changes changes = registry.getSnapshot().changesSince(deployed);
+        Assertions.assertEquals(Map.of(SecondApi.class, SecondController.class), changes.getAdded());
+        Assertions.assertEquals(Map.of(FirstApi.class, OtherFirstController.class), changes.getReplaced());
+        Assertions.assertTrue(changes.getRemoved().isEmpty());
+
+        RestApiRegistrySnapshot.Changes removal = deployed.changesSince(registry.getSnapshot());
+        Assertions.assertEquals(List.of(SecondApi.class), new ArrayList<>(removal.getRemoved()));
+        Assertions.assertTrue(registry.getSnapshot().changesSince(registry.getSnapshot()).isEmpty());
+        //from nothing everything is added
+        Assertions.assertEquals(2, registry.getSnapshot().changesSince(null).getAdded().size());
+    }
+
+    @Test
+    void foreignRegistryIsCopiedUnversioned() {
+        RestApiRegistry foreign = mock(RestApiRegistry.class);
+        when(foreign.getRegisteredRestApis()).thenReturn(Map.of(FirstApi.class, FirstController.class));
+        RestApiRegistrySnapshot snapshot = RestApiRegistrySnapshot.of(foreign);
+        Assertions.assertEquals(RestApiRegistrySnapshot.UNVERSIONED, snapshot.getVersion());
+        Assertions.assertFalse(snapshot.isSameVersion(RestApiRegistrySnapshot.of(foreign)));
+        Assertions.assertEquals(FirstController.class, snapshot.getRestApis().get(FirstApi.class));
+    }
+
+    @Test
+    void concurrentChangesAreNotLost() throws Exception {
+        RestApiRegistryImpl registry = new RestApiRegistryImpl();
+        List<Class<? extends RestApi>> apis = List.of(FirstApi.class, SecondApi.class, ThirdApi.class, FourthApi.class);
+        int iterations = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(apis.size());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            //each thread owns an api: every add and remove is a change and must publish exactly one version
+            for (Class<? extends RestApi> api : apis)
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < iterations; i++) {
+                        registry.addRestApiService(api, FirstController.class);
+                        registry.removeRestApiService(api);
+                    }
+                    registry.addRestApiService(api, FirstController.class);
+                }));
+            for (Future<?> future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(apis.size(), registry.getRegisteredRestApis().size());
+        Assertions.assertEquals(apis.size() * (2L * iterations + 1), registry.getSnapshot().getVersion());
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest;
+
+import it.water.core.api.registry.ComponentRegistry;
+import it.water.core.api.service.rest.FrameworkRestApi;
+import it.water.core.api.service.rest.RestApi;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * Unit tests for {@link RestControllerProxy}: dispatch of the interface methods to the controller
+ * through the precompiled method handles, or through the compile time generated proxy when available.
+ */
+@ExtendWith(MockitoExtension.class)
+class RestControllerProxyTest {
+
+    public interface SampleRestApi extends RestApi {
+        String echo(String value);
+
+        int sum(int first, int second);
+
+        void touch();
+
+        String fail();
+    }
+
+    //framework specific api, its proxy is generated by the rest proxy processor when the tests are compiled
+    @FrameworkRestApi
+    public interface GeneratedSampleApi extends SampleRestApi {
+    }
+
+    //same methods, but not implementing the generic api the generated proxy delegates to
+    public static class UnrelatedRestController implements RestApi {
+        public String echo(String value) {
+            return "unrelated " + value;
+        }
+
+        public int sum(int first, int second) {
+            return 0;
+        }
+
+        public void touch() {
+            //nothing to do
+        }
+
+        public String fail() {
+            return null;
+        }
+    }
+
+    public static class SampleRestController implements SampleRestApi {
+        private int touched;
+
+        @Override
+        public String echo(String value) {
+            return value;
+        }
+
+        @Override
+        public int sum(int first, int second) {
+            return first + second;
+        }
+
+        @Override
+        public void touch() {
+            touched++;
+        }
+
+        @Override
+        public String fail() {
+            throw new IllegalStateException("failure");
+        }
+    }
+
+    @Mock
+    private ComponentRegistry componentRegistry;
+
+    @Test
+    void methodsAreDispatchedToTheController() {
+        RestControllerProxy.precompile(SampleRestApi.class, SampleRestController.class);
+        SampleRestController controller = new SampleRestController();
+        SampleRestApi proxy = (SampleRestApi) RestControllerProxy.createRestProxy(componentRegistry, SampleRestApi.class, controller);
+        Assertions.assertNotNull(proxy);
+        Assertions.assertEquals("value", proxy.echo("value"));
+        Assertions.assertNull(proxy.echo(null));
+        Assertions.assertEquals(5, proxy.sum(2, 3));
+        proxy.touch();
+        proxy.touch();
+        Assertions.assertEquals(2, controller.touched);
+    }
+
+    @Test
+    void controllerExceptionsAreNotWrapped() {
+        SampleRestApi proxy = (SampleRestApi) RestControllerProxy.createRestProxy(componentRegistry, SampleRestApi.class, new SampleRestController());
+        IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, proxy::fail);
+        Assertions.assertEquals("failure", e.getMessage());
+    }
+
+    @Test
+    void generatedProxyIsPreferred() {
+        SampleRestController controller = new SampleRestController();
+        Object proxy = RestControllerProxy.createRestProxy(componentRegistry, GeneratedSampleApi.class, controller);
+        Assertions.assertInstanceOf(RestControllerProxyTest_GeneratedSampleApi_WaterRestProxy.class, proxy);
+        Assertions.assertSame(controller, RestControllerProxy.getConcreteRestController(proxy));
+        GeneratedSampleApi api = (GeneratedSampleApi) proxy;
+        Assertions.assertEquals("value", api.echo("value"));
+        Assertions.assertEquals(5, api.sum(2, 3));
+        Assertions.assertThrows(IllegalStateException.class, api::fail);
+    }
+
+    @Test
+    void dynamicProxyIsUsedWhenControllerDoesNotFitGeneratedProxy() {
+        UnrelatedRestController controller = new UnrelatedRestController();
+        for (int i = 0; i < 2; i++) {
+            Object proxy = RestControllerProxy.createRestProxy(componentRegistry, GeneratedSampleApi.class, controller);
+            Assertions.assertTrue(Proxy.isProxyClass(proxy.getClass()));
+            Assertions.assertEquals("unrelated value", ((GeneratedSampleApi) proxy).echo("value"));
+            Assertions.assertSame(controller, RestControllerProxy.getConcreteRestController(proxy));
+        }
+    }
+
+    @Test
+    void proxyIsNotCreatedWithoutInterface() {
+        Assertions.assertNull(RestControllerProxy.createRestProxy(componentRegistry, null, new SampleRestController()));
+    }
+}
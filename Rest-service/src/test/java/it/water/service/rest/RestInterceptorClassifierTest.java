@@ -0,0 +1,110 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest;
+
+import it.water.core.api.service.rest.RestApi;
+import it.water.core.interceptors.annotations.Inject;
+import it.water.service.rest.api.RestInterceptorClassifier;
+import it.water.service.rest.api.StatusApi;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Unit tests for {@link RestInterceptorClassifier}: only methods with interceptor annotations,
+ * or controllers with annotated fields, run the interceptors.
+ */
+class RestInterceptorClassifierTest {
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ElementType.METHOD, ElementType.PARAMETER})
+    public @interface Audited {
+    }
+
+    public interface ClassifiedApi extends RestApi {
+        String plain(String value);
+
+        @Audited
+        String audited();
+
+        String auditedParameter(@Audited String value);
+    }
+
+    @Path("/classified")
+    public interface FrameworkClassifiedApi extends ClassifiedApi {
+        @GET
+        @Path("/{value}")
+        @Override
+        String plain(@PathParam("value") String value);
+    }
+
+    public static class ClassifiedController implements ClassifiedApi {
+        @Override
+        public String plain(String value) {
+            return value;
+        }
+
+        @Override
+        public String audited() {
+            return "audited";
+        }
+
+        @Override
+        public String auditedParameter(String value) {
+            return value;
+        }
+
+        @Audited
+        public String auditedOnController() {
+            return "audited";
+        }
+    }
+
+    public static class InjectedController extends ClassifiedController {
+        @Inject
+        private StatusApi statusApi;
+    }
+
+    @Test
+    void onlyAnnotatedMethodsNeedInterceptors() throws NoSuchMethodException {
+        RestInterceptorClassifier classifier = RestInterceptorClassifier.of(ClassifiedController.class);
+        Assertions.assertSame(classifier, RestInterceptorClassifier.of(ClassifiedController.class));
+        Assertions.assertFalse(classifier.needsInterceptors(FrameworkClassifiedApi.class.getMethod("plain", String.class)));
+        Assertions.assertFalse(classifier.needsInterceptors(ClassifiedApi.class.getMethod("plain", String.class)));
+        Assertions.assertTrue(classifier.needsInterceptors(FrameworkClassifiedApi.class.getMethod("audited")));
+        Assertions.assertTrue(classifier.needsInterceptors(FrameworkClassifiedApi.class.getMethod("auditedParameter", String.class)));
+        Assertions.assertTrue(classifier.needsInterceptors(ClassifiedController.class.getMethod("auditedOnController")));
+    }
+
+    @Test
+    void annotatedControllerFieldsNeedInterceptors() throws NoSuchMethodException {
+        RestInterceptorClassifier classifier = RestInterceptorClassifier.of(InjectedController.class);
+        Assertions.assertTrue(classifier.needsInterceptors(FrameworkClassifiedApi.class.getMethod("plain", String.class)));
+    }
+
+    @Test
+    void missingImplementationIsLeftToInterceptors() throws NoSuchMethodException {
+        RestInterceptorClassifier classifier = RestInterceptorClassifier.of(ClassifiedController.class);
+        Assertions.assertTrue(classifier.needsInterceptors(StatusApi.class.getMethod("checkModuleWorking")));
+    }
+}
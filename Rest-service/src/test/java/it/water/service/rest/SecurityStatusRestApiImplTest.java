@@ -0,0 +1,89 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest;
+
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.permission.SecurityContext;
+import it.water.core.permission.exceptions.UnauthorizedException;
+import it.water.repository.entity.model.exceptions.NoResultException;
+import it.water.service.rest.api.security.jwt.RevocationFeed;
+import it.water.service.rest.api.security.jwt.RevocationFeedPage;
+import it.water.service.rest.api.security.jwt.TokenRevocationStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Unit tests for {@link SecurityStatusRestApiImpl}: the revocation feed is served only to administrators and only by
+ * stores publishing one, and the requested page size is bounded.
+ */
+class SecurityStatusRestApiImplTest {
+
+    private static Runtime runtimeWith(boolean loggedIn, boolean admin) {
+        SecurityContext securityContext = mock(SecurityContext.class);
+        when(securityContext.isLoggedIn()).thenReturn(loggedIn);
+        when(securityContext.isAdmin()).thenReturn(admin);
+        Runtime runtime = mock(Runtime.class);
+        when(runtime.getSecurityContext()).thenReturn(securityContext);
+        return runtime;
+    }
+
+    @Test
+    void revocationFeed_servedByFeedStore() {
+        TokenRevocationStore store = mock(TokenRevocationStore.class, withSettings().extraInterfaces(RevocationFeed.class));
+        RevocationFeedPage page = new RevocationFeedPage("feed", 0L, List.of(), false, false);
+        when(((RevocationFeed) store).getChangesSince(3L, SecurityStatusRestApiImpl.MAX_REVOCATION_FEED_PAGE_SIZE)).thenReturn(page);
+        SecurityStatusRestApiImpl api = new SecurityStatusRestApiImpl();
+        api.setRuntime(runtimeWith(true, true));
+        api.setTokenRevocationStore(store);
+        Assertions.assertSame(page, api.getRevocationFeed(3L, Integer.MAX_VALUE));
+        api.getRevocationFeed(-5L, 0);
+        verify((RevocationFeed) store).getChangesSince(0L, 1);
+    }
+
+    @Test
+    void revocationFeed_notPublishedByStore_notFound() {
+        SecurityStatusRestApiImpl api = new SecurityStatusRestApiImpl();
+        api.setRuntime(runtimeWith(true, true));
+        api.setTokenRevocationStore(mock(TokenRevocationStore.class));
+        Assertions.assertThrows(NoResultException.class, () -> api.getRevocationFeed(0L, 10));
+        api.setTokenRevocationStore(null);
+        Assertions.assertThrows(NoResultException.class, () -> api.getRevocationFeed(0L, 10));
+    }
+
+    @Test
+    void revocationFeed_nonAdminCaller_unauthorized() {
+        TokenRevocationStore store = mock(TokenRevocationStore.class, withSettings().extraInterfaces(RevocationFeed.class));
+        SecurityStatusRestApiImpl api = new SecurityStatusRestApiImpl();
+        api.setTokenRevocationStore(store);
+        api.setRuntime(runtimeWith(true, false));
+        Assertions.assertThrows(UnauthorizedException.class, () -> api.getRevocationFeed(0L, 10));
+        api.setRuntime(runtimeWith(false, false));
+        Assertions.assertThrows(UnauthorizedException.class, () -> api.getRevocationFeed(0L, 10));
+        api.setRuntime(null);
+        Assertions.assertThrows(UnauthorizedException.class, () -> api.getRevocationFeed(0L, 10));
+        verify((RevocationFeed) store, never()).getChangesSince(anyLong(), anyInt());
+    }
+}
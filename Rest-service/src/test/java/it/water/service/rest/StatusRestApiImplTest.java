@@ -0,0 +1,58 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest;
+
+import it.water.core.api.bundle.Runtime;
+import it.water.core.api.permission.SecurityContext;
+import it.water.core.permission.exceptions.UnauthorizedException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link StatusRestApiImpl}: endpoint metrics are served only to administrators.
+ */
+class StatusRestApiImplTest {
+
+    private static Runtime runtimeWith(boolean loggedIn, boolean admin) {
+        SecurityContext securityContext = mock(SecurityContext.class);
+        when(securityContext.isLoggedIn()).thenReturn(loggedIn);
+        when(securityContext.isAdmin()).thenReturn(admin);
+        Runtime runtime = mock(Runtime.class);
+        when(runtime.getSecurityContext()).thenReturn(securityContext);
+        return runtime;
+    }
+
+    @Test
+    void endpointMetrics_servedToAdministrators() {
+        StatusRestApiImpl api = new StatusRestApiImpl();
+        api.setRuntime(runtimeWith(true, true));
+        Assertions.assertNotNull(api.getEndpointMetrics());
+    }
+
+    @Test
+    void endpointMetrics_nonAdminCaller_unauthorized() {
+        StatusRestApiImpl api = new StatusRestApiImpl();
+        api.setRuntime(runtimeWith(true, false));
+        Assertions.assertThrows(UnauthorizedException.class, api::getEndpointMetrics);
+        api.setRuntime(null);
+        Assertions.assertThrows(UnauthorizedException.class, api::getEndpointMetrics);
+        //the module check stays public
+        Assertions.assertEquals("Water Rest Module works!", api.checkModuleWorking());
+    }
+}
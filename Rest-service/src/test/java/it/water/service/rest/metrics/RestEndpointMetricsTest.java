@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.metrics;
+
+import it.water.service.rest.api.StatusApi;
+import it.water.service.rest.api.metrics.RestEndpointStats;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link LatencyHistogram} and {@link RestEndpointMetrics}.
+ */
+class RestEndpointMetricsTest {
+
+    @Test
+    void bucketsCoverValuesWithBoundedRelativeError() {
+        int previousIndex = -1;
+        for (long value = 0; value < 1_000_000L; value = value < 100 ? value + 1 : value * 11 / 10) {
+            int index = LatencyHistogram.bucketIndex(value);
+            Assertions.assertTrue(index >= previousIndex);
+            long upperBound = LatencyHistogram.bucketUpperBound(index);
+            Assertions.assertTrue(upperBound >= value);
+            Assertions.assertTrue(upperBound - value <= value / 8, "bucket too wide for " + value);
+            previousIndex = index;
+        }
+        Assertions.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    void percentilesFollowRecordedDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++)
+            histogram.record(i);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assertions.assertEquals(1000, snapshot.getCount());
+        Assertions.assertEquals(500, snapshot.getMean());
+        Assertions.assertEquals(1000, snapshot.getMax());
+        assertWithinBucket(500, snapshot.getValueAtQuantile(0.5));
+        assertWithinBucket(990, snapshot.getValueAtQuantile(0.99));
+        Assertions.assertEquals(1000, snapshot.getValueAtQuantile(1.0));
+        histogram.reset();
+        Assertions.assertEquals(0, histogram.snapshot().getValueAtQuantile(0.5));
+    }
+
+    @Test
+    void endpointRecordsCallsErrorsAndInFlight() throws NoSuchMethodException {
+        RestEndpointMetrics metrics = new RestEndpointMetrics();
+        Method method = StatusApi.class.getMethod("checkModuleWorking");
+        RestEndpointMetrics.Endpoint endpoint = metrics.endpoint(method);
+        Assertions.assertSame(endpoint, metrics.endpoint(method));
+        Assertions.assertEquals("it.water.service.rest.api.StatusApi.checkModuleWorking()", endpoint.getName());
+
+        endpoint.end(endpoint.start(), 200);
+        endpoint.end(endpoint.start(), 404);
+        endpoint.end(endpoint.start(), 500);
+        endpoint.end(endpoint.start(), 500);
+        endpoint.start();
+
+        List<RestEndpointStats> snapshot = metrics.snapshot();
+        Assertions.assertEquals(1, snapshot.size());
+        RestEndpointStats stats = snapshot.get(0);
+        Assertions.assertEquals(1, stats.getInFlight());
+        Assertions.assertEquals(4, stats.getCalls());
+        Assertions.assertEquals(3, stats.getErrors());
+        Assertions.assertEquals(Map.of(404, 1L, 500, 2L), stats.getErrorsByStatus());
+        Assertions.assertTrue(stats.getLatency().getP99Micros() <= stats.getLatency().getMaxMicros());
+
+        metrics.reset();
+        Assertions.assertTrue(metrics.snapshot().isEmpty());
+    }
+
+    @Test
+    void endpointsDoNotKeepUninstalledClassesAlive() throws Exception {
+        RestEndpointMetrics metrics = new RestEndpointMetrics();
+        WeakReference<Class<?>> uninstalledClass = recordOnIsolatedClass(metrics);
+        Assertions.assertEquals(1, metrics.snapshot().size());
+        //bundle uninstalled: nothing but the metrics could still reference the class
+        for (int i = 0; i < 50 && uninstalledClass.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20); //NOSONAR: waiting for the garbage collector
+        }
+        Assertions.assertNull(uninstalledClass.get(), "metrics must not keep the class alive");
+        Assertions.assertTrue(metrics.snapshot().isEmpty());
+    }
+
+    //loads the resource in its own class loader, as a bundle would
+    private static WeakReference<Class<?>> recordOnIsolatedClass(RestEndpointMetrics metrics) throws Exception {
+        Class<?> resource = new IsolatedClassLoader().loadIsolated(StatusApi.class);
+        RestEndpointMetrics.Endpoint endpoint = metrics.endpoint(resource.getMethod("checkModuleWorking"));
+        endpoint.end(endpoint.start(), 200);
+        return new WeakReference<>(resource);
+    }
+
+    private static class IsolatedClassLoader extends ClassLoader {
+        IsolatedClassLoader() {
+            super(RestEndpointMetricsTest.class.getClassLoader());
+        }
+
+        Class<?> loadIsolated(Class<?> type) throws IOException {
+            try (InputStream classFile = getParent().getResourceAsStream(type.getName().replace('.', '/') + ".class")) {
+                byte[] bytes = classFile.readAllBytes();
+                return defineClass(type.getName(), bytes, 0, bytes.length);
+            }
+        }
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        Assertions.assertTrue(actual >= expected && actual - expected <= expected / 8, "expected about " + expected + " but was " + actual);
+    }
+}
@@ -17,6 +17,7 @@ package it.water.service.rest.spring;
 
 import it.water.core.api.registry.ComponentRegistry;
 import it.water.service.rest.api.WaterJacksonMapper;
+import it.water.service.rest.spring.metrics.SpringEndpointMetricsInterceptor;
 import it.water.service.rest.spring.security.SpringJwtAuthenticationFilter;
 import lombok.Setter;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -74,6 +75,8 @@ public class WaterRestSpringConfiguration implements WebMvcConfigurer {
 
     @Override
     public void addInterceptors(final InterceptorRegistry registry) {
+        //metrics first: requests rejected by the jwt filter are recorded too
+        registry.addInterceptor(new SpringEndpointMetricsInterceptor());
         registry.addInterceptor(new SpringJwtAuthenticationFilter(componentRegistry));
     }
 
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.spring.api;
+
+import it.water.core.api.service.rest.FrameworkRestApi;
+import it.water.service.rest.api.SecurityStatusApi;
+import it.water.service.rest.api.security.LoggedIn;
+import it.water.service.rest.api.security.jwt.RevocationFeedPage;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * @Author Aristide Cittadino
+ * Re-defining Rest API with specific technology annotations: Spring Web.
+ * Swagger Annotation have been set on the generic Api SecurityStatusApi
+ */
+@FrameworkRestApi
+@RequestMapping("/status/security")
+public interface SpringSecurityStatusApi extends SecurityStatusApi {
+    @LoggedIn
+    @GetMapping("/revocations")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Override
+    RevocationFeedPage getRevocationFeed(@RequestParam(name = "since", defaultValue = "0") long since, @RequestParam(name = "limit", defaultValue = "500") int limit);
+}
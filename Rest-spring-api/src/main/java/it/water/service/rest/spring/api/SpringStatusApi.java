@@ -17,11 +17,14 @@ package it.water.service.rest.spring.api;
 
 import it.water.core.api.service.rest.FrameworkRestApi;
 import it.water.service.rest.api.StatusApi;
+import it.water.service.rest.api.metrics.RestEndpointStats;
+import it.water.service.rest.api.security.LoggedIn;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
+import java.util.List;
 
 /**
  * @Author Aristide Cittadino
@@ -35,4 +38,10 @@ public interface SpringStatusApi extends StatusApi {
     @Produces(MediaType.TEXT_PLAIN)
     @Override
     String checkModuleWorking();
+
+    @LoggedIn
+    @GetMapping("/metrics")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Override
+    List<RestEndpointStats> getEndpointMetrics();
 }
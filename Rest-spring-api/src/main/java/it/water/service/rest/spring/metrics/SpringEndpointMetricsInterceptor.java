@@ -0,0 +1,61 @@
+/*
+ * Copyright 2024 Aristide Cittadino
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License")
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.water.service.rest.spring.metrics;
+
+import it.water.service.rest.metrics.RestEndpointMetrics;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * @Author Aristide Cittadino
+ * Records the invocation metrics of each Spring rest controller method with the response status.
+ * Requests ending with an unhandled exception are recorded as 500 when no error status has been set.
+ */
+public class SpringEndpointMetricsInterceptor implements HandlerInterceptor {
+    static final String METRICS_ENDPOINT_ATTRIBUTE = "water.rest.metrics.endpoint";
+    static final String METRICS_START_ATTRIBUTE = "water.rest.metrics.start";
+
+    private final RestEndpointMetrics metrics;
+
+    public SpringEndpointMetricsInterceptor() {
+        this(RestEndpointMetrics.getInstance());
+    }
+
+    public SpringEndpointMetricsInterceptor(RestEndpointMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (handler instanceof HandlerMethod handlerMethod) {
+            RestEndpointMetrics.Endpoint endpoint = metrics.endpoint(handlerMethod.getMethod());
+            request.setAttribute(METRICS_ENDPOINT_ATTRIBUTE, endpoint);
+            request.setAttribute(METRICS_START_ATTRIBUTE, endpoint.start());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(METRICS_ENDPOINT_ATTRIBUTE) instanceof RestEndpointMetrics.Endpoint endpoint
+                && request.getAttribute(METRICS_START_ATTRIBUTE) instanceof Long startNanos) {
+            int status = response.getStatus();
+            endpoint.end(startNanos, ex != null && status < 400 ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : status);
+        }
+    }
+}
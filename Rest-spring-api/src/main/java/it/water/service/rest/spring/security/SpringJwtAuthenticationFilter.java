@@ -18,10 +18,12 @@ package it.water.service.rest.spring.security;
 import it.water.core.api.bundle.Runtime;
 import it.water.core.api.registry.ComponentRegistry;
 import it.water.implementation.spring.security.SpringSecurityContext;
+import it.water.service.rest.ComponentLookupCache;
 import it.water.service.rest.api.options.RestOptions;
-import it.water.service.rest.api.security.LoggedIn;
 import it.water.service.rest.api.security.jwt.JwtTokenService;
+import it.water.service.rest.api.security.jwt.VerifiedJwtToken;
 import it.water.service.rest.security.jwt.GenericJWTAuthFilter;
+import it.water.service.rest.security.jwt.RestMethodSecurityDescriptor;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
@@ -30,8 +32,6 @@ import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.ModelAndView;
 
-import java.lang.reflect.Method;
-
 /**
  * @Author Aristide Cittadino
  * This class implements a Spring Filter for JWT Authentication.
@@ -44,10 +44,11 @@ public class SpringJwtAuthenticationFilter extends GenericJWTAuthFilter implemen
 
     private static Logger log = LoggerFactory.getLogger(SpringJwtAuthenticationFilter.class);
     private ComponentRegistry componentRegistry;
-    private RestOptions cachedRestOptions;
+    private ComponentLookupCache componentLookupCache;
 
     public SpringJwtAuthenticationFilter(ComponentRegistry componentRegistry) {
         this.componentRegistry = componentRegistry;
+        this.componentLookupCache = ComponentLookupCache.of(componentRegistry);
     }
 
     @Override
@@ -55,17 +56,17 @@ public class SpringJwtAuthenticationFilter extends GenericJWTAuthFilter implemen
         log.debug("Pre handle: {}", SpringJwtAuthenticationFilter.class.getName());
         RestOptions restOptions = this.retrieveRestOptions();
         if (restOptions.securityOptions().validateJwt() && handler instanceof HandlerMethod handlerMethod) {
-            Method method = handlerMethod.getMethod();
-            LoggedIn annotation = (LoggedIn) this.getAnnotationFromHierarchy(LoggedIn.class, method);
-            if (annotation != null) {
+            //login requirement and issuers are resolved once per handler method
+            RestMethodSecurityDescriptor descriptor = RestMethodSecurityDescriptor.of(handlerMethod.getMethod());
+            if (descriptor.isLoginRequired()) {
                 //#14/#27: JWT is accepted only from the Authorization header (cookie auth removed to close the CSRF surface).
                 String authorization = request.getHeader("Authorization");
-                JwtTokenService jwtTokenService = this.componentRegistry.findComponent(JwtTokenService.class, null);
-                //raise exception if not valid token
-                this.validateToken(jwtTokenService, annotation, authorization, null);
+                JwtTokenService jwtTokenService = this.componentLookupCache.findComponent(JwtTokenService.class);
+                //raise exception if not valid token, the token is parsed and verified only once
+                VerifiedJwtToken verifiedToken = this.verifyToken(jwtTokenService, descriptor, authorization);
                 //Fill current thread with security context
-                Runtime runtime = this.componentRegistry.findComponent(Runtime.class, null);
-                runtime.fillSecurityContext(new SpringSecurityContext(jwtTokenService.getPrincipals(getTokenFromRequest(authorization, null))));
+                Runtime runtime = this.componentLookupCache.findComponent(Runtime.class);
+                runtime.fillSecurityContext(new SpringSecurityContext(verifiedToken.getPrincipals()));
             }
         }
         return true;
@@ -89,8 +90,6 @@ public class SpringJwtAuthenticationFilter extends GenericJWTAuthFilter implemen
     }
 
     private RestOptions retrieveRestOptions() {
-        if (this.cachedRestOptions == null)
-            this.cachedRestOptions = this.componentRegistry.findComponent(RestOptions.class, null);
-        return this.cachedRestOptions;
+        return this.componentLookupCache.findComponent(RestOptions.class);
     }
 }